@@ -0,0 +1,41 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.lsts.neptus.colormap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Cache of the ARGB lookup tables of {@link ColorMap#toArgbLut(int)}. Color maps are weakly referenced, so tables of
+ * color maps that are no longer used are released.
+ */
+final class ArgbLuts {
+
+    private static final Map<ColorMap, Map<Integer, int[]>> LUTS = new WeakHashMap<>();
+
+    private ArgbLuts() {
+    }
+
+    static synchronized int[] get(ColorMap colorMap, int size) {
+        return LUTS.computeIfAbsent(colorMap, c -> new HashMap<>()).computeIfAbsent(size,
+                s -> create(colorMap, s));
+    }
+
+    /**
+     * Drops the cached tables of a color map, to be called when its colors change
+     */
+    static synchronized void remove(ColorMap colorMap) {
+        LUTS.remove(colorMap);
+    }
+
+    static int[] create(ColorMap colorMap, int size) {
+        int[] lut = new int[size];
+        for (int i = 0; i < size; i++)
+            lut[i] = colorMap.getColor(size == 1 ? 0 : i / (double) (size - 1)).getRGB();
+        return lut;
+    }
+}
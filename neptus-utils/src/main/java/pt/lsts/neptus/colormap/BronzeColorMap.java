@@ -12,6 +12,8 @@ public class BronzeColorMap implements ColorMap {
 
     private final LinkedHashMap<Integer, Color> cache = new LinkedHashMap<>();
     private final int cacheSize = 1000;
+    // table of getArgb, kept here to avoid looking it up for every value
+    private volatile int[] argbLut;
 
     public BronzeColorMap() {
         
@@ -30,6 +32,16 @@ public class BronzeColorMap implements ColorMap {
         }
     }
 
+    @Override
+    public int getArgb(double value) {
+        int[] lut = argbLut;
+        if (lut == null) {
+            lut = toArgbLut(ARGB_LUT_SIZE);
+            argbLut = lut;
+        }
+        return ColorMap.lookup(lut, value);
+    }
+
     @Override
     public Color getColor(double value) {
         int i = (int) (value * cacheSize);
@@ -61,7 +61,43 @@ public interface ColorMap {
             ColorMapFactory.createStoreDataColormap()
     };
 
+    /** Size of the lookup table used by {@link #getArgb(double)} */
+    int ARGB_LUT_SIZE = 4096;
+
     Color getColor(double value);
 
+    /**
+     * Samples the color map at evenly spaced values from 0 to 1 (inclusive). Tables are cached per color map
+     * instance and size, so the returned array is shared and must not be modified.
+     * @param size number of colors
+     * @return the packed ARGB colors
+     */
+    default int[] toArgbLut(int size) {
+        return ArgbLuts.get(this, size);
+    }
+
+    /**
+     * Same as {@link #getColor(double)} (to the precision of a {@value #ARGB_LUT_SIZE} colors table) but returns the
+     * packed ARGB color and doesn't allocate
+     */
+    default int getArgb(double value) {
+        return lookup(toArgbLut(ARGB_LUT_SIZE), value);
+    }
+
+    /**
+     * @param lut table created by {@link #toArgbLut(int)}
+     * @param value value from 0 to 1 (values outside are clamped and NaN maps to the first color)
+     * @return the nearest color in the table
+     */
+    static int lookup(int[] lut, double value) {
+        int maxIndex = lut.length - 1;
+        int index = (int) (value * maxIndex + 0.5);
+        if (index < 0)
+            index = 0;
+        else if (index > maxIndex)
+            index = maxIndex;
+        return lut[index];
+    }
+
     String toString();
 }
@@ -182,9 +182,9 @@ public class ColorMapFactory {
 
     public static InterpolationColorMap createHotColorMap() {
         if (hot == null) {
-            InputStreamReader isr = new InputStreamReader(
-                    ClassLoader.getSystemResourceAsStream("colormaps/hot.colormap"));
             try {
+                InputStreamReader isr = new InputStreamReader(
+                        ClassLoader.getSystemResourceAsStream("colormaps/hot.colormap"));
                 hot = new TabulatedColorMap(isr);
             } catch (Exception e) {
                 hot = new InterpolationColorMap(I18n.text("colormap.hot"),
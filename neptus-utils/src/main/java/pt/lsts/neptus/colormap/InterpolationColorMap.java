@@ -47,6 +47,8 @@ public class InterpolationColorMap implements ColorMap {
     protected double[] values = new double[]{0f, 1f};
     protected Color[] colors = new Color[]{Color.BLACK, Color.WHITE};
     protected String name;
+    // table of getArgb, kept here to avoid looking it up for every value
+    private volatile int[] argbLut;
 
     public InterpolationColorMap(double[] values, Color[] colors) {
         this("Unknown", values, colors);
@@ -93,6 +95,16 @@ public class InterpolationColorMap implements ColorMap {
         return name;
     }
 
+    @Override
+    public int getArgb(double value) {
+        int[] lut = argbLut;
+        if (lut == null) {
+            lut = toArgbLut(ARGB_LUT_SIZE);
+            argbLut = lut;
+        }
+        return ColorMap.lookup(lut, value);
+    }
+
     public Color getColor(double value) {
         if (value >= values[values.length - 1])
             return colors[values.length - 1];
@@ -152,5 +164,30 @@ public class InterpolationColorMap implements ColorMap {
      */
     public void setValues(double[] values) {
         this.values = values;
+        colorsChanged();
+    }
+
+    /**
+     * @return the colors
+     */
+    public Color[] getColors() {
+        return colors;
+    }
+
+    /**
+     * @param colors the colors to set
+     */
+    public void setColors(Color[] colors) {
+        this.colors = colors;
+        colorsChanged();
+    }
+
+    /**
+     * Drops the cached color tables so that they are recreated with the current values and colors. Must be called
+     * after changing the values or colors arrays in place.
+     */
+    public void colorsChanged() {
+        argbLut = null;
+        ArgbLuts.remove(this);
     }
 }
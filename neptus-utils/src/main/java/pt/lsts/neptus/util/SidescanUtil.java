@@ -38,6 +38,7 @@
 package pt.lsts.neptus.util;
 
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 import pt.lsts.neptus.core.LocationType;
 import pt.omst.sidescan.ISidescanLine;
@@ -536,35 +537,40 @@ public class SidescanUtil {
      * @return Normalized data array with values between 0 and 1
      */
     public static double[] applyRawNormalization(double[] data) {
+        if (data == null) {
+            return null;
+        }
+        double[] copy = data.clone();
+        applyRawNormalizationInPlace(copy);
+        return copy;
+    }
+
+    /**
+     * Same as {@link #applyRawNormalization(double[])} but overwrites the given array instead of allocating a new one.
+     * 
+     * @param data The data to normalize (values between 0 and 1 after the call)
+     */
+    public static void applyRawNormalizationInPlace(double[] data) {
         if (data == null || data.length == 0) {
-            return data;
+            return;
         }
 
-        // Find min and max values
         double min = Double.MAX_VALUE;
-        double max = Double.MIN_VALUE;
-        
+        double max = -Double.MAX_VALUE;
+
         for (double value : data) {
             if (value < min) min = value;
             if (value > max) max = value;
         }
 
-        // Avoid division by zero
         double range = max - min;
         if (range == 0) {
-            double[] normalized = new double[data.length];
-            for (int i = 0; i < data.length; i++) {
-                normalized[i] = 0.5; // All values the same, set to middle
-            }
-            return normalized;
+            Arrays.fill(data, 0.5);
+            return;
         }
 
-        // Normalize to 0-1 range
-        double[] normalized = new double[data.length];
         for (int i = 0; i < data.length; i++) {
-            normalized[i] = (data[i] - min) / range;
+            data[i] = (data[i] - min) / range;
         }
-
-        return normalized;
     }
 }
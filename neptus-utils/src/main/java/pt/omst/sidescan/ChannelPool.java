@@ -0,0 +1,183 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps one open read-only channel per data file, shared by all the threads reading pings from it.
+ * <p>
+ * Only positional reads are used, so concurrent reads on the same channel don't interfere with each other. A thread
+ * interrupted during a read closes the channel for everybody ({@link java.nio.channels.ClosedByInterruptException}),
+ * so the interrupt status is cleared during reads and closed channels are transparently reopened.
+ * <p>
+ * Files are also mapped in segments of {@link #SEGMENT_SIZE} bytes that are kept in a small LRU cache, so reading
+ * consecutive pings is just slicing an existing mapping. Consecutive segments overlap by {@link #SEGMENT_OVERLAP}
+ * bytes so that any block up to that size starting inside a segment is fully contained in it. Larger blocks (and
+ * blocks past the end of a segment mapped before the file grew) are read from the channel instead.
+ */
+@Slf4j
+public class ChannelPool {
+    public static final int SEGMENT_SIZE = 32 * 1024 * 1024;
+    public static final int SEGMENT_OVERLAP = 1024 * 1024;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final ConcurrentHashMap<File, FileChannel> channels = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Segment, MappedByteBuffer> segments = new LinkedHashMap<>(MAX_SEGMENTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Segment, MappedByteBuffer> eldest) {
+            // unmapped when garbage collected
+            return size() > MAX_SEGMENTS;
+        }
+    };
+    private volatile boolean closed = false;
+
+    private record Segment(File file, long index) {}
+
+    /**
+     * Reads a block of a file
+     * @param file the file to read from
+     * @param position absolute position in the file
+     * @param length number of bytes to read
+     * @return a read-only (little endian) buffer with the bytes read
+     * @throws IOException if the file cannot be read or ends before position + length
+     */
+    public ByteBuffer read(File file, long position, int length) throws IOException {
+        if (length <= SEGMENT_OVERLAP) {
+            ByteBuffer segment = segment(file, position / SEGMENT_SIZE);
+            int offset = (int) (position % SEGMENT_SIZE);
+            if (segment != null && offset + length <= segment.limit())
+                return segment.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return readChannel(file, position, length);
+    }
+
+    private ByteBuffer readChannel(File file, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        // Save the current thread's interrupted status and clear it temporarily
+        boolean wasInterrupted = Thread.interrupted();
+        try {
+            try {
+                readFully(channel(file), buffer, position);
+            } catch (ClosedChannelException e) {
+                // another thread was interrupted while reading this file
+                buffer.clear();
+                readFully(reopen(file), buffer, position);
+            }
+        } finally {
+            // Restore the interrupted status if it was set before
+            if (wasInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the mapping of a segment of the file or null if the file ends before the segment
+     */
+    private ByteBuffer segment(File file, long index) throws IOException {
+        Segment key = new Segment(file, index);
+        synchronized (segments) {
+            MappedByteBuffer segment = segments.get(key);
+            if (segment != null)
+                return segment;
+        }
+
+        long start = index * SEGMENT_SIZE;
+        MappedByteBuffer segment;
+        boolean wasInterrupted = Thread.interrupted();
+        try {
+            FileChannel channel = channel(file);
+            long size = channel.size();
+            if (start >= size)
+                return null;
+            int length = (int) Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, size - start);
+            try {
+                segment = channel.map(MapMode.READ_ONLY, start, length);
+            } catch (ClosedChannelException e) {
+                segment = reopen(file).map(MapMode.READ_ONLY, start, length);
+            }
+        } finally {
+            if (wasInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (segments) {
+            if (closed)
+                throw new ClosedChannelException();
+            segments.put(key, segment);
+        }
+        return segment;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0)
+                throw new EOFException("Unexpected end of file at " + (position + buffer.position()));
+        }
+    }
+
+    /**
+     * @param file the data file
+     * @return the shared channel of a file, opening it if needed
+     * @throws IOException if the file cannot be opened or the pool was closed
+     */
+    public FileChannel channel(File file) throws IOException {
+        if (closed)
+            throw new ClosedChannelException();
+        FileChannel channel = channels.get(file);
+        if (channel != null && channel.isOpen())
+            return channel;
+        return reopen(file);
+    }
+
+    private synchronized FileChannel reopen(File file) throws IOException {
+        if (closed)
+            throw new ClosedChannelException();
+        FileChannel channel = channels.get(file);
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            channels.put(file, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Closes all the channels. Reads after this will fail.
+     */
+    public synchronized void close() {
+        closed = true;
+        for (FileChannel channel : channels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing channel: {}", e.getMessage());
+            }
+        }
+        channels.clear();
+        synchronized (segments) {
+            segments.clear();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads (or generates) the ping index of several data files at the same time.
+ * <p>
+ * Files are independent, so each one is handled by a task in a fixed pool using half of the available processors.
+ * Progress messages from the tasks are forwarded one at a time, followed by an aggregate count of finished files.
+ */
+@Slf4j
+public class ParallelIndexer {
+
+    /**
+     * Loads or generates the index of a single file
+     */
+    @FunctionalInterface
+    public interface FileIndexer {
+        /**
+         * @param file the data file
+         * @param progressCallback where to report progress, can be null
+         * @return the index or null if the file could not be indexed
+         */
+        PingIndex index(File file, Consumer<String> progressCallback);
+    }
+
+    /**
+     * Indexes all files in parallel
+     * @param files the data files
+     * @param format name of the file format, used in progress messages
+     * @param indexer how to index a single file
+     * @param progressCallback where to report progress, can be null
+     * @return the index of each file, in the same order as files (files that failed are left out)
+     */
+    public static Map<File, PingIndex> indexAll(File[] files, String format, FileIndexer indexer,
+            Consumer<String> progressCallback) {
+        Map<File, PingIndex> result = new LinkedHashMap<>();
+        if (files.length == 0)
+            return result;
+
+        Consumer<String> progress = progressCallback == null ? null : message -> {
+            synchronized (progressCallback) {
+                progressCallback.accept(message);
+            }
+        };
+        int threads = Math.min(files.length, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicInteger finished = new AtomicInteger();
+        long start = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<PingIndex>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(executor.submit(() -> {
+                    PingIndex index = indexer.index(file, progress);
+                    int done = finished.incrementAndGet();
+                    if (progress != null)
+                        progress.accept("Indexed " + done + "/" + files.length + " " + format + " files");
+                    return index;
+                }));
+            }
+            for (int i = 0; i < files.length; i++) {
+                try {
+                    PingIndex index = futures.get(i).get();
+                    if (index != null)
+                        result.put(files[i], index);
+                } catch (ExecutionException e) {
+                    log.error("Failed to index {}", files[i].getAbsolutePath(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while indexing {} files", format);
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Indexed {} {} files in {} ms using {} threads", result.size(), format,
+                System.currentTimeMillis() - start, threads);
+        return result;
+    }
+}
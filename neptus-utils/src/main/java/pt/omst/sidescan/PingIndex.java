@@ -0,0 +1,594 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Binary ping index shared by the sidescan parsers.
+ * <p>
+ * The index is a versioned, fixed-width little-endian file with three sorted columns (timestamp, file offset and
+ * subsystem) preceded by a small directory with the range of entries of each subsystem. Entries are sorted by
+ * subsystem, then timestamp; entries with the same timestamp keep the order in which they were added to the
+ * {@link Builder} (file order, for the parsers). The file is opened with {@link FileChannel#map} and all lookups are
+ * binary searches done directly on the mapped columns, so opening an index costs the same for 1k or 10M pings.
+ * A mapped file can't be replaced until the mapping is garbage collected (on Windows the move fails), so indexes that
+ * may be rewritten are checked with {@link #readHeader(File)} and copied to memory with {@link #read(File)} instead.
+ * <pre>
+ * 0   int    magic ("PIDX")
+ * 4   int    version
+ * 8   long   length of the indexed source file
+ * 16  long   last modification time of the source file
+ * 24  long   number of source bytes covered by the index
+ * 32  long   number of packets found in the source file
+ * 40  int    number of entries
+ * 44  int    number of subsystems
+ * 48  int    number of frequencies
+ * 52  int    reserved
+ * 56  long   format specific value (e.g. the clock reference of SDS files)
+ * 64  {int subsystem, int first entry, int entry count} x subsystems
+ *     double x frequencies (8 byte aligned)
+ *     long timestamps x entries
+ *     long offsets x entries
+ *     int subsystems x entries
+ * </pre>
+ * Instances are immutable and can be shared between threads.
+ */
+@Slf4j
+public final class PingIndex {
+    public static final int MAGIC = 0x58444950; // "PIDX" in little endian
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * The state of the source file recorded in an index
+     * @param sourceLength length of the indexed source file
+     * @param sourceLastModified last modification time of the source file
+     * @param indexedLength number of source bytes covered by the index
+     */
+    public record Header(long sourceLength, long sourceLastModified, long indexedLength) {
+        /**
+         * @return true if the index was created for the current version of the source file
+         */
+        public boolean isUpToDate(File source) {
+            return sourceLength == source.length() && sourceLastModified == source.lastModified();
+        }
+    }
+
+    private final long sourceLength;
+    private final long sourceLastModified;
+    private final long indexedLength;
+    private final long numberOfPackets;
+    private final long formatData;
+    private final int entries;
+    private final int[] subsystems;
+    private final int[] subsystemStart;
+    private final int[] subsystemCount;
+    private final double[] frequencies;
+    private final LongBuffer timestamps;
+    private final LongBuffer offsets;
+    private final IntBuffer subsystemColumn;
+
+    private PingIndex(ByteBuffer buffer) throws IOException {
+        checkHeader(buffer);
+
+        sourceLength = buffer.getLong(8);
+        sourceLastModified = buffer.getLong(16);
+        indexedLength = buffer.getLong(24);
+        numberOfPackets = buffer.getLong(32);
+        formatData = buffer.getLong(56);
+        entries = buffer.getInt(40);
+        int subsystemsCount = buffer.getInt(44);
+        int frequenciesCount = buffer.getInt(48);
+
+        int frequenciesOffset = align(HEADER_SIZE + subsystemsCount * 12);
+        int timestampsOffset = frequenciesOffset + frequenciesCount * 8;
+        int offsetsOffset = timestampsOffset + entries * 8;
+        int subsystemsOffset = offsetsOffset + entries * 8;
+        if (entries < 0 || subsystemsCount < 0 || frequenciesCount < 0
+                || (long) subsystemsOffset + entries * 4L != buffer.limit())
+            throw new IOException("Truncated ping index file");
+
+        subsystems = new int[subsystemsCount];
+        subsystemStart = new int[subsystemsCount];
+        subsystemCount = new int[subsystemsCount];
+        for (int i = 0; i < subsystemsCount; i++) {
+            subsystems[i] = buffer.getInt(HEADER_SIZE + i * 12);
+            subsystemStart[i] = buffer.getInt(HEADER_SIZE + i * 12 + 4);
+            subsystemCount[i] = buffer.getInt(HEADER_SIZE + i * 12 + 8);
+        }
+        frequencies = new double[frequenciesCount];
+        for (int i = 0; i < frequenciesCount; i++)
+            frequencies[i] = buffer.getDouble(frequenciesOffset + i * 8);
+
+        timestamps = buffer.slice(timestampsOffset, entries * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        offsets = buffer.slice(offsetsOffset, entries * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        subsystemColumn = buffer.slice(subsystemsOffset, entries * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static void checkHeader(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a ping index file");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported ping index version " + buffer.getInt(4));
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    /**
+     * Maps an existing index file into memory
+     * @param indexFile the index file
+     * @return the opened index
+     * @throws IOException if the file cannot be read or is not a valid index
+     */
+    public static PingIndex open(File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Ping index file is too large: " + indexFile);
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            return new PingIndex(buffer);
+        }
+    }
+
+    /**
+     * Reads an index file into memory, without mapping it, so that the file can be replaced while the index is used
+     * (e.g. to resume indexing a file that grew)
+     * @param indexFile the index file
+     * @return the index
+     * @throws IOException if the file cannot be read or is not a valid index
+     */
+    public static PingIndex read(File indexFile) throws IOException {
+        return new PingIndex(ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath())));
+    }
+
+    /**
+     * Reads the header of an index file without mapping it
+     * @param indexFile the index file
+     * @return the state of the source file recorded in the index
+     * @throws IOException if the file cannot be read or is not a valid index
+     */
+    public static Header readHeader(File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    break;
+            }
+            buffer.flip();
+            checkHeader(buffer);
+            return new Header(buffer.getLong(8), buffer.getLong(16), buffer.getLong(24));
+        }
+    }
+
+    /**
+     * Opens an index file if it exists, is valid and was created for the current version of the given source file
+     * (see {@link Header#isUpToDate(File)}). Outdated files are not mapped, so they can be replaced by a new index.
+     * @param indexFile the index file
+     * @param source the indexed data file
+     * @return the opened index or null if it must be (re)generated
+     */
+    public static PingIndex openIfValid(File indexFile, File source) {
+        if (!indexFile.exists())
+            return null;
+        try {
+            if (readHeader(indexFile).isUpToDate(source))
+                return open(indexFile);
+            log.warn("Ping index {} is outdated, it will be regenerated", indexFile.getName());
+        } catch (IOException e) {
+            log.warn("Could not open ping index {}: {}", indexFile.getName(), e.getMessage());
+        }
+        return null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public long getSourceLength() {
+        return sourceLength;
+    }
+
+    public long getSourceLastModified() {
+        return sourceLastModified;
+    }
+
+    public long getIndexedLength() {
+        return indexedLength;
+    }
+
+    public long getNumberOfPackets() {
+        return numberOfPackets;
+    }
+
+    /**
+     * @return a value stored by the parser that created the index (0 if not used)
+     */
+    public long getFormatData() {
+        return formatData;
+    }
+
+    /**
+     * @return total number of entries in the index
+     */
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * @return the subsystems found in the source file, in ascending order
+     */
+    public int[] getSubsystems() {
+        return subsystems.clone();
+    }
+
+    public boolean hasSubsystem(int subsystem) {
+        return slot(subsystem) >= 0;
+    }
+
+    /**
+     * @return the distinct ping frequencies found in the source file
+     */
+    public double[] getFrequencies() {
+        return frequencies.clone();
+    }
+
+    /**
+     * @param subsystem the subsystem to query
+     * @return number of entries of the given subsystem
+     */
+    public int size(int subsystem) {
+        int slot = slot(subsystem);
+        return slot < 0 ? 0 : subsystemCount[slot];
+    }
+
+    /**
+     * @param subsystem the subsystem to query
+     * @return the first timestamp of the subsystem or -1 if there is no data for it
+     */
+    public long getFirstTimestamp(int subsystem) {
+        int slot = slot(subsystem);
+        return slot < 0 || subsystemCount[slot] == 0 ? -1 : timestamps.get(subsystemStart[slot]);
+    }
+
+    /**
+     * @param subsystem the subsystem to query
+     * @return the last timestamp of the subsystem or -1 if there is no data for it
+     */
+    public long getLastTimestamp(int subsystem) {
+        int slot = slot(subsystem);
+        return slot < 0 || subsystemCount[slot] == 0 ? -1
+                : timestamps.get(subsystemStart[slot] + subsystemCount[slot] - 1);
+    }
+
+    /**
+     * @param subsystem the subsystem to query
+     * @param i entry number, between 0 and {@link #size(int)}
+     * @return the timestamp of the entry
+     */
+    public long getTimestamp(int subsystem, int i) {
+        return timestamps.get(entry(subsystem, i));
+    }
+
+    /**
+     * @param subsystem the subsystem to query
+     * @param i entry number, between 0 and {@link #size(int)}
+     * @return the file offset of the entry
+     */
+    public long getOffset(int subsystem, int i) {
+        return offsets.get(entry(subsystem, i));
+    }
+
+    /**
+     * Finds the first entry of a subsystem with a timestamp equal or after the given one
+     * @param subsystem the subsystem to query
+     * @param timestamp the timestamp to search for
+     * @return the entry number or -1 if all entries are before the timestamp
+     */
+    public int ceiling(int subsystem, long timestamp) {
+        int slot = slot(subsystem);
+        if (slot < 0)
+            return -1;
+        int low = subsystemStart[slot];
+        int high = low + subsystemCount[slot];
+        int end = high;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps.get(mid) < timestamp)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low == end ? -1 : low - subsystemStart[slot];
+    }
+
+    /**
+     * Returns the file offsets of all the entries with exactly the given timestamp, in file order
+     * @param subsystem the subsystem to query
+     * @param timestamp the timestamp of the entries
+     * @return the offsets (an empty array if there are no entries with this timestamp)
+     */
+    public long[] getOffsets(int subsystem, long timestamp) {
+        int slot = slot(subsystem);
+        if (slot < 0 || subsystemCount[slot] == 0)
+            return new long[0];
+        int first = subsystemStart[slot];
+        int last = first + subsystemCount[slot] - 1;
+        if (timestamp < timestamps.get(first) || timestamp > timestamps.get(last))
+            return new long[0];
+        int from = ceiling(subsystem, timestamp);
+        if (from < 0)
+            return new long[0];
+        int start = first + from;
+        int end = start;
+        while (end <= last && timestamps.get(end) == timestamp)
+            end++;
+        long[] result = new long[end - start];
+        offsets.get(start, result);
+        return result;
+    }
+
+    /**
+     * @param subsystem the subsystem to query
+     * @return the distinct timestamps of a subsystem, in ascending order
+     */
+    public long[] getTimestamps(int subsystem) {
+        int slot = slot(subsystem);
+        if (slot < 0)
+            return new long[0];
+        long[] all = new long[subsystemCount[slot]];
+        timestamps.get(subsystemStart[slot], all);
+        int count = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (count == 0 || all[count - 1] != all[i])
+                all[count++] = all[i];
+        }
+        return count == all.length ? all : Arrays.copyOf(all, count);
+    }
+
+    private int slot(int subsystem) {
+        for (int i = 0; i < subsystems.length; i++) {
+            if (subsystems[i] == subsystem)
+                return i;
+        }
+        return -1;
+    }
+
+    private int entry(int subsystem, int i) {
+        int slot = slot(subsystem);
+        if (slot < 0 || i < 0 || i >= subsystemCount[slot])
+            throw new IndexOutOfBoundsException("No entry " + i + " for subsystem " + subsystem);
+        int entry = subsystemStart[slot] + i;
+        assert subsystemColumn.get(entry) == subsystem;
+        return entry;
+    }
+
+    /**
+     * Accumulates index entries in primitive arrays and writes the index file
+     */
+    public static final class Builder {
+        private long[] timestamps = new long[1024];
+        private long[] offsets = new long[1024];
+        private int[] subsystems = new int[1024];
+        private int size = 0;
+        private double[] frequencies = new double[8];
+        private int frequenciesCount = 0;
+        private long numberOfPackets = 0;
+        private long indexedLength = -1;
+        private long formatData = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a ping to the index. Pings should be added in file order.
+         * @param subsystem the ping subsystem
+         * @param timestamp the ping timestamp in milliseconds
+         * @param offset the position of the ping in the source file
+         * @return this builder
+         */
+        public Builder add(int subsystem, long timestamp, long offset) {
+            if (size == timestamps.length) {
+                int capacity = size + (size >> 1);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                subsystems = Arrays.copyOf(subsystems, capacity);
+            }
+            timestamps[size] = timestamp;
+            offsets[size] = offset;
+            subsystems[size] = subsystem;
+            size++;
+            return this;
+        }
+
+        public Builder addFrequency(double frequency) {
+            for (int i = 0; i < frequenciesCount; i++) {
+                if (frequencies[i] == frequency)
+                    return this;
+            }
+            if (frequenciesCount == frequencies.length)
+                frequencies = Arrays.copyOf(frequencies, frequencies.length * 2);
+            frequencies[frequenciesCount++] = frequency;
+            return this;
+        }
+
+        public Builder numberOfPackets(long numberOfPackets) {
+            this.numberOfPackets = numberOfPackets;
+            return this;
+        }
+
+        /**
+         * @param indexedLength number of source bytes covered by the index (defaults to the source length)
+         * @return this builder
+         */
+        public Builder indexedLength(long indexedLength) {
+            this.indexedLength = indexedLength;
+            return this;
+        }
+
+        /**
+         * @param formatData a format specific value to store with the index, like the state needed to resume indexing
+         * @return this builder
+         */
+        public Builder formatData(long formatData) {
+            this.formatData = formatData;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Sorts the entries, writes the index file (atomically replacing any previous version) and maps it
+         * @param indexFile the destination index file
+         * @param source the indexed data file
+         * @return the written index
+         * @throws IOException if the index cannot be written
+         */
+        public PingIndex write(File indexFile, File source) throws IOException {
+            // Group entries by subsystem, keeping file order inside each group
+            int[] ids = Arrays.stream(subsystems, 0, size).distinct().sorted().toArray();
+            int[] starts = new int[ids.length];
+            int[] counts = new int[ids.length];
+            for (int i = 0; i < size; i++)
+                counts[Arrays.binarySearch(ids, subsystems[i])]++;
+            for (int s = 1; s < ids.length; s++)
+                starts[s] = starts[s - 1] + counts[s - 1];
+
+            long[] sortedTimestamps = new long[size];
+            long[] sortedOffsets = new long[size];
+            int[] fill = starts.clone();
+            for (int i = 0; i < size; i++) {
+                int pos = fill[Arrays.binarySearch(ids, subsystems[i])]++;
+                sortedTimestamps[pos] = timestamps[i];
+                sortedOffsets[pos] = offsets[i];
+            }
+            for (int s = 0; s < ids.length; s++)
+                sortByTimestamp(sortedTimestamps, sortedOffsets, starts[s], starts[s] + counts[s]);
+
+            int frequenciesOffset = align(HEADER_SIZE + ids.length * 12);
+            long total = frequenciesOffset + frequenciesCount * 8L + size * 20L;
+            if (total > Integer.MAX_VALUE)
+                throw new IOException("Too many entries for a ping index: " + size);
+
+            File folder = indexFile.getAbsoluteFile().getParentFile();
+            if (!folder.exists())
+                folder.mkdirs();
+            File tmp = new File(folder, indexFile.getName() + ".tmp");
+
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+                buf.putInt(MAGIC).putInt(VERSION);
+                buf.putLong(source.length()).putLong(source.lastModified());
+                buf.putLong(indexedLength < 0 ? source.length() : indexedLength);
+                buf.putLong(numberOfPackets);
+                buf.putInt(size).putInt(ids.length).putInt(frequenciesCount).putInt(0);
+                buf.putLong(formatData);
+                while (buf.position() < HEADER_SIZE)
+                    buf.put((byte) 0);
+                for (int s = 0; s < ids.length; s++)
+                    buf.putInt(ids[s]).putInt(starts[s]).putInt(counts[s]);
+                while (buf.position() < frequenciesOffset)
+                    buf.put((byte) 0);
+                for (int i = 0; i < frequenciesCount; i++)
+                    buf.putDouble(frequencies[i]);
+                for (int i = 0; i < size; i++) {
+                    if (buf.remaining() < 8)
+                        flush(channel, buf);
+                    buf.putLong(sortedTimestamps[i]);
+                }
+                for (int i = 0; i < size; i++) {
+                    if (buf.remaining() < 8)
+                        flush(channel, buf);
+                    buf.putLong(sortedOffsets[i]);
+                }
+                for (int s = 0; s < ids.length; s++) {
+                    for (int i = 0; i < counts[s]; i++) {
+                        if (buf.remaining() < 4)
+                            flush(channel, buf);
+                        buf.putInt(ids[s]);
+                    }
+                }
+                flush(channel, buf);
+            }
+
+            try {
+                Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return open(indexFile);
+        }
+
+        private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+            buf.flip();
+            while (buf.hasRemaining())
+                channel.write(buf);
+            buf.clear();
+        }
+
+        /**
+         * Stable sort of a range of timestamps (carrying the offsets along). Pings are usually already in time order
+         * so this returns right away in the common case.
+         */
+        private static void sortByTimestamp(long[] ts, long[] off, int from, int to) {
+            boolean sorted = true;
+            for (int i = from + 1; i < to && sorted; i++)
+                sorted = ts[i - 1] <= ts[i];
+            if (sorted)
+                return;
+
+            long[] tsTmp = new long[to - from];
+            long[] offTmp = new long[to - from];
+            for (int width = 1; width < to - from; width *= 2) {
+                for (int left = from; left < to; left += 2 * width) {
+                    int mid = Math.min(left + width, to);
+                    int right = Math.min(left + 2 * width, to);
+                    int i = left, j = mid, k = 0;
+                    while (i < mid && j < right) {
+                        if (ts[j] < ts[i]) {
+                            tsTmp[k] = ts[j];
+                            offTmp[k++] = off[j++];
+                        } else {
+                            tsTmp[k] = ts[i];
+                            offTmp[k++] = off[i++];
+                        }
+                    }
+                    while (i < mid) {
+                        tsTmp[k] = ts[i];
+                        offTmp[k++] = off[i++];
+                    }
+                    while (j < right) {
+                        tsTmp[k] = ts[j];
+                        offTmp[k++] = off[j++];
+                    }
+                    System.arraycopy(tsTmp, 0, ts, left, k);
+                    System.arraycopy(offTmp, 0, off, left, k);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.function.Consumer;
+
+/**
+ * Forward-only reader used to scan sidescan files when building their index.
+ * <p>
+ * The file is read sequentially in large blocks into a direct buffer that is reused by all scans done in the same
+ * thread, so parsing a header is just a few absolute reads at an offset of {@link #buffer()}, without any mapping or
+ * syscall per message. Progress (percentage and throughput) is reported at most once per second.
+ */
+public class SequentialReader {
+    public static final int BUFFER_SIZE = 8 * 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+
+    private final FileChannel channel;
+    private final String name;
+    private final Consumer<String> progressCallback;
+    private final ByteBuffer buffer;
+    private final long size;
+    private final long startTime = System.nanoTime();
+    private long bufferStart = 0;
+    private long bytesRead = 0;
+    private long lastProgress = startTime;
+
+    /**
+     * @param channel the channel to read from (only positional reads are used)
+     * @param name name used in progress messages
+     * @param progressCallback where to report progress, can be null
+     */
+    public SequentialReader(FileChannel channel, String name, Consumer<String> progressCallback) throws IOException {
+        this.channel = channel;
+        this.name = name;
+        this.progressCallback = progressCallback;
+        this.size = channel.size();
+        this.buffer = buffers.get();
+        buffer.clear().limit(0);
+    }
+
+    /**
+     * Makes sure the bytes between position and position + length are in the buffer
+     * @param position absolute position in the file
+     * @param length number of bytes needed
+     * @return the offset of position in {@link #buffer()} or -1 if the file ends before position + length
+     * @throws IOException if reading fails
+     */
+    public int fill(long position, int length) throws IOException {
+        if (position >= bufferStart && position + length <= bufferStart + buffer.limit())
+            return (int) (position - bufferStart);
+        if (position < 0 || position + length > size)
+            return -1;
+        if (length > buffer.capacity())
+            throw new IllegalArgumentException("Cannot buffer " + length + " bytes");
+
+        if (position >= bufferStart && position < bufferStart + buffer.limit()) {
+            // keep the bytes we already have
+            buffer.position((int) (position - bufferStart));
+            buffer.compact();
+        } else {
+            buffer.clear();
+        }
+        bufferStart = position;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, bufferStart + buffer.position());
+            if (n < 0)
+                break;
+            bytesRead += n;
+        }
+        buffer.flip();
+        reportProgress(position);
+        return position + length <= bufferStart + buffer.limit() ? 0 : -1;
+    }
+
+    /**
+     * @return the buffer with the data requested in the last call to {@link #fill(long, int)} (little endian)
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return number of bytes read from the file so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return average read throughput so far, in MB/s
+     */
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds <= 0 ? 0 : bytesRead / (1024.0 * 1024.0) / seconds;
+    }
+
+    private void reportProgress(long position) {
+        long now = System.nanoTime();
+        if (progressCallback == null || now - lastProgress < PROGRESS_INTERVAL_NANOS)
+            return;
+        lastProgress = now;
+        progressCallback.accept(String.format("Indexing %s: %d%% (%.0f MB/s)", name,
+                size == 0 ? 100 : (int) (position * 100 / size), getThroughput()));
+    }
+}
@@ -37,15 +37,25 @@
  */
 package pt.omst.sidescan;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.Random;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,17 +64,55 @@ import org.slf4j.LoggerFactory;
  * @author zp
  *
  */
-public class SidescanHistogramNormalizer implements Serializable {
+public class SidescanHistogramNormalizer {
     
     private static final Logger LOG = LoggerFactory.getLogger(SidescanHistogramNormalizer.class);
     
-    private static final long serialVersionUID = -6926787167196556272L;
     private static final int LINES_TO_COMPUTE_HISTOGRAM = 1000;
+    /** Default time budget for computing the histograms of all subsystems */
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 60_000;
+
+    private static final String CACHE_FILE = "mra/histogram.bin";
+    private static final int CACHE_MAGIC = 0x48495354; // "HIST"
+    // version 2 added the completeness flag
+    private static final int CACHE_VERSION = 2;
+    private static final Map<String, Object> FOLDER_LOCKS = new ConcurrentHashMap<>();
 
     private LinkedHashMap<Integer, float[]> histograms = new LinkedHashMap<Integer, float[]>();
     private LinkedHashMap<Integer, Float> averages = new LinkedHashMap<Integer, Float>();
-    private static final Random random = new Random(System.currentTimeMillis());    
+    // false if the time budget ran out before all lines were averaged
+    private boolean complete = true;
     
+    /**
+     * Per sample running mean of a set of lines. Uses incremental updates (and the pairwise formula when merging)
+     * instead of sums, so it stays accurate for any number of lines.
+     */
+    private static class Accumulator {
+        private final double[] mean;
+        private long count = 0;
+        private boolean truncated = false;
+
+        Accumulator(int samples) {
+            mean = new double[samples];
+        }
+
+        void add(double[] data) {
+            count++;
+            for (int i = 0; i < mean.length; i++)
+                mean[i] += (data[i] - mean[i]) / count;
+        }
+
+        void merge(Accumulator other) {
+            truncated |= other.truncated;
+            if (other.count == 0)
+                return;
+            long total = count + other.count;
+            double weight = other.count / (double) total;
+            for (int i = 0; i < mean.length; i++)
+                mean[i] += (other.mean[i] - mean[i]) * weight;
+            count = total;
+        }
+    }
 
     public void normalize(SidescanLine line, int subsys) {
         if (!histograms.containsKey(subsys)) {
@@ -99,107 +147,258 @@ public class SidescanHistogramNormalizer implements Serializable {
         return ret;
     }
    
-    public synchronized static SidescanHistogramNormalizer create(SidescanParser ssParser, File logFolder) {
+    public static SidescanHistogramNormalizer create(SidescanParser ssParser, File logFolder) {
+        return create(ssParser, logFolder, DEFAULT_TIME_BUDGET_MILLIS);
+    }
+
+    /**
+     * Loads the histograms cached in the log folder or, if there are none, computes and caches them.
+     * <p>
+     * For each subsystem, up to {@value #LINES_TO_COMPUTE_HISTOGRAM} pings evenly spread over the log are averaged.
+     * The pings are split in contiguous chunks, one per thread, and each chunk is read from its first to its last
+     * ping, so the log is scanned forward instead of being accessed at random positions. Each subsystem gets an
+     * equal share of the time budget and whatever was averaged when its share runs out is used. Such histograms are
+     * cached as incomplete, so they are computed again the next time a parser is given.
+     * @param ssParser parser of the log, if null an empty normalizer is returned when there is no cache
+     * @param logFolder the log folder (the cache is stored in its mra folder)
+     * @param timeBudgetMillis maximum time for computing the histograms of all subsystems
+     */
+    public static SidescanHistogramNormalizer create(SidescanParser ssParser, File logFolder, long timeBudgetMillis) {
+        // logs are processed concurrently (e.g. by batch exports), only calls for the same log must wait
+        Object lock = FOLDER_LOCKS.computeIfAbsent(logFolder.getAbsoluteFile().toPath().normalize().toString(),
+                folder -> new Object());
+        synchronized (lock) {
+            return loadOrCompute(ssParser, logFolder, timeBudgetMillis);
+        }
+    }
+
+    private static SidescanHistogramNormalizer loadOrCompute(SidescanParser ssParser, File logFolder,
+            long timeBudgetMillis) {
         if (!new File(logFolder, "mra").exists())
                 new File(logFolder, "mra").mkdirs();
                             
-        File cache = new File(logFolder, "mra/histogram.cache");
+        File cache = new File(logFolder, CACHE_FILE);
         
-        try {
-                
-            if (cache.canRead()) {
-                ObjectInputStream ois = new ObjectInputStream(new FileInputStream(cache));
-                SidescanHistogramNormalizer histogram = (SidescanHistogramNormalizer) ois.readObject();
-                ois.close();
+        SidescanHistogramNormalizer cached = null;
+        if (cache.canRead()) {
+            try {
+                cached = read(cache);
                 LOG.info("Read histogram from cache file.");
-                if (histogram.averages.isEmpty())
-                    throw new Exception();
-                return histogram;
+                if (cached.complete && !cached.averages.isEmpty())
+                    return cached;
             }
-            if (ssParser == null) {
-                LOG.warn("Using empty histogram normalizer");
-                return new SidescanHistogramNormalizer();
+            catch (IOException e) {
+                LOG.warn("Invalid histogram cache " + cache + ": " + e.getMessage());
             }
-
-        }
-        catch (Exception e) {
-            
         }
         if (ssParser == null) {
+            if (cached != null && !cached.averages.isEmpty()) {
+                LOG.warn("Using histogram computed from part of the lines");
+                return cached;
+            }
             LOG.warn("Using empty histogram normalizer");
             return new SidescanHistogramNormalizer();
         }
-        LOG.info("Histogram cache not found. Creating new one.");
+        LOG.info(cached == null ? "Histogram cache not found. Creating new one."
+                : "Histogram cache was computed from part of the lines. Creating new one.");
         SidescanHistogramNormalizer hist = new SidescanHistogramNormalizer();
 
-        for (int subId : ssParser.getSubsystemList()) {
-            LOG.info("Calculating histogram for subsystem "+subId);
-            try {
-                long firstTimestamp = ssParser.firstPingTimestamp(subId);
-                long lastTimestamp = ssParser.lastPingTimestamp(subId);
-                int logSeconds = (int) ((lastTimestamp - firstTimestamp) / 1000);
-                
-                // Skip if there's not enough data
-                if (logSeconds <= 0) {
-                    LOG.warn("Insufficient data for subsystem " + subId + ", skipping histogram calculation");
-                    continue;
-                }
-                
-                SidescanLine pivot = ssParser.getLinesBetween(lastTimestamp - 1000, lastTimestamp, subId, ssParser.getDefaultParams()).get(0);
-                float[] avg = new float[pivot.getData().length];
-                int count = 0;
-                
-                while (count < LINES_TO_COMPUTE_HISTOGRAM) {
-                    long randomPosition = firstTimestamp + random.nextInt(logSeconds) * 1000;
-                    ArrayList<SidescanLine> lines = ssParser.getLinesBetween(randomPosition, randomPosition + 1000, subId, ssParser.getDefaultParams());
-                    for (int l = 0; l < lines.size(); l++) {
-                        double data[] = lines.get(l).getData();
-                        // Only process data if it matches the expected length
-                        if (data.length != avg.length) {
-                            continue;
-                        }
-                        for (int i = 0; i < data.length; i++)
-                            avg[i] = (float) ((avg[i] * count) + data[i]) / (count+1);
-                        count++;
-                    };
-                }
+        long start = System.currentTimeMillis();
+        long end = start + timeBudgetMillis;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Integer> subsystems = ssParser.getSubsystemList();
+            for (int s = 0; s < subsystems.size(); s++) {
+                int subId = subsystems.get(s);
+                LOG.info("Calculating histogram for subsystem "+subId);
+                // each subsystem gets an equal share of the remaining time (time left by the previous ones included)
+                long now = System.currentTimeMillis();
+                long deadline = now + Math.max(0, end - now) / (subsystems.size() - s);
+                try {
+                    Accumulator avg = accumulate(ssParser, subId, executor, threads, deadline);
+                    if (avg == null)
+                        continue;
+                    if (avg.truncated)
+                        hist.complete = false;
+                    if (avg.count == 0) {
+                        LOG.warn("No lines averaged for subsystem " + subId + " within the time budget");
+                        continue;
+                    }
 
-                double sum = 0;
-                for (int i = 0; i < avg.length; i++) {
-                    if (!Float.isFinite(avg[i]))
-                        avg[i] = 0;
-                    sum += avg[i];
+                    float[] histogram = new float[avg.mean.length];
+                    for (int i = 0; i < histogram.length; i++)
+                        histogram[i] = (float) avg.mean[i];
+                    hist.setHistogram(subId, histogram);
+                    LOG.info("Histogram for subsystem " + subId + " computed from " + avg.count + " lines"
+                            + (avg.truncated ? " (time budget exceeded)" : ""));
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                    continue;
                 }
-                hist.histograms.put(subId, avg);
-                hist.averages.put(subId, (float) (sum / avg.length));                    
-            }
-            catch (Exception e) {
-                e.printStackTrace();
-                continue;
             }
-        }       
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        LOG.info("Histograms computed in " + (System.currentTimeMillis() - start) + " ms");
+
         try {
-            ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(cache));
-            oos.writeObject(hist);
-            oos.close();
+            write(hist, cache);
+            LOG.info("Histogram cache saved to "+cache.getPath()+".");
         }
-        catch (Exception e) {
+        catch (IOException e) {
             e.printStackTrace();
         }
-        LOG.info("Histogram cache saved to "+cache.getPath()+".");
         
         return hist;
     }
+
+    /**
+     * Averages pings of a subsystem in parallel, one contiguous chunk of pings per thread
+     * @return the merged average (marked as truncated if the deadline was reached) or null if the subsystem has no
+     *         usable lines
+     */
+    private static Accumulator accumulate(SidescanParser ssParser, int subId, ExecutorService executor, int threads,
+            long deadline) throws Exception {
+        int pings = ssParser.getPingCount(subId);
+        if (pings < 2) {
+            LOG.warn("Insufficient data for subsystem " + subId + ", skipping histogram calculation");
+            return null;
+        }
+
+        SidescanLine pivot = ssParser.readPing(subId, pings - 1, ssParser.getDefaultParams());
+        if (pivot == null) {
+            LOG.warn("Could not read the last line of subsystem " + subId + ", skipping histogram calculation");
+            return null;
+        }
+        int samples = pivot.getData().length;
+        int lines = Math.min(LINES_TO_COMPUTE_HISTOGRAM, pings);
+        double stride = pings / (double) lines;
+        int chunks = Math.min(threads, lines);
+
+        List<Future<Accumulator>> partials = new ArrayList<>();
+        for (int c = 0; c < chunks; c++) {
+            int first = (int) ((long) lines * c / chunks);
+            int last = (int) ((long) lines * (c + 1) / chunks);
+            partials.add(executor.submit(() -> {
+                Accumulator acc = new Accumulator(samples);
+                SidescanParameters params = ssParser.getDefaultParams();
+                for (int l = first; l < last; l++) {
+                    if (System.currentTimeMillis() >= deadline) {
+                        acc.truncated = true;
+                        break;
+                    }
+                    SidescanLine line = ssParser.readPing(subId, (int) (l * stride), params);
+                    // Only process data if it matches the expected length
+                    if (line != null && line.getData().length == samples)
+                        acc.add(line.getData());
+                }
+                return acc;
+            }));
+        }
+
+        Accumulator avg = new Accumulator(samples);
+        for (Future<Accumulator> partial : partials)
+            avg.merge(partial.get());
+        return avg;
+    }
+
+    /**
+     * Reads histograms stored with {@link #write(SidescanHistogramNormalizer, File)}
+     */
+    private static SidescanHistogramNormalizer read(File cache) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION)
+                throw new IOException("Unsupported histogram cache format");
+            SidescanHistogramNormalizer hist = new SidescanHistogramNormalizer();
+            hist.complete = in.readBoolean();
+            int subsystems = in.readInt();
+            for (int s = 0; s < subsystems; s++) {
+                int subId = in.readInt();
+                float average = in.readFloat();
+                float[] histogram = new float[in.readInt()];
+                for (int i = 0; i < histogram.length; i++)
+                    histogram[i] = in.readFloat();
+                hist.histograms.put(subId, histogram);
+                hist.averages.put(subId, average);
+            }
+            return hist;
+        }
+    }
+
+    /**
+     * Stores the histograms (whether they are complete, then subsystem, average, samples and the histogram for each
+     * subsystem) replacing the cache file atomically, so a partially written cache is never read
+     */
+    private static void write(SidescanHistogramNormalizer hist, File cache) throws IOException {
+        File tmp = new File(cache.getParentFile(), cache.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeBoolean(hist.complete);
+            out.writeInt(hist.histograms.size());
+            for (Map.Entry<Integer, float[]> entry : hist.histograms.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeFloat(hist.averages.get(entry.getKey()));
+                out.writeInt(entry.getValue().length);
+                for (float value : entry.getValue())
+                    out.writeFloat(value);
+            }
+        }
+        try {
+            Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
     
     public static SidescanHistogramNormalizer create(File dir) {
         SidescanParser ssParser = SidescanParserFactory.build(dir);
         return create(ssParser, dir);
     }
     
+    /**
+     * Sets the histogram of a subsystem, replacing non finite values by 0, and computes its average
+     */
+    void setHistogram(int subsys, float[] histogram) {
+        double sum = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            if (!Float.isFinite(histogram[i]))
+                histogram[i] = 0;
+            sum += histogram[i];
+        }
+        histograms.put(subsys, histogram);
+        averages.put(subsys, (float) (sum / histogram.length));
+    }
+
+    /**
+     * @return the histogram of a subsystem or null if there is none
+     */
+    float[] getHistogram(int subsys) {
+        return histograms.get(subsys);
+    }
+
+    /**
+     * @return the average of the histogram of a subsystem or null if there is none
+     */
+    Float getAverage(int subsys) {
+        return averages.get(subsys);
+    }
+
+    /**
+     * @return false if the time budget ran out before all lines were averaged
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
     boolean hasHistogram() {
         return !histograms.isEmpty();
     }
-    private SidescanHistogramNormalizer() {}
+    SidescanHistogramNormalizer() {}
     
     @Override
     public String toString() {
@@ -37,7 +37,6 @@
 
 package pt.omst.sidescan;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 
 import lombok.Getter;
@@ -187,18 +186,30 @@ public class SidescanLine implements ISidescanLine, Comparable<SidescanLine> {
     }
 
     public void drawSlantedImage(ColorMap cmap) {
+        drawSlantedImage(new SidescanLineRenderer(cmap));
+    }
+
+    /**
+     * Same as {@link #drawSlantedImage(ColorMap)}, with a renderer that can be shared by all the lines being drawn
+     */
+    public void drawSlantedImage(SidescanLineRenderer renderer) {
         if (image == null) {
             image = new BufferedImage(xSize, 1, BufferedImage.TYPE_INT_RGB);
-            drawSlantedImage(cmap, image);
+            drawSlantedImage(renderer, image);
         }
         imageWithSlantCorrection = false;
     }
 
     public void drawSlantedImage(ColorMap cmap, BufferedImage image) {
-        for (int i = 0; i < xSize; i++) {
-            Color color = cmap.getColor(data[i]);
-            image.setRGB(i, 0, color.getRGB());
-        }
+        drawSlantedImage(new SidescanLineRenderer(cmap), image);
+    }
+
+    /**
+     * Same as {@link #drawSlantedImage(ColorMap, BufferedImage)}, with a renderer that can be shared by all the lines
+     * being drawn instead of one created for each line
+     */
+    public void drawSlantedImage(SidescanLineRenderer renderer, BufferedImage image) {
+        renderer.render(data, image, 0);
     }
 
     /**
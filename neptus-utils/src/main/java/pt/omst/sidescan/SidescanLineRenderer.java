@@ -0,0 +1,175 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import pt.lsts.neptus.colormap.ColorMap;
+
+/**
+ * Converts sidescan line data to packed ARGB pixels in a single pass: optional histogram normalization (same result as
+ * {@link SidescanHistogramNormalizer#normalize(double[], int)}) and color mapping through a lookup table, written
+ * straight into the pixel array of integer images.
+ * <p>
+ * Instances are immutable and can be shared by several threads. The color table is the one cached by
+ * {@link ColorMap#toArgbLut(int)}, so creating a renderer is cheap unless normalizing (one division per sample).
+ */
+public class SidescanLineRenderer {
+
+    /** Number of colors sampled from the color map (values in [0, 1]) */
+    public static final int COLOR_LUT_SIZE = ColorMap.ARGB_LUT_SIZE;
+
+    // x^1.2 is tabulated (and linearly interpolated) for x in [0, POW_LUT_MAX[, Math.pow is used for other values
+    private static final double POW_EXPONENT = 1.2;
+    private static final int POW_LUT_MAX = 8;
+    private static final int POW_LUT_STEPS = 1024;
+    private static final double[] POW_LUT = new double[POW_LUT_MAX * POW_LUT_STEPS + 2];
+
+    static {
+        for (int i = 0; i < POW_LUT.length; i++)
+            POW_LUT[i] = Math.pow(i / (double) POW_LUT_STEPS, POW_EXPONENT);
+    }
+
+    private final int[] colors;
+    // avg / histogram[i] for each sample, null if not normalizing
+    private final double[] gains;
+
+    /**
+     * Renderer that only applies the color map
+     */
+    public SidescanLineRenderer(ColorMap colorMap) {
+        this(colorMap, null, 0);
+    }
+
+    /**
+     * @param colorMap the color map to apply
+     * @param normalizer histograms to normalize the data with, may be null
+     * @param subsystem the subsystem whose histogram is used (no normalization if the normalizer has none)
+     */
+    public SidescanLineRenderer(ColorMap colorMap, SidescanHistogramNormalizer normalizer, int subsystem) {
+        colors = colorMap.toArgbLut(COLOR_LUT_SIZE);
+
+        float[] hist = normalizer == null ? null : normalizer.getHistogram(subsystem);
+        if (hist == null) {
+            gains = null;
+        }
+        else {
+            float avg = normalizer.getAverage(subsystem);
+            gains = new double[hist.length];
+            for (int i = 0; i < hist.length; i++)
+                gains[i] = avg / hist[i];
+        }
+    }
+
+    /**
+     * @return a hash of the colors and normalization gains: renderers with the same fingerprint produce the same
+     *         pixels and intensities
+     */
+    public long getFingerprint() {
+        return (long) Arrays.hashCode(colors) << 32 | (Arrays.hashCode(gains) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return true if lines are normalized before applying the color map
+     */
+    public boolean isNormalizing() {
+        return gains != null;
+    }
+
+    /**
+     * Renders one line to packed ARGB pixels
+     * @param data the line data
+     * @param dest destination pixels
+     * @param offset index in dest of the first pixel
+     */
+    public void render(double[] data, int[] dest, int offset) {
+        // lines with a different number of samples than the histogram are only color mapped
+        double[] g = gains != null && gains.length == data.length ? gains : null;
+        int[] lut = colors;
+        int maxIndex = lut.length - 1;
+
+        for (int i = 0; i < data.length; i++) {
+            double v = data[i];
+            if (g != null)
+                v = pow(v) * g[i];
+            // same as ColorMap.lookup, NaN and negative values map to the first color
+            int index = (int) (v * maxIndex + 0.5);
+            if (index < 0)
+                index = 0;
+            else if (index > maxIndex)
+                index = maxIndex;
+            dest[offset + i] = lut[index];
+        }
+    }
+
+    /**
+     * Normalizes one line like {@link #render(double[], int[], int)} but, instead of color mapping, quantizes the
+     * values to unsigned 16 bit intensities
+     * @param data the line data
+     * @param dest destination intensities (unsigned, 0 to 65535)
+     * @param offset index in dest of the first intensity
+     * @param maxValue the value stored as 65535, larger values are clamped (NaN and negative values are stored as 0)
+     */
+    public void renderIntensities(double[] data, short[] dest, int offset, double maxValue) {
+        double[] g = gains != null && gains.length == data.length ? gains : null;
+        double scale = 0xFFFF / maxValue;
+
+        for (int i = 0; i < data.length; i++) {
+            double v = data[i];
+            if (g != null)
+                v = pow(v) * g[i];
+            int intensity = (int) (v * scale + 0.5);
+            if (!(intensity > 0))
+                intensity = 0;
+            else if (intensity > 0xFFFF)
+                intensity = 0xFFFF;
+            dest[offset + i] = (short) intensity;
+        }
+    }
+
+    /**
+     * Renders a line to a row of an image. Integer RGB/ARGB images are written directly, other image types through
+     * {@link BufferedImage#setRGB(int, int, int, int, int[], int, int)}.
+     * @param data the line data (one pixel per sample, starting at column 0, samples past the image width are dropped)
+     * @param image destination image
+     * @param row the image row
+     */
+    public void render(double[] data, BufferedImage image, int row) {
+        WritableRaster raster = image.getRaster();
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && data.length <= image.getWidth()
+                && raster.getDataBuffer() instanceof DataBufferInt buffer
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel) {
+            int offset = buffer.getOffset() - raster.getSampleModelTranslateX()
+                    + (row - raster.getSampleModelTranslateY()) * sampleModel.getScanlineStride();
+            render(data, buffer.getData(), offset);
+        }
+        else {
+            int[] pixels = new int[data.length];
+            render(data, pixels, 0);
+            int width = Math.min(data.length, image.getWidth());
+            image.setRGB(0, row, width, 1, pixels, 0, width);
+        }
+    }
+
+    /**
+     * x^1.2 from the lookup table when x is in its range
+     */
+    private static double pow(double x) {
+        if (x >= 0 && x < POW_LUT_MAX) {
+            double pos = x * POW_LUT_STEPS;
+            int i = (int) pos;
+            double below = POW_LUT[i];
+            return below + (POW_LUT[i + 1] - below) * (pos - i);
+        }
+        return Math.pow(x, POW_EXPONENT);
+    }
+}
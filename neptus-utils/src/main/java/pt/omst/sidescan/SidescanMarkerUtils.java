@@ -14,6 +14,7 @@ import java.util.Date;
 import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
+import pt.lsts.neptus.colormap.ColorMap;
 import pt.lsts.neptus.colormap.ColorMapFactory;
 import pt.lsts.neptus.mra.SidescanLogMarker;
 import pt.lsts.neptus.util.ImageUtils;
@@ -315,14 +316,15 @@ public class SidescanMarkerUtils {
         Graphics2D g2d = imgScalled.createGraphics();
 
         int y = list.size();
+        int[] lut = ColorMapFactory.createBronzeColormap().toArgbLut(ColorMap.ARGB_LUT_SIZE);
+        int[] rgb = new int[i2 - i1];
 
         for (SidescanLine l : list) {
 
             BufferedImage imgLine = new BufferedImage(i2 - i1, 1, BufferedImage.TYPE_INT_RGB);
-            for (int c = 0; c < i2 - i1; c++) {
-                int rgb = ColorMapFactory.createBronzeColormap().getColor(l.getData()[c + i1]).getRGB();
-                imgLine.setRGB(c, 0, rgb);
-            }
+            for (int c = 0; c < i2 - i1; c++)
+                rgb[c] = ColorMap.lookup(lut, l.getData()[c + i1]);
+            imgLine.setRGB(0, 0, i2 - i1, 1, rgb, 0, i2 - i1);
             int vZoomScale = 3;
             Image full = ImageUtils.getScaledImage(imgLine, imgScalled.getWidth(), vZoomScale, true);
             g2d.drawImage(full, 0, imgScalled.getHeight() + h - y, null);
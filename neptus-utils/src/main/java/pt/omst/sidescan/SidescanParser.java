@@ -40,6 +40,7 @@ package pt.omst.sidescan;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.stream.Stream;
@@ -48,7 +49,10 @@ import java.util.stream.StreamSupport;
 import pt.lsts.neptus.core.SystemPositionAndAttitude;
 
 /**
- * Interface for sidescan data parsers
+ * Interface for sidescan data parsers.
+ * <p>
+ * Implementations must be safe to use from several threads: reading methods keep no cursor state between calls, so
+ * different time windows (or pings) can be read in parallel.
  * @author jccorreia
  */
 public interface SidescanParser {
@@ -97,6 +101,62 @@ public interface SidescanParser {
      */
     ISidescanLine getLineAtTime(long timestamp, int subsytem, SidescanParameters config);
 
+    /**
+     * Returns the number of pings of a subsystem. Pings are numbered from 0, in time order.
+     * @param subsystem the subsystem to query
+     * @return number of pings
+     */
+    int getPingCount(int subsystem);
+
+    /**
+     * Returns the timestamp of a ping
+     * @param subsystem the subsystem to query
+     * @param ping the ping number, between 0 and {@link #getPingCount(int)}
+     * @return timestamp in milliseconds
+     */
+    long getPingTimestamp(int subsystem, int ping);
+
+    /**
+     * Finds the first ping at or after a given time
+     * @param subsystem the subsystem to query
+     * @param timestamp time in milliseconds
+     * @return the ping number or {@link #getPingCount(int)} if all pings are before the timestamp
+     */
+    default int findPing(int subsystem, long timestamp) {
+        int low = 0;
+        int high = getPingCount(subsystem);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getPingTimestamp(subsystem, mid) < timestamp)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Reads a single ping by its number. This keeps no state between calls and can be called concurrently.
+     * @param subsystem the subsystem to read from
+     * @param ping the ping number, between 0 and {@link #getPingCount(int)}
+     * @param config the sidescan parameters configuration
+     * @return the sidescan line, or null if it could not be read
+     */
+    default SidescanLine readPing(int subsystem, int ping, SidescanParameters config) {
+        ISidescanLine line = getLineAtTime(getPingTimestamp(subsystem, ping), subsystem, config);
+        return line instanceof SidescanLine ? (SidescanLine) line : null;
+    }
+
+    /**
+     * Returns the files read by this parser, with the time span of their pings, so that derived data can be
+     * regenerated only when its source files change
+     * @param subsystem the subsystem to query
+     * @return the files with pings of the subsystem, in time order, or an empty list if unknown
+     */
+    default List<SourceSpan> getSourceSpans(int subsystem) {
+        return List.of();
+    }
+
     default Collection<ISidescanLine> getLinesAtTime(long timestamp) {
         ArrayList<ISidescanLine> lines = new ArrayList<>();
         for (int subsystem : getSubsystemList()) {
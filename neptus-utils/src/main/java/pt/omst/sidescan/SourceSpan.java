@@ -0,0 +1,24 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import java.io.File;
+
+/**
+ * Time span of the pings of one subsystem in a source file
+ * @param file the source file
+ * @param firstTimestamp timestamp of the first ping in the file, in milliseconds
+ * @param lastTimestamp timestamp of the last ping in the file, in milliseconds
+ */
+public record SourceSpan(File file, long firstTimestamp, long lastTimestamp) {
+
+    /**
+     * @return true if any ping of the file is between the given timestamps (inclusive)
+     */
+    public boolean overlaps(long start, long end) {
+        return firstTimestamp <= end && lastTimestamp >= start;
+    }
+}
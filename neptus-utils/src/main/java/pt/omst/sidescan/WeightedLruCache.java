@@ -0,0 +1,130 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe LRU cache bounded by the total weight (usually an estimate of the size in bytes) of its values instead
+ * of their number.
+ * <p>
+ * Least recently used entries are evicted once the total weight goes over the budget. A single value heavier than the
+ * whole budget is not cached at all. Hits, misses and evictions are counted and can be read with {@link #getStats()}.
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class WeightedLruCache<K, V> {
+
+    /**
+     * Snapshot of the cache counters
+     * @param hits number of lookups that found a value
+     * @param misses number of lookups that didn't find a value
+     * @param evictions number of values evicted to respect the budget
+     * @param size number of cached values
+     * @param weight total weight of the cached values
+     * @param maxWeight the weight budget
+     */
+    public record Stats(long hits, long misses, long evictions, int size, long weight, long maxWeight) {
+        /**
+         * @return fraction of lookups that found a value (0 if there were no lookups)
+         */
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : hits / (double) lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d entries, %.1f/%.1f MB, hit rate %.1f%% (%d hits, %d misses), %d evictions", size,
+                    weight / (1024.0 * 1024.0), maxWeight / (1024.0 * 1024.0), hitRate() * 100, hits, misses,
+                    evictions);
+        }
+    }
+
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final ToLongFunction<V> weigher;
+    private long maxWeight;
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxWeight the weight budget
+     * @param weigher computes the weight of a value (must always return the same for the same value)
+     */
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return the cached value or null if not cached
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null)
+            misses++;
+        else
+            hits++;
+        return value;
+    }
+
+    /**
+     * Adds (or replaces) a value, evicting the least recently used values if needed
+     */
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        V previous = entries.remove(key);
+        if (previous != null)
+            weight -= weigher.applyAsLong(previous);
+        if (valueWeight > maxWeight)
+            return;
+        entries.put(key, value);
+        weight += valueWeight;
+        evict();
+    }
+
+    /**
+     * Changes the weight budget, evicting values if the cache is now over it
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evict();
+    }
+
+    public synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all values. Counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, entries.size(), weight, maxWeight);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            weight -= weigher.applyAsLong(it.next().getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+}
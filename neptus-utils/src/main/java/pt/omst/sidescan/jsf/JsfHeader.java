@@ -135,11 +135,19 @@ public class JsfHeader {
     }
 
     void parse(ByteBuffer buffer) {
-        setType(buffer.getShort(4));
-        setCommandType(buffer.get(6));
-        setSubsystem(buffer.get(7));
-        setChannel(buffer.get(8));
-        setSequenceNumber(buffer.get(9));
-        setMessageSize(buffer.getInt(12));
+        parse(buffer, 0);
+    }
+
+    /**
+     * @param buffer buffer with the header
+     * @param offset position of the header in the buffer
+     */
+    void parse(ByteBuffer buffer, int offset) {
+        setType(buffer.getShort(offset + 4));
+        setCommandType(buffer.get(offset + 6));
+        setSubsystem(buffer.get(offset + 7));
+        setChannel(buffer.get(offset + 8));
+        setSequenceNumber(buffer.get(offset + 9));
+        setMessageSize(buffer.getInt(offset + 12));
     }
 }
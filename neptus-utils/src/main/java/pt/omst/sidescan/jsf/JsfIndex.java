@@ -42,6 +42,8 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 
 /**
+ * Index format written by previous versions through Java serialization. It is now only read to convert old
+ * {@code .index} files to {@link pt.omst.sidescan.PingIndex}.
  * @author jqcorreia
  */
 public class JsfIndex implements Serializable {
@@ -40,17 +40,20 @@ package pt.omst.sidescan.jsf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pt.omst.sidescan.ChannelPool;
+import pt.omst.sidescan.ParallelIndexer;
+import pt.omst.sidescan.PingIndex;
+import pt.omst.sidescan.SequentialReader;
+import pt.omst.sidescan.SourceSpan;
+
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.function.Consumer;
 
@@ -61,90 +64,88 @@ public class JsfParser {
     private static final Logger LOG = LoggerFactory.getLogger(JsfParser.class);
     final static int SUBSYS_LOW = 20;
     final static int SUBSYS_HIGH = 21;
-    @SuppressWarnings("unused")
-    private File file;
-    private FileInputStream fis;
-    private FileChannel channel;
-    private long curPosition = 0;
-    private JsfIndex index = new JsfIndex();
-    private String indexPath;
-    private LinkedHashMap<Integer, Long[]> tslist = new LinkedHashMap<>();
-    private LinkedHashMap<Integer, Long> nextTimestamp = new LinkedHashMap<>();
-
-    private final LinkedHashMap<File, JsfIndex> fileIndex = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, long[]> tslist = new LinkedHashMap<>();
+    private final ChannelPool channels = new ChannelPool();
+
+    private final LinkedHashMap<File, PingIndex> fileIndex = new LinkedHashMap<>();
 
     public JsfParser(File[] files, Consumer<String> progressCallback) {
         Arrays.sort(files);
-        for (File file : files) {
-            try {
-                if (file.length() == 0)
-                    continue; // ignore if file is empty
-                this.file = file;
-                fis = new FileInputStream(file);
-
-                channel = fis.getChannel();
-                indexPath = file.getParent() + "/mra/jsf" + file.getName() + ".index";
-
-                if (!new File(indexPath).exists()) {
-                    if (progressCallback != null) {
-                        progressCallback.accept("Generating JSF index for " + file.getName());
-                    }
-                    LOG.info("generating JSF index for " + file.getAbsolutePath());
-                    generateIndex();
-                } else {
-                    if (progressCallback != null) {
-                        progressCallback.accept("Loading JSF index for " + file.getName());
-                    }
-                    LOG.info("loading JSF index for " + file.getAbsolutePath());
-                    if (!loadIndex()) {
-                        LOG.error("Corrupted JSF index file. Trying to create a new index.");
-                        generateIndex();
-                    }
-                }
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
+        File[] nonEmpty = Arrays.stream(files).filter(f -> f.length() > 0).toArray(File[]::new); // ignore empty files
+        fileIndex.putAll(ParallelIndexer.indexAll(nonEmpty, "JSF", this::loadIndex, progressCallback));
+
+        // Merge timestamps from all files
+        for (int subsystem : new int[] { SUBSYS_LOW, SUBSYS_HIGH }) {
+            long[] merged = fileIndex.values().stream()
+                    .flatMapToLong(idx -> Arrays.stream(idx.getTimestamps(subsystem)))
+                    .sorted()
+                    .distinct()
+                    .toArray();
+            tslist.put(subsystem, merged);
+        }
+    }
+
+    private PingIndex loadIndex(File file, Consumer<String> progressCallback) {
+        File indexFile = new File(file.getParent(), "mra/jsf" + file.getName() + ".pidx");
+        File legacyIndexFile = new File(file.getParent(), "mra/jsf" + file.getName() + ".index");
+
+        PingIndex index = PingIndex.openIfValid(indexFile, file);
+        if (index == null && legacyIndexFile.exists()) {
+            if (progressCallback != null) {
+                progressCallback.accept("Converting JSF index for " + file.getName());
             }
+            LOG.info("converting legacy JSF index for " + file.getAbsolutePath());
+            index = migrateIndex(file, legacyIndexFile, indexFile);
         }
+        else if (index != null) {
+            if (progressCallback != null) {
+                progressCallback.accept("Loading JSF index for " + file.getName());
+            }
+        }
+        if (index == null) {
+            if (progressCallback != null) {
+                progressCallback.accept("Generating JSF index for " + file.getName());
+            }
+            LOG.info("generating JSF index for " + file.getAbsolutePath());
+            index = generateIndex(file, indexFile, progressCallback);
+        }
+        return index;
     }
 
-    public void generateIndex() {
+    public PingIndex generateIndex(File file, File indexFile, Consumer<String> progressCallback) {
         JsfHeader header = new JsfHeader();
         JsfSonarData ping = new JsfSonarData();
-        JsfIndex index2 = new JsfIndex();
+        PingIndex.Builder builder = PingIndex.builder();
 
         long count = 0;
         long pos = 0;
+        long curPosition = 0;
 
-        long maxTimestampHigh = 0;
-        long maxTimestampLow = 0;
-        long minTimestampHigh = Long.MAX_VALUE;
-        long minTimestampLow = Long.MAX_VALUE;
-
-        try {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            SequentialReader reader = new SequentialReader(channel, file.getName(), progressCallback);
+            long size = reader.size();
             while (true) {
                 int headerSize = 16;
-                if (curPosition + headerSize >= channel.size())
+                if (curPosition + headerSize >= size)
                     break;
                 // Read ONLY the header
-                ByteBuffer buf = channel.map(MapMode.READ_ONLY, curPosition, headerSize);
-                buf.order(ByteOrder.LITTLE_ENDIAN);
-                header.parse(buf);
+                int offset = reader.fill(curPosition, headerSize);
+                header.parse(reader.buffer(), offset);
                 curPosition += headerSize;
                 if (header.getType() == 80) {
                     int mapSize = 240;
-                    if (curPosition + mapSize >= channel.size())
+                    if (curPosition + mapSize >= size)
                         break;
 
                     ping.setHeader(header);
 
-                    buf = channel.map(MapMode.READ_ONLY, curPosition, mapSize);
-                    buf.order(ByteOrder.LITTLE_ENDIAN);
-                    ping.parseHeader(buf);
+                    offset = reader.fill(curPosition, mapSize);
+                    ping.parseIndexFields(reader.buffer(), offset);
                     curPosition += header.getMessageSize();
                 } else { // Ignore other messages;
                     curPosition += header.getMessageSize();
                     pos = curPosition;
-                    if (curPosition >= channel.size())
+                    if (curPosition >= size)
                         break;
                     else
                         continue;
@@ -155,259 +156,172 @@ public class JsfParser {
                 float f = ping.getFrequency(); // Frequency
                 int subsystem = ping.getHeader().getSubsystem();
 
-                if (!index2.frequenciesList.contains(f))
-                    index2.frequenciesList.add(f);
-
-                if (!index2.subSystemsList.contains(subsystem))
-                    index2.subSystemsList.add(subsystem);
-
-                if (subsystem == SUBSYS_LOW) {
-                    if (!index2.hasLow) index2.hasLow = true;
-
-                    ArrayList<Long> l = index2.positionMapLow.get(t);
-                    if (l == null) {
-                        l = new ArrayList<>();
-                        l.add(pos);
-                        index2.positionMapLow.put(t, l);
-                    } else {
-                        l.add(pos);
-                    }
-                    minTimestampLow = Math.min(minTimestampLow, t);
-                    maxTimestampLow = Math.max(maxTimestampLow, t);
-                }
-
-                if (subsystem == SUBSYS_HIGH) {
-                    if (!index2.hasHigh) index2.hasHigh = true;
-
-                    ArrayList<Long> l = index2.positionMapHigh.get(t);
-                    if (l == null) {
-                        l = new ArrayList<>();
-                        l.add(pos);
-                        index2.positionMapHigh.put(t, l);
-                        // System.out.println(t);
-                    } else {
-                        l.add(pos);
-                    }
-                    minTimestampHigh = Math.min(minTimestampHigh, t);
-                    maxTimestampHigh = Math.max(maxTimestampHigh, t);
-                }
+                builder.addFrequency(f);
+                builder.add(subsystem, t, pos);
 
                 count++;
                 pos = curPosition;
 
-                if (curPosition >= channel.size())
+                if (curPosition >= size)
                     break;
             }
 
-            index2.firstTimestampHigh = minTimestampHigh;
-            index2.firstTimestampLow = minTimestampLow;
-
-            index2.lastTimestampHigh = maxTimestampHigh;
-            index2.lastTimestampLow = maxTimestampLow;
-
-            // Save timestamp list
-            Long[] tslisthigh;
-            Long[] tslistlow;
-
-            tslisthigh = index2.positionMapHigh.keySet().toArray(new Long[]{});
-            tslistlow = index2.positionMapLow.keySet().toArray(new Long[]{});
-
-            Arrays.sort(tslisthigh);
-            Arrays.sort(tslistlow);
-
-            tslist.put(SUBSYS_LOW, tslistlow);
-            tslist.put(SUBSYS_HIGH, tslisthigh);
-
-            index2.numberOfPackets = count;
-
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(indexPath));
-            out.writeObject(index2);
-            out.close();
-
-            fileIndex.put(file, index2);
+            LOG.info(String.format("indexed %s at %.0f MB/s", file.getName(), reader.getThroughput()));
+            builder.numberOfPackets(count);
+            return builder.write(indexFile, file);
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
         }
     }
 
-    public boolean loadIndex() {
+    /**
+     * Converts an index created by previous versions (a serialized {@link JsfIndex}) to the binary format and
+     * deletes it
+     */
+    private PingIndex migrateIndex(File file, File legacyIndexFile, File indexFile) {
         try {
-            ObjectInputStream in = new ObjectInputStream(new FileInputStream(indexPath));
-            JsfIndex indexN = (JsfIndex) in.readObject();
-
-            Long[] tslisthigh;
-            Long[] tslistlow;
-
-            tslisthigh = indexN.positionMapHigh.keySet().toArray(new Long[]{});
-            tslistlow = indexN.positionMapLow.keySet().toArray(new Long[]{});
-
-            Arrays.sort(tslisthigh);
-            Arrays.sort(tslistlow);
-
-            tslist.put(SUBSYS_LOW, tslistlow);
-            tslist.put(SUBSYS_HIGH, tslisthigh);
+            ObjectInputStream in = new ObjectInputStream(new FileInputStream(legacyIndexFile));
+            JsfIndex legacy = (JsfIndex) in.readObject();
+            in.close();
 
-            fileIndex.put(file, indexN);
+            PingIndex.Builder builder = PingIndex.builder();
+            for (Map.Entry<Long, ArrayList<Long>> entry : legacy.positionMapLow.entrySet()) {
+                for (Long pos : entry.getValue())
+                    builder.add(SUBSYS_LOW, entry.getKey(), pos);
+            }
+            for (Map.Entry<Long, ArrayList<Long>> entry : legacy.positionMapHigh.entrySet()) {
+                for (Long pos : entry.getValue())
+                    builder.add(SUBSYS_HIGH, entry.getKey(), pos);
+            }
+            for (Float f : legacy.frequenciesList)
+                builder.addFrequency(f);
+            builder.numberOfPackets(legacy.numberOfPackets);
 
-            in.close();
+            PingIndex converted = builder.write(indexFile, file);
+            Files.deleteIfExists(legacyIndexFile.toPath());
+            return converted;
         } catch (Exception e) {
+            LOG.error("Corrupted JSF index file. Trying to create a new index.");
             e.printStackTrace();
-            return false;
+            return null;
         }
-        return true;
     }
 
     long getFirstTimeStamp() {
-        Set<Map.Entry<File, JsfIndex>> entries = fileIndex.entrySet();
-        long firstTimeStamp = Long.MAX_VALUE;
-
-        for (Map.Entry<File, JsfIndex> entry : entries) {
-            long minTimeStamp = Math.min(entry.getValue().firstTimestampHigh, entry.getValue().firstTimestampLow);
-            if (minTimeStamp < firstTimeStamp)
-                firstTimeStamp = minTimeStamp;
-        }
-
-        return firstTimeStamp;
+        return Math.min(getFirstTimestamp(SUBSYS_LOW), getFirstTimestamp(SUBSYS_HIGH));
     }
 
     long getFirstTimestamp(int subsystem) {
-        Set<Map.Entry<File, JsfIndex>> entries = fileIndex.entrySet();
-        long firstTimeStamp = Long.MAX_VALUE;
-
-        for (Map.Entry<File, JsfIndex> entry : entries) {
-            if (subsystem == SUBSYS_LOW) {
-                long minTimeStamp = entry.getValue().firstTimestampLow;
-                if (minTimeStamp < firstTimeStamp)
-                    firstTimeStamp = minTimeStamp;
-            } else {
-                long minTimeStamp = entry.getValue().firstTimestampHigh;
-                if (minTimeStamp < firstTimeStamp)
-                    firstTimeStamp = minTimeStamp;
-                }   
-        }
-
-        return firstTimeStamp;
+        long[] timestamps = tslist.get(subsystem);
+        return timestamps == null || timestamps.length == 0 ? Long.MAX_VALUE : timestamps[0];
     }
 
     long getLastTimeStamp() {
-        Map.Entry<File, JsfIndex> lastEntry = null;
-        for (Map.Entry<File, JsfIndex> entry : fileIndex.entrySet())
-            lastEntry = entry;
-
-        return Math.max(lastEntry.getValue().lastTimestampHigh, lastEntry.getValue().lastTimestampLow);
+        return Math.max(getLastTimeStamp(SUBSYS_LOW), getLastTimeStamp(SUBSYS_HIGH));
     }
 
     long getLastTimeStamp(int subsystem) {
-        Set<Map.Entry<File, JsfIndex>> entries = fileIndex.entrySet();
-        long lastTimestamp = 0;
-
-        for (Map.Entry<File, JsfIndex> entry : entries) {
-            if (subsystem == SUBSYS_LOW) {
-                long maxTimestamp = entry.getValue().lastTimestampLow;
-                if (maxTimestamp > lastTimestamp)
-                    lastTimestamp = maxTimestamp;
-            } else {
-                long maxTimestamp = entry.getValue().lastTimestampHigh;
-                if (maxTimestamp > lastTimestamp)
-                    lastTimestamp = maxTimestamp;
-            }
-        }
-
-        return lastTimestamp;
+        long[] timestamps = tslist.get(subsystem);
+        return timestamps == null || timestamps.length == 0 ? 0 : timestamps[timestamps.length - 1];
     }
 
     /**
-     * @return the index
+     * @return the subsystems found in any of the files
      */
-    public List<JsfIndex> getIndex() {
-        List<JsfIndex> indices = new ArrayList<>();
-        Set<Map.Entry<File, JsfIndex>> entries = fileIndex.entrySet();
-        for (Map.Entry<File, JsfIndex> entry : entries)
-            indices.add(entry.getValue());
-        return indices;
+    Set<Integer> getSubsystems() {
+        Set<Integer> subsystems = new HashSet<>();
+        for (PingIndex idx : fileIndex.values())
+            for (int subsystem : idx.getSubsystems())
+                subsystems.add(subsystem);
+        return subsystems;
     }
 
-    public ArrayList<JsfSonarData> nextPing(int subsystem) {
-        return getPingAt(nextTimestamp.get(subsystem), subsystem); // This fetches the next ping and updates nextTimestamp
+    /**
+     * @return the index of each file
+     */
+    public List<PingIndex> getIndex() {
+        return new ArrayList<>(fileIndex.values());
     }
 
-    private boolean existsTimestamp(long timestamp, JsfIndex searchIndex, int subsystem) {
-        if (subsystem == SUBSYS_LOW) {
-            return timestamp >= searchIndex.firstTimestampLow && timestamp <= searchIndex.lastTimestampLow;
-        } else {
-            return timestamp >= searchIndex.firstTimestampHigh && timestamp <= searchIndex.lastTimestampHigh;
+    /**
+     * @return the time span of the pings of the subsystem in each file, sorted by time
+     */
+    public List<SourceSpan> getSourceSpans(int subsystem) {
+        List<SourceSpan> spans = new ArrayList<>();
+        for (Map.Entry<File, PingIndex> entry : fileIndex.entrySet()) {
+            PingIndex index = entry.getValue();
+            if (index.size(subsystem) > 0)
+                spans.add(new SourceSpan(entry.getKey(), index.getFirstTimestamp(subsystem),
+                        index.getLastTimestamp(subsystem)));
         }
+        spans.sort(Comparator.comparingLong(SourceSpan::firstTimestamp));
+        return spans;
     }
 
-    
-    public ArrayList<JsfSonarData> getPingAt(Long timestamp, int subsystem) {
-        if (index != null) {
-            if (!existsTimestamp(timestamp, index, subsystem))
-                redirectIndex(timestamp, subsystem);
-        }
-        curPosition = 0;
-        ArrayList<JsfSonarData> ping = new ArrayList<>();
-        assert index != null;
-        LinkedHashMap<Long, ArrayList<Long>> positionMap = (subsystem == SUBSYS_LOW ? index.positionMapLow : index.positionMapHigh);
+    /**
+     * @return number of distinct ping timestamps of the subsystem
+     */
+    int getPingCount(int subsystem) {
+        long[] timestamps = tslist.get(subsystem);
+        return timestamps == null ? 0 : timestamps.length;
+    }
+
+    /**
+     * @return the timestamp of the given ping of the subsystem
+     */
+    long getPingTimestamp(int subsystem, int ping) {
+        long[] timestamps = tslist.get(subsystem);
+        if (timestamps == null)
+            throw new IndexOutOfBoundsException("No pings for subsystem " + subsystem);
+        return timestamps[ping];
+    }
 
+    /**
+     * Reads the ping (all channels) at or right after the given time. This keeps no state and can be called
+     * concurrently.
+     */
+    public ArrayList<JsfSonarData> getPingAt(long timestamp, int subsystem) {
         // Check if tslist has data for this subsystem
-        Long[] timestamps = tslist.get(subsystem);
+        long[] timestamps = tslist.get(subsystem);
         if (timestamps == null || timestamps.length == 0) {
-            return ping;
+            return new ArrayList<>();
         }
 
-        long ts = 0;
-        int c = 0;
-
-        for (Long time : timestamps) {
-            if (time >= timestamp) {
-                ts = time;
-                break;
-            }
-            c++;
-        }
-        if (ts == 0) {
-            return ping;
+        int c = Arrays.binarySearch(timestamps, timestamp);
+        if (c < 0)
+            c = -(c + 1);
+        if (c >= timestamps.length) {
+            return new ArrayList<>();
         }
-
-        // Check bounds before accessing array
-        if (c + 1 < timestamps.length) {
-            nextTimestamp.put(subsystem, timestamps[c + 1]);
-        }
-        
-        ArrayList<Long> positions = positionMap.get(ts);
-        if (positions == null)
-            return ping;
-        for (Long pos : positions)
-            ping.add(getPingAtPosition(pos, subsystem));
-
-        return ping;
+        return readPing(subsystem, c);
     }
 
-    private void redirectIndex(Long timestamp, int subsystem) {
-        for (Map.Entry<File, JsfIndex> entry : fileIndex.entrySet()) {
-            if (subsystem == SUBSYS_LOW) {
-                if (timestamp >= entry.getValue().firstTimestampLow && timestamp < entry.getValue().lastTimestampLow) {
-                    index = entry.getValue();
-                    file = entry.getKey();
-                    return;
-                }
-            } else if (subsystem == SUBSYS_HIGH) {
-                if (timestamp >= entry.getValue().firstTimestampHigh && timestamp < entry.getValue().lastTimestampHigh) {
-                    index = entry.getValue();
-                    file = entry.getKey();
-                    return;
-                }
+    /**
+     * Reads all the channels of a ping by its number. This keeps no state and can be called concurrently.
+     */
+    ArrayList<JsfSonarData> readPing(int subsystem, int ping) {
+        ArrayList<JsfSonarData> result = new ArrayList<>();
+        long ts = getPingTimestamp(subsystem, ping);
+        for (Map.Entry<File, PingIndex> entry : fileIndex.entrySet()) {
+            long[] positions = entry.getValue().getOffsets(subsystem, ts);
+            if (positions.length == 0)
+                continue;
+            for (long pos : positions) {
+                JsfSonarData data = getPingAtPosition(entry.getKey(), pos, subsystem);
+                if (data != null)
+                    result.add(data);
             }
+            break;
         }
+        return result;
     }
 
-    public JsfSonarData getPingAtPosition(long pos, int subsystem) {
+    private JsfSonarData getPingAtPosition(File file, long pos, int subsystem) {
         JsfHeader header = new JsfHeader();
         JsfSonarData ping = new JsfSonarData();
         try {
-            ByteBuffer buf = channel.map(MapMode.READ_ONLY, pos, 16);
-            buf.order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer buf = channels.read(file, pos, 16);
             header.parse(buf);
             pos += 16;
 
@@ -416,30 +330,18 @@ public class JsfParser {
 
             ping.setHeader(header);
 
-            buf = channel.map(MapMode.READ_ONLY, pos, 240);
-            buf.order(ByteOrder.LITTLE_ENDIAN);
+            // sonar data header (240 bytes) followed by the samples
+            buf = channels.read(file, pos, header.getMessageSize());
             ping.parseHeader(buf);
-            pos += 240;
-            buf = channel.map(MapMode.READ_ONLY, pos, header.getMessageSize() - 240);
-            buf.order(ByteOrder.LITTLE_ENDIAN);
-            ping.parseData(buf);
-            pos += header.getMessageSize() - 240;
+            ping.parseData(buf.slice(240, header.getMessageSize() - 240).order(ByteOrder.LITTLE_ENDIAN));
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
         }
         return ping;
     }
 
     public void cleanup() {
-        try {
-            if (fis != null)
-                fis.close();
-
-            if (channel != null)
-                channel.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
+        channels.close();
     }
 }
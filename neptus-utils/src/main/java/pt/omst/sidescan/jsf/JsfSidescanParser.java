@@ -39,8 +39,7 @@ package pt.omst.sidescan.jsf;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 import java.util.function.Consumer;
 
 import pt.lsts.neptus.core.SystemPositionAndAttitude;
@@ -49,6 +48,7 @@ import pt.omst.sidescan.ISidescanLine;
 import pt.omst.sidescan.SidescanLine;
 import pt.omst.sidescan.SidescanParameters;
 import pt.omst.sidescan.SidescanParser;
+import pt.omst.sidescan.SourceSpan;
 
 /**
  * @author jqcorreia
@@ -58,9 +58,8 @@ public class JsfSidescanParser implements SidescanParser {
     
     // Performance optimization: Pre-computed TVG gain lookup tables
     private static final int TVG_LOOKUP_SIZE = 10000;
-    private double[] portTvgLookup = new double[TVG_LOOKUP_SIZE];
-    private double[] starTvgLookup = new double[TVG_LOOKUP_SIZE];
-    private double currentTvgGain = -1.0; // Track if we need to recompute
+    // Replaced (never modified) when the TVG gain changes, so lines can be processed concurrently
+    private volatile TvgLookup tvgLookup = null;
 
     public JsfSidescanParser(File[] files, Consumer<String> progressCallback) {
         parser = new JsfParser(files, progressCallback);
@@ -89,7 +88,7 @@ public class JsfSidescanParser implements SidescanParser {
     @Override
     public ISidescanLine getLineAtTime(long timestamp, int subsystem, SidescanParameters config) {
         ArrayList<JsfSonarData> ping = parser.getPingAt(timestamp, subsystem);
-        if (ping.isEmpty()) {
+        if (ping.isEmpty() || ping.get(0) == null) {
             return null;
         }
 
@@ -108,51 +107,61 @@ public class JsfSidescanParser implements SidescanParser {
     @Override
     public ArrayList<SidescanLine> getLinesBetween(long timestamp1, long timestamp2, int subsystem, SidescanParameters params) {
         ArrayList<SidescanLine> result = new ArrayList<>();
-        
-        ArrayList<JsfSonarData> ping = getInitialPing(timestamp1, subsystem);
-        if (ping == null) {
-            return result;
+
+        int count = parser.getPingCount(subsystem);
+        for (int i = findPing(subsystem, timestamp1); i < count; i++) {
+            if (parser.getPingTimestamp(subsystem, i) >= timestamp2)
+                break;
+            SidescanLine line = readPing(subsystem, i, params);
+            if (line != null)
+                result.add(line);
         }
+        
+        return result;
+    }
 
-        while (ping.get(0).getTimestamp() < timestamp2) {
-            ChannelData channels = extractChannelData(ping);
-            
-            // Skip if no valid channels
-            if (!hasValidChannels(channels)) {
-                ping = getNextPing(subsystem);
-                if (ping == null) break;
-                continue;
-            }
+    @Override
+    public int getPingCount(int subsystem) {
+        return parser.getPingCount(subsystem);
+    }
 
-            // Skip lines where one channel would produce black output
-            if (shouldSkipPing(channels, params)) {
-                ping = getNextPing(subsystem);
-                if (ping == null) break;
-                continue;
-            }
+    @Override
+    public long getPingTimestamp(int subsystem, int ping) {
+        return parser.getPingTimestamp(subsystem, ping);
+    }
 
-            // Process the ping into sidescan data
-            double[] processedData = processChannelData(channels, params);
-            SystemPositionAndAttitude pose = createPose(channels.getReference());
-            
-            result.add(new SidescanLine(ping.get(0).getTimestamp(), ping.get(0).getRange(), 
-                                       pose, ping.get(0).getFrequency(), processedData));
+    @Override
+    public SidescanLine readPing(int subsystem, int ping, SidescanParameters params) {
+        ArrayList<JsfSonarData> data = parser.readPing(subsystem, ping);
+        if (data.isEmpty())
+            return null;
 
-            ping = getNextPing(subsystem);
-            if (ping == null) break;
-        }
-        
-        return result;
+        ChannelData channels = extractChannelData(data);
+
+        // Skip if no valid channels
+        if (!hasValidChannels(channels))
+            return null;
+
+        // Skip lines where one channel would produce black output
+        if (shouldSkipPing(channels, params))
+            return null;
+
+        // Process the ping into sidescan data
+        double[] processedData = processChannelData(channels, params);
+        SystemPositionAndAttitude pose = createPose(channels.getReference());
+        JsfSonarData reference = data.get(0);
+        return new SidescanLine(reference.getTimestamp(), reference.getRange(), pose, reference.getFrequency(),
+                processedData);
     }
 
     @Override
     public ArrayList<Integer> getSubsystemList() {
-        Set<Integer> subSystems = new HashSet<>();
-
-        for (JsfIndex index : parser.getIndex())
-            subSystems.addAll(index.subSystemsList);
+        return new ArrayList<>(parser.getSubsystems());
+    }
 
-        return new ArrayList<>(subSystems);
+    @Override
+    public List<SourceSpan> getSourceSpans(int subsystem) {
+        return parser.getSourceSpans(subsystem);
     }
 
     @Override
@@ -264,30 +273,6 @@ public class JsfSidescanParser implements SidescanParser {
         return (Double.isNaN(value) || Double.isInfinite(value)) ? 0.0 : value;
     }
 
-    /**
-     * Get the initial ping for processing
-     */
-    private ArrayList<JsfSonarData> getInitialPing(long timestamp, int subsystem) {
-        try {
-            ArrayList<JsfSonarData> ping = parser.getPingAt(timestamp, subsystem);
-            return ping.isEmpty() ? null : ping;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            return null;
-        }
-    }
-
-    /**
-     * Get the next ping in sequence
-     */
-    private ArrayList<JsfSonarData> getNextPing(int subsystem) {
-        try {
-            ArrayList<JsfSonarData> ping = parser.nextPing(subsystem);
-            return ping.isEmpty() ? null : ping;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            return null;
-        }
-    }
-
     /**
      * Check if channels contain valid data for processing
      */
@@ -396,33 +381,47 @@ public class JsfSidescanParser implements SidescanParser {
     }
 
     /**
-     * Build TVG gain lookup tables for dramatic performance improvement
+     * Pre-computed TVG gain multipliers for a given TVG gain
      * This eliminates expensive Math.log() and Math.pow() calls from the hot loop
      */
-    private void buildTvgLookupTables(double tvgGain) {
-        if (currentTvgGain == tvgGain) {
-            return; // Already computed for this TVG gain
-        }
-        
-        currentTvgGain = tvgGain;
-        
-        // Pre-compute port TVG multipliers (r goes from 0 to 1)
-        for (int i = 0; i < TVG_LOOKUP_SIZE; i++) {
-            double r = (double) i / (TVG_LOOKUP_SIZE - 1);
-            if (r <= 1e-10) r = 1e-10; // Prevent log(0)
+    private static class TvgLookup {
+        private final double tvgGain;
+        private final double[] port = new double[TVG_LOOKUP_SIZE];
+        private final double[] star = new double[TVG_LOOKUP_SIZE];
+
+        TvgLookup(double tvgGain) {
+            this.tvgGain = tvgGain;
+
+            // Pre-compute port TVG multipliers (r goes from 0 to 1)
+            for (int i = 0; i < TVG_LOOKUP_SIZE; i++) {
+                double r = (double) i / (TVG_LOOKUP_SIZE - 1);
+                if (r <= 1e-10) r = 1e-10; // Prevent log(0)
+                
+                double gain = Math.abs(30.0 * Math.log(r));
+                port[i] = Math.pow(10, gain / tvgGain);
+            }
             
-            double gain = Math.abs(30.0 * Math.log(r));
-            portTvgLookup[i] = Math.pow(10, gain / tvgGain);
+            // Pre-compute starboard TVG multipliers (r goes from 1 to 0)
+            for (int i = 0; i < TVG_LOOKUP_SIZE; i++) {
+                double r = 1.0 - ((double) i / (TVG_LOOKUP_SIZE - 1));
+                if (r <= 1e-10) r = 1e-10; // Prevent log(0)
+                
+                double gain = Math.abs(30.0 * Math.log(r));
+                star[i] = Math.pow(10, gain / tvgGain);
+            }
         }
-        
-        // Pre-compute starboard TVG multipliers (r goes from 1 to 0)
-        for (int i = 0; i < TVG_LOOKUP_SIZE; i++) {
-            double r = 1.0 - ((double) i / (TVG_LOOKUP_SIZE - 1));
-            if (r <= 1e-10) r = 1e-10; // Prevent log(0)
-            
-            double gain = Math.abs(30.0 * Math.log(r));
-            starTvgLookup[i] = Math.pow(10, gain / tvgGain);
+    }
+
+    /**
+     * @return the TVG lookup tables for the given gain, building them if the gain changed
+     */
+    private TvgLookup getTvgLookup(double tvgGain) {
+        TvgLookup lookup = tvgLookup;
+        if (lookup == null || lookup.tvgGain != tvgGain) {
+            lookup = new TvgLookup(tvgGain);
+            tvgLookup = lookup;
         }
+        return lookup;
     }
 
     /**
@@ -436,11 +435,11 @@ public class JsfSidescanParser implements SidescanParser {
         }
         
         // Ensure lookup tables are built for current TVG gain
-        buildTvgLookupTables(params.getTvgGain());
+        TvgLookup lookup = getTvgLookup(params.getTvgGain());
         
         // Cache frequently accessed values
         final double[] channelData = channel.getData();
-        final double[] tvgLookup = isPortboard ? portTvgLookup : starTvgLookup;
+        final double[] tvgLookup = isPortboard ? lookup.port : lookup.star;
         final boolean hasAverage = average != 0.0;
         final double invAverage = hasAverage ? 1.0 / average : 0.0;
         final int lookupIndexMultiplier = TVG_LOOKUP_SIZE - 1;
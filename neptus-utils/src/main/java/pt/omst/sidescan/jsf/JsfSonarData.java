@@ -41,6 +41,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * @author jqcorreia
@@ -434,22 +435,50 @@ public class JsfSonarData {
         data = new double[numberOfSamples];
     }
 
+    /**
+     * Parses only the fields needed to index a ping (timestamp and frequency)
+     * @param buf buffer with the 240 byte sonar data header
+     * @param offset position of the sonar data header in the buffer
+     */
+    void parseIndexFields(ByteBuffer buf, int offset) {
+        int pingTime = buf.getInt(offset);
+        short hours = buf.getShort(offset + 160);
+        short minutes = buf.getShort(offset + 162);
+        short seconds = buf.getShort(offset + 164);
+        short msb = buf.getShort(offset + 16);
+
+        pingTime = pingTime - ((hours * 3600) + (minutes * 60) + seconds);
+        timestamp = pingTime * 1000L + buf.getInt(offset + 200);
+
+        int msbStartFreq = (msb & 0x000F) << 16;
+        frequency = ((buf.getShort(offset + 126) & 0xFFFF) + msbStartFreq) * 10.0f;
+    }
+
+    /**
+     * Decodes the envelope samples, applying the weighting factor. Each sample is a single little endian short read,
+     * converted in a tight loop per channel direction (port, channel 0, is reversed). The data array is reused if it
+     * already has the right size.
+     * @param buf buffer with the samples (after the 240 byte sonar data header)
+     */
     void parseData(ByteBuffer buf) {
-        data = new double[numberOfSamples];
+        if (data == null || data.length != numberOfSamples)
+            data = new double[numberOfSamples];
 
         if (dataFormat != 0)
             return;
 
+        int n = numberOfSamples;
+        double[] samples = data;
+        ByteBuffer le = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
         double w = Math.pow(2, -factor); // Calc the weighting factor outside the loop
 
-        for (int i = 0; i < numberOfSamples * 2; i += 2) {
-            int s = ((buf.get(i + 1) & 0xFF) << 8) + (buf.get(i) & 0xFF);
-            double d = s * w;
-
-            if (header.getChannel() == 0)
-                data[numberOfSamples - (i / 2) - 1] = d;
-            else
-                data[i / 2] = d;
+        if (header.getChannel() == 0) {
+            for (int i = 0; i < n; i++)
+                samples[n - 1 - i] = (le.getShort(i * 2) & 0xFFFF) * w;
+        }
+        else {
+            for (int i = 0; i < n; i++)
+                samples[i] = (le.getShort(i * 2) & 0xFFFF) * w;
         }
     }
 
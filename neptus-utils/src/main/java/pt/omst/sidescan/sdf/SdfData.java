@@ -38,8 +38,7 @@
 package pt.omst.sidescan.sdf;
 
 import java.nio.ByteBuffer;
-import java.util.Calendar;
-import java.util.TimeZone;
+import java.nio.ByteOrder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,36 +46,36 @@ import org.slf4j.LoggerFactory;
 public class SdfData {
     private static final Logger LOG = LoggerFactory.getLogger(SdfData.class);
     private SdfHeader header;
-    private long[] portData;
-    private long[] stbdData;
+    // raw samples, unsigned 32 bit values stored as int
+    private int[] portData;
+    private int[] stbdData;
     private long timestamp;
     private int numSamples;
 
+    /**
+     * Decodes the samples of both channels. Each channel is copied in bulk from the buffer through a little endian
+     * int view, reusing the sample arrays of this object if they already have the right size.
+     * @param buf buffer positioned at the start of the data section (marker, sample count, port samples, sample count,
+     *            starboard samples)
+     */
     void parseData(ByteBuffer buf) {
         numSamples = header.getNumSamples();
         //index 4 of buf ( integer ) has number of samples (that must be equal to header numSamples)
         if (numSamples != buf.getInt(4)) {
             LOG.info("<###> " + SdfParser.class.getSimpleName() + " :: Sample size mismatch");
+            portData = stbdData = null;
             return;
         }
 
-        portData = new long[numSamples];
-        stbdData = new long[numSamples];
-
-        // index = first 4bytes (marker) + next 4bytes (indicate num of samples)
-        int index = 8;
-        // index2 = numSamples * int (size 4bytes) + 12bytes ([4] marker + [4] num samples first array + [4] num samples 2nd array)
-        int index2 = (numSamples * 4) + 12;
-
-        for (int i = 0; i < numSamples; i++) {
-            long portValue = buf.getInt(index) & 0xffffffffL;  //signed int to unsigned long
-            long stbdValue = buf.getInt(index2) & 0xffffffffL; //signed int to unsigned long
-            portData[i] = portValue;
-            stbdData[i] = stbdValue;
-
-            index += 4;
-            index2 += 4;
+        if (portData == null || portData.length != numSamples) {
+            portData = new int[numSamples];
+            stbdData = new int[numSamples];
         }
+
+        // port: first 4bytes (marker) + next 4bytes (num of samples)
+        // starboard: numSamples * int (size 4bytes) + 12bytes ([4] marker + [4] num samples first array + [4] num samples 2nd array)
+        buf.slice(8, numSamples * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(portData);
+        buf.slice(numSamples * 4 + 12, numSamples * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(stbdData);
     }
 
     /**
@@ -133,11 +132,25 @@ public class SdfData {
         int seconds = (int) fSeconds;
         double decimalSeconds = fSeconds % 1;
 
-        Calendar cal = Calendar.getInstance();
-        cal.setTimeZone(TimeZone.getTimeZone("UTC"));
-        cal.set(year, month - 1, day, hour, minute, seconds);
-        cal.set(Calendar.MILLISECOND, (int) (decimalSeconds * 1000));
-        setTimestamp(cal.getTimeInMillis());
+        setTimestamp(toEpochMillis(year, month, day, hour, minute, seconds, (int) (decimalSeconds * 1000)));
+    }
+
+    /**
+     * UTC time to epoch milliseconds. Out of range fields roll over like in a lenient {@link java.util.Calendar}
+     * (e.g. day 32 of January is the 1st of February) but no objects are created, as this runs for every page
+     * while indexing.
+     */
+    static long toEpochMillis(int year, int month, int day, int hour, int minute, int second, int millis) {
+        long y = year + Math.floorDiv(month - 1, 12);
+        int m = Math.floorMod(month - 1, 12) + 1;
+        // days from civil (proleptic gregorian calendar)
+        y -= m <= 2 ? 1 : 0;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153L * (m + (m > 2 ? -3 : 9)) + 2) / 5;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097 + doe - 719468 + (day - 1);
+        return ((((days * 24 + hour) * 60 + minute) * 60) + second) * 1000 + millis;
     }
 
     /**
@@ -155,31 +168,98 @@ public class SdfData {
     }
 
     /**
-     * @return the portData
+     * @return the unsigned value of a port sample
+     */
+    public long getPortSample(int index) {
+        return portData[index] & 0xffffffffL;
+    }
+
+    /**
+     * @return the unsigned value of a starboard sample
+     */
+    public long getStbdSample(int index) {
+        return stbdData[index] & 0xffffffffL;
+    }
+
+    /**
+     * Copies the port samples to a double array
+     * @param dest destination array
+     * @param destPos index in dest of the first copied sample
+     * @param reverse if true, samples are copied from the last to the first
+     */
+    public void copyPortData(double[] dest, int destPos, boolean reverse) {
+        copyUnsigned(portData, dest, destPos, reverse);
+    }
+
+    /**
+     * Copies the starboard samples to a double array
+     * @param dest destination array
+     * @param destPos index in dest of the first copied sample
+     * @param reverse if true, samples are copied from the last to the first
+     */
+    public void copyStbdData(double[] dest, int destPos, boolean reverse) {
+        copyUnsigned(stbdData, dest, destPos, reverse);
+    }
+
+    private static void copyUnsigned(int[] samples, double[] dest, int destPos, boolean reverse) {
+        int n = samples.length;
+        if (reverse) {
+            int last = destPos + n - 1;
+            for (int i = 0; i < n; i++)
+                dest[last - i] = samples[i] & 0xffffffffL;
+        }
+        else {
+            for (int i = 0; i < n; i++)
+                dest[destPos + i] = samples[i] & 0xffffffffL;
+        }
+    }
+
+    /**
+     * @return a new array with the port samples (prefer {@link #getPortSample(int)} or
+     *         {@link #copyPortData(double[], int, boolean)} as this allocates)
      */
     public long[] getPortData() {
-        return portData;
+        return toUnsigned(portData);
     }
 
     /**
      * @param portData the portData to set
      */
     public void setPortData(long[] portData) {
-        this.portData = portData;
+        this.portData = toInt(portData);
     }
 
     /**
-     * @return the stbdData
+     * @return a new array with the starboard samples (prefer {@link #getStbdSample(int)} or
+     *         {@link #copyStbdData(double[], int, boolean)} as this allocates)
      */
     public long[] getStbdData() {
-        return stbdData;
+        return toUnsigned(stbdData);
     }
 
     /**
      * @param stbdData the stbdData to set
      */
     public void setStbdData(long[] stbdData) {
-        this.stbdData = stbdData;
+        this.stbdData = toInt(stbdData);
+    }
+
+    private static long[] toUnsigned(int[] samples) {
+        if (samples == null)
+            return null;
+        long[] result = new long[samples.length];
+        for (int i = 0; i < samples.length; i++)
+            result[i] = samples[i] & 0xffffffffL;
+        return result;
+    }
+
+    private static int[] toInt(long[] samples) {
+        if (samples == null)
+            return null;
+        int[] result = new int[samples.length];
+        for (int i = 0; i < samples.length; i++)
+            result[i] = (int) samples[i];
+        return result;
     }
 
 }
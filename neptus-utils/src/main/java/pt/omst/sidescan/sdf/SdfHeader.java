@@ -229,6 +229,25 @@ public class SdfHeader {
 
     }
 
+    /**
+     * Parses only the fields needed to index a page: sizes, page version, ping time and sonar frequency
+     * @param buffer buffer with the header
+     * @param offset position of the header in the buffer
+     */
+    void parseIndexFields(ByteBuffer buffer, int offset) {
+        setNumberBytes(buffer.getInt(offset + 4));
+        setPageVersion(buffer.getInt(offset + 8));
+        setYear(buffer.getInt(offset + 72));
+        setMonth(buffer.getInt(offset + 76));
+        setDay(buffer.getInt(offset + 80));
+        setHour(buffer.getInt(offset + 84));
+        setMinute(buffer.getInt(offset + 88));
+        setSecond(buffer.getInt(offset + 92));
+        sethSecond(buffer.getInt(offset + 96));
+        setHeaderSize(buffer.getInt(offset + 184));
+        setSonarFreq(buffer.getInt(offset + 408));
+    }
+
     @Override
     public String toString() {
         return "number of Bytes " + getNumberBytes()
@@ -42,6 +42,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 
+/**
+ * Index format written by previous versions through Java serialization. It is now only read to convert old
+ * {@code .index} files to {@link pt.omst.sidescan.PingIndex}.
+ */
 public class SdfIndex implements Serializable {
     private static final long serialVersionUID = 1L;
 
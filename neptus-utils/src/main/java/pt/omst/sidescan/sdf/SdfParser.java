@@ -2,18 +2,16 @@ package pt.omst.sidescan.sdf;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -26,106 +24,90 @@ import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pt.omst.sidescan.ChannelPool;
+import pt.omst.sidescan.ParallelIndexer;
+import pt.omst.sidescan.PingIndex;
+import pt.omst.sidescan.SequentialReader;
+import pt.omst.sidescan.SourceSpan;
+
 public class SdfParser {
     private static final Logger LOG = LoggerFactory.getLogger(SdfParser.class);
     public final static int SUBSYS_LOW = 3501;
     public final static int SUBSYS_HIGH = 3502;
     // Minimum valid timestamp (2000-01-01 00:00:00).
     private static final long minimumValidTimestamp = 946684800000L;
-    private File file;
-    private FileInputStream fis;
-    private FileChannel channel;
-    private long curPosition = 0;
 
-    private String indexPath;
-    private final Map<Integer, Long[]> tslist = new ConcurrentHashMap<>();
-    private final Map<Integer, Long> nextTimestamp = new ConcurrentHashMap<>();
-    private final Map<File, SdfIndex> fileIndex = new ConcurrentHashMap<>();
+    private final Map<Integer, long[]> tslist = new ConcurrentHashMap<>();
+    private final Map<File, PingIndex> fileIndex = new LinkedHashMap<>();
+    private final ChannelPool channels = new ChannelPool();
 
     SdfParser(File[] files, Consumer<String> progressCallback) {
         Arrays.sort(files);
 
-        for (File file : files) {
-            //LOG.debug("Parsing file: {}", file.getAbsolutePath());
-            try {
-                this.file = file;
-                fis = new FileInputStream(file);
-                channel = fis.getChannel();
-                indexPath = file.getParent() + "/mra/sdf" + file.getName() + ".index";
-
-                if (!new File(indexPath).exists()) {
-                    if (progressCallback != null) {
-                        progressCallback.accept("Generating SDF index for " + file.getAbsolutePath());
-                    }
-                    LOG.debug("Generating SDF index for {}", file.getAbsolutePath());
-                    generateIndex();
-                } else {
-                    if (progressCallback != null) {
-                        progressCallback.accept("Loading SDF index for " + file.getAbsolutePath());
-                    }
-                    //LOG.debug("Loading SDF index for {}", file.getAbsolutePath());
-                    if (!loadIndex(file)) {
-                        if (progressCallback != null) {
-                            progressCallback.accept("Corrupted SDF index file. Trying to create a new index.");
-                        }
-                        LOG.error("Corrupted SDF index file. Trying to create a new index.");
-                        generateIndex();
-                    }
-                }
-            } catch (FileNotFoundException e) {
-                LOG.error("exception: ", e);
-            }
-        }
+        fileIndex.putAll(ParallelIndexer.indexAll(files, "SDF", this::loadIndex, progressCallback));
+
         // Merge timestamps from all files
         for (int subsystem : new int[]{SUBSYS_LOW, SUBSYS_HIGH}) {
-            List<Long> mergedTimestamps = new ArrayList<>();
-
-            for (SdfIndex index : fileIndex.values()) {
-                if (subsystem == SUBSYS_LOW && index.hasLow) {
-                    mergedTimestamps.addAll(index.positionMapLow.keySet());
-                }
-                else if (subsystem == SUBSYS_HIGH && index.hasHigh) {
-                    mergedTimestamps.addAll(index.positionMapHigh.keySet());
-                }
+            long[] merged = fileIndex.values().stream()
+                    .flatMapToLong(index -> Arrays.stream(index.getTimestamps(subsystem)))
+                    .sorted()
+                    .distinct()
+                    .toArray();
+            if (merged.length > 0) {
+                tslist.put(subsystem, merged);
             }
+        }
+    }
+
+    private PingIndex loadIndex(File file, Consumer<String> progressCallback) {
+        //LOG.debug("Parsing file: {}", file.getAbsolutePath());
+        File indexFile = new File(file.getParent(), "mra/sdf" + file.getName() + ".pidx");
+        File legacyIndexFile = new File(file.getParent(), "mra/sdf" + file.getName() + ".index");
 
-            if (!mergedTimestamps.isEmpty()) {
-                Long[] sortedTimestamps = mergedTimestamps.toArray(new Long[0]);
-                Arrays.sort(sortedTimestamps);
-                tslist.put(subsystem, sortedTimestamps);
+        PingIndex index = PingIndex.openIfValid(indexFile, file);
+        if (index != null && progressCallback != null) {
+            progressCallback.accept("Loaded SDF index for " + file.getAbsolutePath());
+        }
+        if (index == null && legacyIndexFile.exists()) {
+            if (progressCallback != null) {
+                progressCallback.accept("Converting SDF index for " + file.getAbsolutePath());
             }
+            LOG.debug("Converting legacy SDF index for {}", file.getAbsolutePath());
+            index = migrateIndex(legacyIndexFile, indexFile, file);
         }
+        if (index == null) {
+            if (progressCallback != null) {
+                progressCallback.accept("Generating SDF index for " + file.getAbsolutePath());
+            }
+            LOG.debug("Generating SDF index for {}", file.getAbsolutePath());
+            index = generateIndex(file, indexFile, progressCallback);
+        }
+        return index;
     }
 
-    private void generateIndex() {
+    private PingIndex generateIndex(File file, File indexFile, Consumer<String> progressCallback) {
         SdfHeader header = new SdfHeader();
         SdfData ping = new SdfData();
-        SdfIndex index2 = new SdfIndex();
-
-        long maxTimestampHigh = 0;
-        long maxTimestampLow = 0;
-        long minTimestampHigh = Long.MAX_VALUE;
-        long minTimestampLow = Long.MAX_VALUE;
+        PingIndex.Builder builder = PingIndex.builder();
 
         HashSet<Integer> unknownPages = new HashSet<>();
         long count = 0;
-        int count_low = 0;
-        int count_high = 0;
         long pos;
-        curPosition = 0;
+        long curPosition = 0;
 
-        try {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            SequentialReader reader = new SequentialReader(channel, file.getName(), progressCallback);
+            long size = reader.size();
             while (true) {
                 // Check if we have enough data left for a header
-                if (curPosition + 512 > channel.size()) {
-                    LOG.debug("Reached end of file at position {}, file size: {}", curPosition, channel.size());
+                int offset = reader.fill(curPosition, 512); // header size 512bytes
+                if (offset < 0) {
+                    LOG.debug("Reached end of file at position {}, file size: {}", curPosition, size);
                     break;
                 }
                 
                 // Read the header
-                ByteBuffer buf = channel.map(MapMode.READ_ONLY, curPosition, 512); // header size 512bytes
-                buf.order(ByteOrder.LITTLE_ENDIAN);
-                header.parse(buf);
+                header.parseIndexFields(reader.buffer(), offset);
                 curPosition += header.getHeaderSize();
 
                 if (header.getPageVersion() == SUBSYS_HIGH || header.getPageVersion() == SUBSYS_LOW) {
@@ -140,7 +122,7 @@ public class SdfParser {
                         unknownPages.add(header.getPageVersion());
                     }
                     curPosition += (header.getNumberBytes() + 4) - header.getHeaderSize();
-                    if (curPosition >= channel.size()) // check if curPosition is at the end of file
+                    if (curPosition >= size) // check if curPosition is at the end of file
                         break;
 
                     continue;
@@ -153,91 +135,32 @@ public class SdfParser {
                     count++;
                     continue;
                 }
-                int f = ping.getHeader().getSonarFreq(); // Frequency
-                int subsystem = ping.getHeader().getPageVersion();
-
-                if (!index2.frequenciesList.contains(f))
-                    index2.frequenciesList.add(f);
-
-                if (!index2.subSystemsList.contains(subsystem))
-                    index2.subSystemsList.add(subsystem);
-
-                if (subsystem == SUBSYS_LOW) {
-                    if (!index2.hasLow)
-                        index2.hasLow = true;
-
-                    ArrayList<Long> l = index2.positionMapLow.get(t);
-                    if (l == null) {
-                        l = new ArrayList<>();
-                        l.add(pos);
-                        index2.positionMapLow.put(t, l);
-                    } else {
-                        l.add(pos);
-                    }
-                    index2.timestampToPingIndexLow.put(t, count_low++);
-                    minTimestampLow = Math.min(minTimestampLow, t);
-                    maxTimestampLow = Math.max(maxTimestampLow, t);
-                }
 
-                if (subsystem == SUBSYS_HIGH) {
-                    if (!index2.hasHigh)
-                        index2.hasHigh = true;
-
-                    ArrayList<Long> l = index2.positionMapHigh.get(t);
-                    if (l == null) {
-                        l = new ArrayList<>();
-                        l.add(pos);
-                        index2.positionMapHigh.put(t, l);
-                    } else {
-                        l.add(pos);
-                    }
-                    index2.timestampToPingIndexHigh.put(t, count_high++);
-                    minTimestampHigh = Math.min(minTimestampHigh, t);
-                    maxTimestampHigh = Math.max(maxTimestampHigh, t);
-                }
+                builder.addFrequency(ping.getHeader().getSonarFreq());
+                builder.add(ping.getHeader().getPageVersion(), t, pos);
 
                 curPosition += (header.getNumberBytes() + 4) - header.getHeaderSize();
                 count++;
 
-                if (curPosition >= channel.size())
+                if (curPosition >= size)
                     break;
             }
 
-            index2.firstTimestampHigh = minTimestampHigh;
-            index2.firstTimestampLow = minTimestampLow;
-
-            index2.lastTimestampHigh = maxTimestampHigh;
-            index2.lastTimestampLow = maxTimestampLow;
-
-            Long[] tslisthigh = index2.positionMapHigh.keySet().toArray(new Long[]{});
-            Long[] tslistlow = index2.positionMapLow.keySet().toArray(new Long[]{});
-
-            Arrays.sort(tslisthigh);
-            Arrays.sort(tslistlow);
-
-            tslist.put(SUBSYS_LOW, tslistlow);
-            tslist.put(SUBSYS_HIGH, tslisthigh);
-
-            index2.numberOfPackets = count;
-
-            File indexFolder = new File(file.getParent() + "/mra");;
-            if (!indexFolder.exists()) {
-                indexFolder.mkdirs();
-            }
-
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(indexPath));
-            out.writeObject(index2);
-            out.close();
-
-            fileIndex.put(file, index2);
+            LOG.debug("Indexed {} at {} MB/s", file.getName(), String.format("%.0f", reader.getThroughput()));
+            builder.numberOfPackets(count);
+            return builder.write(indexFile, file);
         } catch (IOException e) {
             LOG.error("exception: ", e);
+            return null;
         }
     }
 
-    private boolean loadIndex(File file) {
-        try {
-            ObjectInputStream in = new ObjectInputStream(new FileInputStream(indexPath)) {
+    /**
+     * Converts an index created by previous versions (a serialized {@link SdfIndex}) to the binary format and
+     * deletes it
+     */
+    private PingIndex migrateIndex(File legacyIndexFile, File indexFile, File file) {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(legacyIndexFile)) {
             @Override
             protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
                 // Redirect old package to new package
@@ -246,72 +169,88 @@ public class SdfParser {
                 }
                 return super.resolveClass(desc);
             }
-        };
-            SdfIndex indexN = (SdfIndex) in.readObject();
-
-            Long[] tslisthigh = indexN.positionMapHigh.keySet().toArray(new Long[]{});
-            Long[] tslistlow = indexN.positionMapLow.keySet().toArray(new Long[]{});
-
-            Arrays.sort(tslisthigh);
-            Arrays.sort(tslistlow);
-
-            // Add timestamps to tslist if not empty
-            if (tslistlow.length > 0)
-                tslist.put(SUBSYS_LOW, tslistlow);
-            if (tslisthigh.length > 0)
-                tslist.put(SUBSYS_HIGH, tslisthigh);
-
-            fileIndex.put(file, indexN);
-
+        }) {
+            SdfIndex legacy = (SdfIndex) in.readObject();
+            PingIndex.Builder builder = PingIndex.builder();
+            for (Entry<Long, ArrayList<Long>> entry : legacy.positionMapLow.entrySet()) {
+                for (Long pos : entry.getValue())
+                    builder.add(SUBSYS_LOW, entry.getKey(), pos);
+            }
+            for (Entry<Long, ArrayList<Long>> entry : legacy.positionMapHigh.entrySet()) {
+                for (Long pos : entry.getValue())
+                    builder.add(SUBSYS_HIGH, entry.getKey(), pos);
+            }
+            for (Integer f : legacy.frequenciesList)
+                builder.addFrequency(f);
+            builder.numberOfPackets(legacy.numberOfPackets);
             in.close();
+            PingIndex index = builder.write(indexFile, file);
+            Files.deleteIfExists(legacyIndexFile.toPath());
+            return index;
         } catch (Exception e) {
-            LOG.error("exception: ", e);
-            return false;
+            LOG.error("Corrupted SDF index file. Trying to create a new index.", e);
+            return null;
         }
-        return true;
     }
 
     long getFirstTimeStamp() {
-        long firstTimeStamp = Long.MAX_VALUE;
-
-        for (Entry<File, SdfIndex> entry : fileIndex.entrySet())
-            firstTimeStamp = Math.min(firstTimeStamp, Math.min(entry.getValue().firstTimestampHigh, entry.getValue().firstTimestampLow));
-
-        return firstTimeStamp;
+        return Math.min(getFirstTimestamp(SUBSYS_LOW), getFirstTimestamp(SUBSYS_HIGH));
     }
 
     long getLastTimeStamp() {
-        long lastTimeStamp = 0;
-
-        for (Entry<File, SdfIndex> entry : fileIndex.entrySet())
-            lastTimeStamp = Math.max(lastTimeStamp, Math.max(entry.getValue().lastTimestampHigh, entry.getValue().lastTimestampLow));
+        return Math.max(getLastTimestamp(SUBSYS_LOW), getLastTimestamp(SUBSYS_HIGH));
+    }
 
-        return lastTimeStamp;
+    /**
+     * @return the first timestamp of the subsystem or Long.MAX_VALUE if there is no data for it
+     */
+    long getFirstTimestamp(int subsystem) {
+        long[] timestamps = tslist.get(subsystem);
+        return timestamps == null ? Long.MAX_VALUE : timestamps[0];
     }
 
-    SdfData nextPing(int subsystem) {
-        return getPingAt(nextTimestamp.get(subsystem)+1, subsystem); // This fetches the next ping and updates nextTimestamp
+    /**
+     * @return the last timestamp of the subsystem or 0 if there is no data for it
+     */
+    long getLastTimestamp(int subsystem) {
+        long[] timestamps = tslist.get(subsystem);
+        return timestamps == null ? 0 : timestamps[timestamps.length - 1];
     }
 
-    SdfData getPingAt(Long timestamp, int subsystem) {
-        if (timestamp == null) {
-            return null;
-        }
+    /**
+     * @return the subsystems found in any of the files
+     */
+    Set<Integer> getSubsystems() {
+        Set<Integer> subsystems = new HashSet<>();
+        for (PingIndex index : fileIndex.values())
+            for (int subsystem : index.getSubsystems())
+                subsystems.add(subsystem);
+        return subsystems;
+    }
 
-        SdfIndex index = fileIndex.get(file);
-        if (index == null || !existsTimestamp(timestamp, index, subsystem)) {
-            redirectIndex(timestamp, subsystem);
-            index = fileIndex.get(file);
-            if (index == null) {
-                return null;  // No suitable index found
-            }
-        }
+    /**
+     * @return number of pings of the subsystem
+     */
+    int getPingCount(int subsystem) {
+        long[] timestamps = tslist.get(subsystem);
+        return timestamps == null ? 0 : timestamps.length;
+    }
 
-        LinkedHashMap<Long, ArrayList<Long>> positionMap = (subsystem == SUBSYS_LOW)
-                ? index.positionMapLow
-                : index.positionMapHigh;
+    /**
+     * @return the timestamp of the given ping of the subsystem
+     */
+    long getPingTimestamp(int subsystem, int ping) {
+        long[] timestamps = tslist.get(subsystem);
+        if (timestamps == null)
+            throw new IndexOutOfBoundsException("No pings for subsystem " + subsystem);
+        return timestamps[ping];
+    }
 
-        Long[] timestamps = tslist.get(subsystem);
+    /**
+     * Reads the ping at or right after the given time. This keeps no state and can be called concurrently.
+     */
+    SdfData getPingAt(long timestamp, int subsystem) {
+        long[] timestamps = tslist.get(subsystem);
         if (timestamps == null) {
             return null;
         }
@@ -320,26 +259,24 @@ public class SdfParser {
         if (timestampIndex < 0) {
             return null;
         }
+        return readPing(subsystem, timestampIndex);
+    }
 
-        long targetTimestamp = timestamps[timestampIndex];
-        if ((subsystem == SUBSYS_LOW && targetTimestamp > index.lastTimestampLow) ||
-                (subsystem == SUBSYS_HIGH && targetTimestamp > index.lastTimestampHigh)) {
-            return getPingAt(targetTimestamp, subsystem);
-        }
-
-        if (timestampIndex + 1 < timestamps.length) {
-            nextTimestamp.put(subsystem, timestamps[timestampIndex + 1]);
-        }
-
-        ArrayList<Long> positions = positionMap.get(targetTimestamp);
-        if (positions == null || positions.isEmpty()) {
-            return null;
+    /**
+     * Reads a ping by its number. This keeps no state and can be called concurrently.
+     */
+    SdfData readPing(int subsystem, int ping) {
+        long targetTimestamp = getPingTimestamp(subsystem, ping);
+        for (Entry<File, PingIndex> entry : fileIndex.entrySet()) {
+            long[] positions = entry.getValue().getOffsets(subsystem, targetTimestamp);
+            if (positions.length > 0) {
+                return getPingAtPosition(entry.getKey(), positions[0], subsystem);
+            }
         }
-
-        return getPingAtPosition(positions.getFirst(), subsystem);
+        return null;
     }
 
-    private int findTimestampIndexBinary(Long[] timestamps, long targetTimestamp) {
+    private int findTimestampIndexBinary(long[] timestamps, long targetTimestamp) {
         int index = Arrays.binarySearch(timestamps, targetTimestamp);
         // If exact match found, return it
         if (index >= 0) {
@@ -351,44 +288,13 @@ public class SdfParser {
         return insertionPoint < timestamps.length ? insertionPoint : -1;
     }
 
-    private boolean existsTimestamp(long timestamp, SdfIndex searchIndex, int subsystem) {
-        if (subsystem == SUBSYS_LOW) {
-            return timestamp >= searchIndex.firstTimestampLow && timestamp <= searchIndex.lastTimestampLow;
-        } else {
-            return timestamp >= searchIndex.firstTimestampHigh && timestamp <= searchIndex.lastTimestampHigh;
-        }
-    }
-
-    // There may be an issue if an index file i0 ends with timestamp t0 and i1 starts with timestamp t0 as well
-    private void redirectIndex(Long timestamp, int subsystem) {
-        for (Entry<File, SdfIndex> entry : fileIndex.entrySet()) {
-            if (subsystem == SUBSYS_LOW) {
-                if (timestamp >= entry.getValue().firstTimestampLow && timestamp < entry.getValue().lastTimestampLow) {
-                    file = entry.getKey();
-                    return;
-                }
-            } else if (subsystem == SUBSYS_HIGH) {
-                if (timestamp >= entry.getValue().firstTimestampHigh && timestamp < entry.getValue().lastTimestampHigh) {
-                    file = entry.getKey();
-                    return;
-                }
-            }
-        }
-    }
-
-    private SdfData getPingAtPosition(long pos, int subsystem) {
-        // Save the current thread's interrupted status and clear it temporarily
-        boolean wasInterrupted = Thread.interrupted();
-
-        try (FileInputStream localFis = new FileInputStream(file);
-             FileChannel localChannel = localFis.getChannel()) {
-
+    private SdfData getPingAtPosition(File file, long pos, int subsystem) {
+        try {
             SdfHeader header = new SdfHeader();
             SdfData ping = new SdfData();
 
-            // First memory-mapped operation - reading the header
-            ByteBuffer buf = localChannel.map(MapMode.READ_ONLY, pos, 512);
-            buf.order(ByteOrder.LITTLE_ENDIAN);
+            // Reading the header
+            ByteBuffer buf = channels.read(file, pos, 512);
             header.parse(buf);
             pos += header.getHeaderSize();
 
@@ -399,48 +305,43 @@ public class SdfParser {
             ping.setHeader(header);
             ping.calculateTimeStamp(false);
 
-            // Second memory-mapped operation - reading the data
+            // Reading the data
             int dataSize = header.getNumberBytes() - header.getHeaderSize() - header.getSDFExtensionSize() + 4;
-            buf = localChannel.map(MapMode.READ_ONLY, pos, dataSize);
-            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf = channels.read(file, pos, dataSize);
 
             ping.parseData(buf);
             return ping;
         } catch (IOException e) {
-            if (e instanceof java.nio.channels.ClosedByInterruptException) {
-                LOG.warn("Thread was interrupted while accessing SDF file at position {}", pos);
-            } else {
-                LOG.error("Failed to get ping at position {}", pos, e);
-            }
+            LOG.error("Failed to get ping at position {}", pos, e);
             return null;
-        } finally {
-            // Restore the interrupted status if it was set before
-            if (wasInterrupted) {
-                Thread.currentThread().interrupt();
-            }
         }
     }
 
     /**
-     * @return the index
+     * @return the index of each file
      */
-    public List<SdfIndex> getIndex() {
-        List<SdfIndex> indices = new ArrayList<>();
-        Set<Entry<File, SdfIndex>> entries = fileIndex.entrySet();
-        for (Entry<File, SdfIndex> entry : entries)
-            indices.add(entry.getValue());
-        return indices;
+    public List<PingIndex> getIndex() {
+        return new ArrayList<>(fileIndex.values());
     }
 
-    public void cleanup() {
-        try {
-            if (fis != null)
-                fis.close();
-
-            if (channel != null)
-                channel.close();
-        } catch (IOException e) {
-            LOG.error("exception: ", e);
+    /**
+     * @return the time span of the pings of the subsystem in each file, sorted by time
+     */
+    public List<SourceSpan> getSourceSpans(int subsystem) {
+        List<SourceSpan> spans = new ArrayList<>();
+        for (Map.Entry<File, PingIndex> entry : fileIndex.entrySet()) {
+            PingIndex index = entry.getValue();
+            if (index.size(subsystem) > 0)
+                spans.add(new SourceSpan(entry.getKey(), index.getFirstTimestamp(subsystem),
+                        index.getLastTimestamp(subsystem)));
         }
+        spans.sort(Comparator.comparingLong(SourceSpan::firstTimestamp));
+        return spans;
+    }
+
+    public void cleanup() {
+        channels.close();
+        fileIndex.clear();
+        tslist.clear();
     }
 }
@@ -37,13 +37,11 @@
 
 package pt.omst.sidescan.sdf;
 
-import static pt.omst.sidescan.sdf.SdfParser.SUBSYS_HIGH;
-import static pt.omst.sidescan.sdf.SdfParser.SUBSYS_LOW;
-
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -56,6 +54,7 @@ import pt.omst.sidescan.ISidescanLine;
 import pt.omst.sidescan.SidescanLine;
 import pt.omst.sidescan.SidescanParameters;
 import pt.omst.sidescan.SidescanParser;
+import pt.omst.sidescan.SourceSpan;
 
 @Slf4j
 public class SdfSidescanParser implements SidescanParser {
@@ -65,6 +64,18 @@ public class SdfSidescanParser implements SidescanParser {
     private final double c_default_norm = 0.2;
     private final double c_default_tvg = 280.0;
 
+    // TVG gain tables are only rebuilt when the number of cached (gain, samples) pairs goes over this
+    private static final int MAX_TVG_TABLES = 16;
+
+    /**
+     * Key of a pre-computed TVG gain table
+     */
+    private record TvgKey(double tvgGain, int samples) {
+    }
+
+    // Tables are never modified after being added, so lines can be converted concurrently without locks
+    private final Map<TvgKey, double[]> tvgTables = new ConcurrentHashMap<>();
+
     public SdfSidescanParser(File[] files, Consumer<String> progressCallback) {
         this.parser = new SdfParser(files, progressCallback);
     }
@@ -81,87 +92,83 @@ public class SdfSidescanParser implements SidescanParser {
 
     @Override
     public long firstPingTimestamp(int subsystem) {
-        long minTimestamp = Long.MAX_VALUE;
-        for (SdfIndex index : parser.getIndex()) {
-            if (subsystem == SUBSYS_LOW && index.hasLow) {
-                minTimestamp = Math.min(minTimestamp, index.firstTimestampLow);
-            } else if (subsystem == SUBSYS_HIGH && index.hasHigh) {
-                minTimestamp = Math.min(minTimestamp, index.firstTimestampHigh);
-            }
-        }
-        return minTimestamp;
+        return parser.getFirstTimestamp(subsystem);
     }
 
     @Override
     public long lastPingTimestamp(int subsystem) {
-        long maxTimestamp = 0;
-        for (SdfIndex index : parser.getIndex()) {
-            if (subsystem == SUBSYS_LOW && index.hasLow) {
-                maxTimestamp = Math.max(maxTimestamp, index.lastTimestampLow);
-            } else if (subsystem == SUBSYS_HIGH && index.hasHigh) {
-                maxTimestamp = Math.max(maxTimestamp, index.lastTimestampHigh);
-            }
-        }
-        return maxTimestamp;
+        return parser.getLastTimestamp(subsystem);
     }
 
     @Override
     public ISidescanLine getLineAtTime(long timestamp, int subsystem, SidescanParameters config) {
         SdfData data = parser.getPingAt(timestamp, subsystem);
-        return sdfDataToSidescanLine(data, config);
+        return data == null ? null : sdfDataToSidescanLine(data, config);
+    }
+
+    /**
+     * TVG multipliers for each sample index of a channel (the same for port and starboard, as both are indexed from
+     * the nadir)
+     */
+    private double[] getTvgTable(double tvgGain, int nSamples) {
+        TvgKey key = new TvgKey(tvgGain, nSamples);
+        double[] table = tvgTables.get(key);
+        if (table == null) {
+            table = new double[nSamples];
+            for (int i = 0; i < nSamples; i++) {
+                double r = 1 - (i / (double) nSamples);
+                double gain = Math.abs(30.0 * Math.log(r));
+                table[i] = Math.pow(10, gain / tvgGain);
+            }
+            if (tvgTables.size() >= MAX_TVG_TABLES)
+                tvgTables.clear();
+            tvgTables.put(key, table);
+        }
+        return table;
+    }
+
+    private SidescanLine sdfDataToSidescanLine(SdfData ping, SidescanParameters config) {
+        return sdfDataToSidescanLine(ping, config, null);
     }
 
-    private synchronized SidescanLine sdfDataToSidescanLine(SdfData ping, SidescanParameters config) {
+    /**
+     * Converts a ping to a sidescan line. Safe to call from several threads at the same time.
+     * @param buffer array to hold the line data, used if it has exactly twice the number of samples of the ping (a
+     *            new one is allocated otherwise)
+     */
+    private SidescanLine sdfDataToSidescanLine(SdfData ping, SidescanParameters config, double[] buffer) {
         SdfData sboardPboard = ping; // one ping contains both Sboard and Portboard samples
         int nSamples = sboardPboard.getNumSamples();
-        double fData[] = new double[nSamples * 2]; // x2 (portboard + sboard in the same ping)
+        // x2 (portboard + sboard in the same ping)
+        double fData[] = buffer != null && buffer.length == nSamples * 2 ? buffer : new double[nSamples * 2];
 
         // If raw normalization is enabled, just copy the data without processing
         if (config.isRawNormalization()) {
             // Copy port data (reversed)
-            for (int i = 0; i < nSamples; i++) {
-                fData[nSamples - i - 1] = ping.getPortData()[i];
-            }
+            ping.copyPortData(fData, 0, true);
             // Copy starboard data
-            for (int i = 0; i < nSamples; i++) {
-                fData[i + nSamples] = ping.getStbdData()[i];
-            }
+            ping.copyStbdData(fData, nSamples, false);
             
             // Apply raw normalization (0-1 range) using SidescanUtil
-            fData = SidescanUtil.applyRawNormalization(fData);
+            SidescanUtil.applyRawNormalizationInPlace(fData);
         } else {
             // Original processing with TVG and normalization
             double avgSboard = 0, avgPboard = 0;
 
             for (int i = 0; i < nSamples; i++) {
-                double r = ping.getPortData()[i];
-                avgPboard += r;
-            }
-
-            for (int i = 0; i < nSamples; i++) {
-                double r = ping.getStbdData()[i];
-                avgSboard += r;
+                avgPboard += ping.getPortSample(i);
+                avgSboard += ping.getStbdSample(i);
             }
 
             avgPboard /= nSamples * config.getNormalization();
             avgSboard /= nSamples * config.getNormalization();
 
-            // Calculate Portboard
-            for (int i = 0; i < nSamples; i++) {
-                double r = 1 - (i / (double) nSamples);
-                double gain = Math.abs(30.0 * Math.log(r));
-                double pb = sboardPboard.getPortData()[i] * Math.pow(10, gain / config.getTvgGain());
-
-                fData[nSamples - i - 1] = pb / avgPboard;
-            }
+            double[] tvg = getTvgTable(config.getTvgGain(), nSamples);
 
-            // Calculate Starboard
+            // Calculate Portboard (reversed) and Starboard
             for (int i = 0; i < nSamples; i++) {
-                double r = 1 - (i / (double) nSamples);
-                double gain = Math.abs(30.0 * Math.log(r));
-                double sb = sboardPboard.getStbdData()[i] * Math.pow(10, gain / config.getTvgGain());
-
-                fData[i + nSamples] = sb / avgSboard;
+                fData[nSamples - i - 1] = sboardPboard.getPortSample(i) * tvg[i] / avgPboard;
+                fData[i + nSamples] = sboardPboard.getStbdSample(i) * tvg[i] / avgSboard;
             }
         }
 
@@ -189,35 +196,55 @@ public class SdfSidescanParser implements SidescanParser {
         //log.info("Getting lines between {} and {} for subsystem {}", timestamp1, timestamp2, subsystem);
         ArrayList<SidescanLine> list = new ArrayList<>();
 
-        SdfData ping;
-        long currentTimeStamp = timestamp1;
-        while (currentTimeStamp < timestamp2) {
-            try {
-                ping = parser.getPingAt(currentTimeStamp, subsystem);
-            } catch (ArrayIndexOutOfBoundsException e) {
-                LOG.error(e.getMessage());
-                return list;
-            }
-            if (ping == null || ping.getTimestamp() > timestamp2) {
-                //log.debug("no more pings for subsystem {} after timestamp {}", subsystem, currentTimeStamp);
+        int count = parser.getPingCount(subsystem);
+        for (int i = findPing(subsystem, timestamp1); i < count; i++) {
+            if (parser.getPingTimestamp(subsystem, i) > timestamp2) {
+                //log.debug("no more pings for subsystem {} after timestamp {}", subsystem, timestamp2);
                 break;
             }
-            SidescanLine line = sdfDataToSidescanLine(ping, config);
+            SidescanLine line = readPing(subsystem, i, config);
             //log.info("Adding line at timestamp: {}", line.getTimestampMillis());
-            list.add(line);
-            currentTimeStamp = ping.getTimestamp() + 1; // increment to next timestamp
+            if (line != null)
+                list.add(line);
         }
         return list;
     }
 
     @Override
-    public ArrayList<Integer> getSubsystemList() {
-        Set<Integer> subSystems = new HashSet<>();
+    public int getPingCount(int subsystem) {
+        return parser.getPingCount(subsystem);
+    }
 
-        for (SdfIndex index : parser.getIndex())
-            subSystems.addAll(index.subSystemsList);
+    @Override
+    public long getPingTimestamp(int subsystem, int ping) {
+        return parser.getPingTimestamp(subsystem, ping);
+    }
+
+    @Override
+    public SidescanLine readPing(int subsystem, int ping, SidescanParameters config) {
+        SdfData data = parser.readPing(subsystem, ping);
+        return data == null ? null : sdfDataToSidescanLine(data, config);
+    }
+
+    /**
+     * Same as {@link #readPing(int, int, SidescanParameters)} but the line data is written to the given array when it
+     * has the right size (twice the number of samples per channel), so callers that are done with a line before
+     * reading the next one can avoid allocating.
+     * @param buffer array to reuse as the line data, may be null
+     */
+    public SidescanLine readPing(int subsystem, int ping, SidescanParameters config, double[] buffer) {
+        SdfData data = parser.readPing(subsystem, ping);
+        return data == null ? null : sdfDataToSidescanLine(data, config, buffer);
+    }
+
+    @Override
+    public ArrayList<Integer> getSubsystemList() {
+        return new ArrayList<>(parser.getSubsystems());
+    }
 
-        return new ArrayList<>(subSystems);
+    @Override
+    public List<SourceSpan> getSourceSpans(int subsystem) {
+        return parser.getSourceSpans(subsystem);
     }
 
     @Override
@@ -14,13 +14,13 @@ package pt.omst.sidescan.sds;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -29,10 +29,15 @@ import java.util.logging.Logger;
 
 import pt.lsts.neptus.core.SystemPositionAndAttitude;
 import pt.lsts.neptus.util.SidescanUtil;
+import pt.omst.sidescan.ChannelPool;
 import pt.omst.sidescan.ISidescanLine;
+import pt.omst.sidescan.PingIndex;
 import pt.omst.sidescan.SidescanLine;
 import pt.omst.sidescan.SidescanParameters;
 import pt.omst.sidescan.SidescanParser;
+import pt.omst.sidescan.SequentialReader;
+import pt.omst.sidescan.SourceSpan;
+import pt.omst.sidescan.WeightedLruCache;
 
 /**
  * Java translation of the SDS (Sonar Data Stream) parser.
@@ -46,7 +51,14 @@ public class SdsParser implements SidescanParser {
     private static final int STARBOARD_IDX = 0;
     private static final int PORT_IDX = 1;
     
+    private static final int HEADER_SIZE = 16;
+    private static final int SYNC_SIZE = 6;
+    // first byte of the SYNC pattern repeated in all bytes of a long
+    private static final long SYNC_FIRST_BYTES = 0x4343434343434343L;
+    private static final SdsTag[] INDEXED_TAGS = { SdsTag.SYNC, SdsTag.SNR2, SdsTag.NAV, SdsTag.FTHM, SdsTag.ORNT };
+
     private final Logger logger = Logger.getLogger(SdsParser.class.getName());
+    private final ChannelPool channels = new ChannelPool();
     private final TreeMap<Long, Long> syncIndex = new TreeMap<>();
     private final TreeMap<Long, Long> snr2Index = new TreeMap<>();
     private final TreeMap<Long, Long> navIndex = new TreeMap<>();
@@ -58,19 +70,17 @@ public class SdsParser implements SidescanParser {
     private long lastPingEpochMs = 0;
     
     private final TreeMap<Long, File> fileIndexMap = new TreeMap<>();
-    private final LinkedHashMap<FileReadCacheKey, SdsPayload> fileReadCache = new LinkedHashMap<FileReadCacheKey, SdsPayload>(1000, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<FileReadCacheKey, SdsPayload> eldest) {
-            return size() > 1000;
-        }
-    };
-    
-    private final LinkedHashMap<SidescanLineCacheKey, ISidescanLine> sidescanLineCache = new LinkedHashMap<SidescanLineCacheKey, ISidescanLine>(1000, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<SidescanLineCacheKey, ISidescanLine> eldest) {
-            return size() > 1000;
-        }
-    };
+    private final List<SourceSpan> sourceSpans = new ArrayList<>();
+    // SNR2 timestamps by ping number, built on first use (indexes are only modified by parse())
+    private volatile long[] pingTimestamps = null;
+
+    // Caches are bounded by the (estimated) bytes they hold, not by the number of entries
+    public static final long DEFAULT_PAYLOAD_CACHE_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_LINE_CACHE_BYTES = 128L * 1024 * 1024;
+    private final WeightedLruCache<FileReadCacheKey, SdsPayload> fileReadCache =
+            new WeightedLruCache<>(DEFAULT_PAYLOAD_CACHE_BYTES, SdsParser::estimateBytes);
+    private final WeightedLruCache<SidescanLineCacheKey, ISidescanLine> sidescanLineCache =
+            new WeightedLruCache<>(DEFAULT_LINE_CACHE_BYTES, SdsParser::estimateBytes);
 
     // Sealed class equivalent - base class
     public abstract static class SdsPayload {}
@@ -113,8 +123,10 @@ public class SdsParser implements SidescanParser {
             return tag;
         }
         
+        private static final SdsTag[] TAGS = values();
+
         public static SdsTag fromTag(long tagValue) {
-            for (SdsTag tag : values()) {
+            for (SdsTag tag : TAGS) {
                 if (tag.getTag() == tagValue) {
                     return tag;
                 }
@@ -190,12 +202,64 @@ public class SdsParser implements SidescanParser {
     public static class SdsSNR2 extends SdsPayload {
         public final SdsDataSonarPing sonarPing;
         public final List<SdsDataSonarPingChannel> channels;
-        public final List<List<Integer>> samples; // UShort equivalent as Integer
-
-        public SdsSNR2(SdsDataSonarPing sonarPing, List<SdsDataSonarPingChannel> channels, List<List<Integer>> samples) {
+        private final char[] samples; // UShort samples of all channels, one channel after the other
+        private final int[] channelStart; // position of each channel in samples (plus the total at the end)
+
+        /**
+         * @param samples the (unsigned 16 bit) samples of all channels, one channel after the other, in the number
+         *                given by each channel's samplesInChannel
+         */
+        public SdsSNR2(SdsDataSonarPing sonarPing, List<SdsDataSonarPingChannel> channels, char[] samples) {
             this.sonarPing = sonarPing;
             this.channels = channels;
             this.samples = samples;
+            this.channelStart = new int[channels.size() + 1];
+            for (int i = 0; i < channels.size(); i++) {
+                channelStart[i + 1] = channelStart[i] + channels.get(i).samplesInChannel;
+            }
+        }
+
+        public int getChannelCount() {
+            return channels.size();
+        }
+
+        public int getSampleCount(int channel) {
+            return channelStart[channel + 1] - channelStart[channel];
+        }
+
+        /**
+         * @return the (unsigned) value of a sample of a channel
+         */
+        public int getSample(int channel, int index) {
+            return samples[channelStart[channel] + index];
+        }
+
+        /**
+         * @return a copy of the samples of a channel
+         */
+        public char[] getSamples(int channel) {
+            return Arrays.copyOfRange(samples, channelStart[channel], channelStart[channel + 1]);
+        }
+
+        /**
+         * Copies the samples of a channel to an array of doubles, without any intermediate object
+         * @param channel the channel to copy
+         * @param dest where to copy to
+         * @param destPos position in dest of the first copied sample
+         * @param reverse whether to copy the samples in reverse order (last sample first)
+         */
+        public void copySamples(int channel, double[] dest, int destPos, boolean reverse) {
+            int start = channelStart[channel];
+            int count = getSampleCount(channel);
+            if (reverse) {
+                for (int i = 0; i < count; i++) {
+                    dest[destPos + i] = samples[start + count - 1 - i];
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    dest[destPos + i] = samples[start + i];
+                }
+            }
         }
     }
 
@@ -299,32 +363,32 @@ public class SdsParser implements SidescanParser {
         }
     }
 
-    private SdsPayload readAt(File file, RandomAccessFile raf, long offset) throws IOException, UnknownTagException {
+    private SdsPayload readAt(File file, long offset) throws IOException, UnknownTagException {
         FileReadCacheKey cacheKey = new FileReadCacheKey(file, offset);
         SdsPayload cached = fileReadCache.get(cacheKey);
         if (cached != null) {
             return cached;
         }
 
-        raf.seek(offset);
-        SdsHeader header = readHeader(raf);
+        SdsHeader header = parseHeader(channels.read(file, offset, HEADER_SIZE), 0);
+        ByteBuffer buf = channels.read(file, offset + HEADER_SIZE, (int) header.packetSize);
         SdsPayload data = null;
         
         switch (header.tag) {
             case SYNC:
-                data = parseSync(raf);
+                data = parseSync(buf);
                 break;
             case SNR2:
-                data = parseSNR2(raf);
+                data = parseSNR2(buf);
                 break;
             case NAV:
-                data = parseNAV(raf);
+                data = parseNAV(buf);
                 break;
             case FTHM:
-                data = parseFTHM(raf);
+                data = parseFTHM(buf);
                 break;
             case ORNT:
-                data = parseORNT(raf);
+                data = parseORNT(buf);
                 break;
             default:
                 return null;
@@ -336,92 +400,222 @@ public class SdsParser implements SidescanParser {
         return data;
     }
 
+    /**
+     * Indexes the packets of a file.
+     * <p>
+     * The index is kept in mra/sds&lt;file name&gt;.pidx and reused while the file size and modification time don't
+     * change. If the file only grew (still being logged), indexing resumes where it stopped. Otherwise the file is
+     * read sequentially in large blocks and headers are decoded in place.
+     */
     public void parse(File file) throws IOException, UnknownTagException {
         if (file.length() == 0L) return;
-        
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            SyncResult syncResult = synchronizeStream(raf);
-            systemStartEpochMs = syncResult.syncPacket.referenceSeconds * 1000L - syncResult.header.timestampMs;
-            
-            while (raf.getFilePointer() < raf.length()) {
-                try {
-                    long headerOffset = raf.getFilePointer();
-                    SdsHeader header = readHeader(raf);
-                    long epochMs = header.timestampMs + systemStartEpochMs;
-                    
-                    switch (header.tag) {
-                        case SYNC:
-                            syncIndex.put(epochMs, headerOffset);
-                            break;
-                        case SNR2:
-                            snr2Index.put(epochMs, headerOffset);
-                            break;
-                        case NAV:
-                            navIndex.put(epochMs, headerOffset);
-                            break;
-                        case FTHM:
-                            fthmIndex.put(epochMs, headerOffset);
-                            break;
-                        case ORNT:
-                            orntIndex.put(epochMs, headerOffset);
-                            break;
-                        default:
-                            break;
+        pingTimestamps = null;
+
+        File indexFile = new File(file.getAbsoluteFile().getParentFile(), "mra/sds" + file.getName() + ".pidx");
+        PingIndex index = loadIndex(file, indexFile);
+        systemStartEpochMs = index.getFormatData();
+        int snr2 = (int) SdsTag.SNR2.getTag();
+        if (index.size(snr2) > 0)
+            sourceSpans.add(new SourceSpan(file, index.getFirstTimestamp(snr2), index.getLastTimestamp(snr2)));
+        for (SdsTag tag : INDEXED_TAGS) {
+            TreeMap<Long, Long> map = indexOf(tag);
+            int subsystem = (int) tag.getTag();
+            for (int i = 0; i < index.size(subsystem); i++) {
+                map.put(index.getTimestamp(subsystem, i), index.getOffset(subsystem, i));
+            }
+        }
+
+        if (!snr2Index.isEmpty()) {
+            firstPingEpochMs = snr2Index.firstKey();
+            lastPingEpochMs = snr2Index.lastKey();
+            fileIndexMap.put(lastPingEpochMs, file);
+        }
+    }
+
+    private PingIndex loadIndex(File file, File indexFile) throws IOException, UnknownTagException {
+        if (indexFile.exists()) {
+            try {
+                // only mapped once known to be current, a mapped index file can't be replaced on Windows
+                PingIndex.Header header = PingIndex.readHeader(indexFile);
+                if (header.isUpToDate(file)) {
+                    return PingIndex.open(indexFile);
+                }
+                if (file.length() > header.sourceLength() && header.indexedLength() <= file.length()) {
+                    logger.info("Updating SDS index for " + file.getName() + " from byte " + header.indexedLength());
+                    return generateIndex(file, indexFile, PingIndex.read(indexFile));
+                }
+                logger.info("SDS index for " + file.getName() + " is outdated, it will be regenerated");
+            } catch (IOException e) {
+                logger.warning("Could not open SDS index " + indexFile.getName() + ": " + e.getMessage());
+            }
+        }
+        logger.info("Generating SDS index for " + file.getAbsolutePath());
+        return generateIndex(file, indexFile, null);
+    }
+
+    /**
+     * Scans a file and writes its index
+     * @param file the SDS file
+     * @param indexFile where to write the index
+     * @param previous index of the beginning of the file, to resume from, or null to index the whole file (not
+     *                 mapped from indexFile, which is replaced, see {@link PingIndex#read(File)})
+     */
+    private PingIndex generateIndex(File file, File indexFile, PingIndex previous)
+            throws IOException, UnknownTagException {
+        PingIndex.Builder builder = PingIndex.builder();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            SequentialReader reader = new SequentialReader(channel, file.getName(), null);
+            long size = reader.size();
+            long startEpochMs;
+            long packets = 0;
+            long pos;
+            if (previous != null) {
+                for (int subsystem : previous.getSubsystems()) {
+                    for (int i = 0; i < previous.size(subsystem); i++) {
+                        builder.add(subsystem, previous.getTimestamp(subsystem, i), previous.getOffset(subsystem, i));
                     }
-                    raf.seek(raf.getFilePointer() + header.packetSize);
-                } catch (IllegalStateException e) {
-                    logger.warning("Corrupt packet, finding next sync pattern");
-                    synchronizeStream(raf);
-                } catch (UnknownTagException e) {
-                    logger.warning(e.getMessage());
-                    raf.seek(raf.getFilePointer() + e.getPacketSize());
                 }
+                startEpochMs = previous.getFormatData();
+                packets = previous.getNumberOfPackets();
+                pos = previous.getIndexedLength();
+            } else {
+                pos = findSync(reader, 0);
+                if (pos < 0) {
+                    throw new IllegalStateException("Synchronization pattern not found");
+                }
+                int offset = reader.fill(pos, HEADER_SIZE + SYNC_SIZE);
+                SdsHeader syncHeader = parseHeader(reader.buffer(), offset);
+                SdsSyncPacket syncPacket = parseSync(reader.buffer().slice(offset + HEADER_SIZE, SYNC_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN));
+                startEpochMs = syncPacket.referenceSeconds * 1000L - syncHeader.timestampMs;
+                pos += HEADER_SIZE + SYNC_SIZE;
             }
             
-            if (!snr2Index.isEmpty()) {
-                firstPingEpochMs = snr2Index.firstKey();
-                lastPingEpochMs = snr2Index.lastKey();
-                fileIndexMap.put(lastPingEpochMs, file);
+            while (pos + HEADER_SIZE <= size) {
+                int offset = reader.fill(pos, HEADER_SIZE);
+                ByteBuffer buf = reader.buffer();
+                long packetSize = Integer.toUnsignedLong(buf.getInt(offset));
+                long tagValue = Integer.toUnsignedLong(buf.getInt(offset + 8));
+                if (!isValidChecksum(buf, offset)) {
+                    // not a header (corrupted or truncated packet), its size can't be trusted either
+                    logger.warning("Corrupt packet, finding next sync pattern");
+                    long next = findSync(reader, pos + 1);
+                    if (next < 0) {
+                        break;
+                    }
+                    pos = next;
+                    continue;
+                }
+                if (pos + HEADER_SIZE + packetSize > size) {
+                    break; // not completely written yet, indexed when the file grows
+                }
+                SdsTag tag = SdsTag.fromTag(tagValue);
+                if (tag == null) {
+                    logger.warning(new UnknownTagException(tagValue, packetSize).getMessage());
+                    pos += HEADER_SIZE + packetSize;
+                    continue;
+                }
+
+                if (indexOf(tag) != null) {
+                    long epochMs = Integer.toUnsignedLong(buf.getInt(offset + 4)) + startEpochMs;
+                    builder.add((int) tag.getTag(), epochMs, pos);
+                }
+                packets++;
+                pos += HEADER_SIZE + packetSize;
             }
+
+            return builder.numberOfPackets(packets).indexedLength(pos).formatData(startEpochMs)
+                    .write(indexFile, file);
         }
     }
 
-    private static class SyncResult {
-        public final SdsHeader header;
-        public final SdsSyncPacket syncPacket;
-        
-        public SyncResult(SdsHeader header, SdsSyncPacket syncPacket) {
-            this.header = header;
-            this.syncPacket = syncPacket;
+    /**
+     * @return the in memory index of a type of packet or null if this type is not indexed
+     */
+    private TreeMap<Long, Long> indexOf(SdsTag tag) {
+        switch (tag) {
+            case SYNC:
+                return syncIndex;
+            case SNR2:
+                return snr2Index;
+            case NAV:
+                return navIndex;
+            case FTHM:
+                return fthmIndex;
+            case ORNT:
+                return orntIndex;
+            default:
+                return null;
         }
     }
 
-    private SyncResult synchronizeStream(RandomAccessFile raf) throws IOException, UnknownTagException {
-        byte[] syncPattern = {0x43, 0x4E, 0x59, 0x53, (byte)0xAA, (byte)0xAA, (byte)0xAA};
-        byte[] buffer = new byte[syncPattern.length];
-        
-        while (raf.getFilePointer() < raf.length() - syncPattern.length) {
-            raf.read(buffer);
-            if (Arrays.equals(buffer, syncPattern)) {
-                raf.seek(raf.getFilePointer() - syncPattern.length - 8);
-                SdsHeader header = readHeader(raf);
-                if (header.tag == SdsTag.SYNC) {
-                    return new SyncResult(header, parseSync(raf));
+    /**
+     * Finds the next valid SYNC packet
+     * @param reader the reader of the file
+     * @param from where to start searching
+     * @return the position of the SYNC packet header or -1 if there are no more SYNC packets
+     */
+    private static long findSync(SequentialReader reader, long from) throws IOException {
+        long pos = from;
+        while (reader.size() - pos >= HEADER_SIZE + 8) {
+            int length = (int) Math.min(SequentialReader.BUFFER_SIZE, reader.size() - pos);
+            int offset = reader.fill(pos, length);
+            // the pattern starts 8 bytes into the header, so the whole header must be inside the searched block
+            int found = indexOfSyncPattern(reader.buffer(), offset + 8, offset + length - 8);
+            if (found < 0) {
+                if (pos + length >= reader.size()) {
+                    return -1;
                 }
+                pos += length - HEADER_SIZE; // overlap, for patterns across blocks
+                continue;
+            }
+            long headerPos = pos + (found - 8 - offset);
+            if (isValidChecksum(reader.buffer(), found - 8)) {
+                return headerPos;
+            }
+            pos = headerPos + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the SYNC pattern (SYNC tag followed by 3 0xAA bytes). Instead of comparing one byte at a time, 8 bytes are
+     * tested at once for the first byte of the pattern (SWAR "has zero byte" test) and only matches are compared.
+     * @param buf the buffer to search (little endian)
+     * @param from first position where the pattern can start
+     * @param to the pattern must start before this position and there must be SYNC_PATTERN_SIZE bytes after it
+     * @return the position where the pattern starts or -1 if not found
+     */
+    static int indexOfSyncPattern(ByteBuffer buf, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long x = buf.getLong(i) ^ SYNC_FIRST_BYTES;
+            long candidates = (x - 0x0101010101010101L) & ~x & 0x8080808080808080L;
+            while (candidates != 0) {
+                int candidate = i + (Long.numberOfTrailingZeros(candidates) >>> 3);
+                if (isSyncPattern(buf, candidate)) {
+                    return candidate;
+                }
+                candidates &= candidates - 1;
             }
-            raf.seek(raf.getFilePointer() + 1);
         }
-        throw new IllegalStateException("Synchronization pattern not found");
+        for (; i < to; i++) {
+            if (isSyncPattern(buf, i)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    private SdsHeader readHeader(RandomAccessFile raf) throws IOException, UnknownTagException {
-        byte[] buffer = new byte[16];
-        raf.read(buffer);
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    private static boolean isSyncPattern(ByteBuffer buf, int pos) {
+        return buf.getInt(pos) == (int) SdsTag.SYNC.getTag() && buf.get(pos + 4) == (byte) 0xAA
+                && buf.get(pos + 5) == (byte) 0xAA && buf.get(pos + 6) == (byte) 0xAA;
+    }
 
-        long packetSize = Integer.toUnsignedLong(byteBuffer.getInt());
-        long timestampMs = Integer.toUnsignedLong(byteBuffer.getInt());
-        long tagValue = Integer.toUnsignedLong(byteBuffer.getInt());
+    private static SdsHeader parseHeader(ByteBuffer buf, int offset) throws UnknownTagException {
+        long packetSize = Integer.toUnsignedLong(buf.getInt(offset));
+        long timestampMs = Integer.toUnsignedLong(buf.getInt(offset + 4));
+        long tagValue = Integer.toUnsignedLong(buf.getInt(offset + 8));
         
         SdsTag tag = SdsTag.fromTag(tagValue);
         if (tag == null) {
@@ -429,120 +623,96 @@ public class SdsParser implements SidescanParser {
         }
         
         byte[] misc = new byte[3];
-        byteBuffer.get(misc, 0, 3);
-        byte checksum = byteBuffer.get();
+        buf.get(offset + 12, misc);
+        byte checksum = buf.get(offset + 15);
         
-        validateChecksum(Arrays.copyOfRange(buffer, 0, 15), checksum);
+        if (!isValidChecksum(buf, offset)) {
+            throw new IllegalStateException("Checksum mismatch at packet with tag " + tag);
+        }
         
         return new SdsHeader(packetSize, timestampMs, tag, misc, checksum);
     }
 
-    private void validateChecksum(byte[] buffer, byte checksum) {
+    /**
+     * @return whether the last byte of the header at offset is the sum of the other 15
+     */
+    private static boolean isValidChecksum(ByteBuffer buf, int offset) {
         byte calculatedChecksum = 0;
-        for (byte b : buffer) {
-            calculatedChecksum += b;
-        }
-        if (calculatedChecksum != checksum) {
-            throw new IllegalStateException("Checksum mismatch: expected " + checksum + ", got " + calculatedChecksum);
+        for (int i = 0; i < HEADER_SIZE - 1; i++) {
+            calculatedChecksum += buf.get(offset + i);
         }
+        return calculatedChecksum == buf.get(offset + HEADER_SIZE - 1);
     }
 
-    private SdsSNR2 parseSNR2(RandomAccessFile raf) throws IOException {
-        byte[] buffer = new byte[16];
-        raf.read(buffer);
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
-        
-        int channelCount = Byte.toUnsignedInt(byteBuffer.get());
-        long pingNumber = Integer.toUnsignedLong(byteBuffer.getInt());
-        float speedOfSound = byteBuffer.getFloat();
+    private SdsSNR2 parseSNR2(ByteBuffer buf) {
+        int channelCount = Byte.toUnsignedInt(buf.get(0));
+        long pingNumber = Integer.toUnsignedLong(buf.getInt(1));
+        float speedOfSound = buf.getFloat(5);
         byte[] reserved = new byte[7];
-        byteBuffer.get(reserved, 0, 7);
+        buf.get(9, reserved);
 
         List<SdsDataSonarPingChannel> channels = new ArrayList<>();
+        int pos = 16;
+        int totalSamples = 0;
         for (int i = 0; i < channelCount; i++) {
-            byte[] channelBuffer = new byte[22];
-            raf.read(channelBuffer);
-            ByteBuffer channelByteBuffer = ByteBuffer.wrap(channelBuffer).order(ByteOrder.LITTLE_ENDIAN);
-
-            int sonarType = Short.toUnsignedInt(channelByteBuffer.getShort());
-            int sonarId = Short.toUnsignedInt(channelByteBuffer.getShort());
-            float freqHz = channelByteBuffer.getFloat();
-            float rangeMs = channelByteBuffer.getFloat();
-            float rangeDelayMs = channelByteBuffer.getFloat();
-            int dataFlags = Short.toUnsignedInt(channelByteBuffer.getShort());
-            int dataType = Short.toUnsignedInt(channelByteBuffer.getShort());
-            int samplesInChannel = Short.toUnsignedInt(channelByteBuffer.getShort());
+            int sonarType = Short.toUnsignedInt(buf.getShort(pos));
+            int sonarId = Short.toUnsignedInt(buf.getShort(pos + 2));
+            float freqHz = buf.getFloat(pos + 4);
+            float rangeMs = buf.getFloat(pos + 8);
+            float rangeDelayMs = buf.getFloat(pos + 12);
+            int dataFlags = Short.toUnsignedInt(buf.getShort(pos + 16));
+            int dataType = Short.toUnsignedInt(buf.getShort(pos + 18));
+            int samplesInChannel = Short.toUnsignedInt(buf.getShort(pos + 20));
+            pos += 22;
+            totalSamples += samplesInChannel;
 
             channels.add(new SdsDataSonarPingChannel(sonarType, sonarId, freqHz, rangeMs, 
                                                    rangeDelayMs, dataFlags, dataType, samplesInChannel));
         }
 
-        List<List<Integer>> samples = new ArrayList<>();
+        // samples of all channels are stored one channel after the other, decode them in bulk
         int sampleSizeBytes = 2;
-        for (int i = 0; i < channelCount; i++) {
-            byte[] sampleBuffer = new byte[sampleSizeBytes * channels.get(i).samplesInChannel];
-            raf.read(sampleBuffer);
-            ByteBuffer sampleByteBuffer = ByteBuffer.wrap(sampleBuffer).order(ByteOrder.LITTLE_ENDIAN);
-            List<Integer> sampleLine = new ArrayList<>();
-            for (int j = 0; j < channels.get(i).samplesInChannel; j++) {
-                sampleLine.add(Short.toUnsignedInt(sampleByteBuffer.getShort()));
-            }
-            samples.add(sampleLine);
-        }
+        char[] samples = new char[totalSamples];
+        buf.slice(pos, sampleSizeBytes * totalSamples).order(ByteOrder.LITTLE_ENDIAN).asCharBuffer().get(samples);
 
         return new SdsSNR2(new SdsDataSonarPing(channelCount, pingNumber, speedOfSound, reserved), channels, samples);
     }
 
-    private SdsNavigationDataPacket parseNAV(RandomAccessFile raf) throws IOException {
-        byte[] buffer = new byte[30];
-        raf.read(buffer);
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
-
-        int source = Short.toUnsignedInt(byteBuffer.getShort());
-        double latDeg = byteBuffer.getDouble();
-        double lonDeg = byteBuffer.getDouble();
-        float cogDeg = byteBuffer.getFloat();
-        float headingDeg = byteBuffer.getFloat();
-        float sogMetersPerS = byteBuffer.getFloat();
+    private SdsNavigationDataPacket parseNAV(ByteBuffer buf) {
+        int source = Short.toUnsignedInt(buf.getShort(0));
+        double latDeg = buf.getDouble(2);
+        double lonDeg = buf.getDouble(10);
+        float cogDeg = buf.getFloat(18);
+        float headingDeg = buf.getFloat(22);
+        float sogMetersPerS = buf.getFloat(26);
 
         return new SdsNavigationDataPacket(source, latDeg, lonDeg, cogDeg, headingDeg, sogMetersPerS);
     }
 
-    private SdsOrientationDataPacket parseORNT(RandomAccessFile raf) throws IOException {
-        byte[] buffer = new byte[30];
-        raf.read(buffer);
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
-
-        int source = Short.toUnsignedInt(byteBuffer.getShort());
-        float xMeters = byteBuffer.getFloat();
-        float yMeters = byteBuffer.getFloat();
-        float zMeters = byteBuffer.getFloat();
-        float rollDeg = byteBuffer.getFloat();
-        float pitchDeg = byteBuffer.getFloat();
-        float yawDeg = byteBuffer.getFloat();
-        float heaveCm = byteBuffer.getFloat();
+    private SdsOrientationDataPacket parseORNT(ByteBuffer buf) {
+        int source = Short.toUnsignedInt(buf.getShort(0));
+        float xMeters = buf.getFloat(2);
+        float yMeters = buf.getFloat(6);
+        float zMeters = buf.getFloat(10);
+        float rollDeg = buf.getFloat(14);
+        float pitchDeg = buf.getFloat(18);
+        float yawDeg = buf.getFloat(22);
+        float heaveCm = buf.getFloat(26);
 
         return new SdsOrientationDataPacket(source, xMeters, yMeters, zMeters, rollDeg, pitchDeg, yawDeg, heaveCm);
     }
 
-    private SdsFathometerDataPacket parseFTHM(RandomAccessFile raf) throws IOException {
-        byte[] buffer = new byte[10];
-        raf.read(buffer);
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
-
-        int source = Short.toUnsignedInt(byteBuffer.getShort());
-        float depthMeters = byteBuffer.getFloat();
-        float altitudeMeters = byteBuffer.getFloat();
+    private SdsFathometerDataPacket parseFTHM(ByteBuffer buf) {
+        int source = Short.toUnsignedInt(buf.getShort(0));
+        float depthMeters = buf.getFloat(2);
+        float altitudeMeters = buf.getFloat(6);
 
         return new SdsFathometerDataPacket(source, depthMeters, altitudeMeters);
     }
 
-    private SdsSyncPacket parseSync(RandomAccessFile raf) throws IOException {
-        byte[] buffer = new byte[6];
-        raf.read(buffer);
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
-        long reference = Integer.toUnsignedLong(byteBuffer.getInt());
-        int interval = Short.toUnsignedInt(byteBuffer.getShort());
+    private static SdsSyncPacket parseSync(ByteBuffer buf) {
+        long reference = Integer.toUnsignedLong(buf.getInt(0));
+        int interval = Short.toUnsignedInt(buf.getShort(4));
         return new SdsSyncPacket(reference, interval);
     }
 
@@ -592,6 +762,21 @@ public class SdsParser implements SidescanParser {
         return lines;
     }
 
+    @Override
+    public int getPingCount(int subsystem) {
+        return snr2Index.size();
+    }
+
+    @Override
+    public long getPingTimestamp(int subsystem, int ping) {
+        long[] timestamps = pingTimestamps;
+        if (timestamps == null) {
+            timestamps = snr2Index.keySet().stream().mapToLong(Long::longValue).toArray();
+            pingTimestamps = timestamps;
+        }
+        return timestamps[ping];
+    }
+
     private SystemPositionAndAttitude buildAttitude(SdsOrientationDataPacket orientation, 
                                                    SdsNavigationDataPacket nav, 
                                                    SdsFathometerDataPacket fathometer) {
@@ -614,17 +799,15 @@ public class SdsParser implements SidescanParser {
                                           SdsNavigationDataPacket nav, SdsFathometerDataPacket fathometer,
                                           SidescanParameters config) {
         double rangeMeters = snr2.channels.get(0).rangeMs / 1000.0 * snr2.sonarPing.speedOfSound;
-        double scaleFactor = 1.0;
         SystemPositionAndAttitude attitude = buildAttitude(orientation, nav, fathometer);
         float freqHz = snr2.channels.get(0).freqHz;
         
         // Reverse port samples and combine with starboard
-        List<Integer> portSamples = new ArrayList<>(snr2.samples.get(PORT_IDX));
-        Collections.reverse(portSamples);
-        List<Integer> combinedSamples = new ArrayList<>(portSamples);
-        combinedSamples.addAll(snr2.samples.get(STARBOARD_IDX));
-        
-        double[] samples = combinedSamples.stream().mapToDouble(s -> s / scaleFactor).toArray();
+        int portCount = snr2.getSampleCount(PORT_IDX);
+        double[] samples = new double[portCount + snr2.getSampleCount(STARBOARD_IDX)];
+        snr2.copySamples(PORT_IDX, samples, 0, true);
+        snr2.copySamples(STARBOARD_IDX, samples, portCount, false);
+
         double[] samplesNormalized = SidescanUtil.applyNormalizationAndTVG(samples, config);
         
         return new SidescanLine(epochMs, (float)rangeMeters, attitude, freqHz, samplesNormalized);
@@ -647,39 +830,37 @@ public class SdsParser implements SidescanParser {
             }
             File file = fileEntry.getValue();
             
-            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-                Long snr2Key = snr2Index.ceilingKey(timestamp);
-                if (snr2Key == null) {
-                    throw new IllegalStateException("No SNR2 packet found for timestamp " + timestamp);
-                }
-                Long snr2Offset = snr2Index.get(snr2Key);
-                SdsSNR2 snr2 = (SdsSNR2) readAt(file, raf, snr2Offset);
-
-                Long orntKey = orntIndex.ceilingKey(timestamp);
-                if (orntKey == null) {
-                    throw new IllegalStateException("No Orientation packet found for timestamp " + timestamp);
-                }
-                Long orntOffset = orntIndex.get(orntKey);
-                SdsOrientationDataPacket orientation = (SdsOrientationDataPacket) readAt(file, raf, orntOffset);
+            Long snr2Key = snr2Index.ceilingKey(timestamp);
+            if (snr2Key == null) {
+                throw new IllegalStateException("No SNR2 packet found for timestamp " + timestamp);
+            }
+            Long snr2Offset = snr2Index.get(snr2Key);
+            SdsSNR2 snr2 = (SdsSNR2) readAt(file, snr2Offset);
 
-                Long navKey = navIndex.ceilingKey(timestamp);
-                if (navKey == null) {
-                    throw new IllegalStateException("No Navigation packet found for timestamp " + timestamp);
-                }
-                Long navOffset = navIndex.get(navKey);
-                SdsNavigationDataPacket navigation = (SdsNavigationDataPacket) readAt(file, raf, navOffset);
+            Long orntKey = orntIndex.ceilingKey(timestamp);
+            if (orntKey == null) {
+                throw new IllegalStateException("No Orientation packet found for timestamp " + timestamp);
+            }
+            Long orntOffset = orntIndex.get(orntKey);
+            SdsOrientationDataPacket orientation = (SdsOrientationDataPacket) readAt(file, orntOffset);
 
-                Long fthmKey = fthmIndex.ceilingKey(timestamp);
-                if (fthmKey == null) {
-                    throw new IllegalStateException("No Fathometer packet found for timestamp " + timestamp);
-                }
-                Long fthmOffset = fthmIndex.get(fthmKey);
-                SdsFathometerDataPacket fathometer = (SdsFathometerDataPacket) readAt(file, raf, fthmOffset);
+            Long navKey = navIndex.ceilingKey(timestamp);
+            if (navKey == null) {
+                throw new IllegalStateException("No Navigation packet found for timestamp " + timestamp);
+            }
+            Long navOffset = navIndex.get(navKey);
+            SdsNavigationDataPacket navigation = (SdsNavigationDataPacket) readAt(file, navOffset);
 
-                ISidescanLine sidescanLine = buildSidescanLine(timestamp, snr2, orientation, navigation, fathometer, effectiveConfig);
-                sidescanLineCache.put(cacheKey, sidescanLine);
-                return sidescanLine;
+            Long fthmKey = fthmIndex.ceilingKey(timestamp);
+            if (fthmKey == null) {
+                throw new IllegalStateException("No Fathometer packet found for timestamp " + timestamp);
             }
+            Long fthmOffset = fthmIndex.get(fthmKey);
+            SdsFathometerDataPacket fathometer = (SdsFathometerDataPacket) readAt(file, fthmOffset);
+
+            ISidescanLine sidescanLine = buildSidescanLine(timestamp, snr2, orientation, navigation, fathometer, effectiveConfig);
+            sidescanLineCache.put(cacheKey, sidescanLine);
+            return sidescanLine;
         } catch (UnknownTagException e) {
             logger.warning("Corrupted data at timestamp " + timestamp + ": " + e.getMessage());
             return null;
@@ -696,6 +877,13 @@ public class SdsParser implements SidescanParser {
         return list;
     }
 
+    @Override
+    public List<SourceSpan> getSourceSpans(int subsystem) {
+        List<SourceSpan> spans = new ArrayList<>(sourceSpans);
+        spans.sort(Comparator.comparingLong(SourceSpan::firstTimestamp));
+        return spans;
+    }
+
     @Override
     public void cleanup() {
         syncIndex.clear();
@@ -703,8 +891,46 @@ public class SdsParser implements SidescanParser {
         navIndex.clear();
         fthmIndex.clear();
         orntIndex.clear();
+        pingTimestamps = null;
         fileReadCache.clear();
         sidescanLineCache.clear();
+        channels.close();
+    }
+
+    /**
+     * Changes the memory budget of the caches
+     * @param payloadBytes budget for decoded packets (mostly SNR2 samples)
+     * @param lineBytes budget for generated sidescan lines
+     */
+    public void setCacheBudget(long payloadBytes, long lineBytes) {
+        fileReadCache.setMaxWeight(payloadBytes);
+        sidescanLineCache.setMaxWeight(lineBytes);
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the decoded packet cache
+     */
+    public WeightedLruCache.Stats getPayloadCacheStats() {
+        return fileReadCache.getStats();
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the sidescan line cache
+     */
+    public WeightedLruCache.Stats getLineCacheStats() {
+        return sidescanLineCache.getStats();
+    }
+
+    private static long estimateBytes(SdsPayload payload) {
+        if (payload instanceof SdsSNR2 snr2) {
+            return 256L + 64L * snr2.getChannelCount() + 2L * snr2.samples.length;
+        }
+        return 64;
+    }
+
+    private static long estimateBytes(ISidescanLine line) {
+        // samples (doubles) plus the line itself and its pose
+        return 512L + 8L * line.getXSize();
     }
 
     @Override
@@ -8,6 +8,7 @@ import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Vector;
 
@@ -152,16 +153,20 @@ public class ColorMapUtils {
     }
 
     public static void getInterpolatedData(double[][] data, ColorMap colormap, Graphics2D bg, double width, double height, int alpha) {
-        BufferedImage tmp = new BufferedImage(data.length, data[0].length, BufferedImage.TYPE_INT_ARGB);
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data[0].length; j++) {
+        int w = data.length, h = data[0].length;
+        BufferedImage tmp = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int[] lut = colormap.toArgbLut(ColorMap.ARGB_LUT_SIZE);
+        int[] pixels = new int[w * h];
+        for (int i = 0; i < w; i++) {
+            for (int j = 0; j < h; j++) {
                 // Color c = colormap.getColor(data[i][j]);
                 // c = new Color(c.getRed(), c.getGreen(), c.getBlue(), alpha);
                 // tmp.setRGB(i, j, c.getRGB());
 
-                tmp.setRGB(i, j, colormap.getColor(data[i][j]).getRGB());
+                pixels[j * w + i] = ColorMap.lookup(lut, data[i][j]);
             }
         }
+        tmp.setRGB(0, 0, w, h, pixels, 0, w);
 
         //Graphics2D bg = destination.createGraphics();
         bg.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
@@ -368,23 +373,23 @@ public class ColorMapUtils {
 
     public static Image getBar(ColorMap cmap, int orientation, int width, int height) {
         BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = (Graphics2D) img.getGraphics();
+        int[] lut = cmap.toArgbLut(ColorMap.ARGB_LUT_SIZE);
+        int[] pixels = new int[width * height];
 
         if (orientation == HORIZONTAL_ORIENTATION) {
-            for (int i = 0; i < img.getWidth(); i++) {
-                double pos = (double) i / (double) img.getWidth();
-                g2d.setColor(cmap.getColor(pos));
-                g2d.drawLine(i, 0, i, img.getHeight());
+            for (int i = 0; i < width; i++) {
+                int argb = ColorMap.lookup(lut, (double) i / (double) width);
+                for (int j = 0; j < height; j++)
+                    pixels[j * width + i] = argb;
             }
         }
 
         if (orientation == VERTICAL_ORIENTATION) {
-            for (int i = 0; i < img.getHeight(); i++) {
-                g2d.setColor(cmap.getColor((double) i / (double) img.getHeight()));
-                g2d.drawLine(0, i, img.getWidth(), i);
-            }
+            for (int i = 0; i < height; i++)
+                Arrays.fill(pixels, i * width, (i + 1) * width, ColorMap.lookup(lut, (double) i / (double) height));
         }
 
+        img.setRGB(0, 0, width, height, pixels, 0, width);
         return img;
     }
 
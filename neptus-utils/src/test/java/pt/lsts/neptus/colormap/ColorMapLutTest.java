@@ -0,0 +1,69 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.lsts.neptus.colormap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the ARGB lookup tables of {@link ColorMap}.
+ */
+class ColorMapLutTest {
+
+    @Test
+    void testTablesAreCachedPerInstanceAndSize() {
+        ColorMap colorMap = ColorMapFactory.createBronzeColormap();
+        int[] lut = colorMap.toArgbLut(256);
+        assertSame(lut, colorMap.toArgbLut(256));
+        assertEquals(256, lut.length);
+        assertEquals(ColorMap.ARGB_LUT_SIZE, colorMap.toArgbLut(ColorMap.ARGB_LUT_SIZE).length);
+
+        ColorMap other = new InterpolationColorMap(new double[] { 0, 1 }, new Color[] { Color.BLACK, Color.WHITE });
+        assertNotSame(lut, other.toArgbLut(256));
+    }
+
+    @Test
+    void testGetArgbMatchesGetColor() {
+        ColorMap colorMap = new InterpolationColorMap(new double[] { 0, 0.5, 1 },
+                new Color[] { Color.BLUE, Color.YELLOW, Color.RED });
+        for (int i = 0; i <= 1000; i++) {
+            double value = i / 1000.0;
+            int expected = colorMap.getColor(value).getRGB();
+            int argb = colorMap.getArgb(value);
+            assertEquals(0xFF, argb >>> 24);
+            for (int shift = 0; shift < 24; shift += 8)
+                assertEquals((expected >> shift) & 0xFF, (argb >> shift) & 0xFF, 1.0, "value " + value);
+        }
+    }
+
+    @Test
+    void testOutOfRangeValuesAreClamped() {
+        ColorMap colorMap = new InterpolationColorMap(new double[] { 0, 1 }, new Color[] { Color.BLACK, Color.WHITE });
+        assertEquals(Color.BLACK.getRGB(), colorMap.getArgb(-3));
+        assertEquals(Color.BLACK.getRGB(), colorMap.getArgb(Double.NaN));
+        assertEquals(Color.WHITE.getRGB(), colorMap.getArgb(7));
+        assertEquals(Color.WHITE.getRGB(), ColorMap.lookup(colorMap.toArgbLut(16), Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void testTablesFollowColorChanges() {
+        InterpolationColorMap colorMap = new InterpolationColorMap(new double[] { 0, 1 },
+                new Color[] { Color.BLACK, Color.WHITE });
+        int[] lut = colorMap.toArgbLut(256);
+        assertEquals(Color.WHITE.getRGB(), colorMap.getArgb(1));
+
+        colorMap.setColors(new Color[] { Color.BLACK, Color.RED });
+        assertEquals(Color.RED.getRGB(), colorMap.getArgb(1));
+        assertNotSame(lut, colorMap.toArgbLut(256));
+        assertEquals(Color.RED.getRGB(), colorMap.toArgbLut(256)[255]);
+
+        colorMap.setValues(new double[] { 0, 0.5 });
+        assertEquals(Color.RED.getRGB(), colorMap.getArgb(0.6));
+    }
+}
@@ -0,0 +1,126 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the binary {@link PingIndex} format.
+ */
+class PingIndexTest {
+
+    @TempDir
+    Path folder;
+
+    private File source(int length) throws IOException {
+        File source = folder.resolve("data.sdf").toFile();
+        Files.write(source.toPath(), new byte[length]);
+        return source;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        File source = source(1000);
+        PingIndex.Builder builder = PingIndex.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add(3501, 1000 + i * 10, i * 100L);
+            builder.add(3502, 1005 + i * 10, i * 100L + 50);
+        }
+        builder.addFrequency(400).addFrequency(900).addFrequency(400).numberOfPackets(200).formatData(-42);
+        File indexFile = folder.resolve("mra/data.sdf.pidx").toFile();
+        builder.write(indexFile, source);
+
+        PingIndex index = PingIndex.open(indexFile);
+        assertEquals(200, index.size());
+        assertEquals(200, index.getNumberOfPackets());
+        assertEquals(-42, index.getFormatData());
+        assertEquals(1000, index.getSourceLength());
+        assertArrayEquals(new int[] { 3501, 3502 }, index.getSubsystems());
+        assertArrayEquals(new double[] { 400, 900 }, index.getFrequencies());
+        assertEquals(100, index.size(3501));
+        assertEquals(0, index.size(20));
+        assertEquals(1000, index.getFirstTimestamp(3501));
+        assertEquals(1990, index.getLastTimestamp(3501));
+        assertEquals(1995, index.getLastTimestamp(3502));
+        assertEquals(-1, index.getFirstTimestamp(20));
+        assertEquals(150, index.getOffset(3502, 1));
+    }
+
+    @Test
+    void testLookups() throws IOException {
+        File source = source(10);
+        PingIndex.Builder builder = PingIndex.builder();
+        // out of order and with repeated timestamps (one entry per channel)
+        builder.add(20, 300, 30).add(20, 100, 10).add(20, 100, 11).add(20, 200, 20).add(20, 200, 21);
+        PingIndex index = builder.write(folder.resolve("test.pidx").toFile(), source);
+
+        assertArrayEquals(new long[] { 100, 200, 300 }, index.getTimestamps(20));
+        assertArrayEquals(new long[] { 20, 21 }, index.getOffsets(20, 200));
+        assertArrayEquals(new long[0], index.getOffsets(20, 150));
+        assertArrayEquals(new long[0], index.getOffsets(21, 200));
+        assertEquals(0, index.ceiling(20, 50));
+        assertEquals(2, index.ceiling(20, 101));
+        assertEquals(4, index.ceiling(20, 300));
+        assertEquals(-1, index.ceiling(20, 301));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.getTimestamp(20, 5));
+    }
+
+    @Test
+    void testReadWithoutMapping() throws IOException {
+        File source = source(1000);
+        File indexFile = folder.resolve("test.pidx").toFile();
+        PingIndex.builder().add(20, 100, 0).add(20, 200, 500).add(21, 150, 250).indexedLength(750)
+                .write(indexFile, source);
+
+        assertEquals(new PingIndex.Header(1000, source.lastModified(), 750), PingIndex.readHeader(indexFile));
+        assertTrue(PingIndex.readHeader(indexFile).isUpToDate(source));
+        PingIndex index = PingIndex.read(indexFile);
+        assertEquals(3, index.size());
+        assertEquals(500, index.getOffset(20, 1));
+        assertEquals(150, index.getTimestamp(21, 0));
+
+        // the copy is not affected by replacing the file
+        PingIndex.builder().add(20, 1, 0).write(indexFile, source(2000));
+        assertEquals(1, PingIndex.open(indexFile).size());
+        assertEquals(3, index.size());
+        assertFalse(PingIndex.readHeader(indexFile).isUpToDate(source(10)));
+
+        File corrupted = folder.resolve("corrupted.pidx").toFile();
+        Files.write(corrupted.toPath(), new byte[10]);
+        assertThrows(IOException.class, () -> PingIndex.readHeader(corrupted));
+    }
+
+    @Test
+    void testValidation() throws IOException {
+        File source = source(10);
+        File indexFile = folder.resolve("test.pidx").toFile();
+        assertNull(PingIndex.openIfValid(indexFile, source));
+
+        PingIndex.builder().add(20, 1, 0).write(indexFile, source);
+        assertNotNull(PingIndex.openIfValid(indexFile, source));
+
+        // edited with the same length
+        assertTrue(source.setLastModified(source.lastModified() - 10_000));
+        assertNull(PingIndex.openIfValid(indexFile, source));
+
+        PingIndex.builder().add(20, 1, 0).write(indexFile, source);
+        assertNotNull(PingIndex.openIfValid(indexFile, source));
+        Files.write(source.toPath(), new byte[20]);
+        assertNull(PingIndex.openIfValid(indexFile, source));
+
+        File corrupted = folder.resolve("corrupted.pidx").toFile();
+        Files.write(corrupted.toPath(), new byte[100]);
+        assertThrows(IOException.class, () -> PingIndex.open(corrupted));
+    }
+}
@@ -0,0 +1,184 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import pt.lsts.neptus.core.SystemPositionAndAttitude;
+
+/**
+ * Unit tests for the time budget and cache of {@link SidescanHistogramNormalizer#create(SidescanParser, File, long)}.
+ */
+class SidescanHistogramNormalizerTest {
+
+    private static final int SAMPLES = 16;
+
+    /**
+     * Parser of constant lines, taking a given time to read each ping of a subsystem
+     */
+    private static class SlowParser implements SidescanParser {
+        private final Map<Integer, Long> readMillis;
+        private final int pings;
+
+        SlowParser(Map<Integer, Long> readMillis, int pings) {
+            this.readMillis = readMillis;
+            this.pings = pings;
+        }
+
+        @Override
+        public SidescanLine readPing(int subsystem, int ping, SidescanParameters config) {
+            try {
+                Thread.sleep(readMillis.get(subsystem));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            double[] data = new double[SAMPLES];
+            Arrays.fill(data, subsystem);
+            return new SidescanLine(ping, 50, new SystemPositionAndAttitude(), 900, data);
+        }
+
+        @Override
+        public int getPingCount(int subsystem) {
+            return pings;
+        }
+
+        @Override
+        public long getPingTimestamp(int subsystem, int ping) {
+            return ping;
+        }
+
+        @Override
+        public ArrayList<Integer> getSubsystemList() {
+            return new ArrayList<>(readMillis.keySet().stream().sorted().toList());
+        }
+
+        @Override
+        public long firstPingTimestamp() {
+            return 0;
+        }
+
+        @Override
+        public long lastPingTimestamp() {
+            return pings - 1;
+        }
+
+        @Override
+        public long firstPingTimestamp(int subsystem) {
+            return 0;
+        }
+
+        @Override
+        public long lastPingTimestamp(int subsystem) {
+            return pings - 1;
+        }
+
+        @Override
+        public ArrayList<SidescanLine> getLinesBetween(long timestamp1, long timestamp2, int subsystem,
+                SidescanParameters config) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public ISidescanLine getLineAtTime(long timestamp, int subsytem, SidescanParameters config) {
+            return readPing(subsytem, (int) timestamp, config);
+        }
+
+        @Override
+        public void cleanup() {
+        }
+
+        @Override
+        public SidescanParameters getDefaultParams() {
+            return new SidescanParameters(0.2, 100);
+        }
+    }
+
+    @Test
+    void testEachSubsystemGetsAShareOfTheBudget(@TempDir File logFolder) {
+        // subsystem 1 alone would take the whole budget
+        SlowParser parser = new SlowParser(Map.of(1, 50L, 2, 0L), 1000);
+        SidescanHistogramNormalizer normalizer = SidescanHistogramNormalizer.create(parser, logFolder, 400);
+        assertNotNull(normalizer.getHistogram(1));
+        assertNotNull(normalizer.getHistogram(2));
+        assertEquals(2, normalizer.getAverage(2), 1e-6);
+    }
+
+    @Test
+    void testCompleteHistogramsAreCached(@TempDir File logFolder) {
+        SlowParser parser = new SlowParser(Map.of(1, 0L), 100);
+        assertTrue(SidescanHistogramNormalizer.create(parser, logFolder, 10_000).isComplete());
+        // no parser needed to read them back
+        SidescanHistogramNormalizer cached = SidescanHistogramNormalizer.create(null, logFolder, 10_000);
+        assertTrue(cached.isComplete());
+        assertEquals(1, cached.getAverage(1), 1e-6);
+        assertEquals(SAMPLES, cached.getHistogram(1).length);
+        assertEquals(List.of(), List.of(new File(logFolder, "mra").list((dir, name) -> name.endsWith(".tmp"))));
+    }
+
+    @Test
+    void testTruncatedHistogramsAreComputedAgain(@TempDir File logFolder) {
+        SidescanHistogramNormalizer truncated = SidescanHistogramNormalizer.create(
+                new SlowParser(Map.of(1, 20L), 1000), logFolder, 100);
+        assertFalse(truncated.isComplete());
+        assertNotNull(truncated.getHistogram(1));
+
+        // used while there is no parser to complete them
+        assertFalse(SidescanHistogramNormalizer.create(null, logFolder, 10_000).isComplete());
+
+        SidescanHistogramNormalizer recomputed = SidescanHistogramNormalizer.create(
+                new SlowParser(Map.of(1, 0L), 1000), logFolder, 10_000);
+        assertTrue(recomputed.isComplete());
+        assertTrue(SidescanHistogramNormalizer.create(null, logFolder, 10_000).isComplete());
+    }
+
+    @Test
+    void testDifferentLogsAreProcessedConcurrently(@TempDir File folder) throws Exception {
+        // each parser waits until the other one is also reading, which only happens if neither call blocks the other
+        CountDownLatch reading = new CountDownLatch(2);
+        AtomicBoolean overlapped = new AtomicBoolean(true);
+        SlowParser parser = new SlowParser(Map.of(1, 0L), 10) {
+            @Override
+            public SidescanLine readPing(int subsystem, int ping, SidescanParameters config) {
+                reading.countDown();
+                try {
+                    if (!reading.await(5, TimeUnit.SECONDS))
+                        overlapped.set(false);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.readPing(subsystem, ping, config);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<SidescanHistogramNormalizer> first = executor.submit(
+                    () -> SidescanHistogramNormalizer.create(parser, new File(folder, "log1"), 10_000));
+            Future<SidescanHistogramNormalizer> second = executor.submit(
+                    () -> SidescanHistogramNormalizer.create(parser, new File(folder, "log2"), 10_000));
+            assertNotNull(first.get().getHistogram(1));
+            assertNotNull(second.get().getHistogram(1));
+            assertTrue(overlapped.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
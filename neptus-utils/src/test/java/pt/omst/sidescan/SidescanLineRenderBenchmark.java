@@ -0,0 +1,78 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import pt.lsts.neptus.colormap.ColorMap;
+import pt.lsts.neptus.colormap.TabulatedColorMap;
+
+/**
+ * Lines/s of building waterfall rows for each color map: histogram normalization followed by a
+ * {@link ColorMap#getColor(double)} and {@link BufferedImage#setRGB(int, int, int)} per pixel (the previous export
+ * path) against {@link SidescanLineRenderer}.
+ */
+public class SidescanLineRenderBenchmark {
+
+    private static final int SAMPLES = 2000;
+    private static final int LINES = 500;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(0);
+        double[][] lines = new double[LINES][SAMPLES];
+        for (double[] line : lines)
+            for (int i = 0; i < SAMPLES; i++)
+                line[i] = random.nextDouble() * (0.2 + i / (double) SAMPLES);
+
+        float[] histogram = new float[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++)
+            histogram[i] = 0.1f + i / (float) SAMPLES;
+        SidescanHistogramNormalizer normalizer = new SidescanHistogramNormalizer();
+        normalizer.setHistogram(0, histogram);
+
+        List<ColorMap> colorMaps = new ArrayList<>(List.of(ColorMap.cmaps));
+        StringBuilder table = new StringBuilder();
+        for (int i = 0; i < 64; i++)
+            table.append(i / 63.0).append(' ').append(Math.sqrt(i / 63.0)).append(' ').append(1 - i / 63.0).append('\n');
+        colorMaps.add(new TabulatedColorMap(new StringReader(table.toString())));
+
+        BufferedImage image = new BufferedImage(SAMPLES, LINES, BufferedImage.TYPE_INT_RGB);
+        for (int run = 0; run < 3; run++) {
+            System.out.println("--- run " + (run + 1));
+            for (ColorMap colorMap : colorMaps) {
+                long start = System.nanoTime();
+                for (int it = 0; it < ITERATIONS; it++) {
+                    for (int row = 0; row < LINES; row++) {
+                        double[] data = normalizer.normalize(lines[row], 0);
+                        for (int i = 0; i < SAMPLES; i++)
+                            image.setRGB(i, row, colorMap.getColor(data[i]).getRGB());
+                    }
+                }
+                long legacy = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                SidescanLineRenderer renderer = new SidescanLineRenderer(colorMap, normalizer, 0);
+                for (int it = 0; it < ITERATIONS; it++) {
+                    for (int row = 0; row < LINES; row++)
+                        renderer.render(lines[row], image, row);
+                }
+                long fused = System.nanoTime() - start;
+
+                System.out.printf("%-40s %,10.0f lines/s -> %,10.0f lines/s (x%.1f)%n", colorMap.getClass()
+                        .getSimpleName() + " " + colorMap, rate(legacy), rate(fused), legacy / (double) fused);
+            }
+        }
+    }
+
+    private static double rate(long nanos) {
+        return LINES * ITERATIONS / (nanos / 1e9);
+    }
+}
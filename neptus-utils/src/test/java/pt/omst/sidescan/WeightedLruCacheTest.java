@@ -0,0 +1,73 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link WeightedLruCache}.
+ */
+class WeightedLruCacheTest {
+
+    private static WeightedLruCache<Integer, byte[]> cache(long maxWeight) {
+        return new WeightedLruCache<>(maxWeight, value -> value.length);
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedByWeight() {
+        WeightedLruCache<Integer, byte[]> cache = cache(100);
+        cache.put(1, new byte[40]);
+        cache.put(2, new byte[40]);
+        assertNotNull(cache.get(1)); // 2 is now the least recently used
+        cache.put(3, new byte[40]);
+
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+
+        WeightedLruCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.size());
+        assertEquals(80, stats.weight());
+        assertEquals(1, stats.evictions());
+        assertEquals(3, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.75, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    void testReplaceAndOversizedValues() {
+        WeightedLruCache<Integer, byte[]> cache = cache(100);
+        cache.put(1, new byte[40]);
+        cache.put(1, new byte[60]);
+        assertEquals(60, cache.getStats().weight());
+        assertEquals(1, cache.size());
+
+        // heavier than the whole budget: not cached and the previous value is dropped
+        cache.put(1, new byte[101]);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getStats().weight());
+    }
+
+    @Test
+    void testShrinkingBudget() {
+        WeightedLruCache<Integer, byte[]> cache = cache(100);
+        for (int i = 0; i < 5; i++)
+            cache.put(i, new byte[20]);
+        assertEquals(5, cache.size());
+
+        cache.setMaxWeight(50);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(3));
+        assertNotNull(cache.get(4));
+        assertEquals(3, cache.getStats().evictions());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getStats().weight());
+    }
+}
@@ -0,0 +1,89 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan.jsf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Measures the decode throughput (samples/s) of {@link JsfSonarData#parseData} against the previous per byte
+ * decoding, for port (reversed) and starboard pings held in memory. Both decode into arrays that are reused between
+ * pings, so that only decoding is measured (allocating the sample arrays otherwise dominates).
+ */
+public class JsfDecodeBenchmark {
+
+    private static final int PINGS = 256;
+    private static final int SAMPLES = 8000;
+    private static final int ITERATIONS = 100;
+    private static final short FACTOR = 3;
+
+    public static void main(String[] args) {
+        ByteBuffer[] pings = new ByteBuffer[PINGS];
+        for (int p = 0; p < PINGS; p++) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(2 * SAMPLES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int s = 0; s < SAMPLES; s++)
+                buf.putShort(s * 2, (short) (s * 13 + p)); // also above 2^15 when unsigned
+            pings[p] = buf;
+        }
+        JsfSonarData[] channels = new JsfSonarData[2];
+        for (byte channel = 0; channel < 2; channel++) {
+            JsfHeader header = new JsfHeader();
+            header.setChannel(channel);
+            channels[channel] = new JsfSonarData();
+            channels[channel].setHeader(header);
+            channels[channel].setNumberOfSamples(SAMPLES);
+            channels[channel].setFactor(FACTOR);
+        }
+        double[] legacyData = new double[SAMPLES];
+
+        for (int run = 0; run < 5; run++) {
+            System.out.println("--- run " + (run + 1));
+
+            long start = System.nanoTime();
+            double sum = 0;
+            for (int it = 0; it < ITERATIONS; it++) {
+                for (int p = 0; p < PINGS; p++) {
+                    legacyDecode(pings[p], legacyData, FACTOR, p % 2);
+                    sum += legacyData[it % SAMPLES];
+                }
+            }
+            report("legacy", System.nanoTime() - start, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (int it = 0; it < ITERATIONS; it++) {
+                for (int p = 0; p < PINGS; p++) {
+                    JsfSonarData ping = channels[p % 2];
+                    ping.parseData(pings[p]);
+                    sum += ping.getData()[it % SAMPLES];
+                }
+            }
+            report("current", System.nanoTime() - start, sum);
+        }
+    }
+
+    /**
+     * The previous implementation of JsfSonarData.parseData
+     */
+    private static void legacyDecode(ByteBuffer buf, double[] data, short factor, int channel) {
+        int numberOfSamples = data.length;
+        double w = Math.pow(2, -factor);
+        for (int i = 0; i < numberOfSamples * 2; i += 2) {
+            int s = ((buf.get(i + 1) & 0xFF) << 8) + (buf.get(i) & 0xFF);
+            double d = s * w;
+            if (channel == 0)
+                data[numberOfSamples - (i / 2) - 1] = d;
+            else
+                data[i / 2] = d;
+        }
+    }
+
+    private static void report(String name, long nanos, double checksum) {
+        long samples = (long) SAMPLES * PINGS * ITERATIONS;
+        System.out.printf("%-7s %,12d samples in %7.1f ms: %,14.0f samples/s  (%.1f)%n", name, samples, nanos / 1e6,
+                samples / (nanos / 1e9), checksum);
+    }
+}
@@ -0,0 +1,97 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan.sdf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Measures the decode throughput (samples/s) of {@link SdfData#parseData} against the previous per sample decoding,
+ * using in memory data sections so that only decoding is measured.
+ */
+public class SdfDecodeBenchmark {
+
+    private static final int PINGS = 256;
+    private static final int SAMPLES = 4000;
+    private static final int ITERATIONS = 100;
+
+    public static void main(String[] args) {
+        ByteBuffer[] pings = new ByteBuffer[PINGS];
+        for (int p = 0; p < PINGS; p++) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(12 + 8 * SAMPLES).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(4, SAMPLES);
+            buf.putInt(8 + 4 * SAMPLES, SAMPLES);
+            for (int s = 0; s < SAMPLES; s++) {
+                buf.putInt(8 + s * 4, s * 31 + p);
+                buf.putInt(12 + SAMPLES * 4 + s * 4, -(s * 17 + p)); // above 2^31 when unsigned
+            }
+            pings[p] = buf;
+        }
+        SdfHeader header = new SdfHeader();
+        header.setNumSamples(SAMPLES);
+
+        for (int run = 0; run < 5; run++) {
+            System.out.println("--- run " + (run + 1));
+
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int it = 0; it < ITERATIONS; it++) {
+                for (ByteBuffer buf : pings) {
+                    long[][] data = legacyDecode(buf, SAMPLES);
+                    sum += data[0][it % SAMPLES] + data[1][it % SAMPLES];
+                }
+            }
+            report("legacy", System.nanoTime() - start, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (int it = 0; it < ITERATIONS; it++) {
+                for (ByteBuffer buf : pings) {
+                    SdfData ping = new SdfData();
+                    ping.setHeader(header);
+                    ping.parseData(buf);
+                    sum += ping.getPortSample(it % SAMPLES) + ping.getStbdSample(it % SAMPLES);
+                }
+            }
+            report("bulk", System.nanoTime() - start, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            SdfData reused = new SdfData();
+            reused.setHeader(header);
+            for (int it = 0; it < ITERATIONS; it++) {
+                for (ByteBuffer buf : pings) {
+                    reused.parseData(buf);
+                    sum += reused.getPortSample(it % SAMPLES) + reused.getStbdSample(it % SAMPLES);
+                }
+            }
+            report("reused", System.nanoTime() - start, sum);
+        }
+    }
+
+    /**
+     * The previous implementation of SdfData.parseData
+     */
+    private static long[][] legacyDecode(ByteBuffer buf, int numSamples) {
+        long[] portData = new long[numSamples];
+        long[] stbdData = new long[numSamples];
+        int index = 8;
+        int index2 = (numSamples * 4) + 12;
+        for (int i = 0; i < numSamples; i++) {
+            portData[i] = buf.getInt(index) & 0xffffffffL;
+            stbdData[i] = buf.getInt(index2) & 0xffffffffL;
+            index += 4;
+            index2 += 4;
+        }
+        return new long[][] { portData, stbdData };
+    }
+
+    private static void report(String name, long nanos, long checksum) {
+        long samples = 2L * SAMPLES * PINGS * ITERATIONS;
+        System.out.printf("%-7s %,12d samples in %7.1f ms: %,14.0f samples/s  (%d)%n", name, samples, nanos / 1e6,
+                samples / (nanos / 1e9), checksum);
+    }
+}
@@ -0,0 +1,139 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan.sdf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import pt.omst.sidescan.PingIndex;
+
+/**
+ * Compares opening a serialized {@link SdfIndex} with opening the binary {@link PingIndex} for a synthetic
+ * 2M-ping file (1M pings per subsystem). Run with a fixed heap (e.g. -Xmx2g) for comparable results.
+ */
+public class SdfIndexBenchmark {
+
+    private static final int PINGS = 2_000_000;
+    private static final int LOOKUPS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        File folder = Files.createTempDirectory("sdfindex").toFile();
+        File source = new File(folder, "mission.sdf");
+        try (RandomAccessFile raf = new RandomAccessFile(source, "rw")) {
+            raf.setLength(PINGS * 16_384L); // sparse file, only the length matters
+        }
+        File legacyFile = new File(folder, "mra/sdfmission.sdf.index");
+        File indexFile = new File(folder, "mra/sdfmission.sdf.pidx");
+        legacyFile.getParentFile().mkdirs();
+
+        // Same layout as the old generateIndex(): interleaved low/high pings, 1 entry per timestamp
+        SdfIndex legacy = new SdfIndex();
+        PingIndex.Builder builder = PingIndex.builder();
+        long t0 = 1_700_000_000_000L;
+        for (int i = 0; i < PINGS; i++) {
+            long timestamp = t0 + i * 33L;
+            long position = i * 16_384L;
+            int subsystem = i % 2 == 0 ? SdfParser.SUBSYS_LOW : SdfParser.SUBSYS_HIGH;
+            ArrayList<Long> positions = new ArrayList<>();
+            positions.add(position);
+            if (subsystem == SdfParser.SUBSYS_LOW)
+                legacy.positionMapLow.put(timestamp, positions);
+            else
+                legacy.positionMapHigh.put(timestamp, positions);
+            builder.add(subsystem, timestamp, position);
+        }
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(legacyFile))) {
+            out.writeObject(legacy);
+        }
+        long start = System.nanoTime();
+        builder.numberOfPackets(PINGS).write(indexFile, source);
+        System.out.printf("binary index written in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        legacy = null;
+        builder = null;
+
+        System.out.printf("legacy index: %,d bytes, binary index: %,d bytes%n", legacyFile.length(),
+                indexFile.length());
+
+        for (int run = 0; run < 3; run++) {
+            System.out.println("--- run " + (run + 1));
+            benchmarkLegacy(legacyFile);
+            benchmarkBinary(indexFile);
+        }
+
+        legacyFile.delete();
+        indexFile.delete();
+        source.delete();
+        new File(folder, "mra").delete();
+        folder.delete();
+    }
+
+    private static void benchmarkLegacy(File legacyFile) throws Exception {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        SdfIndex index;
+        Long[] tslist;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(legacyFile))) {
+            index = (SdfIndex) in.readObject();
+        }
+        // what the old loadIndex() did after reading the object
+        tslist = index.positionMapLow.keySet().toArray(new Long[] {});
+        Arrays.sort(tslist);
+        long openTime = System.nanoTime() - start;
+        long heap = usedHeap() - heapBefore;
+
+        Random random = new Random(0);
+        long sum = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            int pos = Arrays.binarySearch(tslist, tslist[random.nextInt(tslist.length)] + 1);
+            long ts = tslist[Math.min(-(pos + 1), tslist.length - 1)];
+            sum += index.positionMapLow.get(ts).getFirst();
+        }
+        long lookupTime = System.nanoTime() - start;
+        report("legacy", openTime, heap, lookupTime, sum);
+    }
+
+    private static void benchmarkBinary(File indexFile) throws IOException {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        PingIndex index = PingIndex.open(indexFile);
+        long openTime = System.nanoTime() - start;
+        long heap = usedHeap() - heapBefore;
+
+        int count = index.size(SdfParser.SUBSYS_LOW);
+        Random random = new Random(0);
+        long sum = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            long timestamp = index.getTimestamp(SdfParser.SUBSYS_LOW, random.nextInt(count)) + 1;
+            int entry = Math.min(index.ceiling(SdfParser.SUBSYS_LOW, timestamp), count - 1);
+            sum += index.getOffset(SdfParser.SUBSYS_LOW, entry < 0 ? count - 1 : entry);
+        }
+        long lookupTime = System.nanoTime() - start;
+        report("binary", openTime, heap, lookupTime, sum);
+    }
+
+    private static void report(String name, long openNanos, long heapBytes, long lookupNanos, long checksum) {
+        System.out.printf("%-7s open: %7.1f ms  heap: %7.1f MB  %d lookups: %6.1f ms  (%d)%n", name,
+                openNanos / 1e6, heapBytes / (1024.0 * 1024.0), LOOKUPS, lookupNanos / 1e6, checksum);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
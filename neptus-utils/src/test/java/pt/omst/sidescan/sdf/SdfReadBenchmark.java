@@ -0,0 +1,145 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan.sdf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import pt.omst.sidescan.PingIndex;
+import pt.omst.sidescan.SidescanLine;
+
+/**
+ * Compares reading every ping of a synthetic SDF file by reopening and mapping the file for each ping (what
+ * getPingAtPosition used to do) with reading through the shared channels and segment mappings of {@link SdfParser}.
+ * Also reports the lines/s of {@link SdfSidescanParser#getLinesBetween}, which includes converting to sidescan lines,
+ * of converting with a reused line buffer and of converting from several threads sharing the same parser.
+ */
+public class SdfReadBenchmark {
+
+    private static final int PAGES = 50_000;
+    private static final int SAMPLES = 1000;
+
+    private static int threads;
+    private static ExecutorService executor;
+
+    public static void main(String[] args) throws Exception {
+        File folder = Files.createTempDirectory("sdfread").toFile();
+        File source = new File(folder, "mission.sdf");
+        long t0 = 1_700_000_000_000L;
+        SyntheticSdf.write(source, PAGES, SAMPLES, t0);
+        System.out.printf("%,d bytes, %,d pages%n", source.length(), PAGES);
+
+        SdfSidescanParser sidescanParser = new SdfSidescanParser(new File[] { source }, null);
+        SdfParser parser = new SdfParser(new File[] { source }, null);
+        PingIndex index = parser.getIndex().getFirst();
+        int subsystem = SdfParser.SUBSYS_HIGH;
+        threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        executor = Executors.newFixedThreadPool(threads);
+
+        for (int run = 0; run < 3; run++) {
+            System.out.println("--- run " + (run + 1));
+
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < index.size(subsystem); i++)
+                sum += reopenAndMap(source, index.getOffset(subsystem, i)).getStbdSample(0);
+            report("reopen", index.size(subsystem), System.nanoTime() - start, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (int i = 0; i < parser.getPingCount(subsystem); i++)
+                sum += parser.readPing(subsystem, i).getStbdSample(0);
+            report("pooled", parser.getPingCount(subsystem), System.nanoTime() - start, sum);
+
+            start = System.nanoTime();
+            ArrayList<SidescanLine> lines = sidescanParser.getLinesBetween(sidescanParser.firstPingTimestamp(),
+                    sidescanParser.lastPingTimestamp(), subsystem, sidescanParser.getDefaultParams());
+            report("lines", lines.size(), System.nanoTime() - start, lines.size());
+
+            start = System.nanoTime();
+            sum = 0;
+            double[] buffer = new double[SAMPLES * 2];
+            for (int i = 0; i < sidescanParser.getPingCount(subsystem); i++)
+                sum += (long) sidescanParser.readPing(subsystem, i, sidescanParser.getDefaultParams(), buffer)
+                        .getData()[SAMPLES * 2 - 1];
+            report("reused", sidescanParser.getPingCount(subsystem), System.nanoTime() - start, sum);
+
+            start = System.nanoTime();
+            sum = parallelLines(sidescanParser, subsystem, threads);
+            report("x" + threads, sidescanParser.getPingCount(subsystem), System.nanoTime() - start, sum);
+        }
+        executor.shutdown();
+
+        parser.cleanup();
+        sidescanParser.cleanup();
+        for (File file : new File(folder, "mra").listFiles())
+            file.delete();
+        new File(folder, "mra").delete();
+        source.delete();
+        folder.delete();
+    }
+
+    /**
+     * The previous implementation of SdfParser.getPingAtPosition
+     */
+    private static SdfData reopenAndMap(File file, long pos) throws Exception {
+        try (FileInputStream fis = new FileInputStream(file); FileChannel channel = fis.getChannel()) {
+            SdfHeader header = new SdfHeader();
+            SdfData ping = new SdfData();
+
+            ByteBuffer buf = channel.map(MapMode.READ_ONLY, pos, 512);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            header.parse(buf);
+            pos += header.getHeaderSize();
+
+            ping.setHeader(header);
+            ping.calculateTimeStamp(false);
+
+            int dataSize = header.getNumberBytes() - header.getHeaderSize() - header.getSDFExtensionSize() + 4;
+            buf = channel.map(MapMode.READ_ONLY, pos, dataSize);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            ping.parseData(buf);
+            return ping;
+        }
+    }
+
+    /**
+     * Converts all pings of a subsystem, each thread taking an interleaved share of them
+     */
+    private static long parallelLines(SdfSidescanParser parser, int subsystem, int threads) throws Exception {
+        int count = parser.getPingCount(subsystem);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            results.add(executor.submit(() -> {
+                long sum = 0;
+                for (int i = first; i < count; i += threads)
+                    sum += (long) parser.readPing(subsystem, i, parser.getDefaultParams())
+                            .getData()[SAMPLES * 2 - 1];
+                return sum;
+            }));
+        }
+        long sum = 0;
+        for (Future<Long> result : results)
+            sum += result.get();
+        return sum;
+    }
+
+    private static void report(String name, int pings, long nanos, long checksum) {
+        System.out.printf("%-7s %,8d pings in %7.1f ms: %,10.0f pings/s  (%d)%n", name, pings, nanos / 1e6,
+                pings / (nanos / 1e9), checksum);
+    }
+}
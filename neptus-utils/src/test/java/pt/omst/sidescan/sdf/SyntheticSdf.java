@@ -0,0 +1,71 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan.sdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * Writes synthetic SDF files for benchmarks.
+ * <p>
+ * Pages alternate between {@link SdfParser#SUBSYS_LOW} and {@link SdfParser#SUBSYS_HIGH} pings, 50 ms apart, and
+ * every 10th page has an unknown page version (ignored by the parser). Sample values are a function of the sample and
+ * page number, so decoded data can be checked.
+ */
+class SyntheticSdf {
+
+    static final int PING_INTERVAL_MILLIS = 50;
+
+    /**
+     * @param file the file to (over)write
+     * @param pages number of pages
+     * @param samples samples per channel
+     * @param startMillis timestamp of the first page
+     */
+    static void write(File file, int pages, int samples, long startMillis) throws IOException {
+        int numberBytes = 520 + 8 * samples;
+        ByteBuffer page = ByteBuffer.allocate(numberBytes + 4).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < pages; i++) {
+                int pageVersion = i % 10 == 9 ? 3000 : (i % 2 == 0 ? SdfParser.SUBSYS_LOW : SdfParser.SUBSYS_HIGH);
+                ZonedDateTime time = Instant.ofEpochMilli(startMillis + i * (long) PING_INTERVAL_MILLIS)
+                        .atZone(ZoneOffset.UTC);
+
+                page.clear();
+                page.putInt(4, numberBytes);
+                page.putInt(8, pageVersion);
+                page.putInt(16, i);
+                page.putInt(20, samples);
+                page.putInt(32, 50);
+                page.putInt(72, time.getYear());
+                page.putInt(76, time.getMonthValue());
+                page.putInt(80, time.getDayOfMonth());
+                page.putInt(84, time.getHour());
+                page.putInt(88, time.getMinute());
+                page.putInt(92, time.getSecond());
+                page.putInt(96, time.getNano() / 10_000_000);
+                page.putInt(184, 512);
+                page.putInt(408, pageVersion == SdfParser.SUBSYS_LOW ? 100 : 400);
+
+                page.putInt(512 + 4, samples);
+                for (int s = 0; s < samples; s++) {
+                    page.putInt(512 + 8 + s * 4, s + i);
+                    page.putInt(512 + 12 + samples * 4 + s * 4, 2 * s + i);
+                }
+                while (page.hasRemaining())
+                    channel.write(page);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.sidescan.sds;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import pt.omst.sidescan.PingIndex;
+import pt.omst.sidescan.sds.SdsParser.SdsTag;
+
+/**
+ * Unit tests for the SYNC pattern search and the index of {@link SdsParser}, on synthetic SDS packets.
+ */
+class SdsParserTest {
+
+    private static final byte[] SYNC_PATTERN = { 0x43, 0x4E, 0x59, 0x53, (byte) 0xAA, (byte) 0xAA, (byte) 0xAA };
+    private static final long REFERENCE_SECONDS = 1_700_000_000L;
+    // clock of the SYNC packet at the start of the files, in milliseconds since the system started
+    private static final long SYNC_MILLIS = 1000;
+    private static final int SNR2 = (int) SdsTag.SNR2.getTag();
+
+    /**
+     * Bytes of a packet: 16 byte header (size, timestamp, tag, 3 misc bytes and checksum) and payload
+     */
+    private static byte[] packet(SdsTag tag, long timestampMs, byte[] payload) {
+        ByteBuffer buf = ByteBuffer.allocate(16 + payload.length).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(payload.length).putInt((int) timestampMs).putInt((int) tag.getTag());
+        byte misc = tag == SdsTag.SYNC ? (byte) 0xAA : 0;
+        buf.put(misc).put(misc).put(misc);
+        byte checksum = 0;
+        for (int i = 0; i < 15; i++)
+            checksum += buf.get(i);
+        buf.put(checksum).put(payload);
+        return buf.array();
+    }
+
+    private static byte[] sync(long timestampMs) {
+        ByteBuffer payload = ByteBuffer.allocate(6).order(ByteOrder.LITTLE_ENDIAN);
+        payload.putInt((int) (REFERENCE_SECONDS + (timestampMs - SYNC_MILLIS) / 1000)).putShort((short) 1);
+        return packet(SdsTag.SYNC, timestampMs, payload.array());
+    }
+
+    private static byte[] ping(long timestampMs, int pingNumber) {
+        // no channels, the index only needs the headers
+        ByteBuffer payload = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        payload.put((byte) 0).putInt(pingNumber).putFloat(1500);
+        return packet(SdsTag.SNR2, timestampMs, payload.array());
+    }
+
+    private static long epochMillis(long timestampMs) {
+        return REFERENCE_SECONDS * 1000 + timestampMs - SYNC_MILLIS;
+    }
+
+    private static File indexFile(File file) {
+        return new File(file.getParentFile(), "mra/sds" + file.getName() + ".pidx");
+    }
+
+    private static PingIndex index(File file) throws Exception {
+        new SdsParser().parse(file);
+        return PingIndex.read(indexFile(file));
+    }
+
+    @Test
+    void testSyncPatternAtEveryAlignment() {
+        for (byte filler : new byte[] { 0, 0x43, (byte) 0xAA }) {
+            for (int size : new int[] { 7, 8, 15, 16, 64 }) {
+                for (int pos = 0; pos + SYNC_PATTERN.length <= size; pos++) {
+                    ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+                    Arrays.fill(buf.array(), filler);
+                    buf.put(pos, SYNC_PATTERN);
+                    int to = size - SYNC_PATTERN.length + 1;
+                    String message = "filler " + filler + ", size " + size + ", position " + pos;
+                    assertEquals(pos, SdsParser.indexOfSyncPattern(buf, 0, to), message);
+                    assertEquals(pos, SdsParser.indexOfSyncPattern(buf, pos, to), message);
+                    assertEquals(-1, SdsParser.indexOfSyncPattern(buf, pos + 1, to), message);
+                    assertEquals(-1, SdsParser.indexOfSyncPattern(buf, 0, pos), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testIncompleteSyncPatterns() {
+        ByteBuffer buf = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        Arrays.fill(buf.array(), (byte) 0x43);
+        for (int length = 1; length < SYNC_PATTERN.length; length++) {
+            // prefixes of the pattern, in the middle of the buffer and cut by its end
+            buf.put(20, SYNC_PATTERN, 0, length);
+            buf.put(buf.limit() - length, SYNC_PATTERN, 0, length);
+            assertEquals(-1, SdsParser.indexOfSyncPattern(buf, 0, buf.limit() - SYNC_PATTERN.length + 1));
+        }
+        buf.put(40, SYNC_PATTERN);
+        buf.put(40 + SYNC_PATTERN.length - 1, (byte) 0xAB);
+        assertEquals(-1, SdsParser.indexOfSyncPattern(buf, 0, buf.limit() - SYNC_PATTERN.length + 1));
+    }
+
+    @Test
+    void testRecoveryAfterCorruptHeaders(@TempDir File folder) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(sync(SYNC_MILLIS));
+        long first = out.size();
+        out.writeBytes(ping(1100, 1));
+        long second = out.size();
+        out.writeBytes(ping(1200, 2));
+        // a ping with a wrong checksum and a SYNC pattern whose header has a wrong checksum
+        byte[] corrupt = ping(1300, 3);
+        corrupt[15]++;
+        out.writeBytes(corrupt);
+        byte[] invalidSync = sync(1350);
+        invalidSync[15]++;
+        out.writeBytes(invalidSync);
+        out.writeBytes(new byte[] { 1, 2, 3 });
+        long resync = out.size();
+        out.writeBytes(sync(2000));
+        long third = out.size();
+        out.writeBytes(ping(2100, 4));
+        File file = new File(folder, "data.sds");
+        Files.write(file.toPath(), out.toByteArray());
+
+        PingIndex index = index(file);
+        assertEquals(3, index.size(SNR2));
+        assertArrayEquals(new long[] { epochMillis(1100), epochMillis(1200), epochMillis(2100) },
+                index.getTimestamps(SNR2));
+        assertArrayEquals(new long[] { first, second, third },
+                new long[] { index.getOffset(SNR2, 0), index.getOffset(SNR2, 1), index.getOffset(SNR2, 2) });
+        int sync = (int) SdsTag.SYNC.getTag();
+        assertEquals(1, index.size(sync));
+        assertEquals(resync, index.getOffset(sync, 0));
+        assertEquals(file.length(), index.getIndexedLength());
+    }
+
+    @Test
+    void testResumedIndexIsTheSameAsFullIndex(@TempDir File folder) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(sync(SYNC_MILLIS));
+        long[] offsets = new long[200];
+        for (int i = 0; i < offsets.length; i++) {
+            if (i == 100)
+                out.writeBytes(sync(SYNC_MILLIS + 1000 + i * 100));
+            offsets[i] = out.size();
+            out.writeBytes(ping(SYNC_MILLIS + 50 + i * 100, i));
+        }
+        byte[] bytes = out.toByteArray();
+        // the file is being written: the last packet is incomplete
+        int cut = (int) offsets[150] + 10;
+        File file = new File(folder, "data.sds");
+        Files.write(file.toPath(), Arrays.copyOf(bytes, cut));
+        PingIndex partial = index(file);
+        assertEquals(150, partial.size(SNR2));
+        assertEquals(offsets[150], partial.getIndexedLength());
+
+        Files.write(file.toPath(), Arrays.copyOfRange(bytes, cut, bytes.length), StandardOpenOption.APPEND);
+        List<String> messages = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(SdsParser.class.getName());
+        logger.addHandler(handler);
+        PingIndex resumed;
+        try {
+            resumed = index(file);
+        } finally {
+            logger.removeHandler(handler);
+        }
+        assertTrue(messages.stream().anyMatch(m -> m.startsWith("Updating SDS index")), messages.toString());
+
+        Files.delete(indexFile(file).toPath());
+        PingIndex full = index(file);
+        assertEquals(200, full.size(SNR2));
+        assertEquals(full.getIndexedLength(), resumed.getIndexedLength());
+        assertEquals(full.getNumberOfPackets(), resumed.getNumberOfPackets());
+        assertEquals(full.getFormatData(), resumed.getFormatData());
+        assertArrayEquals(full.getSubsystems(), resumed.getSubsystems());
+        for (int subsystem : full.getSubsystems()) {
+            assertEquals(full.size(subsystem), resumed.size(subsystem));
+            for (int i = 0; i < full.size(subsystem); i++) {
+                assertEquals(full.getTimestamp(subsystem, i), resumed.getTimestamp(subsystem, i));
+                assertEquals(full.getOffset(subsystem, i), resumed.getOffset(subsystem, i));
+            }
+        }
+        for (int i = 0; i < offsets.length; i++)
+            assertEquals(offsets[i], full.getOffset(SNR2, i));
+    }
+}
@@ -27,6 +27,7 @@ import lombok.extern.slf4j.Slf4j;
 public class RasterfallPreferences {
 
     private static final String PREF_RENDER_QUALITY = "render.quality";
+    private static final String PREF_TILE_MEMORY = "tiles.memory";
     public static final String PREF_CONTACT_NAME = "contact.name";
     public static final String PREF_CAMPAIGN_NAME = "campaign.name";
     public static final String PREF_SYSTEM_NAME = "system.name";
@@ -165,6 +166,30 @@ public class RasterfallPreferences {
         }
     }
 
+    /**
+     * Gets the memory budget for the images of the waterfall tiles (see {@link TileResidencyManager}).
+     * 
+     * @return the budget in megabytes, by default a quarter of the maximum heap up to 512 MB
+     */
+    public static long getTileMemoryMb() {
+        long defaultMb = Math.min(512, Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024));
+        return prefs.getLong(PREF_TILE_MEMORY, defaultMb);
+    }
+
+    /**
+     * Sets the memory budget for the images of the waterfall tiles.
+     * 
+     * @param megabytes the budget in megabytes
+     */
+    public static void setTileMemoryMb(long megabytes) {
+        prefs.putLong(PREF_TILE_MEMORY, megabytes);
+        try {
+            prefs.flush();
+        } catch (Exception e) {
+            log.error("Error flushing preferences", e);
+        }
+    }
+
     /**
      * Get the contact name preference. This is the prefix used when creating new contacts.
      * Uses mission-specific preferences if available, otherwise falls back to global preferences.
@@ -90,6 +90,7 @@ public class RasterfallReplay implements LogReplay.Listener, Closeable {
             timer.scheduleAtFixedRate(createTimerTask(), 0, millisBetweenUpdates);
         }
         log.info("Replay state changed: realTime={}, replayTime={}, speed={}X", realTime, replayTime, speed);
+        updatePrefetch();
         goToTime(this.replayTime);
         
     }
@@ -102,6 +103,7 @@ public class RasterfallReplay implements LogReplay.Listener, Closeable {
 
         this.speed = 0;
         this.replayTime = replayTime;
+        updatePrefetch();
         //scrollbar.scrollToTime(replayTime, true);
         LogReplay.setReplayState(Instant.ofEpochMilli(realTime), Instant.ofEpochMilli(replayTime), 0);
     }
@@ -116,6 +118,14 @@ public class RasterfallReplay implements LogReplay.Listener, Closeable {
         LogReplay.setReplayState(Instant.ofEpochMilli(realTime), Instant.ofEpochMilli(replayTime), speed);
     }
 
+    /**
+     * Lets the waterfall prefetch the tiles the replay is moving to (forward in time is up in the waterfall)
+     */
+    private void updatePrefetch() {
+        double pixelsPerSecond = totalDuration <= 0 ? 0 : -speed * waterfall.getHeight() * 1000.0 / totalDuration;
+        waterfall.getResidency().setReplayVelocity(pixelsPerSecond);
+    }
+
     public void cleanup() {
         if (timer != null) {
             timer.cancel();
@@ -14,13 +14,16 @@ import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
+import java.awt.image.DataBuffer;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import javax.imageio.ImageIO;
 import javax.swing.JPanel;
@@ -29,18 +32,32 @@ import javax.swing.SwingConstants;
 
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import pt.lsts.neptus.colormap.ColorMap;
 import pt.lsts.neptus.core.LocationType;
 import pt.omst.rasterlib.IndexedRaster;
 import pt.omst.rasterlib.IndexedRasterUtils;
+import pt.omst.rasterlib.IntensityRaster;
 import pt.omst.rasterlib.Pose;
-import pt.omst.rasterlib.SampleDescription;
+import pt.omst.rasterlib.RasterPyramid;
+import pt.omst.rasterlib.SampleColumns;
 
 @Slf4j
 public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>, Scrollable, Closeable {
 
     private final IndexedRaster raster;
+    // the samples of the raster, read without going through sample objects
+    private final SampleColumns samples;
 
     private BufferedImage image = null;
+    // smallest overview of the raster, drawn while the image is loading
+    private BufferedImage preview = null;
+    // incremented when loading is cancelled, so that tasks started before don't set their images
+    private int loadGeneration = 0;
+    // true while loadingTask is a prefetch that did not start yet
+    private boolean prefetchQueued = false;
+    /** Called (on a background thread) after the image of this tile is loaded */
+    @Setter
+    private Consumer<RasterfallTile> loadListener = null;
     private final double heightProportition;
     private final int screenWidth = 0;
     private final File folder;
@@ -50,6 +67,10 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
     private double leftMargin = 0;
 
     private BufferedImageOp imageFilter = null;
+    // intensities of the raster, kept once a color map is set so that later changes don't read them again
+    private BufferedImage intensities = null;
+    // colors of each intensity (shared with other tiles) or null to show the colorized image of the raster
+    private int[] intensityColors = null;
 
     private static final BufferedImage loadingImage = new BufferedImage(1000, 100, BufferedImage.TYPE_INT_ARGB);
     static {
@@ -62,7 +83,7 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
     public long getTimestamp(int x, int y) {
         int index = (int)(((float)y/getHeight()) * getSamplesCount());
         index = getSamplesCount()-index-1;
-        return raster.getSamples().get(index).getTimestamp().toInstant().toEpochMilli();
+        return samples.getTimestamp(index);
     }
 
     public double getRange(double x) {
@@ -70,11 +91,52 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
         return ((x - getWidth()/2.0) / getWidth()) * worldWidth;
     }
 
-    public void setFilter(BufferedImageOp filter) {
+    public synchronized void setFilter(BufferedImageOp filter) {
         this.imageFilter = filter;
-        this.image = null;
-        this.image = getImage();
+        reload();
+        repaint();
+    }
+
+    /**
+     * Colors this tile from the intensities of its raster (see {@link IntensityRaster}) instead of showing its
+     * colorized image. After the first call intensities stay in memory, so changing colors is immediate.
+     * @param colors color of each intensity, as created by {@link IntensityRaster#createLut(ColorMap, double, double)}
+     *               for the intensity maximum of this raster (usually shared by all tiles, see
+     *               {@link RasterfallTiles#setColorMap(ColorMap, double)}), or null to show the colorized image again
+     * @return false if the raster was exported without intensities (the tile is not changed)
+     */
+    public synchronized boolean setIntensityColors(int[] colors) {
+        if (!IntensityRaster.hasIntensities(raster))
+            return false;
+        if (colors == intensityColors)
+            return true;
+        intensityColors = colors;
+        if (colors == null) {
+            intensities = null;
+            reload();
+        }
+        else if (intensities != null) {
+            image = colorize(intensities, colors, imageFilter);
+        }
+        else {
+            reload();
+        }
         repaint();
+        return true;
+    }
+
+    // reads the image again if it is in memory, tiles that are not apply their colors when they are loaded
+    private void reload() {
+        boolean loaded = image != null || loadingTask != null;
+        cancelLoading();
+        image = null;
+        if (loaded)
+            getImage();
+    }
+
+    private static BufferedImage colorize(BufferedImage intensities, int[] colors, BufferedImageOp filter) {
+        BufferedImage colored = IntensityRaster.colorize(intensities, colors);
+        return filter == null ? colored : filter.filter(colored, null);
     }
 
     public Point2D.Double getSlantedRangePosition(double slantRange) {
@@ -89,18 +151,14 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
     }
 
     public Point2D.Double getSlantedRangePosition(Instant timestamp, double slantRange) {
-        if (timestamp.isBefore(getStartTime().toInstant()))
+        long millis = timestamp.toEpochMilli();
+        if (millis < getStartMillis())
             return null;
-        if (timestamp.isAfter(getEndTime().toInstant()))
+        if (millis > getEndMillis())
             return null;
         
         // Find the sample index for this timestamp
-        int index = 0;
-        for (SampleDescription sample : raster.getSamples()) {
-            if (sample.getTimestamp().toInstant().isAfter(timestamp))
-                break;
-            index++;
-        }
+        int index = samples.countUntil(millis);
         
         double xx = slantRange + getRange();
 
@@ -118,18 +176,13 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
     }
 
     public Point2D.Double getGroundPosition(Instant timestamp, double slantRange) {
-        if (timestamp.isBefore(getStartTime().toInstant()))
+        long millis = timestamp.toEpochMilli();
+        if (millis < getStartMillis())
             return null;
-        if (timestamp.isAfter(getEndTime().toInstant()))
+        if (millis > getEndMillis())
             return null;
-        int index = 0;
-        for (SampleDescription sample : raster.getSamples()) {
-            if (sample.getTimestamp().toInstant().isAfter(timestamp))
-                break;
-            index++;
-        }
-        Pose pose = getPose(index);
-        double altitude = pose.getAltitude();
+        int index = samples.countUntil(millis);
+        double altitude = samples.getAltitude(index);
         double groundRange = Math.sqrt(slantRange*slantRange - altitude*altitude);
         double xx = (groundRange + getRange()) / (getRange()*2) * getWidth();
         double yy = (getSamplesCount() - index) / (double)getSamplesCount() * getHeight();
@@ -141,9 +194,10 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
         this.raster = raster;
         double worldWidth = raster.getSensorInfo().getMaxRange() * 2;
         double worldHeight = 0;
-        double speed = raster.getSamples().stream().collect(Collectors.averagingDouble(sample -> sample.getPose().getU()));
-        double startTime = raster.getSamples().getFirst().getTimestamp().toInstant().toEpochMilli()/1000.0;
-        double endTime = raster.getSamples().getLast().getTimestamp().toInstant().toEpochMilli()/1000.0;
+        samples = raster.getColumns();
+        double speed = samples.getMeanSpeed();
+        double startTime = getStartMillis()/1000.0;
+        double endTime = getEndMillis()/1000.0;
         worldHeight = speed * (endTime - startTime);
         //worldHeight *= 2;
         log.info("World height: "+worldHeight+", width: "+worldWidth);
@@ -152,15 +206,30 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
     }
 
     public boolean containsTime(Instant time) {
-        return time.isAfter(getStartTime().toInstant()) && time.isBefore(getEndTime().toInstant());
+        long millis = time.toEpochMilli();
+        return millis > getStartMillis() && millis < getEndMillis();
+    }
+
+    /**
+     * @return the time of the first sample, in epoch milliseconds
+     */
+    public long getStartMillis() {
+        return samples.getStartMillis();
+    }
+
+    /**
+     * @return the time of the last sample, in epoch milliseconds
+     */
+    public long getEndMillis() {
+        return samples.getEndMillis();
     }
 
     public OffsetDateTime getStartTime() {
-        return raster.getSamples().getFirst().getTimestamp();
+        return samples.getDateTime(0);
     }
 
     public OffsetDateTime getEndTime() {
-        return raster.getSamples().getLast().getTimestamp();
+        return samples.getDateTime(samples.size() - 1);
     }
 
     public double getRange() {
@@ -168,7 +237,7 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
     }
 
     public Pose getPose(int index) {
-        return raster.getSamples().get(index).getPose();
+        return samples.getPose(index);
     }
 
     @Override
@@ -215,33 +284,26 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
     }
 
     public LocationType getLocation(Instant instant, double slantRange) {
-
-        if (instant.isAfter(getEndTime().toInstant()))
+        long millis = instant.toEpochMilli();
+        if (millis > getEndMillis())
             return null;
 
-        if (instant.isBefore(getStartTime().toInstant()))
+        if (millis < getStartMillis())
             return null;
 
-        int index = 0;
-        for (SampleDescription sample : raster.getSamples()) {
-            if (sample.getTimestamp().toInstant().isAfter(instant))
-                break;
-            index++;
-        }
-        return getLocation(index, slantRange);
+        return getLocation(samples.countUntil(millis), slantRange);
     }
 
     public LocationType getLocation(int index, double slantRange) {
-        Pose pose = getPose(index);
-        LocationType loc = new LocationType(pose.getLatitude(), pose.getLongitude());
-        double altitude = pose.getAltitude();
+        LocationType loc = new LocationType(samples.getLatitude(index), samples.getLongitude(index));
+        double altitude = samples.getAltitude(index);
         double groundRange = Math.sqrt(slantRange*slantRange - altitude*altitude);
         if (Double.isNaN(groundRange))
             groundRange = 0;
         if (slantRange >= 0)
-            loc.setAzimuth(pose.getPsi()+90);
+            loc.setAzimuth(samples.getPsi(index)+90);
         else
-            loc.setAzimuth(pose.getPsi()-90);
+            loc.setAzimuth(samples.getPsi(index)-90);
 
         loc.setOffsetDistance(groundRange);
         loc.convertToAbsoluteLatLonDepth();
@@ -249,7 +311,7 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
     }
 
     public int getSamplesCount() {
-        return raster.getSamples().size();
+        return samples.size();
     }
 
     public BufferedImage getImageSync() {
@@ -263,6 +325,22 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
         }
     }
 
+    /**
+     * Reads the image of this tile at the smallest resolution (see {@link RasterPyramid}) that is at least the given
+     * width, which may have fewer rows than {@link #getSamplesCount()}
+     * @param width the width the image will be drawn at
+     */
+    public BufferedImage getImageSync(int width) {
+        if (image != null)
+            return image;
+        try {
+            return RasterPyramid.readImage(folder, raster, width);
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
     public synchronized BufferedImage getImage() {
         if (image != null)
             return image;
@@ -270,32 +348,148 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
             System.out.println("File "+new File(folder, raster.getFilename()+" does not exist"));
             return null;
         }
+        // a queued prefetch may be waiting behind other prefetches, while this tile is needed now
+        if (prefetchQueued)
+            cancelLoading();
         if (loadingTask == null) {
-            loadingTask = IndexedRasterUtils.background(() -> {
-                try {
-                    image = ImageIO.read(new File(folder, raster.getFilename()));
-                    if (imageFilter != null)
-                        image = imageFilter.filter(image, null);
-                    //this.screenWidth = screenWidth;
-                } catch (Exception e) {
-                    image = new BufferedImage(300, getSamplesCount(), BufferedImage.TYPE_INT_RGB);
-                    image.getGraphics().setColor(Color.ORANGE);
-                    image.getGraphics().fillRect(0, 0, screenWidth, getSamplesCount());
-                    image.getGraphics().setColor(Color.white);
-                    image.getGraphics().drawString("Loading " + raster.getFilename(), 10, 10);
-                } finally {
-                    loadingTask = null;                    
-                    repaint();
-                }
-            });
+            int generation = loadGeneration;
+            loadingTask = IndexedRasterUtils.background(() -> load(generation));
         }
         return image;
     }
 
-    public void cancelLoading() {
+    /**
+     * Starts loading the image of this tile on the given executor, usually with a lower priority than the loads of
+     * visible tiles. Nothing is done if the image is loaded or loading.
+     * @return true if loading was started
+     */
+    public synchronized boolean prefetch(Executor executor) {
+        if (image != null || loadingTask != null || raster.getFilename() == null)
+            return false;
+        int generation = loadGeneration;
+        prefetchQueued = true;
+        loadingTask = CompletableFuture.runAsync(() -> load(generation), executor);
+        return true;
+    }
+
+    /**
+     * Cancels loading if it was started by {@link #prefetch(Executor)} and is still waiting to run
+     * @return true if it was cancelled
+     */
+    public synchronized boolean cancelPrefetch() {
+        if (!prefetchQueued)
+            return false;
+        cancelLoading();
+        return true;
+    }
+
+    /**
+     * Reads the smallest overview of the raster (if it has overviews and no preview was read yet), to be drawn while
+     * loading, and then the image
+     */
+    private void load(int generation) {
+        // colors and filter are changed together with the generation, so the ones read here stay consistent
+        int[] colors;
+        BufferedImageOp filter;
+        BufferedImage cachedIntensities;
+        synchronized (this) {
+            if (generation != loadGeneration)
+                return;
+            prefetchQueued = false;
+            colors = intensityColors;
+            filter = imageFilter;
+            cachedIntensities = intensities;
+        }
+        BufferedImage loaded;
+        BufferedImage loadedIntensities = null;
+        try {
+            if (preview == null && raster.getOverviews() != null && !raster.getOverviews().isEmpty()) {
+                BufferedImage smallest = RasterPyramid.readImage(folder, raster, 1);
+                synchronized (this) {
+                    if (generation != loadGeneration)
+                        return;
+                    preview = smallest;
+                }
+                repaint();
+            }
+            if (colors != null) {
+                loadedIntensities = cachedIntensities != null ? cachedIntensities
+                        : IntensityRaster.readIntensities(folder, raster);
+                loaded = colorize(loadedIntensities, colors, filter);
+            }
+            else {
+                loaded = ImageIO.read(new File(folder, raster.getFilename()));
+                if (filter != null)
+                    loaded = filter.filter(loaded, null);
+            }
+            //this.screenWidth = screenWidth;
+        } catch (Exception e) {
+            loaded = new BufferedImage(300, getSamplesCount(), BufferedImage.TYPE_INT_RGB);
+            loaded.getGraphics().setColor(Color.ORANGE);
+            loaded.getGraphics().fillRect(0, 0, screenWidth, getSamplesCount());
+            loaded.getGraphics().setColor(Color.white);
+            loaded.getGraphics().drawString("Loading " + raster.getFilename(), 10, 10);
+        }
+        synchronized (this) {
+            // unloaded or cancelled meanwhile
+            if (generation != loadGeneration)
+                return;
+            image = loaded;
+            if (loadedIntensities != null)
+                intensities = loadedIntensities;
+            loadingTask = null;
+        }
+        repaint();
+        if (loadListener != null)
+            loadListener.accept(this);
+    }
+
+    public synchronized void cancelLoading() {
         if (loadingTask != null)
             loadingTask.cancel(true);
         loadingTask = null;
+        prefetchQueued = false;
+        loadGeneration++;
+    }
+
+    /**
+     * @return true while the image of this tile is being read
+     */
+    public synchronized boolean isLoading() {
+        return loadingTask != null;
+    }
+
+    /**
+     * @return true if this tile holds images in memory or is reading them
+     */
+    public synchronized boolean isResident() {
+        return image != null || preview != null || intensities != null || loadingTask != null;
+    }
+
+    /**
+     * @return bytes of the images (image, preview and intensities) this tile holds in memory
+     */
+    public synchronized long getMemoryUsage() {
+        return sizeOf(image) + sizeOf(preview) + sizeOf(intensities);
+    }
+
+    private static long sizeOf(BufferedImage img) {
+        if (img == null)
+            return 0;
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * Releases the images of this tile (cancelling their loading), which are read again the next time they are needed
+     */
+    public synchronized void unload() {
+        cancelLoading();
+        if (image != null)
+            image.flush();
+        image = null;
+        preview = null;
+        intensities = null;
     }
 
     public void setZoom(double zoom) {
@@ -347,11 +541,20 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
     public void paint(Graphics g) {
         BufferedImage image = getImage();
         Graphics2D g2d = (Graphics2D) g;
+        // low resolution placeholder while the image is loading
+        if (image == null)
+            image = preview;
         if (image == null) {
             g2d.setColor(Color.BLACK);
             g2d.fillRect(0, 0, getWidth(), getHeight());
-            g2d.setColor(Color.RED);
-            g2d.drawString("Error loading "+raster.getFilename(), 10, 10);
+            if (isLoading()) {
+                g2d.setColor(Color.DARK_GRAY);
+                g2d.drawString("Loading...", 10, 10);
+            }
+            else {
+                g2d.setColor(Color.RED);
+                g2d.drawString("Error loading "+raster.getFilename(), 10, 10);
+            }
         }
         else {
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
@@ -369,26 +572,17 @@ public class RasterfallTile extends JPanel implements Comparable<RasterfallTile>
 
     @Override
     public void close() throws IOException {
-        if (loadingTask != null)
-            loadingTask.cancel(true);
-        if (image != null)
-            image.flush();
-        image = null;
+        unload();
     }
 
     public int getSampleIndex(Instant timestamp) {
-        if (timestamp.isBefore(getStartTime().toInstant()))
+        long millis = timestamp.toEpochMilli();
+        if (millis < getStartMillis())
             return 0;
-        if (timestamp.isAfter(getEndTime().toInstant()))
+        if (millis > getEndMillis())
             return getSamplesCount() - 1;
         
-        int index = 0;
-        for (SampleDescription sample : raster.getSamples()) {
-            if (sample.getTimestamp().toInstant().isAfter(timestamp))
-                break;
-            index++;
-        }
-        return Math.min(index, getSamplesCount() - 1);
+        return Math.min(samples.countUntil(millis), getSamplesCount() - 1);
     }
 
     public IndexedRaster getRaster() {
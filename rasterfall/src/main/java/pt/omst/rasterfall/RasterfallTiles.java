@@ -17,7 +17,6 @@ import java.awt.image.BufferedImage;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -33,15 +32,15 @@ import javax.swing.JScrollPane;
 
 import lombok.Getter;
 import lombok.extern.java.Log;
+import pt.lsts.neptus.colormap.ColorMap;
 import pt.lsts.neptus.core.LocationType;
 import pt.lsts.neptus.util.GuiUtils;
-import pt.omst.gui.jobs.BackgroundJob;
-import pt.omst.gui.jobs.JobManager;
 import pt.omst.rasterfall.utils.IndexedRasterTiles;
 import pt.omst.rasterlib.Contact;
-import pt.omst.rasterlib.Converter;
 import pt.omst.rasterlib.IndexedRaster;
+import pt.omst.rasterlib.IndexedRasterLoader;
 import pt.omst.rasterlib.IndexedRasterUtils;
+import pt.omst.rasterlib.IntensityRaster;
 import pt.omst.rasterlib.Observation;
 import pt.omst.rasterlib.Pose;
 import pt.omst.rasterlib.IndexedRasterUtils.RasterContactInfo;
@@ -66,6 +65,18 @@ public class RasterfallTiles extends JPanel implements Closeable {
 
     @Getter
     private final File contactsFolder;
+    /** Loads and prefetches the tiles around the visible area, unloading the others when over the memory budget */
+    @Getter
+    private final TileResidencyManager residency;
+    // finds the tile of a time without going through all tiles
+    private TileTimeIndex timeIndex = new TileTimeIndex(List.of());
+
+    // color tables of the current color map and gain, one for each intensity maximum, shared by the tiles
+    private final Map<Double, int[]> intensityColors = new HashMap<>();
+    @Getter
+    private ColorMap colorMap = null;
+    @Getter
+    private double gain = 1;
 
     // Cache for RasterContactInfo to avoid recalculation
     private final Map<CompressedContact, RasterContactInfo> contactInfoCache = new HashMap<>();
@@ -104,28 +115,19 @@ public class RasterfallTiles extends JPanel implements Closeable {
         setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
         double verticalSize = 0;
         rastersFolder = folder;
-        findRasterFiles(folder).forEach(index -> {
-            try {
-                IndexedRaster raster = Converter.IndexedRasterFromJsonString(Files.readString(index.toPath()));
-                rasters.add(raster);
-                RasterfallTile tile = new RasterfallTile(index.getParentFile(), raster);
-                JobManager.getInstance().submit(new BackgroundJob("Loading tile " + index.getName()) {
-                    @Override
-                    protected Void doInBackground() throws Exception {
-                        updateStatus("Loading image from "+raster.getFilename());
-                        tile.getImage();
-                        updateStatus("Image loaded.");
-                        return null;
-                    }
-                });
-                tiles.add(tile);
-                rasters.sort((r1, r2) -> r2.getSamples().get(0).getTimestamp().compareTo(r1.getSamples().get(0).getTimestamp()));
-            } catch (IOException e) {
-                log.warning("Error reading raster file: " + e.getMessage());
-            }
+        // rasters are read in parallel, with their samples already in columns
+        IndexedRasterLoader.readAll(findRasterFiles(folder), progressCallback).forEach((index, raster) -> {
+            rasters.add(raster);
+            tiles.add(new RasterfallTile(index.getParentFile(), raster));
         });
+        rasters.sort(Comparator.comparingLong((IndexedRaster r) -> r.getColumns().getStartMillis()).reversed());
 
         tiles.sort(Comparator.naturalOrder());
+        timeIndex = new TileTimeIndex(tiles);
+        // images are only loaded when the tiles get near the visible area
+        residency = new TileResidencyManager(tiles, RasterfallPreferences.getTileMemoryMb() * 1024 * 1024);
+        for (RasterfallTile tile : tiles)
+            tile.setLoadListener(residency::loaded);
         if (progressCallback != null) {
             progressCallback.accept("Loading tiles...");
         }
@@ -148,20 +150,29 @@ public class RasterfallTiles extends JPanel implements Closeable {
         heightProportion = verticalSize / width;
     }
 
+    /**
+     * Finds the tile containing a time (see {@link RasterfallTile#containsTime(Instant)}). If tiles overlap, the one
+     * starting last is returned.
+     * @param timeMillis the time, in epoch milliseconds
+     * @return the tile containing the time or null if no tile contains it
+     */
+    public RasterfallTile getTileAt(long timeMillis) {
+        return timeIndex.getTileAt(timeMillis);
+    }
+
     public Point2D.Double getSlantedScreenPosition(Instant timestamp, double range) {
-        for (RasterfallTile tile : tiles) {
-            if (tile.containsTime(timestamp)) {
-                Point2D.Double relativePosition = tile.getSlantedRangePosition(timestamp, range);
-                if (relativePosition == null) {
-                    log.warning("Failed to get slanted range position for timestamp " + timestamp + " and range " + range);
-                    return null;
-                }
-                Point2D.Double absolutePosition = new Point2D.Double(tile.getBounds().x + relativePosition.x, tile.getBounds().y + relativePosition.y);
-                return absolutePosition;
-            }
+        RasterfallTile tile = getTileAt(timestamp.toEpochMilli());
+        if (tile == null) {
+            // Timestamp outside loaded tile range - this is normal, return null silently
+            return null;
         }
-        // Timestamp outside loaded tile range - this is normal, return null silently
-        return null;
+        Point2D.Double relativePosition = tile.getSlantedRangePosition(timestamp, range);
+        if (relativePosition == null) {
+            log.warning("Failed to get slanted range position for timestamp " + timestamp + " and range " + range);
+            return null;
+        }
+        Point2D.Double absolutePosition = new Point2D.Double(tile.getBounds().x + relativePosition.x, tile.getBounds().y + relativePosition.y);
+        return absolutePosition;
     }
 
     /**
@@ -175,61 +186,57 @@ public class RasterfallTiles extends JPanel implements Closeable {
      * @return Screen position, or null if timestamp is outside loaded tiles
      */
     public Point2D.Double getSlantedScreenPositionFromLocation(Instant timestamp, double targetLat, double targetLon) {
-        for (RasterfallTile tile : tiles) {
-            if (tile.containsTime(timestamp)) {
-                // Get the vehicle pose at this timestamp
-                Pose pose = tile.getPoseAtTime(timestamp);
-                if (pose == null) {
-                    return null;
-                }
-                
-                // Calculate slant range from vehicle to target location
-                LocationType vehicleLoc = new LocationType(pose.getLatitude(), pose.getLongitude());
-                LocationType targetLoc = new LocationType(targetLat, targetLon);
-                
-                // Get the horizontal distance
-                double groundRange = vehicleLoc.getHorizontalDistanceInMeters(targetLoc);
-                
-                // Determine if port or starboard based on heading and target bearing
-                double headingRad = Math.toRadians(pose.getPsi() != null ? pose.getPsi() : 0);
-                double bearing = vehicleLoc.getXYAngle(targetLoc); // Returns angle in radians
-                
-                // Calculate the angle difference to determine port/starboard
-                double angleDiff = bearing - headingRad;
-                // Normalize to [-PI, PI]
-                while (angleDiff > Math.PI) angleDiff -= 2 * Math.PI;
-                while (angleDiff < -Math.PI) angleDiff += 2 * Math.PI;
-                
-                // If angle difference is positive (0 to PI), target is to starboard (positive range)
-                // If negative (-PI to 0), target is to port (negative range)
-                double signedGroundRange = (angleDiff >= 0) ? groundRange : -groundRange;
-                
-                // Convert ground range to slant range
-                double altitude = pose.getAltitude() != null ? pose.getAltitude() : 0;
-                double slantRange = Math.sqrt(signedGroundRange * signedGroundRange + altitude * altitude);
-                if (signedGroundRange < 0) {
-                    slantRange = -slantRange;
-                }
-                
-                Point2D.Double relativePosition = tile.getSlantedRangePosition(timestamp, slantRange);
-                if (relativePosition == null) {
-                    return null;
-                }
-                return new Point2D.Double(tile.getBounds().x + relativePosition.x, tile.getBounds().y + relativePosition.y);
-            }
+        RasterfallTile tile = getTileAt(timestamp.toEpochMilli());
+        if (tile == null)
+            return null;
+        // Get the vehicle pose at this timestamp
+        Pose pose = tile.getPoseAtTime(timestamp);
+        if (pose == null) {
+            return null;
         }
-        return null;
+        
+        // Calculate slant range from vehicle to target location
+        LocationType vehicleLoc = new LocationType(pose.getLatitude(), pose.getLongitude());
+        LocationType targetLoc = new LocationType(targetLat, targetLon);
+        
+        // Get the horizontal distance
+        double groundRange = vehicleLoc.getHorizontalDistanceInMeters(targetLoc);
+        
+        // Determine if port or starboard based on heading and target bearing
+        double headingRad = Math.toRadians(pose.getPsi() != null ? pose.getPsi() : 0);
+        double bearing = vehicleLoc.getXYAngle(targetLoc); // Returns angle in radians
+        
+        // Calculate the angle difference to determine port/starboard
+        double angleDiff = bearing - headingRad;
+        // Normalize to [-PI, PI]
+        while (angleDiff > Math.PI) angleDiff -= 2 * Math.PI;
+        while (angleDiff < -Math.PI) angleDiff += 2 * Math.PI;
+        
+        // If angle difference is positive (0 to PI), target is to starboard (positive range)
+        // If negative (-PI to 0), target is to port (negative range)
+        double signedGroundRange = (angleDiff >= 0) ? groundRange : -groundRange;
+        
+        // Convert ground range to slant range
+        double altitude = pose.getAltitude() != null ? pose.getAltitude() : 0;
+        double slantRange = Math.sqrt(signedGroundRange * signedGroundRange + altitude * altitude);
+        if (signedGroundRange < 0) {
+            slantRange = -slantRange;
+        }
+        
+        Point2D.Double relativePosition = tile.getSlantedRangePosition(timestamp, slantRange);
+        if (relativePosition == null) {
+            return null;
+        }
+        return new Point2D.Double(tile.getBounds().x + relativePosition.x, tile.getBounds().y + relativePosition.y);
     }
 
     public Point2D.Double getScreenPosition(Instant timestamp, double range) {
-        for (RasterfallTile tile : tiles) {
-            if (tile.containsTime(timestamp)) {
-                Point2D.Double relativePosition = tile.getGroundPosition(timestamp, range);
-                Point2D.Double absolutePosition = new Point2D.Double(tile.getBounds().x + relativePosition.x, tile.getBounds().y + relativePosition.y);
-                return absolutePosition;
-            }
-        }
-        return null;
+        RasterfallTile tile = getTileAt(timestamp.toEpochMilli());
+        if (tile == null)
+            return null;
+        Point2D.Double relativePosition = tile.getGroundPosition(timestamp, range);
+        Point2D.Double absolutePosition = new Point2D.Double(tile.getBounds().x + relativePosition.x, tile.getBounds().y + relativePosition.y);
+        return absolutePosition;
     }
 
     public TilesPosition getPosition(Point2D point) {
@@ -256,6 +263,33 @@ public class RasterfallTiles extends JPanel implements Closeable {
         repaint();
     }
 
+    /**
+     * Colors all tiles with the given color map and gain, from the intensities of their rasters (tiles exported
+     * without intensities keep their colors). Tiles whose rasters have the same intensity maximum share one color
+     * table.
+     * @param colorMap the color map, or null to show the colors the rasters were exported with
+     * @param gain     factor applied to intensities before color mapping
+     * @return the number of tiles that were recolored
+     */
+    public synchronized int setColorMap(ColorMap colorMap, double gain) {
+        if (colorMap != this.colorMap || gain != this.gain)
+            intensityColors.clear();
+        this.colorMap = colorMap;
+        this.gain = gain;
+        int count = 0;
+        for (RasterfallTile tile : tiles) {
+            IndexedRaster raster = tile.getRaster();
+            if (!IntensityRaster.hasIntensities(raster))
+                continue;
+            int[] colors = colorMap == null ? null : intensityColors.computeIfAbsent(raster.getIntensityMax(),
+                    max -> IntensityRaster.createLut(colorMap, max, gain));
+            if (tile.setIntensityColors(colors))
+                count++;
+        }
+        repaint();
+        return count;
+    }
+
     public long getTimestamp() {
         double x = getVisibleRect().getX()+getVisibleRect().getWidth()/2;
         double y = getVisibleRect().getY()+getVisibleRect().getHeight()/2;
@@ -302,13 +336,11 @@ public class RasterfallTiles extends JPanel implements Closeable {
     }
 
     public Point2D.Double getScreenPosition(TilesPosition position)  {
-        for (RasterfallTile tile : tiles) {
-            if (tile.containsTime(position.timestamp())) {
-                Point2D.Double relativePosition = tile.getSlantedRangePosition(position.range());
-                return new Point2D.Double(tile.getBounds().x + relativePosition.x, tile.getBounds().y + relativePosition.y);
-            }
-        }
-        return null;
+        RasterfallTile tile = getTileAt(position.timestamp().toEpochMilli());
+        if (tile == null)
+            return null;
+        Point2D.Double relativePosition = tile.getSlantedRangePosition(position.range());
+        return new Point2D.Double(tile.getBounds().x + relativePosition.x, tile.getBounds().y + relativePosition.y);
     }
 
     public LocationType getWorldPosition(Point2D point) {
@@ -357,10 +389,13 @@ public class RasterfallTiles extends JPanel implements Closeable {
         for (RasterfallTile tile : tiles) {
             verticalSize += tile.getSamplesCount();
         }
-        BufferedImage firstImage = tiles.getFirst().getImageSync();
+        // overviews are enough for the scroll bar, which is much narrower than the tiles
+        BufferedImage firstImage = tiles.getFirst().getImageSync(width);
         if (firstImage == null)
             return null;
-        double scale = width / (double) firstImage.getWidth();
+        // height of each sample in the scroll image (overviews have fewer rows than samples)
+        double scale = width / (double) firstImage.getWidth() * firstImage.getHeight()
+                / tiles.getFirst().getSamplesCount();
 
         verticalSize *= scale;
         final double height = verticalSize;
@@ -373,20 +408,22 @@ public class RasterfallTiles extends JPanel implements Closeable {
             double y = height;
             for (int i = tiles.size()-1; i >= 0; i--) {
                 RasterfallTile tile = tiles.get(i);
-                BufferedImage tileImage = tile.getImageSync();
+                BufferedImage tileImage = tile.getImageSync(width);
                 if (tileImage == null)
                     continue;
-                y -= tileImage.getHeight() * scale;
-                g.drawImage(tileImage, 0, (int) Math.round(y), width, (int) Math.round(tileImage.getHeight() * scale), null);
+                double tileHeight = tile.getSamplesCount() * scale;
+                y -= tileHeight;
+                g.drawImage(tileImage, 0, (int) Math.round(y), width, (int) Math.round(tileHeight), null);
 
                 loadingCallback.accept(null);
             }
             for (RasterfallTile tile : tiles) {
-                BufferedImage tileImage = tile.getImageSync();
+                BufferedImage tileImage = tile.getImageSync(width);
                 if (tileImage == null)
                     continue;
-                g.drawImage(tileImage, 0, (int) Math.round(y), width, (int) Math.round(tileImage.getHeight() * scale), null);
-                y += tileImage.getHeight() * scale;
+                double tileHeight = tile.getSamplesCount() * scale;
+                g.drawImage(tileImage, 0, (int) Math.round(y), width, (int) Math.round(tileHeight), null);
+                y += tileHeight;
                 loadingCallback.accept(null);
             }
             g.dispose();
@@ -397,15 +434,19 @@ public class RasterfallTiles extends JPanel implements Closeable {
 
     @Override
     public void close() throws IOException {
+        residency.close();
         for (RasterfallTile tile : tiles)
             tile.close();
         tiles.clear();
+        timeIndex = new TileTimeIndex(tiles);
         rasters.clear();
         contactInfoCache.clear();
     }
     
     @Override
     protected void paintChildren(Graphics g) {
+        // painting follows every scroll, zoom and resize of the visible area
+        residency.update(getVisibleRect());
         super.paintChildren(g);
         
         if (RasterfallDebug.debug) {
@@ -445,7 +486,9 @@ public class RasterfallTiles extends JPanel implements Closeable {
                 
                 tileIndex++;
             }
-            
+
+            g2.setColor(Color.WHITE);
+            g2.drawString(residency.getStats().toString(), getVisibleRect().x + 5, getVisibleRect().y + 45);
             g2.dispose();
         }
     }
@@ -479,13 +522,8 @@ public class RasterfallTiles extends JPanel implements Closeable {
     }
 
     public double getRange(long timeMillis) {
-        double minRange = Double.MAX_VALUE;
-        for (RasterfallTile tile : tiles) {
-            if (tile.containsTime(Instant.ofEpochMilli(timeMillis))) {
-                return tile.getRange();
-            }
-        }
-        return minRange;
+        RasterfallTile tile = getTileAt(timeMillis);
+        return tile == null ? Double.MAX_VALUE : tile.getRange();
     }
 
     public Instant getTimeAtScreenY(int screenY) {
@@ -535,12 +573,8 @@ public class RasterfallTiles extends JPanel implements Closeable {
     }
 
     public Pose getPositionAtTime(long timeMillis) {
-        for (RasterfallTile tile : tiles) {
-            if (tile.containsTime(Instant.ofEpochMilli(timeMillis))) {
-                return tile.getPoseAtTime(Instant.ofEpochMilli(timeMillis));
-            }
-        }
-        return null;
+        RasterfallTile tile = getTileAt(timeMillis);
+        return tile == null ? null : tile.getPoseAtTime(Instant.ofEpochMilli(timeMillis));
     }
 
     /**
@@ -0,0 +1,313 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterfall;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Decides which {@link RasterfallTile}s keep their images in memory, so that memory use does not grow with the length
+ * of the mission.
+ * <p>
+ * Tiles intersecting the viewport are loaded (in the background) when the viewport changes, and tiles around it are
+ * prefetched on low priority threads. While the view is still, the margins above and below the viewport are
+ * prefetched. While it moves (scrolling or replay) the prefetched area extends in the direction of movement to where
+ * the viewport will be in {@link #getLookaheadSeconds()} seconds, and includes at least {@link #getPrefetchTiles()}
+ * tiles ahead. Prefetches that did not start yet are cancelled once their tiles leave the prefetched area, for
+ * instance when the direction changes.
+ * <p>
+ * Loaded tiles are kept in least recently used order and, once their images go over the memory budget, the least
+ * recently used tiles outside the viewport and the prefetched area are unloaded. Tiles in the viewport are never
+ * unloaded, even if they alone go over the budget.
+ */
+public class TileResidencyManager implements Closeable {
+
+    /**
+     * Snapshot of the tiles in memory
+     * @param tiles number of tiles holding images
+     * @param bytes memory used by their images
+     * @param maxBytes the memory budget
+     * @param evictions number of tiles unloaded to respect the budget
+     * @param velocity current scroll velocity, in pixels per second (positive downwards, back in time)
+     */
+    public record Stats(int tiles, long bytes, long maxBytes, long evictions, double velocity) {
+        @Override
+        public String toString() {
+            return String.format("%d tiles in memory, %.1f/%.1f MB, %d evictions, %.0f px/s", tiles,
+                    bytes / (1024.0 * 1024.0), maxBytes / (1024.0 * 1024.0), evictions, velocity);
+        }
+    }
+
+    // updates further apart than this (in seconds) start a new movement
+    private static final double IDLE_SECONDS = 0.5;
+    // weight of each new measurement in the smoothed velocity
+    private static final double VELOCITY_SMOOTHING = 0.3;
+    // the prefetched area is at most this number of viewport heights ahead
+    private static final int MAX_LOOKAHEAD_SCREENS = 10;
+
+    private final List<RasterfallTile> tiles;
+    // memory used by each loaded tile, in least recently used order
+    private final LinkedHashMap<RasterfallTile, Long> resident = new LinkedHashMap<>(64, 0.75f, true);
+    // tiles in the viewport and the prefetched area, which are not unloaded
+    private Set<RasterfallTile> wanted = Set.of();
+    // tiles prefetched in the last update
+    private List<RasterfallTile> prefetched = List.of();
+    private long maxBytes;
+    private long bytes = 0;
+    private long evictions = 0;
+    private ExecutorService prefetchExecutor = null;
+
+    // last viewport position and when it was seen, to measure the scroll velocity
+    private int lastY = 0;
+    private long lastNanos = 0;
+    private double measuredVelocity = 0;
+    private volatile double replayVelocity = 0;
+
+    /** Height of the margins above and below the viewport that are prefetched, in viewport heights */
+    @Getter
+    @Setter
+    private volatile double prefetchScreens = 1;
+    /** While moving, the area the viewport will cover during this time (in seconds) is prefetched */
+    @Getter
+    @Setter
+    private volatile double lookaheadSeconds = 2;
+    /** While moving, minimum number of tiles prefetched ahead of the viewport */
+    @Getter
+    @Setter
+    private volatile int prefetchTiles = 2;
+    /** Number of threads decoding prefetched tiles (set before the first prefetch) */
+    @Getter
+    @Setter
+    private volatile int prefetchThreads = 2;
+
+    /**
+     * @param tiles    the tiles to manage (the list is read, not copied)
+     * @param maxBytes memory budget for the images of the tiles
+     */
+    public TileResidencyManager(List<RasterfallTile> tiles, long maxBytes) {
+        this.tiles = tiles;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Loads the tiles in the visible area, prefetches tiles around it and unloads other tiles if over the budget.
+     * Called on the event dispatch thread whenever the visible area may have changed.
+     * @param visible the visible area, in the coordinates of the tiles container
+     */
+    public void update(Rectangle visible) {
+        update(visible, System.nanoTime());
+    }
+
+    void update(Rectangle visible, long nanos) {
+        if (visible.height <= 0)
+            return;
+        double velocity = getVelocity(visible, nanos);
+        int top = visible.y;
+        int bottom = visible.y + visible.height;
+        int margin = (int) (visible.height * prefetchScreens);
+        int ahead = (int) Math.min(Math.abs(velocity) * lookaheadSeconds, visible.height * MAX_LOOKAHEAD_SCREENS);
+        ahead = Math.max(margin, ahead);
+        int prefetchTop = top - (velocity < 0 ? ahead : margin);
+        int prefetchBottom = bottom + (velocity > 0 ? ahead : margin);
+
+        List<RasterfallTile> needed = new ArrayList<>();
+        List<RasterfallTile> above = new ArrayList<>();
+        List<RasterfallTile> below = new ArrayList<>();
+        for (RasterfallTile tile : tiles) {
+            Rectangle bounds = tile.getBounds();
+            if (bounds.height <= 0)
+                continue;
+            if (overlaps(bounds, top, bottom))
+                needed.add(tile);
+            else if (bounds.y + bounds.height <= top)
+                above.add(tile);
+            else
+                below.add(tile);
+        }
+        // nearest tiles first
+        above.sort(Comparator.comparingInt((RasterfallTile tile) -> tile.getBounds().y).reversed());
+        below.sort(Comparator.comparingInt((RasterfallTile tile) -> tile.getBounds().y));
+        List<RasterfallTile> front = velocity < 0 ? above : below;
+        List<RasterfallTile> back = velocity < 0 ? below : above;
+
+        List<RasterfallTile> prefetch = new ArrayList<>();
+        for (int i = 0; i < front.size(); i++) {
+            if ((velocity != 0 && i < prefetchTiles) || overlaps(front.get(i).getBounds(), prefetchTop, prefetchBottom))
+                prefetch.add(front.get(i));
+        }
+        for (RasterfallTile tile : back) {
+            if (overlaps(tile.getBounds(), prefetchTop, prefetchBottom))
+                prefetch.add(tile);
+        }
+        require(needed, prefetch);
+    }
+
+    /**
+     * Scroll velocity, from the replay speed while replaying or else measured from the last viewport positions
+     */
+    private synchronized double getVelocity(Rectangle visible, long nanos) {
+        double seconds = (nanos - lastNanos) / 1e9;
+        int dy = visible.y - lastY;
+        if (lastNanos == 0 || seconds > IDLE_SECONDS || Math.abs(dy) > 2 * visible.height) {
+            // first update, movement after a pause or a jump to another position
+            measuredVelocity = 0;
+        }
+        else if (seconds > 0) {
+            measuredVelocity += (dy / seconds - measuredVelocity) * VELOCITY_SMOOTHING;
+        }
+        lastY = visible.y;
+        lastNanos = nanos;
+        return replayVelocity != 0 ? replayVelocity : measuredVelocity;
+    }
+
+    /**
+     * Sets the velocity of the replay, which is used instead of the measured velocity to find the tiles to prefetch
+     * @param pixelsPerSecond the replay velocity in pixels of the tiles container per second (positive downwards, back
+     *                        in time), 0 if not replaying
+     */
+    public void setReplayVelocity(double pixelsPerSecond) {
+        this.replayVelocity = pixelsPerSecond;
+    }
+
+    /**
+     * Keeps the given tiles in memory until the next call, unloading other tiles if over the budget. Needed tiles are
+     * loaded right away, the others are prefetched in the given order on low priority threads and prefetches of
+     * previous calls that did not start are cancelled if not requested again.
+     * @param needed   the tiles to load, the most important first
+     * @param prefetch the tiles to prefetch, the most important first
+     */
+    public void require(List<RasterfallTile> needed, List<RasterfallTile> prefetch) {
+        List<RasterfallTile> stale = new ArrayList<>();
+        synchronized (this) {
+            Set<RasterfallTile> newWanted = new HashSet<>(needed);
+            newWanted.addAll(prefetch);
+            for (RasterfallTile tile : prefetched) {
+                if (!newWanted.contains(tile))
+                    stale.add(tile);
+            }
+            wanted = newWanted;
+            prefetched = prefetch;
+            // marks the tiles as used (new ones use no memory until loaded), the first ones as the most recent
+            for (int i = prefetch.size() - 1; i >= 0; i--)
+                resident.putIfAbsent(prefetch.get(i), 0L);
+            for (int i = needed.size() - 1; i >= 0; i--)
+                resident.putIfAbsent(needed.get(i), 0L);
+            evict();
+        }
+        for (RasterfallTile tile : stale)
+            tile.cancelPrefetch();
+        for (RasterfallTile tile : needed)
+            tile.getImage();
+        if (!prefetch.isEmpty()) {
+            ExecutorService executor = getPrefetchExecutor();
+            for (RasterfallTile tile : prefetch)
+                tile.prefetch(executor);
+        }
+    }
+
+    private synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            AtomicInteger count = new AtomicInteger();
+            prefetchExecutor = Executors.newFixedThreadPool(Math.max(1, prefetchThreads), runnable -> {
+                Thread thread = new Thread(runnable, "tile-prefetch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        return prefetchExecutor;
+    }
+
+    /**
+     * Accounts the memory of a tile whose images were loaded, unloading other tiles if over the budget. Tiles call this
+     * (see {@link RasterfallTile#setLoadListener(java.util.function.Consumer)}) from background threads.
+     */
+    public synchronized void loaded(RasterfallTile tile) {
+        long size = tile.getMemoryUsage();
+        Long previous = resident.put(tile, size);
+        bytes += size - (previous == null ? 0 : previous);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<RasterfallTile, Long>> it = resident.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<RasterfallTile, Long> entry = it.next();
+            if (wanted.contains(entry.getKey()))
+                continue;
+            entry.getKey().unload();
+            bytes -= entry.getValue();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static boolean overlaps(Rectangle bounds, int top, int bottom) {
+        return bounds.height > 0 && bounds.y < bottom && bounds.y + bounds.height > top;
+    }
+
+    /**
+     * Changes the memory budget, unloading tiles if now over it
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the tiles currently kept in memory, least recently used first
+     */
+    public synchronized Collection<RasterfallTile> getResidentTiles() {
+        return new ArrayList<>(resident.keySet());
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(resident.size(), bytes, maxBytes, evictions,
+                replayVelocity != 0 ? replayVelocity : measuredVelocity);
+    }
+
+    /**
+     * Unloads all tiles
+     */
+    public synchronized void clear() {
+        for (RasterfallTile tile : resident.keySet())
+            tile.unload();
+        resident.clear();
+        wanted = Set.of();
+        prefetched = List.of();
+        bytes = 0;
+    }
+
+    /**
+     * Unloads all tiles and stops the prefetch threads
+     */
+    @Override
+    public synchronized void close() {
+        clear();
+        if (prefetchExecutor != null)
+            prefetchExecutor.shutdownNow();
+        prefetchExecutor = null;
+    }
+}
@@ -0,0 +1,59 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterfall;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Interval index over the times of {@link RasterfallTile}s: the tiles sorted by start time, their start times and the
+ * latest end time of each tile and the ones before it, so that finding the tile of a time does not go through all
+ * tiles.
+ */
+class TileTimeIndex {
+
+    private final RasterfallTile[] tilesByStart;
+    private final long[] tileStarts;
+    private final long[] tileMaxEnds;
+
+    TileTimeIndex(Collection<RasterfallTile> tiles) {
+        tilesByStart = tiles.toArray(new RasterfallTile[0]);
+        Arrays.sort(tilesByStart, Comparator.comparingLong(RasterfallTile::getStartMillis));
+        tileStarts = new long[tilesByStart.length];
+        tileMaxEnds = new long[tilesByStart.length];
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < tilesByStart.length; i++) {
+            tileStarts[i] = tilesByStart[i].getStartMillis();
+            maxEnd = Math.max(maxEnd, tilesByStart[i].getEndMillis());
+            tileMaxEnds[i] = maxEnd;
+        }
+    }
+
+    /**
+     * Finds the tile containing a time (see {@link RasterfallTile#containsTime(java.time.Instant)}) with a binary
+     * search over the tile start times. If tiles overlap, the one starting last is returned.
+     * @param timeMillis the time, in epoch milliseconds
+     * @return the tile containing the time or null if no tile contains it
+     */
+    RasterfallTile getTileAt(long timeMillis) {
+        // number of tiles starting before the time
+        int low = 0, high = tileStarts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tileStarts[mid] < timeMillis)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        // earlier tiles can only contain the time while some of them ends after it
+        for (int i = low - 1; i >= 0 && tileMaxEnds[i] > timeMillis; i--) {
+            if (tilesByStart[i].getEndMillis() > timeMillis)
+                return tilesByStart[i];
+        }
+        return null;
+    }
+}
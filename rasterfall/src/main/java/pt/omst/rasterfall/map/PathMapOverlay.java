@@ -8,8 +8,8 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
 import java.time.Instant;
-import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 
 import javax.swing.JComponent;
 
@@ -22,8 +22,7 @@ import pt.omst.mapview.SlippyMap;
 import pt.omst.rasterfall.RasterfallTiles;
 import pt.omst.rasterfall.replay.LogReplay;
 import pt.omst.rasterlib.IndexedRaster;
-import pt.omst.rasterlib.Pose;
-import pt.omst.rasterlib.SampleDescription;
+import pt.omst.rasterlib.SampleColumns;
 
 @Slf4j
 public class PathMapOverlay extends AbstractMapOverlay {
@@ -52,32 +51,31 @@ public class PathMapOverlay extends AbstractMapOverlay {
     }
 
     private void createPath() {
-        OffsetDateTime nextTime = null;
+        Long nextTime = null;
         int sampleCount = 0;
         int totalCount = 0;
         ArrayList<IndexedRaster> rasters = new ArrayList<>(waterfall.getRasters());
-        rasters.sort((r1, r2) -> r1.getSamples().get(0).getTimestamp().compareTo(r2.getSamples().get(0).getTimestamp()));
+        rasters.sort(Comparator.comparingLong(r -> r.getColumns().getStartMillis()));
         for (IndexedRaster raster : rasters) {
-            for (SampleDescription sample : raster.getSamples()) {
-                if (sample.getPose() != null) {
-                    totalCount++;
-                    Pose pose = sample.getPose();
-                    
-                    if (nextTime == null) {
-                        startLocation = new LocationType(pose.getLatitude(), pose.getLongitude());
-                        offsetPath.moveTo(0, 0);
-                        nextTime = sample.getTimestamp().plusSeconds(1);
-                       
-                    } else if (sample.getTimestamp().isAfter(nextTime)) {
-                        LocationType loc = new LocationType(pose.getLatitude(), pose.getLongitude());
-                        double[] offsets = loc.getOffsetFrom(startLocation);
-                        offsetPath.lineTo(offsets[1], offsets[0]);
-                        pathLocations.add(loc);
-                        pathTimestamps.add(sample.getTimestamp().toInstant());
-                        sampleCount++;
-                        nextTime = sample.getTimestamp().plusSeconds(1);
-                       
-                    }
+            SampleColumns samples = raster.getColumns();
+            for (int i = 0; i < samples.size(); i++) {
+                totalCount++;
+                long timestamp = samples.getTimestamp(i);
+
+                if (nextTime == null) {
+                    startLocation = new LocationType(samples.getLatitude(i), samples.getLongitude(i));
+                    offsetPath.moveTo(0, 0);
+                    nextTime = timestamp + 1000;
+
+                } else if (timestamp > nextTime) {
+                    LocationType loc = new LocationType(samples.getLatitude(i), samples.getLongitude(i));
+                    double[] offsets = loc.getOffsetFrom(startLocation);
+                    offsetPath.lineTo(offsets[1], offsets[0]);
+                    pathLocations.add(loc);
+                    pathTimestamps.add(Instant.ofEpochMilli(timestamp));
+                    sampleCount++;
+                    nextTime = timestamp + 1000;
+
                 }
             }
         }        
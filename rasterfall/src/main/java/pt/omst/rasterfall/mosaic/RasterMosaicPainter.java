@@ -15,8 +15,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.imageio.ImageIO;
-
 import org.imgscalr.Scalr;
 
 import lombok.extern.slf4j.Slf4j;
@@ -28,7 +26,8 @@ import pt.omst.mapview.SlippyMap;
 import pt.omst.rasterlib.Converter;
 import pt.omst.rasterlib.IndexedRaster;
 import pt.omst.rasterlib.IndexedRasterUtils;
-import pt.omst.rasterlib.SampleDescription;
+import pt.omst.rasterlib.RasterPyramid;
+import pt.omst.rasterlib.SampleColumns;
 import pt.omst.rasterlib.SensorInfo;
 
 @Slf4j
@@ -66,10 +65,17 @@ public class RasterMosaicPainter implements MapPainter, AutoCloseable {
 
 
     public BufferedImage readImage() {
+        return readImage(0);
+    }
+
+    /**
+     * Reads the image of the raster, or its smallest overview that is at least the given width
+     */
+    public BufferedImage readImage(int width) {
        // if (image != null)
         //    return image;
         try {
-            return ImageIO.read(new File(parentFolder, raster.getFilename()));
+            return RasterPyramid.readImage(parentFolder, raster, width);
         } catch (IOException e) {
             //image = null;
             log.error("Error reading image {}/{}", parentFolder, raster.getFilename(), e);
@@ -78,10 +84,10 @@ public class RasterMosaicPainter implements MapPainter, AutoCloseable {
     }
 
 
-    public void setAlphaChannel(BufferedImage img, SampleDescription sample, SensorInfo sensor) {
+    public void setAlphaChannel(BufferedImage img, SampleColumns samples, int index, SensorInfo sensor) {
         int width = img.getWidth();
         double maxRange = sensor.getMaxRange();
-        double altitude = sample.getPose().getAltitude();
+        double altitude = samples.getAltitude(index);
         double pixelSize = (maxRange) / (double) (width/2);
         int maxAlpha = 255;
         double targetAltitude = maxRange / 10.0; // 10% of max range
@@ -89,12 +95,12 @@ public class RasterMosaicPainter implements MapPainter, AutoCloseable {
         if (altitude > targetAltitude+1) {
             maxAlpha = (int) (200 * (targetAltitude / altitude));
         }
-        if (sample.getPose().getU() < 0.5) {
+        if (samples.getU(index) < 0.5) {
             // Low speed, set low alpha
             maxAlpha = 200;
         }
         
-        if (sample.getPose().getR() > 3 || sample.getPose().getR() < -3) {
+        if (samples.getR(index) > 3 || samples.getR(index) < -3) {
             // High rotation, set low alpha
             maxAlpha = 220;
         }
@@ -137,7 +143,11 @@ public class RasterMosaicPainter implements MapPainter, AutoCloseable {
         
         mosaicResolution.set(resolution);
         // Don't clear mosaicImage here - keep displaying old one while building new
-        BufferedImage img = readImage();
+        SensorInfo si = raster.getSensorInfo();
+        double range = si.getMaxRange() - si.getMinRange();
+        // Each swath is drawn range * resolution pixels wide, a smaller overview is enough when zoomed out
+        int swathWidthPx = (int) (range * resolution);
+        BufferedImage img = readImage(swathWidthPx);
             
         
         // Check if image was successfully loaded
@@ -174,10 +184,6 @@ public class RasterMosaicPainter implements MapPainter, AutoCloseable {
         g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
         AffineTransform identity = g2.getTransform();
         try {
-            SensorInfo si = raster.getSensorInfo();
-            double range = si.getMaxRange() - si.getMinRange();
-
-            
             int inc = 1;
             switch (resolution) {
                 case 8:
@@ -214,32 +220,32 @@ public class RasterMosaicPainter implements MapPainter, AutoCloseable {
             else if (resolution <= 1)
                 inc = 30;
 
-            for (int y = 0; y < img.getHeight(); y += inc) {
+            SampleColumns columns = raster.getColumns();
+            int samples = columns.size();
+            for (int y = 0; y < samples; y += inc) {
                 if (resolution != mosaicResolution.get()) {
                     log.info("Resolution changed, stopping mosaic creation");
                     return;
                 }
 
-                SampleDescription sd = raster.getSamples().get(y);
-
                 // Skip samples with excessive roll
-                if (Math.abs(sd.getPose().getR()) > 5)
+                if (Math.abs(columns.getR(y)) > 5)
                     continue;
 
-                LocationType samplePos = new LocationType(sd.getPose().getLatitude(), sd.getPose().getLongitude());
+                LocationType samplePos = new LocationType(columns.getLatitude(y), columns.getLongitude(y));
                 double[] nedOffsets = samplePos.getOffsetFrom(topLeft);
 
                 // Transform to image coordinates (NED to screen: east=right, north=up->down)
                 g2.setTransform(identity);
                 g2.translate(nedOffsets[1] * resolution, -nedOffsets[0] * resolution);
-                g2.rotate(Math.toRadians(sd.getPose().getPsi()));
+                g2.rotate(Math.toRadians(columns.getPsi(y)));
                 BufferedImage swath = new BufferedImage(img.getWidth(), 1, BufferedImage.TYPE_INT_ARGB);
-                swath = Scalr.apply(img.getSubimage(0, img.getHeight() - 1 - y, img.getWidth(), 1),
-                        new SlantRangeImageFilter(sd.getPose().getAltitude(), range/2-1,
+                int row = RasterPyramid.getRow(img, samples, y);
+                swath = Scalr.apply(img.getSubimage(0, row, img.getWidth(), 1),
+                        new SlantRangeImageFilter(columns.getAltitude(y), range/2-1,
                                 swath.getWidth()));
-                setAlphaChannel(swath, sd, si);
+                setAlphaChannel(swath, columns, y, si);
                 // Draw the swath line
-                int swathWidthPx = (int) (range * resolution);
                 g2.drawImage(swath, -swathWidthPx / 2, -1, swathWidthPx / 2, 1,
                         0, 0, swath.getWidth(), 1, null);
             }
@@ -367,9 +373,9 @@ public class RasterMosaicPainter implements MapPainter, AutoCloseable {
             if (center == null) {
                 try {
                     IndexedRaster raster = Converter.IndexedRasterFromJsonString(Files.readString(index.toPath()));
-                    center = new LocationType(
-                            raster.getSamples().get(raster.getSamples().size() / 2).getPose().getLatitude(),
-                            raster.getSamples().get(raster.getSamples().size() / 2).getPose().getLongitude());
+                    SampleColumns columns = raster.getColumns();
+                    int middle = columns.size() / 2;
+                    center = new LocationType(columns.getLatitude(middle), columns.getLongitude(middle));
                     renderer.focus(center);
                 } catch (IOException e) {
                     log.error("Error reading center from first raster", e);
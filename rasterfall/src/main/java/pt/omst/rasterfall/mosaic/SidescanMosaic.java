@@ -6,7 +6,7 @@ import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
@@ -28,8 +28,7 @@ public class SidescanMosaic implements MapPainter, AutoCloseable {
     public SidescanMosaic(Collection<IndexedRaster> rasters, File folder) {
         this.rasters = new ArrayList<>();
         this.rasters.addAll(rasters);
-        Collections.sort(this.rasters, (r1, r2) -> r1.getSamples().get(0).getTimestamp().compareTo(
-                r2.getSamples().get(0).getTimestamp()));
+        this.rasters.sort(Comparator.comparingLong(r -> r.getColumns().getStartMillis()));
         
         // Use this.rasters (sorted) instead of rasters (unsorted) for correct paint order
         for (IndexedRaster raster : this.rasters) {
@@ -45,7 +44,7 @@ public class SidescanMosaic implements MapPainter, AutoCloseable {
         for (int i = 0; i < this.rasters.size(); i++) {
             IndexedRaster r = this.rasters.get(i);
             log.info("Paint order [{}]: {} - timestamp: {}", i, r.getFilename(),
-                    r.getSamples().get(0).getTimestamp());
+                    r.getColumns().getDateTime(0));
         }
     }
 
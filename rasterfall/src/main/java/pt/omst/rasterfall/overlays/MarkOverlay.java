@@ -53,6 +53,7 @@ import pt.omst.rasterlib.MeasurementType;
 import pt.omst.rasterlib.Observation;
 import pt.omst.rasterlib.Pose;
 import pt.omst.rasterlib.RasterType;
+import pt.omst.rasterlib.SampleColumns;
 import pt.omst.rasterlib.SampleDescription;
 import pt.omst.rasterlib.SensorInfo;
 import pt.omst.rasterlib.contacts.CompressedContact;
@@ -174,13 +175,12 @@ public class MarkOverlay extends AbstractOverlay {
             int minIdx = Math.min(startIdx, endIdx);
             int maxIdx = Math.max(startIdx, endIdx);
 
-            List<SampleDescription> tileSamples = tile.getRaster().getSamples();
+            SampleColumns tileSamples = tile.getRaster().getColumns();
             for (int i = minIdx; i <= maxIdx; i++) {
                 if (i >= 0 && i < tileSamples.size()) {
-                    SampleDescription s = tileSamples.get(i);
-                    Instant t = s.getTimestamp().toInstant();
-                    if (!t.isBefore(startTime) && !t.isAfter(endTime)) {
-                        samples.add(s);
+                    long t = tileSamples.getTimestamp(i);
+                    if (t >= startTime.toEpochMilli() && t <= endTime.toEpochMilli()) {
+                        samples.add(tileSamples.getSample(i));
                     }
                 }
             }
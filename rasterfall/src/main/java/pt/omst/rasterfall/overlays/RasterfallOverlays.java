@@ -22,6 +22,7 @@ import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
 import javax.swing.JToggleButton;
@@ -30,6 +31,7 @@ import javax.swing.border.BevelBorder;
 import javax.swing.plaf.LayerUI;
 
 import lombok.extern.slf4j.Slf4j;
+import pt.lsts.neptus.colormap.ColorMapFactory;
 import pt.omst.rasterfall.RasterfallDebug;
 import pt.omst.rasterfall.RasterfallTiles;
 import pt.omst.rasterfall.replay.LogReplay;
@@ -44,6 +46,10 @@ public class RasterfallOverlays extends LayerUI<RasterfallTiles> implements LogR
     private JToggleButton measureButton, heightButton, markButton, infoButton, gridButton, rulerButton, hudButton,
             coverageButton, syncButton;
     private JSpinner speedSpinner;
+    // color map of the tiles (the first item keeps the exported colors) and gain applied to their intensities
+    private JComboBox<String> colorMapCombo;
+    private JSpinner gainSpinner;
+    private static final String EXPORTED_COLORS = "Exported colors";
 
     private final RulerOverlay rulerOverlay = new RulerOverlay();
     private final GridOverlay gridOverlay = new GridOverlay();
@@ -195,6 +201,21 @@ public class RasterfallOverlays extends LayerUI<RasterfallTiles> implements LogR
                 LogReplay.setReplayState(Instant.now(), Instant.ofEpochMilli(timestamp), 0);
         });
 
+        progress("Adding color controls...", progressCallback);
+        colorMapCombo = new JComboBox<>();
+        colorMapCombo.addItem(EXPORTED_COLORS);
+        for (String name : ColorMapFactory.colorMapNamesList)
+            colorMapCombo.addItem(name);
+        colorMapCombo.setPreferredSize(new Dimension(140, 33));
+        colorMapCombo.setToolTipText("Color map of the rasters exported with intensities");
+        colorMapCombo.addActionListener(e -> colorsAction());
+        gainSpinner = new JSpinner(new SpinnerNumberModel(1.0, 0.1, 16.0, 0.1));
+        gainSpinner.setPreferredSize(new Dimension(75, 33));
+        gainSpinner.setFont(new Font("Arial", Font.PLAIN, 16));
+        gainSpinner.setToolTipText("Gain applied to the intensities before color mapping");
+        gainSpinner.setEnabled(false);
+        gainSpinner.addChangeListener(e -> colorsAction());
+
         progress("Adding buttons...", progressCallback);
         
         leftPanel.add(infoButton);
@@ -207,6 +228,8 @@ public class RasterfallOverlays extends LayerUI<RasterfallTiles> implements LogR
         leftPanel.add(coverageButton);
         leftPanel.add(syncButton);
 
+        rightPanel.add(colorMapCombo);
+        rightPanel.add(gainSpinner);
         rightPanel.add(speedSpinner);
         rightPanel.add(playButton);
         progress("Finalizing controls panel...", progressCallback);
@@ -220,6 +243,16 @@ public class RasterfallOverlays extends LayerUI<RasterfallTiles> implements LogR
         return controlsPanel;
     }
 
+    private void colorsAction() {
+        String name = (String) colorMapCombo.getSelectedItem();
+        boolean exported = EXPORTED_COLORS.equals(name);
+        gainSpinner.setEnabled(!exported);
+        double gain = ((Number) gainSpinner.getValue()).doubleValue();
+        int count = tiles.setColorMap(exported ? null : ColorMapFactory.getColorMapByName(name), gain);
+        if (count == 0 && !exported)
+            log.warn("No rasters were exported with intensities, colors were not changed");
+    }
+
     public void playAction() {
         replaying = !replaying;
         if (replaying) {
@@ -15,41 +15,42 @@ import pt.lsts.neptus.util.I18n;
 import pt.omst.rasterlib.Contact;
 import pt.omst.rasterlib.IndexedRaster;
 import pt.omst.rasterlib.Observation;
-import pt.omst.rasterlib.Pose;
-import pt.omst.rasterlib.SampleDescription;
+import pt.omst.rasterlib.SampleColumns;
 
 /**
  * Utility class for finding potential markers in IndexedRaster data using
  * gradient descent algorithms.
  * This class adapts sidescan marker finding algorithms to work with
- * IndexedRaster and SampleDescription data.
+ * IndexedRaster data, reading the samples through their columns.
  */
 @Slf4j
 public class IndexedRasterTiles {
 
     private final IndexedRaster raster;
+    private final SampleColumns samples;
 
     public IndexedRasterTiles(IndexedRaster raster) {
         this.raster = raster;
+        this.samples = raster.getColumns();
+    }
+
+    private static double valueOrZero(double value) {
+        return Double.isNaN(value) ? 0 : value;
     }
 
     /**
      * Calculate location from a sample at a given range index.
      * Adapted from ISidescanLine.calcPointFromIndex to work with IndexedRaster.
      * 
-     * @param sample          The sample description containing pose information
+     * @param sample          The index of the sample
      * @param xIndex          The x index in the raster (0 to image width)
      * @param imageWidth      The width of the raster image
      * @param slantCorrection Whether to apply slant correction
      * @return LocationType at the calculated position
      */
-    private LocationType calcPointFromIndex(SampleDescription sample, int xIndex, int imageWidth,
+    private LocationType calcPointFromIndex(int sample, int xIndex, int imageWidth,
             boolean slantCorrection) {
-        Pose pose = sample.getPose();
-        if (pose == null) {
-            return new LocationType(0, 0);
-        }
-        LocationType location = new LocationType(pose.getLatitude(), pose.getLongitude());
+        LocationType location = new LocationType(samples.getLatitude(sample), samples.getLongitude(sample));
 
         double range = raster.getSensorInfo().getMaxRange();
         // Calculate slant range from x index
@@ -58,7 +59,7 @@ public class IndexedRasterTiles {
         // Convert slant range to ground range if requested
         double distance = slantRange;
         if (slantCorrection) {
-            double alt = pose.getAltitude() != null ? pose.getAltitude() : 0;
+            double alt = valueOrZero(samples.getAltitude(sample));
             alt = Math.max(alt, 0);
             // Only apply correction if slant range exceeds altitude
             if (Math.abs(slantRange) > alt) {
@@ -75,7 +76,7 @@ public class IndexedRasterTiles {
 
         // Use polar coordinates: azimuth and offset distance
         // Note: psi is already in degrees in the data
-        double headingDeg = pose.getPsi() != null ? pose.getPsi() : 0;
+        double headingDeg = valueOrZero(samples.getPsi(sample));
         if (slantRange >= 0) {
             // Starboard side (positive range) - perpendicular to heading (+ 90 degrees)
             location.setAzimuth(headingDeg + 90);
@@ -96,11 +97,11 @@ public class IndexedRasterTiles {
      * followed by local refinement for precision.
      * 
      * @param targetPoint The target location to find
-     * @param sample      The sample description (equivalent to a sidescan line)
+     * @param sample      The index of the sample (equivalent to a sidescan line)
      * @param imageWidth  The width of the raster image
      * @return The x index with minimum distance to target
      */
-    private int findMinX(LocationType targetPoint, SampleDescription sample, int imageWidth) {
+    private int findMinX(LocationType targetPoint, int sample, int imageWidth) {
         if (imageWidth <= 1) {
             return 0;
         }
@@ -154,7 +155,7 @@ public class IndexedRasterTiles {
      * @return The sample index closest to the target
      */
     private int findClosestSampleIndex(int initialIndex, LocationType targetPoint, int imageWidth) {
-        int numSamples = raster.getSamples().size();
+        int numSamples = samples.size();
         if (numSamples == 0) {
             return 0;
         }
@@ -169,9 +170,8 @@ public class IndexedRasterTiles {
 
         // Helper lambda to calculate distance for a sample index
         java.util.function.IntToDoubleFunction distanceAt = idx -> {
-            SampleDescription s = raster.getSamples().get(idx);
-            int minX = findMinXSimple(targetPoint, s, imageWidth);
-            LocationType point = calcPointFromIndex(s, minX, imageWidth, true);
+            int minX = findMinXSimple(targetPoint, idx, imageWidth);
+            LocationType point = calcPointFromIndex(idx, minX, imageWidth, true);
             return targetPoint.getHorizontalDistanceInMeters(point);
         };
 
@@ -209,7 +209,7 @@ public class IndexedRasterTiles {
      * Simple linear search for minimum X (used internally by findClosestSampleIndex
      * to avoid recursion issues).
      */
-    private int findMinXSimple(LocationType targetPoint, SampleDescription sample, int imageWidth) {
+    private int findMinXSimple(LocationType targetPoint, int sample, int imageWidth) {
         if (imageWidth <= 1) {
             return 0;
         }
@@ -273,9 +273,8 @@ public class IndexedRasterTiles {
 
         int sampleIndex = 0;
 
-        while (sampleIndex < raster.getSamples().size()) {
-            SampleDescription sample = raster.getSamples().get(sampleIndex);
-            long ts = sample.getTimestamp().toInstant().toEpochMilli();
+        while (sampleIndex < samples.size()) {
+            long ts = samples.getTimestamp(sampleIndex);
 
             // Skip if too close to the original mark
             if (ts > nextMarkTimeMs - timeOffsetMs && ts < nextMarkTimeMs + timeOffsetMs) {
@@ -284,7 +283,7 @@ public class IndexedRasterTiles {
             }
 
             int midX = imageWidth / 2;
-            LocationType midPoint = calcPointFromIndex(sample, midX, imageWidth, true);
+            LocationType midPoint = calcPointFromIndex(sampleIndex, midX, imageWidth, true);
             double range = raster.getSensorInfo().getMaxRange();
 
             double distanceToMid = targetPoint.getHorizontalDistanceInMeters(midPoint);
@@ -293,8 +292,8 @@ public class IndexedRasterTiles {
                 continue;
             }
 
-            int minX = findMinX(targetPoint, sample, imageWidth);
-            LocationType minP = calcPointFromIndex(sample, minX, imageWidth, true);
+            int minX = findMinX(targetPoint, sampleIndex, imageWidth);
+            LocationType minP = calcPointFromIndex(sampleIndex, minX, imageWidth, true);
             double minDistance = targetPoint.getHorizontalDistanceInMeters(minP);
 
             if (log.isDebugEnabled()) {
@@ -303,16 +302,15 @@ public class IndexedRasterTiles {
 
             if (minDistance < 2) {
                 int bestIndex = findClosestSampleIndex(sampleIndex, targetPoint, imageWidth);
-                SampleDescription bestSample = raster.getSamples().get(bestIndex);
-                long bestTs = bestSample.getTimestamp().toInstant().toEpochMilli();
+                long bestTs = samples.getTimestamp(bestIndex);
 
                 if (bestTs > nextMarkTimeMs - timeOffsetMs && bestTs < nextMarkTimeMs + timeOffsetMs) {
                     sampleIndex++;
                     continue;
                 }
 
-                minX = findMinX(targetPoint, bestSample, imageWidth);
-                minP = calcPointFromIndex(bestSample, minX, imageWidth, true);
+                minX = findMinX(targetPoint, bestIndex, imageWidth);
+                minP = calcPointFromIndex(bestIndex, minX, imageWidth, true);
 
                 log.info("Min Distance improved from " + minDistance + " to " +
                         targetPoint.getHorizontalDistanceInMeters(minP));
@@ -322,8 +320,8 @@ public class IndexedRasterTiles {
                 observation.setUuid(UUID.randomUUID());
                 observation.setLatitude(targetPoint.getLatitudeDegs());
                 observation.setLongitude(targetPoint.getLongitudeDegs());
-                observation.setDepth(bestSample.getPose().getDepth() != null ? bestSample.getPose().getDepth() : 0.0);
-                observation.setTimestamp(bestSample.getTimestamp());
+                observation.setDepth(valueOrZero(samples.getDepth(bestIndex)));
+                observation.setTimestamp(samples.getDateTime(bestIndex));
                 observation.setRasterFilename(raster.getFilename());
                 observation
                         .setSystemName(raster.getSensorInfo() != null && raster.getSensorInfo().getSystemName() != null
@@ -415,14 +413,14 @@ public class IndexedRasterTiles {
      * @return RasterBounds containing the spatial and temporal bounds
      */
     public RasterBounds calculateBounds() {
-        if (raster.getSamples().isEmpty()) {
+        if (samples.isEmpty()) {
             return null;
         }
         
         double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
         double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
         
-        int numSamples = raster.getSamples().size();
+        int numSamples = samples.size();
         double range = raster.getSensorInfo().getMaxRange();
         
         // Sample at strategic points: start, 1/3, 2/3, end
@@ -430,62 +428,51 @@ public class IndexedRasterTiles {
         
         for (int idx : indices) {
             if (idx >= 0 && idx < numSamples) {
-                SampleDescription sample = raster.getSamples().get(idx);
-                Pose pose = sample.getPose();
-                if (pose != null) {
-                    // Get the vehicle position
-                    LocationType vehicleLoc = new LocationType(pose.getLatitude(), pose.getLongitude());
-                    
-                    // Get heading to calculate perpendicular directions
-                    // Note: psi is already in degrees in the data
-                    double headingDeg = pose.getPsi() != null ? pose.getPsi() : 0;
-                    
-                    // Calculate port side edge (perpendicular left, -90 degrees from heading)
-                    LocationType portEdge = new LocationType(vehicleLoc);
-                    portEdge.setAzimuth(headingDeg - 90);
-                    portEdge.setOffsetDistance(range);
-                    portEdge.convertToAbsoluteLatLonDepth();
-                    
-                    // Calculate starboard side edge (perpendicular right, +90 degrees from heading)
-                    LocationType starboardEdge = new LocationType(vehicleLoc);
-                    starboardEdge.setAzimuth(headingDeg + 90);
-                    starboardEdge.setOffsetDistance(range);
-                    starboardEdge.convertToAbsoluteLatLonDepth();
-                    
-                    // Update bounds with vehicle position and both edges
-                    minLat = Math.min(minLat, pose.getLatitude());
-                    maxLat = Math.max(maxLat, pose.getLatitude());
-                    minLon = Math.min(minLon, pose.getLongitude());
-                    maxLon = Math.max(maxLon, pose.getLongitude());
-                    
-                    minLat = Math.min(minLat, portEdge.getLatitudeDegs());
-                    maxLat = Math.max(maxLat, portEdge.getLatitudeDegs());
-                    minLon = Math.min(minLon, portEdge.getLongitudeDegs());
-                    maxLon = Math.max(maxLon, portEdge.getLongitudeDegs());
-                    
-                    minLat = Math.min(minLat, starboardEdge.getLatitudeDegs());
-                    maxLat = Math.max(maxLat, starboardEdge.getLatitudeDegs());
-                    minLon = Math.min(minLon, starboardEdge.getLongitudeDegs());
-                    maxLon = Math.max(maxLon, starboardEdge.getLongitudeDegs());
-                }
+                // Get the vehicle position
+                LocationType vehicleLoc = new LocationType(samples.getLatitude(idx), samples.getLongitude(idx));
+                
+                // Get heading to calculate perpendicular directions
+                // Note: psi is already in degrees in the data
+                double headingDeg = valueOrZero(samples.getPsi(idx));
+                
+                // Calculate port side edge (perpendicular left, -90 degrees from heading)
+                LocationType portEdge = new LocationType(vehicleLoc);
+                portEdge.setAzimuth(headingDeg - 90);
+                portEdge.setOffsetDistance(range);
+                portEdge.convertToAbsoluteLatLonDepth();
+                
+                // Calculate starboard side edge (perpendicular right, +90 degrees from heading)
+                LocationType starboardEdge = new LocationType(vehicleLoc);
+                starboardEdge.setAzimuth(headingDeg + 90);
+                starboardEdge.setOffsetDistance(range);
+                starboardEdge.convertToAbsoluteLatLonDepth();
+                
+                // Update bounds with vehicle position and both edges
+                minLat = Math.min(minLat, samples.getLatitude(idx));
+                maxLat = Math.max(maxLat, samples.getLatitude(idx));
+                minLon = Math.min(minLon, samples.getLongitude(idx));
+                maxLon = Math.max(maxLon, samples.getLongitude(idx));
+                
+                minLat = Math.min(minLat, portEdge.getLatitudeDegs());
+                maxLat = Math.max(maxLat, portEdge.getLatitudeDegs());
+                minLon = Math.min(minLon, portEdge.getLongitudeDegs());
+                maxLon = Math.max(maxLon, portEdge.getLongitudeDegs());
+                
+                minLat = Math.min(minLat, starboardEdge.getLatitudeDegs());
+                maxLat = Math.max(maxLat, starboardEdge.getLatitudeDegs());
+                minLon = Math.min(minLon, starboardEdge.getLongitudeDegs());
+                maxLon = Math.max(maxLon, starboardEdge.getLongitudeDegs());
             }
         }
         
         // Calculate average speed
-        SampleDescription firstSample = raster.getSamples().get(0);
-        SampleDescription lastSample = raster.getSamples().get(numSamples - 1);
-        
-        long startTimeMs = firstSample.getTimestamp().toInstant().toEpochMilli();
-        long endTimeMs = lastSample.getTimestamp().toInstant().toEpochMilli();
+        long startTimeMs = samples.getStartMillis();
+        long endTimeMs = samples.getEndMillis();
         long durationMs = Math.abs(endTimeMs - startTimeMs);
         
         // Calculate total distance traveled
-        LocationType startLoc = new LocationType(
-            firstSample.getPose().getLatitude(), 
-            firstSample.getPose().getLongitude());
-        LocationType endLoc = new LocationType(
-            lastSample.getPose().getLatitude(), 
-            lastSample.getPose().getLongitude());
+        LocationType startLoc = new LocationType(samples.getLatitude(0), samples.getLongitude(0));
+        LocationType endLoc = new LocationType(samples.getLatitude(numSamples - 1), samples.getLongitude(numSamples - 1));
         double distance = startLoc.getHorizontalDistanceInMeters(endLoc);
         
         double avgSpeed = durationMs > 0 ? (distance / (durationMs / 1000.0)) : 1.5; // default 1.5 m/s
@@ -514,7 +501,7 @@ public class IndexedRasterTiles {
             java.util.function.Consumer<Observation> observationConsumer,
             long minTimeOffsetMs, double distanceThreshold) {
         
-        if (raster.getSamples().isEmpty()) {
+        if (samples.isEmpty()) {
             return 0;
         }
         
@@ -552,15 +539,10 @@ public class IndexedRasterTiles {
         }
         
         int potentialObservationIdx = 0;
-        int numSamples = raster.getSamples().size();
+        int numSamples = samples.size();
         
         // Get first sample to calculate track direction
-        SampleDescription firstSample = raster.getSamples().get(0);
-        SampleDescription lastSample = raster.getSamples().get(numSamples - 1);
-        
-        LocationType startLoc = new LocationType(
-            firstSample.getPose().getLatitude(), 
-            firstSample.getPose().getLongitude());
+        LocationType startLoc = new LocationType(samples.getLatitude(0), samples.getLongitude(0));
         
         // Calculate distance from target to the start of the track
         double distToStart = targetPoint.getHorizontalDistanceInMeters(startLoc);
@@ -586,8 +568,7 @@ public class IndexedRasterTiles {
         double bestDistance = Double.MAX_VALUE;
         
         for (int i = startIdx; i <= endIdx; i++) {
-            SampleDescription sample = raster.getSamples().get(i);
-            long sampleTimeMs = sample.getTimestamp().toInstant().toEpochMilli();
+            long sampleTimeMs = samples.getTimestamp(i);
             
             // Skip if too close to reference time
             if (Math.abs(sampleTimeMs - referenceTimeMs) < minTimeOffsetMs) {
@@ -595,12 +576,7 @@ public class IndexedRasterTiles {
             }
             
             // Get center position of the sample (vehicle track position)
-            Pose pose = sample.getPose();
-            if (pose == null) {
-                continue;
-            }
-            
-            LocationType sampleCenter = new LocationType(pose.getLatitude(), pose.getLongitude());
+            LocationType sampleCenter = new LocationType(samples.getLatitude(i), samples.getLongitude(i));
             double distanceToCenter = targetPoint.getHorizontalDistanceInMeters(sampleCenter);
             
             // Check if target is within sensor range of this sample
@@ -617,17 +593,13 @@ public class IndexedRasterTiles {
             int refineEnd = Math.min(numSamples - 1, bestMatchIdx + 10);
             
             for (int i = refineStart; i <= refineEnd; i++) {
-                SampleDescription sample = raster.getSamples().get(i);
-                long sampleTimeMs = sample.getTimestamp().toInstant().toEpochMilli();
+                long sampleTimeMs = samples.getTimestamp(i);
                 
                 if (Math.abs(sampleTimeMs - referenceTimeMs) < minTimeOffsetMs) {
                     continue;
                 }
                 
-                Pose pose = sample.getPose();
-                if (pose == null) continue;
-                
-                LocationType sampleCenter = new LocationType(pose.getLatitude(), pose.getLongitude());
+                LocationType sampleCenter = new LocationType(samples.getLatitude(i), samples.getLongitude(i));
                 double distanceToCenter = targetPoint.getHorizontalDistanceInMeters(sampleCenter);
                 
                 if (distanceToCenter < bestDistance) {
@@ -637,11 +609,9 @@ public class IndexedRasterTiles {
             }
             
             // Create observation for the best match
-            SampleDescription bestSample = raster.getSamples().get(bestMatchIdx);
-            
             // Final distance check
-            Pose bestPose = bestSample.getPose();
-            LocationType bestCenter = new LocationType(bestPose.getLatitude(), bestPose.getLongitude());
+            LocationType bestCenter = new LocationType(samples.getLatitude(bestMatchIdx),
+                    samples.getLongitude(bestMatchIdx));
             double finalDistance = targetPoint.getHorizontalDistanceInMeters(bestCenter);
             
             if (finalDistance <= range) {
@@ -652,8 +622,8 @@ public class IndexedRasterTiles {
                 observation.setUuid(UUID.randomUUID());
                 observation.setLatitude(targetPoint.getLatitudeDegs());
                 observation.setLongitude(targetPoint.getLongitudeDegs());
-                observation.setDepth(bestPose.getDepth() != null ? bestPose.getDepth() : 0.0);
-                observation.setTimestamp(bestSample.getTimestamp());
+                observation.setDepth(valueOrZero(samples.getDepth(bestMatchIdx)));
+                observation.setTimestamp(samples.getDateTime(bestMatchIdx));
                 observation.setRasterFilename(raster.getFilename());
                 observation.setSystemName(raster.getSensorInfo() != null && raster.getSensorInfo().getSystemName() != null
                         ? raster.getSensorInfo().getSystemName()
@@ -0,0 +1,50 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterfall;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import pt.omst.rasterlib.IndexedRaster;
+import pt.omst.rasterlib.Pose;
+import pt.omst.rasterlib.SampleDescription;
+import pt.omst.rasterlib.SensorInfo;
+
+/**
+ * Synthetic rasters shared by the tests of the tiles.
+ */
+final class TestRasters {
+
+    private TestRasters() {
+    }
+
+    /**
+     * @param filename the image of the raster
+     * @param start    time of the first sample
+     * @param samples  number of samples, one per second, moving at 1 m/s
+     * @return a raster of a sensor with 50 m range
+     */
+    static IndexedRaster createRaster(String filename, OffsetDateTime start, int samples) {
+        IndexedRaster raster = new IndexedRaster();
+        raster.setFilename(filename);
+        SensorInfo sensorInfo = new SensorInfo();
+        sensorInfo.setMaxRange(50.0);
+        sensorInfo.setMinRange(-50.0);
+        raster.setSensorInfo(sensorInfo);
+        List<SampleDescription> list = new ArrayList<>(samples);
+        for (int s = 0; s < samples; s++) {
+            SampleDescription sample = new SampleDescription();
+            Pose pose = new Pose();
+            pose.setU(1.0);
+            sample.setPose(pose);
+            sample.setTimestamp(start.plusSeconds(s));
+            list.add(sample);
+        }
+        raster.setSamples(list);
+        return raster;
+    }
+}
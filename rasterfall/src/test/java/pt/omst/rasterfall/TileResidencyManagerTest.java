@@ -0,0 +1,146 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterfall;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import pt.omst.rasterlib.IndexedRaster;
+
+/**
+ * Unit tests for {@link TileResidencyManager}, scrolling over tiles whose images are read from a temporary folder.
+ */
+class TileResidencyManagerTest {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 100;
+    // opaque PNG files are read as 3 byte BGR images
+    private static final long TILE_BYTES = WIDTH * HEIGHT * 3;
+
+    @TempDir
+    Path folder;
+
+    private final Semaphore loads = new Semaphore(0);
+
+    private List<RasterfallTile> createTiles(int count) throws Exception {
+        List<RasterfallTile> tiles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String filename = "tile" + i + ".png";
+            ImageIO.write(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB), "png",
+                    new File(folder.toFile(), filename));
+            OffsetDateTime start = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).plusSeconds(i * HEIGHT);
+            IndexedRaster raster = TestRasters.createRaster(filename, start, HEIGHT);
+            RasterfallTile tile = new RasterfallTile(folder.toFile(), raster);
+            tile.setBounds(0, i * HEIGHT, WIDTH, HEIGHT);
+            tiles.add(tile);
+        }
+        return tiles;
+    }
+
+    private TileResidencyManager createManager(List<RasterfallTile> tiles, long maxBytes) {
+        TileResidencyManager manager = new TileResidencyManager(tiles, maxBytes);
+        for (RasterfallTile tile : tiles) {
+            tile.setLoadListener(t -> {
+                manager.loaded(t);
+                loads.release();
+            });
+        }
+        return manager;
+    }
+
+    /**
+     * Shows the given tile (at the given time) and waits for tiles to load
+     */
+    private void scrollTo(TileResidencyManager manager, int tile, long millis, int loadedTiles)
+            throws InterruptedException {
+        manager.update(new Rectangle(0, tile * HEIGHT, WIDTH, HEIGHT), TimeUnit.MILLISECONDS.toNanos(millis));
+        assertTrue(loads.tryAcquire(loadedTiles, 10, TimeUnit.SECONDS), "tiles were not loaded");
+    }
+
+    @Test
+    void testOnlyTilesNearTheViewportAreLoaded() throws Exception {
+        List<RasterfallTile> tiles = createTiles(10);
+        TileResidencyManager manager = createManager(tiles, 100 * TILE_BYTES);
+        manager.setPrefetchScreens(1);
+        scrollTo(manager, 4, 1000, 3);
+        for (int i = 0; i < tiles.size(); i++)
+            assertEquals(i >= 3 && i <= 5, tiles.get(i).isResident(), "tile " + i);
+        assertEquals(3 * TILE_BYTES, manager.getStats().bytes());
+    }
+
+    @Test
+    void testMemoryStaysWithinBudgetWhileScrolling() throws Exception {
+        List<RasterfallTile> tiles = createTiles(20);
+        TileResidencyManager manager = createManager(tiles, 3 * TILE_BYTES);
+        manager.setPrefetchScreens(0);
+        // one tile per second, slow enough not to prefetch
+        for (int i = 0; i < tiles.size(); i++) {
+            scrollTo(manager, i, 1000 * (i + 1), 1);
+            assertTrue(manager.getStats().bytes() <= 3 * TILE_BYTES, manager.getStats().toString());
+        }
+        assertEquals(3, manager.getStats().tiles());
+        assertEquals(17, manager.getStats().evictions());
+        // the most recently used tiles are kept
+        for (int i = 0; i < tiles.size(); i++)
+            assertEquals(i >= 17, tiles.get(i).isResident(), "tile " + i);
+    }
+
+    @Test
+    void testVisibleTilesAreKeptOverBudget() throws Exception {
+        List<RasterfallTile> tiles = createTiles(5);
+        TileResidencyManager manager = createManager(tiles, 0);
+        manager.setPrefetchScreens(0);
+        scrollTo(manager, 2, 1000, 1);
+        assertTrue(tiles.get(2).isResident());
+        assertEquals(TILE_BYTES, manager.getStats().bytes());
+
+        manager.clear();
+        assertFalse(tiles.get(2).isResident());
+        assertEquals(0, manager.getStats().bytes());
+    }
+
+    @Test
+    void testTilesAheadOfScrollingArePrefetched() throws Exception {
+        List<RasterfallTile> tiles = createTiles(30);
+        TileResidencyManager manager = createManager(tiles, 100 * TILE_BYTES);
+        manager.setPrefetchScreens(0);
+        manager.setPrefetchTiles(1);
+        manager.setLookaheadSeconds(2);
+        // scrolling up one tile every 100 ms (1000 px/s) from tile 25
+        scrollTo(manager, 25, 1000, 1);
+        scrollTo(manager, 24, 1100, 2);
+        // after the second update only the (smoothed) velocity predicts the tiles above
+        assertTrue(manager.getStats().velocity() < 0, manager.getStats().toString());
+        scrollTo(manager, 23, 1200, 0);
+        Thread.sleep(500);
+        assertTrue(tiles.get(22).isResident());
+        assertFalse(tiles.get(26).isResident(), "tiles behind are not prefetched");
+
+        // the replay velocity is used instead of the measured one
+        manager.setReplayVelocity(HEIGHT * 2);
+        scrollTo(manager, 23, 1250, 0);
+        Thread.sleep(500);
+        for (int i = 24; i <= 27; i++)
+            assertTrue(tiles.get(i).isResident(), "tile " + i);
+        assertFalse(tiles.get(28).isResident());
+        manager.close();
+    }
+}
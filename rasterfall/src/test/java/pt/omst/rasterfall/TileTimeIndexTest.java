@@ -0,0 +1,91 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterfall;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Unit tests for {@link TileTimeIndex}, against a linear search with {@link RasterfallTile#containsTime(Instant)}.
+ */
+class TileTimeIndexTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    /**
+     * @return a tile with one sample per second, from the first to the last given second after {@link #START}
+     */
+    private static RasterfallTile createTile(int firstSecond, int lastSecond) {
+        return new RasterfallTile(new File("."), TestRasters.createRaster("tile" + firstSecond + ".png",
+                START.plusSeconds(firstSecond), lastSecond - firstSecond + 1));
+    }
+
+    /**
+     * The tiles containing the time, starting last first
+     */
+    private static List<RasterfallTile> linearSearch(List<RasterfallTile> tiles, long timeMillis) {
+        return tiles.stream().filter(tile -> tile.containsTime(Instant.ofEpochMilli(timeMillis)))
+                .sorted(Comparator.comparingLong(RasterfallTile::getStartMillis).reversed()).toList();
+    }
+
+    private static void assertSameAsLinearSearch(List<RasterfallTile> tiles) {
+        TileTimeIndex index = new TileTimeIndex(tiles);
+        long from = tiles.stream().mapToLong(RasterfallTile::getStartMillis).min().orElse(0) - 2000;
+        long to = tiles.stream().mapToLong(RasterfallTile::getEndMillis).max().orElse(0) + 2000;
+        // every time at a sample, halfway between samples and one millisecond around them
+        for (long time = from; time <= to; time += 500) {
+            for (long t = time - 1; t <= time + 1; t++) {
+                List<RasterfallTile> expected = linearSearch(tiles, t);
+                assertEquals(expected.isEmpty() ? null : expected.getFirst(), index.getTileAt(t),
+                        "time " + (t - START.toInstant().toEpochMilli()));
+            }
+        }
+    }
+
+    @Test
+    void testConsecutiveTiles() {
+        // the end of each tile is the start of the next: neither contains it
+        List<RasterfallTile> tiles = List.of(createTile(0, 10), createTile(10, 20), createTile(20, 30));
+        assertSameAsLinearSearch(tiles);
+        TileTimeIndex index = new TileTimeIndex(tiles);
+        long start = START.toInstant().toEpochMilli();
+        assertNull(index.getTileAt(start));
+        assertNull(index.getTileAt(start + 10_000));
+        assertNull(index.getTileAt(start + 30_000));
+        assertSame(tiles.get(1), index.getTileAt(start + 10_001));
+        assertSame(tiles.get(1), index.getTileAt(start + 19_999));
+    }
+
+    @Test
+    void testTilesWithGaps() {
+        // unsorted, with times before, between and after the tiles
+        assertSameAsLinearSearch(List.of(createTile(40, 45), createTile(0, 5), createTile(20, 30)));
+    }
+
+    @Test
+    void testOverlappingTiles() {
+        RasterfallTile longTile = createTile(0, 100);
+        List<RasterfallTile> tiles = List.of(createTile(50, 60), longTile, createTile(10, 20), createTile(15, 25),
+                createTile(90, 120));
+        assertSameAsLinearSearch(tiles);
+        // after the shorter tiles, the earlier long tile still contains the time
+        assertSame(longTile, new TileTimeIndex(tiles).getTileAt(START.toInstant().toEpochMilli() + 70_000));
+    }
+
+    @Test
+    void testNoTiles() {
+        assertNull(new TileTimeIndex(List.of()).getTileAt(START.toInstant().toEpochMilli()));
+    }
+}
@@ -7,6 +7,7 @@ package pt.omst.rasterlib;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -21,10 +22,69 @@ public class IndexedRaster {
     @lombok.Getter(onMethod_ = {@JsonProperty("raster-type")})
     @lombok.Setter(onMethod_ = {@JsonProperty("raster-type")})
     private RasterType rasterType;
-    @lombok.Getter(onMethod_ = {@JsonProperty("samples")})
-    @lombok.Setter(onMethod_ = {@JsonProperty("samples")})
     private List<SampleDescription> samples;
     @lombok.Getter(onMethod_ = {@JsonProperty("sensor-info")})
     @lombok.Setter(onMethod_ = {@JsonProperty("sensor-info")})
     private SensorInfo sensorInfo;
+    @lombok.Getter(onMethod_ = {@JsonProperty("overviews")})
+    @lombok.Setter(onMethod_ = {@JsonProperty("overviews")})
+    private List<RasterOverview> overviews;
+    @lombok.Getter(onMethod_ = {@JsonProperty("intensity-filename")})
+    @lombok.Setter(onMethod_ = {@JsonProperty("intensity-filename")})
+    private String intensityFilename;
+    @lombok.Getter(onMethod_ = {@JsonProperty("intensity-max")})
+    @lombok.Setter(onMethod_ = {@JsonProperty("intensity-max")})
+    private Double intensityMax;
+    @lombok.EqualsAndHashCode.Exclude
+    @lombok.ToString.Exclude
+    private SampleColumns columns;
+
+    /**
+     * @return the samples, recreated from the columns if they were dropped by {@link #compactSamples()}
+     */
+    @JsonProperty("samples")
+    public synchronized List<SampleDescription> getSamples() {
+        if (samples == null && columns != null)
+            samples = columns.toSamples();
+        return samples;
+    }
+
+    @JsonProperty("samples")
+    public synchronized void setSamples(List<SampleDescription> samples) {
+        this.samples = samples;
+        this.columns = null;
+    }
+
+    /**
+     * Samples in primitive arrays, created from the sample objects when first requested. Later changes to the sample
+     * objects are not reflected in the columns, only calls to {@link #setSamples(List)}.
+     * @return the columns or null if there are no samples
+     */
+    @JsonIgnore
+    public synchronized SampleColumns getColumns() {
+        if (columns == null && samples != null)
+            columns = SampleColumns.of(samples);
+        return columns;
+    }
+
+    /**
+     * Replaces the samples by the given columns, without creating sample objects (see {@link #compactSamples()})
+     */
+    @JsonIgnore
+    public synchronized void setColumns(SampleColumns columns) {
+        this.columns = columns;
+        this.samples = null;
+    }
+
+    /**
+     * Drops the sample objects, keeping only the columns, to save memory while the raster is only read through
+     * {@link #getColumns()}. {@link #getSamples()} recreates the objects if called later.
+     * @return the columns or null if there are no samples
+     */
+    public synchronized SampleColumns compactSamples() {
+        SampleColumns result = getColumns();
+        if (result != null)
+            samples = null;
+        return result;
+    }
 }
@@ -5,25 +5,29 @@
 //***************************************************************************
 package pt.omst.rasterlib;
 
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferUShort;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.nio.file.Files;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -31,10 +35,10 @@ import lombok.extern.slf4j.Slf4j;
 import pt.lsts.neptus.colormap.ColorMap;
 import pt.lsts.neptus.colormap.ColorMapFactory;
 import pt.lsts.neptus.mra.SidescanLogMarker;
-import pt.lsts.neptus.util.ImageUtils;
 import pt.omst.sidescan.ISidescanLine;
 import pt.omst.sidescan.SidescanHistogramNormalizer;
 import pt.omst.sidescan.SidescanLine;
+import pt.omst.sidescan.SidescanLineRenderer;
 import pt.omst.sidescan.SidescanMarkerUtils;
 import pt.omst.sidescan.SidescanParameters;
 import pt.omst.sidescan.SidescanParser;
@@ -86,19 +90,15 @@ public class IndexedRasterCreator {
             int subsystem, int margin) {
         ArrayList<SidescanLine> lines = SidescanMarkerUtils.getNormalizedLines(marker, parser, subsystem, margin,
                 margin);
-        if (normalizer != null) {
-            for (SidescanLine l : lines) {
-                normalizer.normalize(l, subsystem);
-            }
-        }
         SampleDescription lastSample = null;
-        for (int i = 0; i < lines.size(); i++) {
-            SidescanLine line = (SidescanLine) lines.toArray()[i];
-            SampleDescription sample = getSample(lastSample, line, i);
+        int i = 0;
+        for (SidescanLine line : lines) {
+            SampleDescription sample = getSample(lastSample, line, i++);
             lastSample = sample;
             raster.getSamples().add(sample);
         }
-        image = getSidescanMarkerImage(marker, lines, margin);
+        image = getSidescanMarkerImage(marker, lines, margin, new SidescanLineRenderer(
+                ColorMapFactory.createBronzeColormap(), normalizer, subsystem));
 
         SidescanLine firstLine = lines.stream().findFirst().get();
         if (raster.getSensorInfo() == null)
@@ -118,7 +118,8 @@ public class IndexedRasterCreator {
         return null;
     }
 
-    private BufferedImage getSidescanMarkerImage(SidescanLogMarker marker, List<SidescanLine> lines, int margin) {
+    private BufferedImage getSidescanMarkerImage(SidescanLogMarker marker, List<SidescanLine> lines, int margin,
+            SidescanLineRenderer renderer) {
 
         SidescanLine middleLine = lines.get(lines.size() / 2);
         double slantedX = SidescanMarkerUtils.getSlantDistance(middleLine.getState().getAltitude(), marker.getX());
@@ -158,11 +159,11 @@ public class IndexedRasterCreator {
 
         for (int y = 0; y < lines.size(); y++) {
             SidescanLine line = lines.get(y);
-            line.drawSlantedImage(ColorMapFactory.createBronzeColormap());
-            int imgx = markerStartPos;
-            for (int x = 0; x < line.getData().length && imgx < markerEndPos; x++, imgx++) {
-                myImage.setRGB(x, y, line.getImage().getRGB(imgx, 0));
-            }
+            int[] pixels = new int[line.getData().length];
+            renderer.render(line.getData(), pixels, 0);
+            int width = Math.min(markerEndPos, pixels.length) - markerStartPos;
+            if (width > 0)
+                myImage.setRGB(0, y, width, 1, pixels, markerStartPos, width);
         }
         return myImage;
     }
@@ -173,42 +174,157 @@ public class IndexedRasterCreator {
      * @param lines The full lines to export to the output file
      */
     public void export(Collection<SidescanLine> lines) {
+        export(lines, null, 0);
+    }
+
+    /**
+     * Exports the given lines to an output file (both image and json file), normalizing and coloring each line in a
+     * single pass
+     * 
+     * @param lines      The full lines (not normalized) to export to the output file
+     * @param normalizer The histograms to normalize the lines with, may be null
+     * @param subsystem  The subsystem of the lines
+     */
+    public void export(Collection<SidescanLine> lines, SidescanHistogramNormalizer normalizer, int subsystem) {
         if (lines.isEmpty())
             return;
-        SidescanLine firstLine = lines.stream().findFirst().get();
-        int width = firstLine.getXSize();
+        BufferedImage img = render(lines, new SidescanLineRenderer(colorMap, normalizer, subsystem));
+        try {
+            write(img, "PNG", imgFile);
+            Files.write(jsonFile.toPath(), toJson().getBytes());
+        } catch (Exception e) {
+            log.error("error", e);
+        }
+    }
+
+    /**
+     * Adds the samples of the given lines to the raster index and renders them, the first line at the bottom of the
+     * image
+     * 
+     * @param lines    The lines to render (not empty)
+     * @param renderer The renderer to color (and normalize) the lines with
+     * @return The rendered image
+     */
+    BufferedImage render(Collection<SidescanLine> lines, SidescanLineRenderer renderer) {
+        int width = lines.iterator().next().getXSize();
         BufferedImage img = new BufferedImage(width, lines.size(), BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = img.createGraphics();
-        BufferedImage lineImage = new BufferedImage(width, 1, BufferedImage.TYPE_INT_RGB);
         SampleDescription lastSample = null;
-        for (int i = 0; i < lines.size(); i++) {
-            SidescanLine line = (SidescanLine) lines.toArray()[i];
+        int i = 0;
+        for (SidescanLine line : lines) {
             SampleDescription sample = getSample(lastSample, line, i);
             lastSample = sample;
-            line.drawSlantedImage(colorMap, lineImage);
-            java.awt.Image im2 = ImageUtils.getScaledImage(lineImage, width, 1, true);
-            g2d.drawImage(im2, 0, lines.size() - i - 1, null);
+            renderer.render(line.getData(), img, lines.size() - i - 1);
             raster.getSamples().add(sample);
+            i++;
         }
-        g2d.dispose();
-        try {
-            write(img, "PNG", imgFile);
-            String json = Converter.IndexedRasterToJsonString(raster);
-            Files.write(jsonFile.toPath(), json.getBytes());
-        } catch (Exception e) {
-            log.error("error", e);
+        return img;
+    }
+
+    /**
+     * Adds the samples of the given lines to the raster index and renders their intensities (see
+     * {@link IntensityRaster}), the first line at the bottom of the image
+     * 
+     * @param lines    The lines to render (not empty)
+     * @param renderer The renderer to normalize the lines with
+     * @param maxValue The value of the largest intensity
+     * @return A 16 bit grayscale image
+     */
+    BufferedImage renderIntensities(Collection<SidescanLine> lines, SidescanLineRenderer renderer, double maxValue) {
+        int width = lines.iterator().next().getXSize();
+        BufferedImage img = new BufferedImage(width, lines.size(), BufferedImage.TYPE_USHORT_GRAY);
+        short[] pixels = ((DataBufferUShort) img.getRaster().getDataBuffer()).getData();
+        short[] row = new short[width];
+        SampleDescription lastSample = null;
+        int i = 0;
+        for (SidescanLine line : lines) {
+            SampleDescription sample = getSample(lastSample, line, i);
+            lastSample = sample;
+            double[] data = line.getData();
+            if (data.length == width) {
+                renderer.renderIntensities(data, pixels, (lines.size() - i - 1) * width, maxValue);
+            }
+            else {
+                Arrays.fill(row, (short) 0);
+                double[] clipped = data.length > width ? Arrays.copyOf(data, width) : data;
+                renderer.renderIntensities(clipped, row, 0, maxValue);
+                System.arraycopy(row, 0, pixels, (lines.size() - i - 1) * width, width);
+            }
+            raster.getSamples().add(sample);
+            i++;
         }
+        raster.setIntensityFilename(getIntensityFile().getName());
+        raster.setIntensityMax(maxValue);
+        return img;
     }
 
-    boolean write(BufferedImage img, String formatName, File output) {
+    /**
+     * @return The intensity image file (see {@link IntensityRaster})
+     */
+    File getIntensityFile() {
+        return IntensityRaster.getIntensityFile(imgFile);
+    }
 
-        ImageWriter writer = ImageIO.getImageWritersByFormatName(formatName).next();
-        ImageWriteParam param = writer.getDefaultWriteParam();
-        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT); // Needed see javadoc
-        param.setCompressionQuality(1.0F); // Highest quality
+    /**
+     * Lists the given overviews of the image in the raster index
+     * 
+     * @param overviews The overviews, one for each of {@link RasterPyramid#SCALES}
+     */
+    void setOverviews(List<BufferedImage> overviews) {
+        List<RasterOverview> entries = new ArrayList<>();
+        List<File> files = getOverviewFiles();
+        for (int i = 0; i < overviews.size(); i++) {
+            RasterOverview entry = new RasterOverview();
+            entry.setFilename(files.get(i).getName());
+            entry.setScale(RasterPyramid.SCALES[i]);
+            entry.setWidth(overviews.get(i).getWidth());
+            entry.setHeight(overviews.get(i).getHeight());
+            entries.add(entry);
+        }
+        raster.setOverviews(entries);
+    }
+
+    /**
+     * @return The overview image files, one for each of {@link RasterPyramid#SCALES}
+     */
+    List<File> getOverviewFiles() {
+        List<File> files = new ArrayList<>();
+        for (int scale : RasterPyramid.SCALES)
+            files.add(RasterPyramid.getOverviewFile(imgFile, scale));
+        return files;
+    }
+
+    /**
+     * @return The raster index as json
+     */
+    String toJson() throws JsonProcessingException {
+        return Converter.IndexedRasterToJsonString(raster);
+    }
 
+    /**
+     * Writes an image file. PNG images are encoded with {@link PngTileEncoder#DEFAULT}, lossy formats with the highest
+     * quality.
+     */
+    boolean write(BufferedImage img, String formatName, File output) {
         try {
-            return ImageIO.write(img, formatName, output);
+            if (formatName.equalsIgnoreCase("PNG")) {
+                Files.write(output.toPath(), PngTileEncoder.DEFAULT.encode(img));
+                return true;
+            }
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(formatName).next();
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT); // Needed see javadoc
+                param.setCompressionQuality(1.0F); // Highest quality
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(img, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.write(output.toPath(), bytes.toByteArray());
+            return true;
         } catch (Exception e) {
             log.error("error", e);
             return false;
@@ -269,13 +385,63 @@ public class IndexedRasterCreator {
     static final int MaxHeight = 500;
 
     public static File exportRasters(File folder, int subsystem, Consumer<String> progress) {
+        return exportRasters(folder, subsystem, false, progress);
+    }
+
+    /**
+     * Exports the lines of a sidescan folder to rasters in its rasterIndex folder
+     * 
+     * @param folder      The sidescan folder
+     * @param subsystem   The subsystem to export, or a non positive value for the last subsystem
+     * @param incremental If true, only rasters whose source files changed (or are new) are created again
+     * @param progress    Receives progress messages, may be null
+     * @return The rasterIndex folder or null if there was nothing to export
+     */
+    public static File exportRasters(File folder, int subsystem, boolean incremental, Consumer<String> progress) {
+        try {
+            if (exportRasterIndex(folder, subsystem, incremental, 0, progress) == null)
+                return null;
+        } catch (InterruptedException e) {
+            log.error("Interrupted while processing sidescan data", e);
+            Thread.currentThread().interrupt();
+        }
+        return new File(folder, "rasterIndex");
+    }
+
+    /**
+     * Exports the lines of a sidescan folder to rasters in its rasterIndex folder
+     * 
+     * @param folder      The sidescan folder
+     * @param subsystem   The subsystem to export, or a non positive value for the last subsystem
+     * @param incremental If true, only rasters whose source files changed (or are new) are created again
+     * @param threads     Number of render and encode threads, or a non positive value for one per processor
+     * @param progress    Receives progress messages, may be null
+     * @return The totals of the export or null if there was nothing to export
+     */
+    public static RasterExportPipeline.Metrics exportRasterIndex(File folder, int subsystem, boolean incremental,
+            int threads, Consumer<String> progress) throws InterruptedException {
+        return exportRasterIndex(folder, subsystem, incremental, threads, null, progress);
+    }
+
+    /**
+     * Exports the lines of a sidescan folder to rasters in its rasterIndex folder
+     * 
+     * @param folder      The sidescan folder
+     * @param subsystem   The subsystem to export, or a non positive value for the last subsystem
+     * @param incremental If true, only rasters whose source files changed (or are new) are created again
+     * @param threads     Number of render and encode threads, or a non positive value for one per processor
+     * @param encoder     The encoder of the raster images, or null for {@link PngTileEncoder#DEFAULT}
+     * @param progress    Receives progress messages, may be null
+     * @return The totals of the export or null if there was nothing to export
+     */
+    public static RasterExportPipeline.Metrics exportRasterIndex(File folder, int subsystem, boolean incremental,
+            int threads, TileEncoder encoder, Consumer<String> progress) throws InterruptedException {
         SidescanParser ssparser = null;
-        ExecutorService executor = null;
 
         try {
             ssparser = SidescanParserFactory.build(folder);
 
-            if (ssparser.getSubsystemList().isEmpty()) {
+            if (ssparser == null || ssparser.getSubsystemList().isEmpty()) {
                 log.error("No subsystems found in sidescan folder {}", folder.getAbsolutePath());
                 return null;
             }
@@ -289,7 +455,6 @@ public class IndexedRasterCreator {
                 };
             progress.accept("Starting raster export for folder " + folder.getAbsolutePath());
 
-            final Consumer<String> finalProgress = progress;
             SidescanHistogramNormalizer normalizer = SidescanHistogramNormalizer.create(ssparser, folder);
 
             long start = ssparser.firstPingTimestamp();
@@ -313,54 +478,23 @@ public class IndexedRasterCreator {
                 sensorInfo.setSensorModel("Sidescan " + line.getFrequency() / 1000 + "kHz");
             sensorInfo.setMinRange((double) -line.getRange());
             sensorInfo.setMaxRange((double) line.getRange());
-            long lastTime = ssparser.lastPingTimestamp();
-
-            LinkedList<SidescanLine> lineQueue = new LinkedList<>();
-
-            executor = Executors.newVirtualThreadPerTaskExecutor();
 
             File outputDir = new File(folder, "rasterIndex");
-            if (outputDir.exists())
-                if (!outputDir.delete()) {
-                    log.error("Could not delete output directory {}", outputDir.getAbsolutePath());
-                }
-            if (!outputDir.mkdirs()) {
+            if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
                 log.error("Could not create output directory {}", outputDir.getAbsolutePath());
             }
-            for (long time = ssparser.firstPingTimestamp(); time <= lastTime; time += 1000) {
-                lines = ssparser.getLinesBetween(time, time + 1000, sub, params);
-                if (lines.isEmpty())
-                    continue;
-                lineQueue.addAll(lines);
-                if (lineQueue.size() >= MaxHeight) {
-                    int timestamp = (int) (lineQueue.peek().getTimestampMillis() / 1000);
-                    ArrayList<SidescanLine> firstLines = new ArrayList<>(MaxHeight);
-                    for (int i = 0; i < MaxHeight; i++) {
-                        firstLines.add(lineQueue.poll());
-                    }
-                    executor.submit(() -> {
-                        long startTime = System.currentTimeMillis();
-                        IndexedRasterCreator creator = new IndexedRasterCreator(
-                                new File(outputDir, "sss_" + sub + "_" + timestamp + ".json"), sensorInfo);
-                        finalProgress.accept("Creating raster named sss_" + sub + "_" + timestamp + ".json");
-                        for (SidescanLine l : firstLines)
-                            normalizer.normalize(l, sub);
-                        creator.export(firstLines);
-                        log.debug("Processed " + firstLines.size() + " lines in "
-                                + (System.currentTimeMillis() - startTime) + "ms");
-                    });
-                }
-            }
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(1, java.util.concurrent.TimeUnit.HOURS)) {
-                    log.error("Timeout while processing sidescan data");
-                }
-            } catch (InterruptedException e) {
-                log.error("Interrupted while processing sidescan data", e);
-            }
+            RasterExportPipeline pipeline = new RasterExportPipeline(outputDir, sensorInfo, normalizer, sub,
+                    MaxHeight);
+            pipeline.setIncremental(incremental);
+            if (threads > 0)
+                pipeline.setThreads(threads);
+            if (encoder != null)
+                pipeline.setEncoder(encoder);
+            RasterExportPipeline.Metrics metrics = pipeline.run(ssparser, params, progress);
+            log.info("Raster export: {}", metrics);
+            progress.accept("Exported " + metrics);
             progress.accept("Raster export completed.");
-            return outputDir;
+            return metrics;
 
         } finally {
             // Cleanup resources
@@ -371,11 +505,7 @@ public class IndexedRasterCreator {
                     log.warn("Error during parser cleanup: {}", e.getMessage());
                 }
             }
-            if (executor != null && !executor.isShutdown()) {
-                executor.shutdown();
-            }
         }
-        
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,275 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads raster index files (see {@link IndexedRaster}) with a streaming parser, putting the samples directly in
+ * {@link SampleColumns} instead of creating sample objects. The rasters read are the same as the ones read by
+ * {@link Converter#IndexedRasterFromJsonString(String)}, but already compacted
+ * (see {@link IndexedRaster#compactSamples()}).
+ * <p>
+ * Sample times in ISO 8601 with an offset, as {@link Converter} writes them, are parsed directly and other formats go
+ * through {@link Converter#parseDateTimeString(String)}.
+ */
+@Slf4j
+public class IndexedRasterLoader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final TypeReference<List<RasterOverview>> OVERVIEWS = new TypeReference<>() {
+    };
+    // initial capacity of the sample columns, rasters usually have a few hundred samples
+    private static final int EXPECTED_SAMPLES = 512;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private IndexedRasterLoader() {
+    }
+
+    /**
+     * Reads a raster index file
+     * @param file the JSON file
+     * @return the raster
+     */
+    public static IndexedRaster read(File file) throws IOException {
+        try (JsonParser parser = MAPPER.createParser(file)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * Reads a raster index
+     * @param json the contents of a raster index file
+     * @return the raster
+     */
+    public static IndexedRaster read(String json) throws IOException {
+        try (JsonParser parser = MAPPER.createParser(json)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * Reads raster index files in parallel
+     * @param files            the raster index files
+     * @param progressCallback where to report progress, can be null
+     * @return the raster of each file, in the same order as files (files that could not be read are left out)
+     */
+    public static Map<File, IndexedRaster> readAll(List<File> files, Consumer<String> progressCallback) {
+        Map<File, IndexedRaster> result = new LinkedHashMap<>();
+        if (files.isEmpty())
+            return result;
+
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        AtomicInteger finished = new AtomicInteger();
+        long start = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<IndexedRaster>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        return read(file);
+                    } finally {
+                        if (progressCallback != null) {
+                            // reports in order, as the callback may not be thread safe
+                            synchronized (finished) {
+                                progressCallback.accept("Loaded " + finished.incrementAndGet() + "/" + files.size()
+                                        + " rasters");
+                            }
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    result.put(files.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    log.error("Error loading raster file: {}", files.get(i).getAbsolutePath(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while loading raster files");
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Loaded {} rasters in {} ms using {} threads", result.size(), System.currentTimeMillis() - start,
+                threads);
+        return result;
+    }
+
+    private static IndexedRaster read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw new JsonParseException(parser, "Expected a raster index object");
+        IndexedRaster raster = new IndexedRaster();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL)
+                continue;
+            switch (field) {
+                case "filename" -> raster.setFilename(parser.getText());
+                case "raster-type" -> raster.setRasterType(RasterType.forValue(parser.getText()));
+                case "samples" -> raster.setColumns(readSamples(parser));
+                case "sensor-info" -> raster.setSensorInfo(parser.readValueAs(SensorInfo.class));
+                case "overviews" -> raster.setOverviews(parser.readValueAs(OVERVIEWS));
+                case "intensity-filename" -> raster.setIntensityFilename(parser.getText());
+                case "intensity-max" -> raster.setIntensityMax(parser.getDoubleValue());
+                default -> parser.skipChildren();
+            }
+        }
+        return raster;
+    }
+
+    private static SampleColumns readSamples(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY)
+            throw new JsonParseException(parser, "Expected an array of samples");
+        SampleColumns.Builder builder = new SampleColumns.Builder(EXPECTED_SAMPLES);
+        ZoneOffset zoneOffset = null;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int sample = builder.add();
+            boolean hasTimestamp = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() == JsonToken.VALUE_NULL)
+                    continue;
+                switch (field) {
+                    case "timestamp" -> {
+                        String text = parser.getText();
+                        long millis = parseMillis(text);
+                        if (millis == NO_TIME || zoneOffset == null) {
+                            // other formats, and the first sample to know the offset
+                            OffsetDateTime time = Converter.parseDateTimeString(text);
+                            millis = time.toInstant().toEpochMilli();
+                            if (zoneOffset == null)
+                                zoneOffset = time.getOffset();
+                        }
+                        builder.setTimestamp(sample, millis);
+                        hasTimestamp = true;
+                    }
+                    case "index" -> builder.setIndex(sample, parser.getLongValue());
+                    case "offset" -> builder.setOffset(sample, parser.getLongValue());
+                    case "pose" -> readPose(parser, builder, sample);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (!hasTimestamp)
+                throw new JsonParseException(parser, "Sample " + sample + " has no timestamp");
+        }
+        return builder.build(zoneOffset == null ? ZoneOffset.UTC : zoneOffset);
+    }
+
+    private static void readPose(JsonParser parser, SampleColumns.Builder builder, int sample) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken().isNumeric())
+                builder.setPoseValue(sample, field, parser.getDoubleValue());
+            else
+                parser.skipChildren();
+        }
+    }
+
+    /**
+     * Parses times like 2025-10-01T10:09:30.123Z or 2025-10-01T10:09:30+01:00 (fractions of any length)
+     * @return the time in epoch milliseconds or {@link Long#MIN_VALUE} if the text has another format
+     */
+    static long parseMillis(String text) {
+        int length = text.length();
+        if (length < 20 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                || text.charAt(13) != ':' || text.charAt(16) != ':')
+            return NO_TIME;
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0
+                || second > 59)
+            return NO_TIME;
+
+        int pos = 19;
+        int millis = 0;
+        if (text.charAt(pos) == '.') {
+            int first = ++pos;
+            while (pos < length && Character.isDigit(text.charAt(pos))) {
+                if (pos - first < 3)
+                    millis = millis * 10 + (text.charAt(pos) - '0');
+                pos++;
+            }
+            if (pos == first)
+                return NO_TIME;
+            for (int i = pos - first; i < 3; i++)
+                millis *= 10;
+        }
+
+        int offsetSeconds;
+        if (pos == length - 1 && text.charAt(pos) == 'Z') {
+            offsetSeconds = 0;
+        }
+        else if (pos == length - 6 && (text.charAt(pos) == '+' || text.charAt(pos) == '-')
+                && text.charAt(pos + 3) == ':') {
+            int offsetHours = digits(text, pos + 1, 2);
+            int offsetMinutes = digits(text, pos + 4, 2);
+            if (offsetHours < 0 || offsetMinutes < 0)
+                return NO_TIME;
+            offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (text.charAt(pos) == '-' ? -1 : 1);
+        }
+        else {
+            return NO_TIME;
+        }
+
+        long epochDay;
+        try {
+            epochDay = LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return NO_TIME;
+        }
+        long seconds = epochDay * 86400 + hour * 3600 + minute * 60 + second - offsetSeconds;
+        return seconds * 1000 + millis;
+    }
+
+    // value of count decimal digits at the given position, -1 if not all digits
+    private static int digits(String text, int pos, int count) {
+        int value = 0;
+        for (int i = pos; i < pos + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
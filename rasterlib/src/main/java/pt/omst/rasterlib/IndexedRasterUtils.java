@@ -10,18 +10,15 @@ import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Stack;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -37,7 +34,6 @@ import pt.lsts.neptus.util.ZipUtils;
 import pt.omst.rasterlib.contacts.CompressedContact;
 import pt.omst.sidescan.ISidescanLine;
 import pt.omst.sidescan.SidescanHistogramNormalizer;
-import pt.omst.sidescan.SidescanLine;
 import pt.omst.sidescan.SidescanParameters;
 import pt.omst.sidescan.SidescanParser;
 import pt.omst.sidescan.SidescanParserFactory;
@@ -80,26 +76,27 @@ public class IndexedRasterUtils {
     }
 
     public static Point2D.Double getCenter(IndexedRaster raster) {
-        SampleDescription center = raster.getSamples().get(raster.getSamples().size() / 2);
-        return new Point2D.Double(center.getPose().getLatitude(), center.getPose().getLongitude());
+        SampleColumns samples = raster.getColumns();
+        int center = samples.size() / 2;
+        return new Point2D.Double(samples.getLatitude(center), samples.getLongitude(center));
     }
 
     public static LocationType getSampleLocation(IndexedRaster raster, int index) {
-        SampleDescription center = raster.getSamples().get(index);
-        return new LocationType(center.getPose().getLatitude(), center.getPose().getLongitude());
+        SampleColumns samples = raster.getColumns();
+        return new LocationType(samples.getLatitude(index), samples.getLongitude(index));
     }
 
     public static Point2D.Double[] getLinePosition(IndexedRaster raster, int index) {
-        SampleDescription sdesc = raster.getSamples().get(index);
-        LocationType loc = new LocationType(sdesc.getPose().getLatitude(), sdesc.getPose().getLongitude());
+        SampleColumns samples = raster.getColumns();
+        LocationType loc = new LocationType(samples.getLatitude(index), samples.getLongitude(index));
         LocationType portLoc = new LocationType(loc);
         LocationType stbdLoc = new LocationType(loc);
 
-        portLoc.setAzimuth(sdesc.getPose().getPsi() - 90);
+        portLoc.setAzimuth(samples.getPsi(index) - 90);
         portLoc.setOffsetDistance(raster.getSensorInfo().getMinRange() * -1);
         portLoc.convertToAbsoluteLatLonDepth();
 
-        stbdLoc.setAzimuth(sdesc.getPose().getPsi() + 90);
+        stbdLoc.setAzimuth(samples.getPsi(index) + 90);
         stbdLoc.setOffsetDistance(raster.getSensorInfo().getMaxRange());
         stbdLoc.convertToAbsoluteLatLonDepth();
 
@@ -116,7 +113,7 @@ public class IndexedRasterUtils {
         Point2D.Double[] pos = getLinePosition(raster, 0);
         points.add(pos[0]);
         points.add(pos[1]);
-        pos = getLinePosition(raster, raster.getSamples().size() - 1);
+        pos = getLinePosition(raster, raster.getColumns().size() - 1);
         points.add(pos[1]);
         points.add(pos[0]);
         List<Point2D.Double> chull = computeConvexHull(points);
@@ -124,7 +121,7 @@ public class IndexedRasterUtils {
     }
 
     public static Rectangle2D.Double getBounds(IndexedRaster raster) {
-        int numSamples = raster.getSamples().size();
+        int numSamples = raster.getColumns().size();
         if (numSamples == 0) {
             return new Rectangle2D.Double(0, 0, 0, 0);
         }
@@ -248,6 +245,15 @@ public class IndexedRasterUtils {
     }
 
     public static String exportSidescan(File folder, int sub, int maxLines, Consumer<String> progressCallback) {
+        return exportSidescan(folder, sub, maxLines, false, progressCallback);
+    }
+
+    /**
+     * Exports the lines of a sidescan folder to rasters in its rasterIndex folder
+     * @param incremental if true, only rasters whose source files changed (or are new) are created again
+     */
+    public static String exportSidescan(File folder, int sub, int maxLines, boolean incremental,
+            Consumer<String> progressCallback) {
         if (!new File(folder, "mra").exists()) {
             new File(folder, "mra").mkdirs();
         }
@@ -280,73 +286,20 @@ public class IndexedRasterUtils {
             sensorInfo.setSensorModel("Sidescan " + line.getFrequency() / 1000 + "kHz");
         sensorInfo.setMinRange((double) -line.getRange());
         sensorInfo.setMaxRange((double) line.getRange());
-        long lastTime = ssparser.lastPingTimestamp();
-
-        LinkedList<SidescanLine> lineQueue = new LinkedList<>();
-        List<Future<?>> tasks = new ArrayList<>();
-
-        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            File outputDir = new File(folder, "rasterIndex");
-            if (outputDir.exists())
-                if (!outputDir.delete()) {
-                    log.error("Could not delete output directory {}", outputDir.getAbsolutePath());
-                }
-            if (!outputDir.mkdirs()) {
-                log.error("Could not create output directory {}", outputDir.getAbsolutePath());
-            }
-            for (long time = ssparser.firstPingTimestamp(); time <= lastTime; time += 1000) {
-                lines = ssparser.getLinesBetween(time, time + 1000, subsystem, params);
-                if (lines.isEmpty())
-                    continue;
-                for (SidescanLine line2 : lines) {
-                    line2.applyEGN(egnCorrection, subsystem);
-                }
-                
-                lineQueue.addAll(lines);
-                if (lineQueue.size() >= maxLines) {
-                    int timestamp = (int) (lineQueue.peek().getTimestampMillis() / 1000);
-                    ArrayList<SidescanLine> firstLines = new ArrayList<>(maxLines);
-                    for (int i = 0; i < maxLines; i++) {
-                        firstLines.add(lineQueue.poll());
-                    }
-                    Future<?> task = executor.submit(() -> {
-                        File f = new File(outputDir, "sss_" + subsystem + "_" + timestamp + ".json");
-                        new IndexedRasterCreator(f, sensorInfo).export(firstLines);
-                        if (progressCallback != null) {
-                            progressCallback.accept("Exported " + f.getAbsolutePath());
-                        }
-                        log.info("Exported " + f.getAbsolutePath());                        
-                    });
-                    tasks.add(task);
-                }
-            }
-
-            // Process any remaining lines
-            if (!lineQueue.isEmpty()) {
-                int timestamp = (int) (lineQueue.peek().getTimestampMillis() / 1000);
-                ArrayList<SidescanLine> remainingLines = new ArrayList<>(lineQueue);
-                Future<?> task = executor.submit(() -> {
-                    File f = new File(outputDir, "sss_" + subsystem + "_" + timestamp + ".json");
-                    new IndexedRasterCreator(f, sensorInfo).export(remainingLines);
-                    if (progressCallback != null) {
-                        progressCallback.accept("Exported " + f.getAbsolutePath());
-                    }
-                    log.info("Exported " + f.getAbsolutePath());
-                });
-                tasks.add(task);
-                lineQueue.clear();
-            }
 
-            // Wait for all tasks to complete
-            for (Future<?> task : tasks) {
-                try {
-                    task.get();
-                } catch (InterruptedException | ExecutionException e) {
-                    log.error("Error waiting for export task to complete", e);
-                }
-            }
-        } finally {
-            log.info("Exported all lines.");
+        File outputDir = new File(folder, "rasterIndex");
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            log.error("Could not create output directory {}", outputDir.getAbsolutePath());
+        }
+        try {
+            RasterExportPipeline pipeline = new RasterExportPipeline(outputDir, sensorInfo, egnCorrection, subsystem,
+                    maxLines);
+            pipeline.setIncremental(incremental);
+            RasterExportPipeline.Metrics metrics = pipeline.run(ssparser, params, progressCallback);
+            log.info("Exported all lines: {}", metrics);
+        } catch (InterruptedException e) {
+            log.error("Interrupted while exporting sidescan data", e);
+            Thread.currentThread().interrupt();
         }
         if (progressCallback != null) {
             progressCallback.accept("Export completed successfully.");
@@ -369,18 +322,7 @@ public class IndexedRasterUtils {
     }
 
     public static List<IndexedRaster> loadRasters(File folder) {
-        List<File> rasterFiles = findRasterFiles(folder);
-        List<IndexedRaster> rasters = new ArrayList<>();
-        for (File file : rasterFiles) {
-            try {
-                String json = Files.readString(file.toPath());
-                IndexedRaster raster = Converter.IndexedRasterFromJsonString(json);
-                rasters.add(raster);
-            } catch (IOException e) {
-                log.error("Error loading raster file: " + file.getAbsolutePath(), e);
-            }
-        }
-        return rasters;
+        return new ArrayList<>(IndexedRasterLoader.readAll(findRasterFiles(folder), null).values());
     }
 
     @Data
@@ -0,0 +1,109 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import pt.lsts.neptus.colormap.ColorMap;
+
+/**
+ * Single channel intensity images of rasters, stored next to the colorized image so that viewers can change color map
+ * and gain without filtering RGB pixels.
+ * <p>
+ * Intensities are the normalized sample values (the ones the color map is applied to) quantized to 16 bits, where
+ * 65535 stands for {@link IndexedRaster#getIntensityMax()}. They are written as 16 bit grayscale PNG files, compressed
+ * in chunks and readable by any image tool, named after the raster image followed by _i16. Colorizing goes through a
+ * table with one color per intensity, so it costs a single lookup per pixel.
+ */
+public class IntensityRaster {
+
+    /** Number of distinct intensities */
+    public static final int LEVELS = 0x10000;
+    /**
+     * Value of the largest intensity, values above it are clamped. With this value one intensity step is one step of
+     * the color tables ({@link ColorMap#ARGB_LUT_SIZE}), so no precision is stored that colorizing can't show, while
+     * values up to 16 times the color map saturation are kept for lower gains.
+     */
+    public static final double DEFAULT_MAX_VALUE = (LEVELS - 1) / (double) (ColorMap.ARGB_LUT_SIZE - 1);
+
+    private IntensityRaster() {
+    }
+
+    /**
+     * @param imgFile the colorized image
+     * @return the intensity image of the raster, in the same folder
+     */
+    public static File getIntensityFile(File imgFile) {
+        String name = imgFile.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        return new File(imgFile.getParentFile(), base + "_i16.png");
+    }
+
+    /**
+     * @return true if the raster lists an intensity image
+     */
+    public static boolean hasIntensities(IndexedRaster raster) {
+        return raster.getIntensityFilename() != null && raster.getIntensityMax() != null;
+    }
+
+    /**
+     * Reads the intensity image of a raster
+     * @param folder the folder of the raster
+     * @param raster a raster with intensities
+     * @return an image of type {@link BufferedImage#TYPE_USHORT_GRAY}
+     */
+    public static BufferedImage readIntensities(File folder, IndexedRaster raster) throws IOException {
+        File file = new File(folder, raster.getIntensityFilename());
+        BufferedImage image = ImageIO.read(file);
+        if (image == null || !(image.getRaster().getDataBuffer() instanceof DataBufferUShort))
+            throw new IOException("Not a 16 bit intensity image: " + file.getAbsolutePath());
+        return image;
+    }
+
+    /**
+     * Creates the table that {@link #colorize(BufferedImage, int[])} uses
+     * @param colorMap the color map
+     * @param maxValue the value of the largest intensity
+     * @param gain     factor applied to values before color mapping
+     * @return one packed RGB color for each of the {@link #LEVELS} intensities
+     */
+    public static int[] createLut(ColorMap colorMap, double maxValue, double gain) {
+        int[] colors = colorMap.toArgbLut(ColorMap.ARGB_LUT_SIZE);
+        int[] lut = new int[LEVELS];
+        double scale = maxValue * gain / (LEVELS - 1);
+        for (int i = 0; i < LEVELS; i++)
+            lut[i] = ColorMap.lookup(colors, i * scale);
+        return lut;
+    }
+
+    /**
+     * Colors an intensity image
+     * @param intensities an image read with {@link #readIntensities(File, IndexedRaster)}
+     * @param lut         a table created with {@link #createLut(ColorMap, double, double)}
+     * @return an image of type {@link BufferedImage#TYPE_INT_RGB} with the same size
+     */
+    public static BufferedImage colorize(BufferedImage intensities, int[] lut) {
+        int width = intensities.getWidth();
+        int height = intensities.getHeight();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        short[] row = new short[width];
+        for (int y = 0; y < height; y++) {
+            intensities.getRaster().getDataElements(0, y, width, 1, row);
+            int offset = y * width;
+            for (int x = 0; x < width; x++)
+                pixels[offset + x] = lut[row[x] & 0xFFFF];
+        }
+        return image;
+    }
+}
@@ -0,0 +1,466 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import pt.lsts.neptus.colormap.ColorMap;
+import pt.lsts.neptus.colormap.ColorMapFactory;
+import pt.omst.rasterlib.RasterSourceManifest.TileSources;
+import pt.omst.sidescan.SidescanHistogramNormalizer;
+import pt.omst.sidescan.SidescanLine;
+import pt.omst.sidescan.SidescanLineRenderer;
+import pt.omst.sidescan.SidescanParameters;
+import pt.omst.sidescan.SidescanParser;
+import pt.omst.sidescan.SourceSpan;
+
+/**
+ * Exports all lines of a sidescan subsystem to indexed rasters (a colorized PNG, its intensities and one json file for
+ * every block of lines) through bounded stages:
+ * <ol>
+ * <li>read: the pings of each raster are read on the calling thread</li>
+ * <li>render: each block is normalized to 16 bit intensities ({@link IntensityRaster}), which are color mapped, and
+ * the overviews ({@link RasterPyramid}) of the colorized image are created</li>
+ * <li>encode: the images are encoded in memory (the colorized image and its overviews by
+ * {@link PngTileEncoder#DEFAULT} unless another {@link TileEncoder} is set, the intensities always by
+ * {@link PngTileEncoder#INTENSITIES}) and the raster index converted to json</li>
+ * <li>write: a single thread writes the files, one raster after the other</li>
+ * </ol>
+ * Render and encode run on a pool with one thread per processor. The queues between stages hold at most one block per
+ * thread, so the reader waits when encoding falls behind and memory use doesn't depend on the size of the mission.
+ * The time spent in each stage is returned as {@link Metrics}. Errors of a single raster are logged and the raster
+ * skipped, but if a stage stops (e.g. on {@link OutOfMemoryError}) the whole export is aborted instead of waiting for
+ * it.
+ * <p>
+ * Rasters are planned from the ping numbers of the subsystem, every raster but the last having {@code maxLines} pings.
+ * The source files of each raster (see {@link RasterSourceManifest}) are recorded as rasters are written and rasters
+ * of this subsystem that are no longer part of the plan are deleted. In incremental mode, rasters whose source files
+ * and export settings (number of lines, normalization histogram, encoders and sensor info) didn't change since they
+ * were written are not read nor rendered again.
+ */
+@Slf4j
+public class RasterExportPipeline {
+
+    /**
+     * Totals of an export
+     * @param lines number of exported lines
+     * @param rasters number of written rasters
+     * @param skipped number of rasters that were up to date (incremental mode)
+     * @param bytes total size of the written images, including overviews and intensities
+     * @param readNanos time spent reading lines
+     * @param renderNanos time spent normalizing and coloring lines, summed over all threads
+     * @param encodeNanos time spent encoding images and json, summed over all threads
+     * @param writeNanos time spent writing files
+     * @param elapsedNanos duration of the export
+     */
+    public record Metrics(long lines, int rasters, int skipped, long bytes, long readNanos, long renderNanos,
+            long encodeNanos, long writeNanos, long elapsedNanos) {
+        @Override
+        public String toString() {
+            return String.format(
+                    "%,d lines in %d rasters (%.1f MB, %d up to date) in %.1f s: read %.1f s, render %.1f s, "
+                            + "encode %.1f s, write %.1f s",
+                    lines, rasters, bytes / (1024.0 * 1024.0), skipped, elapsedNanos / 1e9, readNanos / 1e9,
+                    renderNanos / 1e9, encodeNanos / 1e9, writeNanos / 1e9);
+        }
+    }
+
+    private record Block(String name, TileSources sources, List<SidescanLine> lines) {
+    }
+
+    private record Encoded(IndexedRasterCreator creator, TileSources sources, byte[] image, List<byte[]> overviews,
+            byte[] intensities, String json) {
+    }
+
+    // sent through the queues once there is nothing else to process
+    private static final Block END_OF_BLOCKS = new Block(null, null, List.of());
+    private static final Encoded END_OF_RASTERS = new Encoded(null, null, null, null, null, null);
+    // how often a stage waiting for room in a queue checks that the next stage is still running
+    private static final long QUEUE_POLL_MILLIS = 200;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final File outputDir;
+    private final SensorInfo sensorInfo;
+    private final int subsystem;
+    private final int maxLines;
+    private final SidescanLineRenderer renderer;
+    private final int[] colors;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private final RasterSourceManifest manifest;
+    private boolean incremental = false;
+    private TileEncoder encoder = PngTileEncoder.DEFAULT;
+    private final TileEncoder intensityEncoder = PngTileEncoder.INTENSITIES;
+
+    private final AtomicLong lineCount = new AtomicLong();
+    private final AtomicInteger rasterCount = new AtomicInteger();
+    private final AtomicInteger skippedCount = new AtomicInteger();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong renderNanos = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    // first error that stopped a stage
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param outputDir  folder where rasters are written (must exist), usually the rasterIndex folder inside the
+     *                   sidescan folder, whose manifest is used
+     * @param sensorInfo sensor info of the created rasters
+     * @param normalizer histograms to normalize the lines with, may be null
+     * @param subsystem  the subsystem to export
+     * @param maxLines   number of lines of each raster (the last raster may have less)
+     */
+    public RasterExportPipeline(File outputDir, SensorInfo sensorInfo, SidescanHistogramNormalizer normalizer,
+            int subsystem, int maxLines) {
+        this.outputDir = outputDir;
+        this.sensorInfo = sensorInfo;
+        this.subsystem = subsystem;
+        this.maxLines = maxLines;
+        ColorMap colorMap = ColorMapFactory.createBronzeColormap();
+        this.renderer = new SidescanLineRenderer(colorMap, normalizer, subsystem);
+        this.colors = IntensityRaster.createLut(colorMap, IntensityRaster.DEFAULT_MAX_VALUE, 1);
+        this.manifest = RasterSourceManifest.load(outputDir.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * @param threads number of render and encode threads (by default one per processor)
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Estimates the memory used by an export: up to two blocks per thread (queued and being processed) plus the one
+     * being read, each with its lines and its images (encoded images are assumed not smaller than the raw pixels)
+     * @param samplesPerLine number of samples of each line
+     * @param maxLines       number of lines of each raster
+     * @param threads        number of render and encode threads
+     * @return estimated number of bytes
+     */
+    public static long estimateMemory(int samplesPerLine, int maxLines, int threads) {
+        long blocks = 2L * threads + 1;
+        return blocks * maxLines * samplesPerLine * (Double.BYTES + Integer.BYTES + Short.BYTES);
+    }
+
+    /**
+     * @param encoder the encoder of the colorized images and their overviews
+     * @throws IllegalArgumentException if the encoder doesn't write PNG (see {@link #checkEncoder(TileEncoder)})
+     */
+    public void setEncoder(TileEncoder encoder) {
+        this.encoder = checkEncoder(encoder);
+    }
+
+    /**
+     * Checks that an encoder can be used for exports: raster images are always written to .png files, which viewers
+     * read as PNG
+     * @param encoder the encoder to check
+     * @return the encoder
+     * @throws IllegalArgumentException if the encoder writes another format
+     */
+    public static TileEncoder checkEncoder(TileEncoder encoder) {
+        if (!"png".equals(encoder.getFormatName()))
+            throw new IllegalArgumentException("Rasters can only be exported to PNG, not with " + encoder);
+        return encoder;
+    }
+
+    /**
+     * @param incremental if true, rasters whose source files didn't change are kept instead of created again
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Exports every line of the subsystem, returning once all files are written
+     * @param parser   the parser to read lines from
+     * @param params   the parameters to read lines with
+     * @param progress receives a message for each written raster, may be null
+     * @return the totals of the export
+     * @throws IllegalStateException if a stage stopped, with the error that stopped it as cause
+     */
+    public Metrics run(SidescanParser parser, SidescanParameters params, Consumer<String> progress)
+            throws InterruptedException {
+        long startTime = System.nanoTime();
+        for (AtomicLong counter : List.of(lineCount, byteCount, readNanos, renderNanos, encodeNanos, writeNanos))
+            counter.set(0);
+        rasterCount.set(0);
+        skippedCount.set(0);
+        failure.set(null);
+        BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(threads);
+        BlockingQueue<Encoded> encoded = new ArrayBlockingQueue<>(threads);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+
+        try {
+            List<Future<?>> writeTasks = List.of(writer.submit(() -> {
+                writeLoop(encoded, progress);
+                return null;
+            }));
+            List<Future<?>> renderTasks = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+                renderTasks.add(workers.submit(() -> {
+                    renderLoop(blocks, encoded, writeTasks);
+                    return null;
+                }));
+
+            List<SourceSpan> spans = parser.getSourceSpans(subsystem);
+            String settings = getSettings();
+            Set<String> planned = new HashSet<>();
+            int count = parser.getPingCount(subsystem);
+            for (int first = 0; first < count; first += maxLines) {
+                int end = Math.min(count, first + maxLines);
+                long firstTimestamp = parser.getPingTimestamp(subsystem, first);
+                String name = rasterName(firstTimestamp, first, planned);
+                planned.add(name);
+                TileSources sources = TileSources.of(firstTimestamp, parser.getPingTimestamp(subsystem, end - 1),
+                        end - first, settings, spans);
+                if (incremental && isUpToDate(name, sources, spans)) {
+                    skippedCount.incrementAndGet();
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                ArrayList<SidescanLine> lines = new ArrayList<>(end - first);
+                for (int ping = first; ping < end; ping++) {
+                    SidescanLine line = parser.readPing(subsystem, ping, params);
+                    if (line != null)
+                        lines.add(line);
+                }
+                readNanos.addAndGet(System.nanoTime() - start);
+                if (!lines.isEmpty())
+                    put(blocks, new Block(name, sources, lines), renderTasks);
+            }
+            for (int i = 0; i < threads; i++)
+                put(blocks, END_OF_BLOCKS, renderTasks);
+
+            waitFor(renderTasks);
+            checkFailure();
+            put(encoded, END_OF_RASTERS, writeTasks);
+            waitFor(writeTasks);
+            checkFailure();
+            removeStaleRasters(planned);
+        } finally {
+            workers.shutdownNow();
+            writer.shutdownNow();
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                log.warn("Could not save raster manifest: {}", e.getMessage());
+            }
+        }
+
+        return new Metrics(lineCount.get(), rasterCount.get(), skippedCount.get(), byteCount.get(), readNanos.get(),
+                renderNanos.get(), encodeNanos.get(), writeNanos.get(), System.nanoTime() - startTime);
+    }
+
+    /**
+     * Name of the raster starting at the given ping: sss_&lt;subsystem&gt;_&lt;seconds&gt;.json, with the ping number
+     * appended if another raster starts in the same second
+     */
+    private String rasterName(long firstTimestamp, int firstPing, Set<String> planned) {
+        String name = "sss_" + subsystem + "_" + (int) (firstTimestamp / 1000) + ".json";
+        if (planned.contains(name))
+            name = "sss_" + subsystem + "_" + (int) (firstTimestamp / 1000) + "_" + firstPing + ".json";
+        return name;
+    }
+
+    /**
+     * Identifies what, besides the source files, changes the written rasters: the number of lines, the colors and
+     * normalization histogram of the renderer, the encoders and the sensor info
+     */
+    private String getSettings() {
+        try {
+            return String.format("lines=%d renderer=%016x encoder=%s intensities=%s sensor=%08x", maxLines,
+                    renderer.getFingerprint(), encoder, intensityEncoder,
+                    mapper.writeValueAsString(sensorInfo).hashCode());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isUpToDate(String name, TileSources sources, List<SourceSpan> spans) {
+        if (spans.isEmpty() || !sources.equals(manifest.get(name)))
+            return false;
+        IndexedRasterCreator creator = new IndexedRasterCreator(new File(outputDir, name), sensorInfo);
+        if (!creator.getJsonFile().isFile() || !creator.getImgFile().isFile() || !creator.getIntensityFile().isFile())
+            return false;
+        for (File overview : creator.getOverviewFiles())
+            if (!overview.isFile())
+                return false; // written before overviews existed
+        return true;
+    }
+
+    /**
+     * Deletes the rasters of this subsystem that were not part of the last export
+     */
+    private void removeStaleRasters(Set<String> planned) {
+        String prefix = "sss_" + subsystem + "_";
+        Set<String> names = new HashSet<>(manifest.getRasterNames());
+        File[] files = outputDir.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".json"));
+        if (files != null)
+            for (File file : files)
+                names.add(file.getName());
+
+        for (String name : names) {
+            if (!name.startsWith(prefix) || planned.contains(name))
+                continue;
+            IndexedRasterCreator creator = new IndexedRasterCreator(new File(outputDir, name), sensorInfo);
+            boolean deleted = !creator.getIntensityFile().exists() || creator.getIntensityFile().delete();
+            for (File overview : creator.getOverviewFiles())
+                deleted &= !overview.exists() || overview.delete();
+            if (!deleted || (creator.getJsonFile().exists() && !creator.getJsonFile().delete())
+                    || (creator.getImgFile().exists() && !creator.getImgFile().delete()))
+                log.warn("Could not delete stale raster {}", name);
+            else
+                log.info("Deleted stale raster {}", name);
+            manifest.remove(name);
+        }
+    }
+
+    /**
+     * Puts an item in a queue, waiting while it is full as long as the stages reading from it are running
+     * @param consumers the tasks of the stage reading from the queue
+     */
+    private <T> void put(BlockingQueue<T> queue, T item, List<Future<?>> consumers) throws InterruptedException {
+        checkFailure();
+        while (!queue.offer(item, QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+            if (consumers.stream().allMatch(Future::isDone))
+                throw new IllegalStateException("Raster export stage stopped before reading all its input");
+        }
+    }
+
+    private void checkFailure() {
+        Throwable cause = failure.get();
+        if (cause != null)
+            throw new IllegalStateException("Raster export stage failed: " + cause, cause);
+    }
+
+    private void stageFailed(Throwable cause) {
+        log.error("Raster export stage failed", cause);
+        failure.compareAndSet(null, cause);
+    }
+
+    private void renderLoop(BlockingQueue<Block> blocks, BlockingQueue<Encoded> encoded, List<Future<?>> writeTasks)
+            throws InterruptedException {
+        try {
+            while (true) {
+                Block block = blocks.take();
+                if (block == END_OF_BLOCKS)
+                    return;
+                render(block, encoded, writeTasks);
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Throwable e) {
+            stageFailed(e);
+        }
+    }
+
+    private void render(Block block, BlockingQueue<Encoded> encoded, List<Future<?>> writeTasks)
+            throws InterruptedException {
+        IndexedRasterCreator creator = new IndexedRasterCreator(new File(outputDir, block.name()), sensorInfo);
+        Encoded raster;
+        try {
+            long start = System.nanoTime();
+            BufferedImage intensities = creator.renderIntensities(block.lines(), renderer,
+                    IntensityRaster.DEFAULT_MAX_VALUE);
+            BufferedImage image = IntensityRaster.colorize(intensities, colors);
+            List<BufferedImage> overviews = RasterPyramid.createOverviews(image);
+            long rendered = System.nanoTime();
+            renderNanos.addAndGet(rendered - start);
+
+            byte[] png = encoder.encode(image);
+            List<byte[]> overviewPngs = new ArrayList<>(overviews.size());
+            for (BufferedImage overview : overviews)
+                overviewPngs.add(encoder.encode(overview));
+            creator.setOverviews(overviews);
+            byte[] intensityPng = intensityEncoder.encode(intensities);
+            String json = creator.toJson();
+            encodeNanos.addAndGet(System.nanoTime() - rendered);
+            lineCount.addAndGet(block.lines().size());
+            raster = new Encoded(creator, block.sources(), png, overviewPngs, intensityPng, json);
+        } catch (Exception e) {
+            log.error("Error creating raster {}", creator.getJsonFile().getName(), e);
+            return;
+        }
+        put(encoded, raster, writeTasks);
+    }
+
+    private void writeLoop(BlockingQueue<Encoded> encoded, Consumer<String> progress) throws InterruptedException {
+        try {
+            while (true) {
+                Encoded raster = encoded.take();
+                if (raster == END_OF_RASTERS)
+                    return;
+                write(raster, progress);
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Throwable e) {
+            stageFailed(e);
+        }
+    }
+
+    private void write(Encoded raster, Consumer<String> progress) {
+        try {
+            long start = System.nanoTime();
+            long bytes = raster.image().length;
+            Files.write(raster.creator().getImgFile().toPath(), raster.image());
+            List<File> overviewFiles = raster.creator().getOverviewFiles();
+            for (int i = 0; i < raster.overviews().size(); i++) {
+                Files.write(overviewFiles.get(i).toPath(), raster.overviews().get(i));
+                bytes += raster.overviews().get(i).length;
+            }
+            Files.write(raster.creator().getIntensityFile().toPath(), raster.intensities());
+            bytes += raster.intensities().length;
+            // the json is written last, so that listed images are never missing
+            Files.write(raster.creator().getJsonFile().toPath(), raster.json().getBytes());
+            writeNanos.addAndGet(System.nanoTime() - start);
+            manifest.put(raster.creator().getJsonFile().getName(), raster.sources());
+            rasterCount.incrementAndGet();
+            byteCount.addAndGet(bytes);
+            log.info("Exported {}", raster.creator().getJsonFile().getAbsolutePath());
+            if (progress != null)
+                progress.accept("Exported " + raster.creator().getJsonFile().getAbsolutePath());
+        } catch (Exception e) {
+            log.error("Error writing raster {}", raster.creator().getJsonFile().getName(), e);
+        }
+    }
+
+    private static void waitFor(List<Future<?>> tasks) throws InterruptedException {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                log.error("Raster export stage failed", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import com.fasterxml.jackson.annotation.*;
+
+/**
+ * JSON schema for a reduced resolution copy of a raster image, part of a raster accompanying file.
+ */
+@lombok.Data
+public class RasterOverview {
+    @lombok.Getter(onMethod_ = {@JsonProperty("filename")})
+    @lombok.Setter(onMethod_ = {@JsonProperty("filename")})
+    private String filename;
+    @lombok.Getter(onMethod_ = {@JsonProperty("scale")})
+    @lombok.Setter(onMethod_ = {@JsonProperty("scale")})
+    private Integer scale;
+    @lombok.Getter(onMethod_ = {@JsonProperty("width")})
+    @lombok.Setter(onMethod_ = {@JsonProperty("width")})
+    private Integer width;
+    @lombok.Getter(onMethod_ = {@JsonProperty("height")})
+    @lombok.Setter(onMethod_ = {@JsonProperty("height")})
+    private Integer height;
+}
@@ -0,0 +1,156 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reduced resolution copies (overviews) of raster images, so that viewers showing a raster smaller than its full
+ * resolution read (and scale) a smaller image.
+ * <p>
+ * Overviews are written next to the raster image, with the same name followed by _ov&lt;scale&gt;, and are listed in
+ * the raster index (see {@link IndexedRaster#getOverviews()}). Each level halves the previous one by averaging blocks
+ * of 2x2 pixels. Rasters without overviews (older exports, contacts) are read at full resolution.
+ */
+@Slf4j
+public class RasterPyramid {
+
+    /** Reduction factors of the overviews written for each raster, in increasing order */
+    public static final int[] SCALES = { 2, 4, 8 };
+
+    private RasterPyramid() {
+    }
+
+    /**
+     * @param imgFile the full resolution image
+     * @param scale   the reduction factor of the overview
+     * @return the file of the overview, in the same folder as the image
+     */
+    public static File getOverviewFile(File imgFile, int scale) {
+        String name = imgFile.getName();
+        int dot = name.lastIndexOf('.');
+        String overviewName = dot < 0 ? name + "_ov" + scale
+                : name.substring(0, dot) + "_ov" + scale + name.substring(dot);
+        return new File(imgFile.getParentFile(), overviewName);
+    }
+
+    /**
+     * Creates the overviews of an image
+     * @param image the full resolution image
+     * @return one image for each of {@link #SCALES}
+     */
+    public static List<BufferedImage> createOverviews(BufferedImage image) {
+        List<BufferedImage> overviews = new ArrayList<>(SCALES.length);
+        BufferedImage level = image;
+        int scale = 1;
+        for (int target : SCALES) {
+            while (scale < target) {
+                level = halve(level);
+                scale *= 2;
+            }
+            overviews.add(level);
+        }
+        return overviews;
+    }
+
+    /**
+     * @return an image with half the width and height (rounded up), each pixel the average of a block of 2x2 pixels
+     */
+    static BufferedImage halve(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int halfWidth = (width + 1) / 2;
+        int halfHeight = (height + 1) / 2;
+        BufferedImage half = new BufferedImage(halfWidth, halfHeight, BufferedImage.TYPE_INT_RGB);
+        int[] top = new int[width];
+        int[] bottom = new int[width];
+        int[] row = new int[halfWidth];
+        for (int y = 0; y < halfHeight; y++) {
+            image.getRGB(0, 2 * y, width, 1, top, 0, width);
+            if (2 * y + 1 < height)
+                image.getRGB(0, 2 * y + 1, width, 1, bottom, 0, width);
+            else
+                System.arraycopy(top, 0, bottom, 0, width);
+            for (int x = 0; x < halfWidth; x++) {
+                int left = 2 * x;
+                int right = Math.min(left + 1, width - 1);
+                row[x] = average(top[left], top[right], bottom[left], bottom[right]);
+            }
+            half.setRGB(0, y, halfWidth, 1, row, 0, halfWidth);
+        }
+        return half;
+    }
+
+    private static int average(int a, int b, int c, int d) {
+        int red = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF) + 2) >> 2;
+        int green = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF) + 2) >> 2;
+        int blue = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Selects the smallest overview of a raster that is still at least as wide as the area it will be drawn to
+     * @param raster      the raster
+     * @param targetWidth width of the drawn raster, in screen pixels
+     * @return the overview or null if the full resolution image should be used
+     */
+    public static RasterOverview select(IndexedRaster raster, int targetWidth) {
+        RasterOverview selected = null;
+        if (raster.getOverviews() == null)
+            return null;
+        for (RasterOverview overview : raster.getOverviews()) {
+            if (overview.getFilename() == null || overview.getWidth() == null || overview.getScale() == null)
+                continue;
+            if (overview.getWidth() >= targetWidth && (selected == null || overview.getScale() > selected.getScale()))
+                selected = overview;
+        }
+        return selected;
+    }
+
+    /**
+     * Reads the image of a raster at the resolution that best matches the width it will be drawn at. The returned
+     * image covers all samples of the raster (the first sample at the bottom), but may have fewer rows than samples.
+     * @param folder      the folder of the raster
+     * @param raster      the raster
+     * @param targetWidth width of the drawn raster, in screen pixels (or a non positive value for full resolution)
+     * @return the image or null if it could not be read
+     */
+    public static BufferedImage readImage(File folder, IndexedRaster raster, int targetWidth) throws IOException {
+        RasterOverview overview = targetWidth > 0 ? select(raster, targetWidth) : null;
+        if (overview != null) {
+            File file = new File(folder, overview.getFilename());
+            try {
+                if (file.isFile()) {
+                    BufferedImage image = ImageIO.read(file);
+                    if (image != null)
+                        return image;
+                }
+            } catch (IOException e) {
+                log.warn("Error reading overview {}: {}", file.getAbsolutePath(), e.getMessage());
+            }
+        }
+        return ImageIO.read(new File(folder, raster.getFilename()));
+    }
+
+    /**
+     * @param image       an image read with {@link #readImage(File, IndexedRaster, int)}
+     * @param sampleCount the number of samples of the raster
+     * @param sample      the index of a sample
+     * @return the row of the image with the given sample
+     */
+    public static int getRow(BufferedImage image, int sampleCount, int sample) {
+        int fromBottom = (int) ((long) sample * image.getHeight() / sampleCount);
+        return Math.max(0, image.getHeight() - 1 - fromBottom);
+    }
+}
@@ -0,0 +1,149 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import pt.omst.sidescan.SourceSpan;
+
+/**
+ * Records which source files (and which version of them) and which export settings each generated raster of a sidescan
+ * folder was created with, so that exports can skip rasters whose inputs didn't change.
+ * <p>
+ * The manifest is kept in mra/raster-sources.json, next to the other caches of the folder (not in rasterIndex, where
+ * every json file is taken as a raster).
+ */
+@Slf4j
+public class RasterSourceManifest {
+
+    // version 2 added the export settings of each raster
+    public static final int VERSION = 2;
+    private static final String MANIFEST_FILE = "mra/raster-sources.json";
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Identifies the contents of a source file
+     * @param name file name
+     * @param length file size in bytes
+     * @param lastModified file modification time
+     * @param firstTimestamp timestamp of its first ping (of the exported subsystem)
+     * @param lastTimestamp timestamp of its last ping (of the exported subsystem)
+     */
+    public record SourceFingerprint(String name, long length, long lastModified, long firstTimestamp,
+            long lastTimestamp) {
+        public static SourceFingerprint of(SourceSpan span) {
+            File file = span.file();
+            return new SourceFingerprint(file.getName(), file.length(), file.lastModified(), span.firstTimestamp(),
+                    span.lastTimestamp());
+        }
+    }
+
+    /**
+     * The inputs of a raster
+     * @param firstTimestamp timestamp of the first line
+     * @param lastTimestamp timestamp of the last line
+     * @param lines number of pings covered by the raster
+     * @param settings identifies the other inputs of the export (normalization, encoders, sensor info...), rasters
+     *                 exported with other settings are not up to date
+     * @param sources the files with pings between the first and last timestamps
+     */
+    public record TileSources(long firstTimestamp, long lastTimestamp, int lines, String settings,
+            List<SourceFingerprint> sources) {
+        /**
+         * @param spans the source files of the subsystem, only the ones overlapping the raster are kept
+         */
+        public static TileSources of(long firstTimestamp, long lastTimestamp, int lines, String settings,
+                List<SourceSpan> spans) {
+            List<SourceFingerprint> sources = new ArrayList<>();
+            for (SourceSpan span : spans)
+                if (span.overlaps(firstTimestamp, lastTimestamp))
+                    sources.add(SourceFingerprint.of(span));
+            return new TileSources(firstTimestamp, lastTimestamp, lines, settings, sources);
+        }
+    }
+
+    private record Contents(int version, Map<String, TileSources> tiles) {
+    }
+
+    private final File file;
+    private final TreeMap<String, TileSources> tiles = new TreeMap<>();
+
+    private RasterSourceManifest(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the manifest of a sidescan folder. A missing or unreadable manifest results in an empty one.
+     * @param folder the sidescan folder
+     */
+    public static RasterSourceManifest load(File folder) {
+        RasterSourceManifest manifest = new RasterSourceManifest(new File(folder, MANIFEST_FILE));
+        if (!manifest.file.canRead())
+            return manifest;
+        try {
+            Contents contents = mapper.readValue(manifest.file, Contents.class);
+            if (contents.version() == VERSION && contents.tiles() != null)
+                manifest.tiles.putAll(contents.tiles());
+            else
+                log.warn("Ignoring raster manifest {} with version {}", manifest.file, contents.version());
+        } catch (IOException e) {
+            log.warn("Invalid raster manifest {}: {}", manifest.file, e.getMessage());
+        }
+        return manifest;
+    }
+
+    /**
+     * @return the recorded inputs of a raster or null if unknown
+     */
+    public synchronized TileSources get(String rasterName) {
+        return tiles.get(rasterName);
+    }
+
+    public synchronized void put(String rasterName, TileSources sources) {
+        tiles.put(rasterName, sources);
+    }
+
+    public synchronized void remove(String rasterName) {
+        tiles.remove(rasterName);
+    }
+
+    /**
+     * @return the names of all recorded rasters
+     */
+    public synchronized Set<String> getRasterNames() {
+        return new TreeSet<>(tiles.keySet());
+    }
+
+    /**
+     * Writes the manifest, replacing the previous file atomically
+     */
+    public synchronized void save() throws IOException {
+        file.getParentFile().mkdirs();
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(tmp, new Contents(VERSION, tiles));
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
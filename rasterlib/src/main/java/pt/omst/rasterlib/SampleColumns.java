@@ -0,0 +1,420 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Samples of a raster stored in primitive arrays, one per field, instead of one {@link SampleDescription} and one
+ * {@link Pose} (with boxed values) per sample. This takes about a fifth of the memory and lets loops over samples read
+ * values without going through objects.
+ * <p>
+ * Timestamps are kept in epoch milliseconds and the pose values other than latitude and longitude in single precision.
+ * Missing values are {@link Double#NaN} (or {@link #NO_VALUE} for indexes and offsets). Instances are immutable, see
+ * {@link IndexedRaster#getColumns()}.
+ */
+public final class SampleColumns {
+
+    /** Value of missing indexes and offsets */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private final ZoneOffset zoneOffset;
+    private final long[] timestamps;
+    private final long[] indexes;
+    private final long[] offsets;
+    private final double[] latitude;
+    private final double[] longitude;
+    private final float[] altitude;
+    private final float[] depth;
+    private final float[] hacc;
+    private final float[] height;
+    private final float[] phi;
+    private final float[] theta;
+    private final float[] psi;
+    private final float[] p;
+    private final float[] q;
+    private final float[] r;
+    private final float[] u;
+    private final float[] v;
+    private final float[] w;
+
+    private SampleColumns(int size, ZoneOffset zoneOffset) {
+        this.zoneOffset = zoneOffset;
+        timestamps = new long[size];
+        indexes = new long[size];
+        offsets = new long[size];
+        latitude = new double[size];
+        longitude = new double[size];
+        altitude = new float[size];
+        depth = new float[size];
+        hacc = new float[size];
+        height = new float[size];
+        phi = new float[size];
+        theta = new float[size];
+        psi = new float[size];
+        p = new float[size];
+        q = new float[size];
+        r = new float[size];
+        u = new float[size];
+        v = new float[size];
+        w = new float[size];
+    }
+
+    // copy of the first samples of other columns
+    private SampleColumns(SampleColumns other, int size, ZoneOffset zoneOffset) {
+        this.zoneOffset = zoneOffset;
+        timestamps = Arrays.copyOf(other.timestamps, size);
+        indexes = Arrays.copyOf(other.indexes, size);
+        offsets = Arrays.copyOf(other.offsets, size);
+        latitude = Arrays.copyOf(other.latitude, size);
+        longitude = Arrays.copyOf(other.longitude, size);
+        altitude = Arrays.copyOf(other.altitude, size);
+        depth = Arrays.copyOf(other.depth, size);
+        hacc = Arrays.copyOf(other.hacc, size);
+        height = Arrays.copyOf(other.height, size);
+        phi = Arrays.copyOf(other.phi, size);
+        theta = Arrays.copyOf(other.theta, size);
+        psi = Arrays.copyOf(other.psi, size);
+        p = Arrays.copyOf(other.p, size);
+        q = Arrays.copyOf(other.q, size);
+        r = Arrays.copyOf(other.r, size);
+        u = Arrays.copyOf(other.u, size);
+        v = Arrays.copyOf(other.v, size);
+        w = Arrays.copyOf(other.w, size);
+    }
+
+    /**
+     * Copies the values of the given samples into columns
+     * @param samples samples with timestamps, ordered by time
+     * @return the columns
+     */
+    public static SampleColumns of(List<SampleDescription> samples) {
+        ZoneOffset zoneOffset = samples.isEmpty() ? ZoneOffset.UTC : samples.getFirst().getTimestamp().getOffset();
+        SampleColumns columns = new SampleColumns(samples.size(), zoneOffset);
+        for (int i = 0; i < samples.size(); i++) {
+            SampleDescription sample = samples.get(i);
+            columns.timestamps[i] = sample.getTimestamp().toInstant().toEpochMilli();
+            columns.indexes[i] = sample.getIndex() != null ? sample.getIndex() : NO_VALUE;
+            columns.offsets[i] = sample.getOffset() != null ? sample.getOffset() : NO_VALUE;
+            Pose pose = sample.getPose();
+            if (pose == null)
+                pose = new Pose();
+            columns.latitude[i] = pose.getLatitude();
+            columns.longitude[i] = pose.getLongitude();
+            columns.altitude[i] = toFloat(pose.getAltitude());
+            columns.depth[i] = toFloat(pose.getDepth());
+            columns.hacc[i] = toFloat(pose.getHacc());
+            columns.height[i] = toFloat(pose.getHeight());
+            columns.phi[i] = toFloat(pose.getPhi());
+            columns.theta[i] = toFloat(pose.getTheta());
+            columns.psi[i] = toFloat(pose.getPsi());
+            columns.p[i] = toFloat(pose.getP());
+            columns.q[i] = toFloat(pose.getQ());
+            columns.r[i] = toFloat(pose.getR());
+            columns.u[i] = toFloat(pose.getU());
+            columns.v[i] = toFloat(pose.getV());
+            columns.w[i] = toFloat(pose.getW());
+        }
+        return columns;
+    }
+
+    private static float toFloat(Double value) {
+        return value != null ? value.floatValue() : Float.NaN;
+    }
+
+    private static Double toDouble(float value) {
+        return Float.isNaN(value) ? null : (double) value;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public boolean isEmpty() {
+        return timestamps.length == 0;
+    }
+
+    /**
+     * @return the time of the sample, in epoch milliseconds
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * @return the time of the sample, with the offset of the first sample objects
+     */
+    public OffsetDateTime getDateTime(int index) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(timestamps[index]), zoneOffset);
+    }
+
+    /**
+     * @return the time of the first sample, in epoch milliseconds
+     */
+    public long getStartMillis() {
+        return timestamps[0];
+    }
+
+    /**
+     * @return the time of the last sample, in epoch milliseconds
+     */
+    public long getEndMillis() {
+        return timestamps[timestamps.length - 1];
+    }
+
+    /**
+     * @param millis a time, in epoch milliseconds
+     * @return the number of samples at or before the given time, which is the index of the first sample after it
+     */
+    public int countUntil(long millis) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= millis)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    public long getIndex(int index) {
+        return indexes[index];
+    }
+
+    public long getOffset(int index) {
+        return offsets[index];
+    }
+
+    public double getLatitude(int index) {
+        return latitude[index];
+    }
+
+    public double getLongitude(int index) {
+        return longitude[index];
+    }
+
+    public double getAltitude(int index) {
+        return altitude[index];
+    }
+
+    public double getDepth(int index) {
+        return depth[index];
+    }
+
+    public double getHacc(int index) {
+        return hacc[index];
+    }
+
+    public double getHeight(int index) {
+        return height[index];
+    }
+
+    /**
+     * @return the roll, in degrees
+     */
+    public double getPhi(int index) {
+        return phi[index];
+    }
+
+    /**
+     * @return the pitch, in degrees
+     */
+    public double getTheta(int index) {
+        return theta[index];
+    }
+
+    /**
+     * @return the heading, in degrees
+     */
+    public double getPsi(int index) {
+        return psi[index];
+    }
+
+    public double getP(int index) {
+        return p[index];
+    }
+
+    public double getQ(int index) {
+        return q[index];
+    }
+
+    public double getR(int index) {
+        return r[index];
+    }
+
+    /**
+     * @return the forward speed, in meters per second
+     */
+    public double getU(int index) {
+        return u[index];
+    }
+
+    public double getV(int index) {
+        return v[index];
+    }
+
+    public double getW(int index) {
+        return w[index];
+    }
+
+    /**
+     * @return the mean of the forward speeds, ignoring missing values (0 if there are none)
+     */
+    public double getMeanSpeed() {
+        double sum = 0;
+        int count = 0;
+        for (float speed : u) {
+            if (!Float.isNaN(speed)) {
+                sum += speed;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @return a new pose object with the values of a sample
+     */
+    public Pose getPose(int index) {
+        Pose pose = new Pose();
+        pose.setLatitude(latitude[index]);
+        pose.setLongitude(longitude[index]);
+        pose.setAltitude(toDouble(altitude[index]));
+        pose.setDepth(toDouble(depth[index]));
+        pose.setHacc(toDouble(hacc[index]));
+        pose.setHeight(toDouble(height[index]));
+        pose.setPhi(toDouble(phi[index]));
+        pose.setTheta(toDouble(theta[index]));
+        pose.setPsi(toDouble(psi[index]));
+        pose.setP(toDouble(p[index]));
+        pose.setQ(toDouble(q[index]));
+        pose.setR(toDouble(r[index]));
+        pose.setU(toDouble(u[index]));
+        pose.setV(toDouble(v[index]));
+        pose.setW(toDouble(w[index]));
+        return pose;
+    }
+
+    /**
+     * @return a new sample object with the values of a sample
+     */
+    public SampleDescription getSample(int index) {
+        SampleDescription sample = new SampleDescription();
+        sample.setTimestamp(getDateTime(index));
+        sample.setIndex(indexes[index] != NO_VALUE ? indexes[index] : null);
+        sample.setOffset(offsets[index] != NO_VALUE ? offsets[index] : null);
+        sample.setPose(getPose(index));
+        return sample;
+    }
+
+    /**
+     * @return new sample objects with the values of all samples (to the precision of the columns)
+     */
+    public List<SampleDescription> toSamples() {
+        List<SampleDescription> samples = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++)
+            samples.add(getSample(i));
+        return samples;
+    }
+
+    /**
+     * Fills columns one sample at a time, for readers that get the values of each sample in any order (see
+     * {@link IndexedRasterLoader}). Values that are not set are missing.
+     */
+    public static final class Builder {
+        private SampleColumns columns;
+        private int size = 0;
+
+        /**
+         * @param capacity expected number of samples (more can be added)
+         */
+        public Builder(int capacity) {
+            columns = new SampleColumns(Math.max(1, capacity), ZoneOffset.UTC);
+        }
+
+        /**
+         * Adds a sample with all values missing
+         * @return the index of the new sample, to set its values
+         */
+        public int add() {
+            if (size == columns.size())
+                columns = new SampleColumns(columns, size * 2, columns.zoneOffset);
+            SampleColumns c = columns;
+            c.indexes[size] = NO_VALUE;
+            c.offsets[size] = NO_VALUE;
+            c.latitude[size] = 0;
+            c.longitude[size] = 0;
+            c.altitude[size] = c.depth[size] = c.hacc[size] = c.height[size] = Float.NaN;
+            c.phi[size] = c.theta[size] = c.psi[size] = Float.NaN;
+            c.p[size] = c.q[size] = c.r[size] = Float.NaN;
+            c.u[size] = c.v[size] = c.w[size] = Float.NaN;
+            return size++;
+        }
+
+        public void setTimestamp(int index, long millis) {
+            columns.timestamps[index] = millis;
+        }
+
+        public void setIndex(int index, long value) {
+            columns.indexes[index] = value;
+        }
+
+        public void setOffset(int index, long value) {
+            columns.offsets[index] = value;
+        }
+
+        /**
+         * Sets a pose value of a sample
+         * @param index the index of the sample
+         * @param name  the name of the {@link Pose} field, as in JSON
+         * @param value the value
+         * @return false if there is no pose field with the given name
+         */
+        public boolean setPoseValue(int index, String name, double value) {
+            SampleColumns c = columns;
+            switch (name) {
+                case "latitude" -> c.latitude[index] = value;
+                case "longitude" -> c.longitude[index] = value;
+                case "altitude" -> c.altitude[index] = (float) value;
+                case "depth" -> c.depth[index] = (float) value;
+                case "hacc" -> c.hacc[index] = (float) value;
+                case "height" -> c.height[index] = (float) value;
+                case "phi" -> c.phi[index] = (float) value;
+                case "theta" -> c.theta[index] = (float) value;
+                case "psi" -> c.psi[index] = (float) value;
+                case "p" -> c.p[index] = (float) value;
+                case "q" -> c.q[index] = (float) value;
+                case "r" -> c.r[index] = (float) value;
+                case "u" -> c.u[index] = (float) value;
+                case "v" -> c.v[index] = (float) value;
+                case "w" -> c.w[index] = (float) value;
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param zoneOffset offset of the times of the samples, used when sample objects are created
+         * @return the columns with the added samples
+         */
+        public SampleColumns build(ZoneOffset zoneOffset) {
+            return new SampleColumns(columns, size, zoneOffset);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Encodes raster images (colorized images, overviews and intensities) to the bytes of an image file. Encoders are
+ * stateless and can be used by several threads.
+ */
+public interface TileEncoder {
+
+    /**
+     * @param image the image to encode
+     * @return the encoded image
+     */
+    byte[] encode(BufferedImage image) throws IOException;
+
+    /**
+     * @return the format of the encoded images, as an {@link ImageIO} format name in lower case (e.g. png)
+     */
+    String getFormatName();
+
+    /**
+     * Encoder using {@link ImageIO} with its default settings
+     * @param formatName the image format name, as in
+     *                   {@link ImageIO#write(java.awt.image.RenderedImage, String, java.io.OutputStream)}
+     */
+    static TileEncoder imageIO(String formatName) {
+        return new TileEncoder() {
+            @Override
+            public byte[] encode(BufferedImage image) throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(image.getWidth() * image.getHeight());
+                if (!ImageIO.write(image, formatName, out))
+                    throw new IOException("No image writer for " + formatName);
+                return out.toByteArray();
+            }
+
+            @Override
+            public String getFormatName() {
+                return formatName.toLowerCase(Locale.ROOT);
+            }
+
+            @Override
+            public String toString() {
+                return "imageio:" + getFormatName();
+            }
+        };
+    }
+
+    /**
+     * Creates an encoder from its description, so that it can be chosen in configuration or in the command line:
+     * <ul>
+     * <li>imageio[:format] - {@link #imageIO(String)} (PNG by default)</li>
+     * <li>png[:level[:filter[:threads]]] - {@link PngTileEncoder}, for instance png:1:up or png:6:adaptive:4</li>
+     * </ul>
+     * @param description the encoder description
+     * @return the encoder
+     * @throws IllegalArgumentException if the description is not valid
+     */
+    static TileEncoder parse(String description) {
+        String[] parts = description.trim().toLowerCase(Locale.ROOT).split(":");
+        try {
+            switch (parts[0]) {
+                case "imageio":
+                    return imageIO(parts.length > 1 ? parts[1] : "png");
+                case "png":
+                    int level = parts.length > 1 ? Integer.parseInt(parts[1]) : PngTileEncoder.DEFAULT.getLevel();
+                    PngTileEncoder.Filter filter = parts.length > 2
+                            ? PngTileEncoder.Filter.valueOf(parts[2].toUpperCase(Locale.ROOT))
+                            : PngTileEncoder.DEFAULT.getFilter();
+                    int threads = parts.length > 3 ? Integer.parseInt(parts[3]) : 1;
+                    return new PngTileEncoder(level, filter, threads);
+                default:
+                    break;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid tile encoder: " + description, e);
+        }
+        throw new IllegalArgumentException("Unknown tile encoder: " + description);
+    }
+}
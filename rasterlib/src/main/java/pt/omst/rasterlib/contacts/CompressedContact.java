@@ -22,8 +22,6 @@ import java.util.Objects;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
-import javax.imageio.ImageIO;
-
 import org.imgscalr.Scalr;
 
 import lombok.Getter;
@@ -38,6 +36,7 @@ import pt.omst.rasterlib.Converter;
 import pt.omst.rasterlib.IndexedRaster;
 import pt.omst.rasterlib.MeasurementType;
 import pt.omst.rasterlib.Observation;
+import pt.omst.rasterlib.RasterPyramid;
 import pt.omst.rasterlib.SampleDescription;
 
 /**
@@ -213,7 +212,7 @@ public class CompressedContact implements MapMarker, QuadTree.Locatable<Compress
                     if (rasterFile.exists()) {
                         log.info("Raster file {} exists, reading...", rasterFile.getAbsolutePath());
                         IndexedRaster indexedRaster =  Converter.IndexedRasterFromJsonString(Files.readString(rasterFile.toPath()));
-                        BufferedImage img = ImageIO.read(new File(getTempDir(), indexedRaster.getFilename()));
+                        BufferedImage img = RasterPyramid.readImage(getTempDir(), indexedRaster, 224);
                         SampleDescription firstSample = indexedRaster.getSamples().getFirst();
                         SampleDescription lastSample = indexedRaster.getSamples().getLast();
 
@@ -272,7 +271,7 @@ public class CompressedContact implements MapMarker, QuadTree.Locatable<Compress
                         File rasterFile = new File(getTempDir(), obs.getRasterFilename());
                         if (rasterFile.exists()) {
                             IndexedRaster indexedRaster = Converter.IndexedRasterFromJsonString(Files.readString(rasterFile.toPath()));
-                            BufferedImage img = ImageIO.read(new File(getTempDir(), indexedRaster.getFilename()));
+                            BufferedImage img = RasterPyramid.readImage(getTempDir(), indexedRaster, 224);
                             SampleDescription firstSample = indexedRaster.getSamples().getFirst();
                             SampleDescription lastSample = indexedRaster.getSamples().getLast();
 
@@ -0,0 +1,346 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib.sscache;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import pt.omst.rasterlib.IndexedRasterCreator;
+import pt.omst.rasterlib.PngTileEncoder;
+import pt.omst.rasterlib.RasterExportPipeline;
+import pt.omst.rasterlib.TileEncoder;
+import pt.omst.sidescan.SidescanLine;
+import pt.omst.sidescan.SidescanParser;
+import pt.omst.sidescan.SidescanParserFactory;
+import pt.omst.sidescan.sds.SdsParser;
+
+/**
+ * Creates (or updates) the raster index of many sidescan folders, several folders at a time.
+ * <p>
+ * Folders are taken from a queue by a fixed number of workers. Before exporting a folder, a worker reserves an
+ * estimate of the memory the export will use from a global budget and waits while the budget is exhausted, so large
+ * folders run with less company than small ones. A folder whose estimate is larger than the whole budget runs alone.
+ * <p>
+ * The outcome of each folder is appended to a journal as soon as it is known, with the total size and latest
+ * modification time of its sonar files. Folders recorded as done are skipped when the batch is run again, unless
+ * their sonar files changed since, so an interrupted batch resumes where it stopped and a new run of the batch over
+ * an archive only exports the folders with new data. Folders missing from the journal that already have a raster
+ * index (created before the journal existed) are recorded as {@link Status#INDEXED} and not exported, unless
+ * {@link #setExportIndexedFolders(boolean)} is set: their rasters may have been created with other names and
+ * settings, which an export would replace. {@link #run()} returns the result of every folder, which
+ * {@link #report(List)} formats as a table with the throughput of each one.
+ */
+@Slf4j
+public class RasterIndexBatch {
+
+    public enum Status {
+        /** raster index created or updated */
+        DONE,
+        /** already done according to the journal */
+        RESUMED,
+        /** not in the journal but already had a raster index, kept as it was */
+        INDEXED,
+        /** no sidescan data to export */
+        EMPTY,
+        FAILED
+    }
+
+    /**
+     * Outcome of a folder
+     * @param folder the sidescan folder
+     * @param status what happened
+     * @param sourceBytes total size of the sonar files of the folder
+     * @param metrics totals of the export (null unless done)
+     * @param elapsedNanos time spent on the folder, including waiting for memory
+     * @param error error message of a failed folder
+     */
+    public record FolderResult(File folder, Status status, long sourceBytes, RasterExportPipeline.Metrics metrics,
+            long elapsedNanos, String error) {
+        /**
+         * @return MB of sonar files processed per second
+         */
+        public double megabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : sourceBytes / (1024.0 * 1024.0) / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * @return lines exported per second
+         */
+        public double linesPerSecond() {
+            return metrics == null || elapsedNanos == 0 ? 0 : metrics.lines() / (elapsedNanos / 1e9);
+        }
+    }
+
+    private static final String[] SONAR_EXTENSIONS = { ".sdf", ".jsf", ".sds" };
+    // used when the number of samples of a folder can't be found
+    private static final int DEFAULT_SAMPLES_PER_LINE = 4096;
+    private static final int LINES_PER_RASTER = 500;
+
+    /**
+     * State of the sonar files of a folder, to know if a folder changed since it was exported
+     * @param bytes total size of the sonar files
+     * @param lastModified latest modification time of the sonar files
+     */
+    record SourceState(long bytes, long lastModified) {
+        static SourceState of(File folder) {
+            long bytes = 0, lastModified = 0;
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (isSonarFile(file)) {
+                        bytes += file.length();
+                        lastModified = Math.max(lastModified, file.lastModified());
+                    }
+                }
+            }
+            return new SourceState(bytes, lastModified);
+        }
+    }
+
+    private final List<File> folders;
+    private final File journalFile;
+
+    /** Memory available to all exports running at the same time (by default 60% of the maximum heap) */
+    @Setter
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 10 * 6;
+    /** Maximum number of folders exported at the same time (by default half of the processors) */
+    @Setter
+    private int concurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /** If true, only rasters whose source files changed are created again */
+    @Setter
+    private boolean incremental = true;
+    /** If true, folders that are not in the journal are exported even if they already have a raster index */
+    @Setter
+    private boolean exportIndexedFolders = false;
+    /** Encoder of the raster images, null for {@link PngTileEncoder#DEFAULT} */
+    private TileEncoder encoder = null;
+    /** Receives a message for each finished folder, may be null */
+    @Setter
+    private Consumer<String> progress = null;
+
+    /**
+     * @param folders     the sidescan folders to export
+     * @param journalFile file where finished folders are recorded (created if needed)
+     */
+    public RasterIndexBatch(List<File> folders, File journalFile) {
+        this.folders = new ArrayList<>(folders);
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * @param encoder the encoder of the raster images, null for {@link PngTileEncoder#DEFAULT}
+     * @throws IllegalArgumentException if the encoder doesn't write PNG
+     */
+    public void setEncoder(TileEncoder encoder) {
+        this.encoder = encoder == null ? null : RasterExportPipeline.checkEncoder(encoder);
+    }
+
+    /**
+     * Exports all folders, returning once all are finished
+     * @return the result of each folder, in the order they were given
+     */
+    public List<FolderResult> run() throws IOException, InterruptedException {
+        Set<String> journaled = new HashSet<>();
+        Map<String, SourceState> done = readJournal(journalFile, journaled);
+        int budgetMegabytes = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget >> 20));
+        Semaphore memory = new Semaphore(budgetMegabytes, true);
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / concurrency);
+        log.info("Exporting {} folders, {} at a time with {} threads each and a {} MB memory budget",
+                folders.size(), concurrency, threads, budgetMegabytes);
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try (PrintWriter journal = new PrintWriter(new BufferedWriter(new FileWriter(journalFile, true)))) {
+            List<Future<FolderResult>> tasks = new ArrayList<>();
+            for (File folder : folders) {
+                tasks.add(workers.submit(() -> {
+                    // taken before exporting, so that files changed meanwhile are exported again in the next run
+                    SourceState source = SourceState.of(folder);
+                    String path = folder.getAbsolutePath();
+                    FolderResult result;
+                    if (source.equals(done.get(path)))
+                        result = new FolderResult(folder, Status.RESUMED, source.bytes(), null, 0, null);
+                    else if (!exportIndexedFolders && !journaled.contains(path)
+                            && SidescanDataCollection.hasRasterIndex(folder))
+                        result = new FolderResult(folder, Status.INDEXED, source.bytes(), null, 0, null);
+                    else
+                        result = export(folder, source.bytes(), memory, budgetMegabytes, threads);
+                    if (result.status() != Status.RESUMED)
+                        append(journal, result, source);
+                    if (progress != null)
+                        progress.accept(result.status() + " " + folder.getAbsolutePath());
+                    return result;
+                }));
+            }
+
+            List<FolderResult> results = new ArrayList<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    results.add(tasks.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new FolderResult(folders.get(i), Status.FAILED, 0, null, 0,
+                            String.valueOf(e.getCause())));
+                }
+            }
+            return results;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private FolderResult export(File folder, long sourceBytes, Semaphore memory, int budgetMegabytes, int threads)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        int megabytes = (int) Math.min(budgetMegabytes, Math.max(1, estimateMemory(folder, threads) >> 20));
+        memory.acquire(megabytes);
+        try {
+            log.info("Exporting {} (about {} MB)", folder.getAbsolutePath(), megabytes);
+            RasterExportPipeline.Metrics metrics = IndexedRasterCreator.exportRasterIndex(folder, -1, incremental,
+                    threads, encoder, null);
+            return new FolderResult(folder, metrics == null ? Status.EMPTY : Status.DONE, sourceBytes, metrics,
+                    System.nanoTime() - start, null);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception | OutOfMemoryError e) {
+            log.error("Error exporting {}", folder.getAbsolutePath(), e);
+            return new FolderResult(folder, Status.FAILED, sourceBytes, null, System.nanoTime() - start,
+                    String.valueOf(e.getMessage()));
+        } finally {
+            memory.release(megabytes);
+        }
+    }
+
+    /**
+     * Estimates the memory needed to export a folder from the number of samples of its first ping (read from its
+     * first sonar file only) plus the caches of its parser
+     */
+    static long estimateMemory(File folder, int threads) {
+        int samples = DEFAULT_SAMPLES_PER_LINE;
+        long parserBytes = 0;
+        SidescanParser parser = null;
+        try {
+            parser = SidescanParserFactory.fastBuild(folder);
+            if (parser instanceof SdsParser)
+                parserBytes = SdsParser.DEFAULT_PAYLOAD_CACHE_BYTES + SdsParser.DEFAULT_LINE_CACHE_BYTES;
+            if (parser != null && !parser.getSubsystemList().isEmpty()) {
+                int subsystem = parser.getSubsystemList().getLast();
+                if (parser.getPingCount(subsystem) > 0) {
+                    SidescanLine line = parser.readPing(subsystem, 0, parser.getDefaultParams());
+                    if (line != null)
+                        samples = line.getData().length;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Could not estimate memory for {}: {}", folder.getAbsolutePath(), e.getMessage());
+        } finally {
+            if (parser != null)
+                parser.cleanup();
+        }
+        return RasterExportPipeline.estimateMemory(samples, LINES_PER_RASTER, threads) + parserBytes;
+    }
+
+    private static boolean isSonarFile(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        for (String extension : SONAR_EXTENSIONS)
+            if (name.endsWith(extension))
+                return true;
+        return false;
+    }
+
+    /**
+     * Journal lines are: status, folder, lines, rasters, seconds, source bytes and source modification time separated
+     * by tabs. Only the last entry of a folder counts.
+     * @return the state of the sonar files of the folders whose last entry is done, when they were exported
+     */
+    static Map<String, SourceState> readJournal(File journalFile) throws IOException {
+        return readJournal(journalFile, new HashSet<>());
+    }
+
+    /**
+     * Same as {@link #readJournal(File)}, also collecting every folder with an entry in the journal
+     */
+    static Map<String, SourceState> readJournal(File journalFile, Set<String> journaled) throws IOException {
+        Map<String, SourceState> done = new HashMap<>();
+        if (!journalFile.exists())
+            return done;
+        for (String line : Files.readAllLines(journalFile.toPath())) {
+            String[] parts = line.split("\t");
+            if (parts.length < 2)
+                continue; // incomplete line of an interrupted batch
+            journaled.add(parts[1]);
+            boolean finished = parts[0].equals(Status.DONE.name()) || parts[0].equals(Status.EMPTY.name())
+                    || parts[0].equals(Status.INDEXED.name());
+            if (finished && parts.length >= 7) {
+                try {
+                    done.put(parts[1], new SourceState(Long.parseLong(parts[5]), Long.parseLong(parts[6])));
+                    continue;
+                } catch (NumberFormatException e) {
+                    // incomplete line, the folder is exported again
+                }
+            }
+            done.remove(parts[1]);
+        }
+        return done;
+    }
+
+    private static void append(PrintWriter journal, FolderResult result, SourceState source) {
+        long lines = result.metrics() == null ? 0 : result.metrics().lines();
+        int rasters = result.metrics() == null ? 0 : result.metrics().rasters();
+        synchronized (journal) {
+            journal.printf(Locale.ROOT, "%s\t%s\t%d\t%d\t%.1f\t%d\t%d%n", result.status(),
+                    result.folder().getAbsolutePath(), lines, rasters, result.elapsedNanos() / 1e9, source.bytes(),
+                    source.lastModified());
+            journal.flush();
+        }
+    }
+
+    /**
+     * @return a table with the status and throughput of each folder, followed by the totals
+     */
+    public static String report(List<FolderResult> results) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-8s %10s %10s %8s %8s %9s %10s  %s%n", "status", "source MB", "lines", "rasters",
+                "seconds", "MB/s", "lines/s", "folder"));
+        long bytes = 0, lines = 0, nanos = 0;
+        int rasters = 0, failed = 0;
+        for (FolderResult result : results) {
+            RasterExportPipeline.Metrics metrics = result.metrics();
+            sb.append(String.format("%-8s %10.1f %10d %8d %8.1f %9.1f %10.0f  %s%n", result.status(),
+                    result.sourceBytes() / (1024.0 * 1024.0), metrics == null ? 0 : metrics.lines(),
+                    metrics == null ? 0 : metrics.rasters(), result.elapsedNanos() / 1e9,
+                    result.megabytesPerSecond(), result.linesPerSecond(), result.folder().getAbsolutePath()));
+            if (result.status() == Status.FAILED)
+                failed++;
+            if (result.status() != Status.DONE)
+                continue;
+            bytes += result.sourceBytes();
+            lines += metrics.lines();
+            rasters += metrics.rasters();
+            nanos += result.elapsedNanos();
+        }
+        sb.append(String.format("%d folders (%d failed): %.1f MB, %,d lines and %d rasters in %.1f s of export time%n",
+                results.size(), failed, bytes / (1024.0 * 1024.0), lines, rasters, nanos / 1e9));
+        return sb.toString();
+    }
+}
@@ -6,9 +6,9 @@ import java.util.HashSet;
 import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
-import pt.omst.rasterlib.IndexedRasterCreator;
 import pt.omst.rasterlib.IndexedRasterUtils;
 import pt.omst.rasterlib.SensorInfo;
+import pt.omst.rasterlib.TileEncoder;
 import pt.omst.sidescan.SidescanParser;
 import pt.omst.sidescan.SidescanParserFactory;
 
@@ -61,55 +61,20 @@ public class SidescanDataCollection {
 
 
 
-    public static void main(String[] args) {
-        List<File> allFolders = findSidescanFolders(new File("/home/zp/workspace/neptus/"));
+    public static void main(String[] args) throws Exception {
+        File archive = new File(args.length > 0 ? args[0] : "/home/zp/workspace/neptus/");
+        List<File> allFolders = findSidescanFolders(archive);
         log.info("Found {} sidescan folders to process", allFolders.size());
-        
-        int processed = 0;
-        int skipped = 0;
-        int errors = 0;
-        
-        for (int i = 0; i < allFolders.size(); i++) {
-            File f = allFolders.get(i);
-            log.info("[{}/{}] Processing: {}", i + 1, allFolders.size(), f.getAbsolutePath());
-            System.out.println("Sidescan folder: " + f.getAbsolutePath());
-            
-            try {
-                SensorInfo sensorInfo = getSensorInfo(f);
-                boolean hasIndex = hasRasterIndex(f);
-                
-                System.out.println("   " + sensorInfo);
-                System.out.println("   Has raster index: " + hasIndex);
-                
-                if (!hasIndex) {
-                    log.info("Creating raster index for {}", f.getName());
-                    IndexedRasterCreator.exportRasters(f, -1, null);
-                    processed++;
-                } else {
-                    log.debug("Skipping {} - already has raster index", f.getName());
-                    skipped++;
-                }
-                
-                // Force garbage collection between folders to prevent memory buildup
-                System.gc();
-                
-            } catch (OutOfMemoryError e) {
-                log.error("Out of memory processing: {}", f.getAbsolutePath());
-                log.error("Attempting to recover memory and continue...");
-                errors++;
-                // Aggressive garbage collection
-                System.gc();
-                System.gc();
-                
-            } catch (Exception e) {
-                log.error("Error processing {}: {}", f.getAbsolutePath(), e.getMessage(), e);
-                errors++;
-            }
-            
-            System.out.println("-----");
-        }
-        
-        log.info("Processing complete: {} processed, {} skipped, {} errors", processed, skipped, errors);
+
+        // finished folders are recorded in the journal and skipped if the batch is run again, unless their sonar
+        // files changed. Folders that already have a raster index are kept as they are on the first run.
+        RasterIndexBatch batch = new RasterIndexBatch(allFolders, new File(archive, "rasterIndex-batch.journal"));
+        batch.setProgress(System.out::println);
+        // optional PNG encoder of the raster images, for instance png:6:adaptive:4 or imageio (see TileEncoder.parse)
+        if (args.length > 1)
+            batch.setEncoder(TileEncoder.parse(args[1]));
+        List<RasterIndexBatch.FolderResult> results = batch.run();
+        System.out.println(RasterIndexBatch.report(results));
     }
 
 }
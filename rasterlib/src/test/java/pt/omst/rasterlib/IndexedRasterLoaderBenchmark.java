@@ -0,0 +1,78 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Time taken to read the raster indexes of a mission with {@link Converter} (one file after the other) and with
+ * {@link IndexedRasterLoader#readAll(List, java.util.function.Consumer)}. The number of rasters can be given as
+ * argument.
+ */
+public class IndexedRasterLoaderBenchmark {
+
+    private static final int SAMPLES_PER_RASTER = 500;
+    private static final int ITERATIONS = 5;
+
+    private static IndexedRaster createRaster(int raster) {
+        OffsetDateTime start = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).plusSeconds(raster * 60L);
+        return TestSamples.createRaster("raster" + raster + ".png",
+                TestSamples.addAttitude(TestSamples.createSamples(start, SAMPLES_PER_RASTER, 120_000_000L)));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rasters = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        Path folder = Files.createTempDirectory("rasterIndex");
+        try {
+            List<File> files = new ArrayList<>();
+            long bytes = 0;
+            for (int r = 0; r < rasters; r++) {
+                File file = folder.resolve("raster" + r + ".json").toFile();
+                Files.writeString(file.toPath(), Converter.IndexedRasterToJsonString(createRaster(r)));
+                bytes += file.length();
+                files.add(file);
+            }
+            System.out.printf("%d rasters, %d samples, %.1f MB of JSON, %d processors%n", rasters,
+                    rasters * SAMPLES_PER_RASTER, bytes / 1e6, Runtime.getRuntime().availableProcessors());
+
+            long converterNanos = Long.MAX_VALUE, streamingNanos = Long.MAX_VALUE, parallelNanos = Long.MAX_VALUE;
+            long count = 0;
+            for (int it = 0; it < ITERATIONS; it++) {
+                long start = System.nanoTime();
+                for (File file : files)
+                    count += Converter.IndexedRasterFromJsonString(Files.readString(file.toPath())).getSamples().size();
+                converterNanos = Math.min(converterNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (File file : files)
+                    count += IndexedRasterLoader.read(file).getColumns().size();
+                streamingNanos = Math.min(streamingNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (IndexedRaster raster : IndexedRasterLoader.readAll(files, null).values())
+                    count += raster.getColumns().size();
+                parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+            }
+            System.out.printf("converter, one file at a time: %.1f ms%n", converterNanos / 1e6);
+            System.out.printf("streaming, one file at a time: %.1f ms%n", streamingNanos / 1e6);
+            System.out.printf("streaming, in parallel: %.1f ms%n", parallelNanos / 1e6);
+            System.out.printf("samples read: %d%n", count);
+        } finally {
+            try (Stream<Path> paths = Files.walk(folder)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link IndexedRasterLoader}, comparing it with {@link Converter}.
+ */
+class IndexedRasterLoaderTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2025, 3, 1, 10, 0, 0, 0, ZoneOffset.ofHours(1));
+
+    private static IndexedRaster createRaster(int samples) {
+        return TestSamples.createRaster("raster.png", TestSamples.createSamples(START, samples, 123_456_789L));
+    }
+
+    @Test
+    void testSameAsConverter() throws IOException {
+        String json = Converter.IndexedRasterToJsonString(createRaster(50));
+        IndexedRaster expected = Converter.IndexedRasterFromJsonString(json);
+        IndexedRaster raster = IndexedRasterLoader.read(json);
+
+        assertEquals(expected.getFilename(), raster.getFilename());
+        assertEquals(expected.getRasterType(), raster.getRasterType());
+        assertEquals(expected.getSensorInfo().getSensorModel(), raster.getSensorInfo().getSensorModel());
+        assertEquals(expected.getSensorInfo().getMaxRange(), raster.getSensorInfo().getMaxRange());
+
+        SampleColumns columns = raster.getColumns();
+        assertEquals(expected.getSamples().size(), columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            SampleDescription sample = expected.getSamples().get(i);
+            assertEquals(sample.getTimestamp().toInstant().toEpochMilli(), columns.getTimestamp(i));
+            assertEquals(i, columns.getIndex(i));
+            assertEquals(sample.getPose().getLatitude(), columns.getLatitude(i));
+            assertEquals(sample.getPose().getPsi(), columns.getPsi(i), 1e-5);
+            assertEquals(sample.getPose().getDepth(), columns.getDepth(i), 1e-5);
+            assertTrue(Double.isNaN(columns.getPhi(i)));
+        }
+    }
+
+    @Test
+    void testParseMillis() {
+        for (String time : List.of("2025-03-01T10:00:00Z", "2025-03-01T10:00:00.5Z", "2025-03-01T10:00:00.123Z",
+                "2025-03-01T10:00:00.123456789Z", "2025-03-01T10:00:00.123+01:00", "2024-02-29T23:59:59.999-03:30")) {
+            assertEquals(Converter.parseDateTimeString(time).toInstant().toEpochMilli(),
+                    IndexedRasterLoader.parseMillis(time), time);
+        }
+        // other formats are left to the converter
+        assertEquals(Long.MIN_VALUE, IndexedRasterLoader.parseMillis("2025-03-01 10:00:00.1Z"));
+        assertEquals(Long.MIN_VALUE, IndexedRasterLoader.parseMillis("2025-03-01T10:00:00"));
+        assertEquals(Long.MIN_VALUE, IndexedRasterLoader.parseMillis("2025-02-30T10:00:00Z"));
+    }
+
+    @Test
+    void testReadAll(@TempDir Path folder) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            File file = folder.resolve("raster" + i + ".json").toFile();
+            String json = i == 2 ? "{ not json" : Converter.IndexedRasterToJsonString(createRaster(i + 1));
+            Files.writeString(file.toPath(), json);
+            files.add(file);
+        }
+        List<String> progress = new ArrayList<>();
+        Map<File, IndexedRaster> rasters = IndexedRasterLoader.readAll(files, progress::add);
+
+        // the invalid file is left out and the others keep their order
+        assertEquals(List.of(files.get(0), files.get(1), files.get(3), files.get(4)),
+                new ArrayList<>(rasters.keySet()));
+        assertEquals(4, rasters.get(files.get(3)).getColumns().size());
+        assertEquals(5, progress.size());
+        assertEquals("Loaded 5/5 rasters", progress.getLast());
+    }
+}
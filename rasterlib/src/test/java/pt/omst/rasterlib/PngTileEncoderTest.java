@@ -0,0 +1,104 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferUShort;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link PngTileEncoder}: encoded images must decode (with {@link ImageIO}) to the same pixels for
+ * every filter and number of threads.
+ */
+class PngTileEncoderTest {
+
+    private static BufferedImage rgbImage(int width, int height) {
+        Random random = new Random(1);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                image.setRGB(x, y, (x * 7 + y) << 16 | random.nextInt(64) << 8 | (x ^ y) & 0xFF);
+        return image;
+    }
+
+    private static void assertSameRgb(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++)
+            for (int x = 0; x < expected.getWidth(); x++)
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel " + x + "," + y);
+    }
+
+    private static BufferedImage decode(byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull(image);
+        return image;
+    }
+
+    @Test
+    void testRgbRoundTripForAllFiltersAndThreads() throws IOException {
+        BufferedImage image = rgbImage(301, 203);
+        for (PngTileEncoder.Filter filter : PngTileEncoder.Filter.values()) {
+            for (int threads : new int[] { 1, 3, 8 }) {
+                PngTileEncoder encoder = new PngTileEncoder(1, filter, threads);
+                assertSameRgb(image, decode(encoder.encode(image)));
+            }
+        }
+    }
+
+    @Test
+    void testSixteenBitGrayRoundTrip() throws IOException {
+        BufferedImage image = new BufferedImage(257, 130, BufferedImage.TYPE_USHORT_GRAY);
+        short[] data = ((DataBufferUShort) image.getRaster().getDataBuffer()).getData();
+        Random random = new Random(2);
+        for (int i = 0; i < data.length; i++)
+            data[i] = (short) random.nextInt(0x10000);
+
+        BufferedImage decoded = decode(new PngTileEncoder(6, PngTileEncoder.Filter.ADAPTIVE, 4).encode(image));
+        assertEquals(BufferedImage.TYPE_USHORT_GRAY, decoded.getType());
+        assertArrayEquals(data, ((DataBufferUShort) decoded.getRaster().getDataBuffer()).getData());
+    }
+
+    @Test
+    void testParallelBandsKeepCompressionRatio() throws IOException {
+        BufferedImage image = rgbImage(1000, 400);
+        int single = new PngTileEncoder(6, PngTileEncoder.Filter.UP, 1).encode(image).length;
+        int parallel = new PngTileEncoder(6, PngTileEncoder.Filter.UP, 8).encode(image).length;
+        assertTrue(parallel < single * 1.02, single + " bytes in one band, " + parallel + " in 8 bands");
+    }
+
+    @Test
+    void testCombineAdler32() {
+        byte[] data = new byte[200_000];
+        new Random(3).nextBytes(data);
+        Adler32 whole = new Adler32();
+        whole.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 70_001);
+        Adler32 second = new Adler32();
+        second.update(data, 70_001, data.length - 70_001);
+        assertEquals(whole.getValue(),
+                PngTileEncoder.combineAdler32(first.getValue(), second.getValue(), data.length - 70_001));
+    }
+
+    @Test
+    void testParse() {
+        assertEquals("png:3:paeth:2", TileEncoder.parse("png:3:paeth:2").toString());
+        assertEquals(PngTileEncoder.DEFAULT.toString(), TileEncoder.parse("png").toString());
+        assertEquals("imageio:png", TileEncoder.parse("imageio").toString());
+        assertThrows(IllegalArgumentException.class, () -> TileEncoder.parse("png:12"));
+        assertThrows(IllegalArgumentException.class, () -> TileEncoder.parse("webp"));
+    }
+}
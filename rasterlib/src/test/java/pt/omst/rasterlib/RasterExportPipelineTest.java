@@ -0,0 +1,284 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import pt.lsts.neptus.core.SystemPositionAndAttitude;
+import pt.omst.sidescan.ISidescanLine;
+import pt.omst.sidescan.SidescanHistogramNormalizer;
+import pt.omst.sidescan.SidescanLine;
+import pt.omst.sidescan.SidescanParameters;
+import pt.omst.sidescan.SidescanParser;
+import pt.omst.sidescan.SourceSpan;
+
+/**
+ * Unit tests for {@link RasterExportPipeline}, exporting the lines of a fake parser.
+ */
+class RasterExportPipelineTest {
+
+    private static final int SUBSYSTEM = 1;
+    private static final int SAMPLES = 64;
+    private static final long PING_MILLIS = 100;
+
+    /**
+     * Parser of constant lines, with the same number of pings in each of its source files
+     */
+    private static class FakeParser implements SidescanParser {
+        private final List<File> files;
+        private final int pingsPerFile;
+
+        FakeParser(List<File> files, int pingsPerFile) {
+            this.files = files;
+            this.pingsPerFile = pingsPerFile;
+        }
+
+        @Override
+        public SidescanLine readPing(int subsystem, int ping, SidescanParameters config) {
+            double[] data = new double[SAMPLES];
+            Arrays.fill(data, 0.5);
+            SystemPositionAndAttitude state = new SystemPositionAndAttitude();
+            state.setAltitude(5);
+            return new SidescanLine(getPingTimestamp(subsystem, ping), 30, state, 900, data);
+        }
+
+        @Override
+        public List<SourceSpan> getSourceSpans(int subsystem) {
+            List<SourceSpan> spans = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++)
+                spans.add(new SourceSpan(files.get(i), getPingTimestamp(subsystem, i * pingsPerFile),
+                        getPingTimestamp(subsystem, (i + 1) * pingsPerFile - 1)));
+            return spans;
+        }
+
+        @Override
+        public int getPingCount(int subsystem) {
+            return files.size() * pingsPerFile;
+        }
+
+        @Override
+        public long getPingTimestamp(int subsystem, int ping) {
+            return 1_000_000 + ping * PING_MILLIS;
+        }
+
+        @Override
+        public ArrayList<Integer> getSubsystemList() {
+            return new ArrayList<>(List.of(SUBSYSTEM));
+        }
+
+        @Override
+        public long firstPingTimestamp() {
+            return getPingTimestamp(SUBSYSTEM, 0);
+        }
+
+        @Override
+        public long lastPingTimestamp() {
+            return getPingTimestamp(SUBSYSTEM, getPingCount(SUBSYSTEM) - 1);
+        }
+
+        @Override
+        public long firstPingTimestamp(int subsystem) {
+            return firstPingTimestamp();
+        }
+
+        @Override
+        public long lastPingTimestamp(int subsystem) {
+            return lastPingTimestamp();
+        }
+
+        @Override
+        public ArrayList<SidescanLine> getLinesBetween(long timestamp1, long timestamp2, int subsystem,
+                SidescanParameters config) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public ISidescanLine getLineAtTime(long timestamp, int subsytem, SidescanParameters config) {
+            return readPing(subsytem, (int) ((timestamp - firstPingTimestamp()) / PING_MILLIS), config);
+        }
+
+        @Override
+        public void cleanup() {
+        }
+
+        @Override
+        public SidescanParameters getDefaultParams() {
+            return new SidescanParameters(0.2, 100);
+        }
+    }
+
+    private static FakeParser createParser(File folder, int count, int pingsPerFile) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File file = new File(folder, "data" + i + ".sdf");
+            Files.write(file.toPath(), new byte[16]);
+            files.add(file);
+        }
+        return new FakeParser(files, pingsPerFile);
+    }
+
+    private static RasterExportPipeline createPipeline(File folder, int maxLines) {
+        return createPipeline(folder, maxLines, new SensorInfo(), null);
+    }
+
+    private static RasterExportPipeline createPipeline(File folder, int maxLines, SensorInfo sensorInfo,
+            SidescanHistogramNormalizer normalizer) {
+        File outputDir = new File(folder, "rasterIndex");
+        outputDir.mkdirs();
+        RasterExportPipeline pipeline = new RasterExportPipeline(outputDir, sensorInfo, normalizer, SUBSYSTEM,
+                maxLines);
+        pipeline.setThreads(2);
+        return pipeline;
+    }
+
+    /**
+     * @return the sorted names of the files in the raster folder ending with the given suffix
+     */
+    private static List<String> listRasterFiles(File folder, String suffix) {
+        String[] names = new File(folder, "rasterIndex").list((dir, name) -> name.endsWith(suffix));
+        return names == null ? List.of() : Arrays.stream(names).sorted().toList();
+    }
+
+    private static RasterExportPipeline.Metrics export(File folder, FakeParser parser, int maxLines)
+            throws InterruptedException {
+        return export(createPipeline(folder, maxLines), parser);
+    }
+
+    private static RasterExportPipeline.Metrics export(RasterExportPipeline pipeline, FakeParser parser)
+            throws InterruptedException {
+        pipeline.setIncremental(true);
+        return pipeline.run(parser, parser.getDefaultParams(), null);
+    }
+
+    @Test
+    void testUnchangedRastersAreSkipped(@TempDir File folder) throws Exception {
+        FakeParser parser = createParser(folder, 4, 50);
+        RasterExportPipeline.Metrics first = export(folder, parser, 50);
+        assertEquals(4, first.rasters());
+        assertEquals(0, first.skipped());
+        assertEquals(4, RasterSourceManifest.load(folder).getRasterNames().size());
+
+        RasterExportPipeline.Metrics second = export(folder, parser, 50);
+        assertEquals(0, second.rasters());
+        assertEquals(4, second.skipped());
+
+        // a raster missing one of its files is created again
+        File overview = RasterPyramid.getOverviewFile(new File(folder, "rasterIndex/sss_1_1005.png"), 4);
+        assertTrue(overview.delete());
+        RasterExportPipeline.Metrics third = export(folder, parser, 50);
+        assertEquals(1, third.rasters());
+        assertEquals(3, third.skipped());
+        assertTrue(overview.isFile());
+    }
+
+    @Test
+    void testRastersOfModifiedFilesAreRegenerated(@TempDir File folder) throws Exception {
+        FakeParser parser = createParser(folder, 4, 50);
+        assertEquals(7, export(folder, parser, 30).rasters());
+        File rasterIndex = new File(folder, "rasterIndex");
+        File unchanged = new File(rasterIndex, "sss_1_1000.json");
+        File changed = new File(rasterIndex, "sss_1_1006.json");
+        assertTrue(unchanged.setLastModified(0));
+        assertTrue(changed.setLastModified(0));
+
+        // pings 50 to 99, in rasters starting at pings 30, 60 and 90
+        Files.write(new File(folder, "data1.sdf").toPath(), new byte[32]);
+        RasterExportPipeline.Metrics metrics = export(folder, parser, 30);
+        assertEquals(3, metrics.rasters());
+        assertEquals(4, metrics.skipped());
+        assertEquals(0, unchanged.lastModified());
+        assertNotEquals(0, changed.lastModified());
+        assertEquals(32, RasterSourceManifest.load(folder).get("sss_1_1006.json").sources().getFirst().length());
+    }
+
+    @Test
+    void testRastersWithOtherSettingsAreRegenerated(@TempDir File folder) throws Exception {
+        FakeParser parser = createParser(folder, 4, 50);
+        assertEquals(4, export(folder, parser, 50).rasters());
+
+        RasterExportPipeline pipeline = createPipeline(folder, 50);
+        pipeline.setEncoder(TileEncoder.parse("png:1:up"));
+        assertEquals(4, export(pipeline, parser).rasters());
+        pipeline = createPipeline(folder, 50);
+        pipeline.setEncoder(TileEncoder.parse("png:1:up"));
+        assertEquals(4, export(pipeline, parser).skipped());
+
+        // a new histogram, for instance after adding files to the folder
+        SidescanHistogramNormalizer normalizer = SidescanHistogramNormalizer.create(parser, folder, 10_000);
+        assertEquals(4, export(createPipeline(folder, 50, new SensorInfo(), normalizer), parser).rasters());
+        assertEquals(4, export(createPipeline(folder, 50, new SensorInfo(), normalizer), parser).skipped());
+
+        SensorInfo sensorInfo = new SensorInfo();
+        sensorInfo.setMaxRange(60.0);
+        assertEquals(4, export(createPipeline(folder, 50, sensorInfo, normalizer), parser).rasters());
+        assertEquals(4, export(createPipeline(folder, 50, sensorInfo, normalizer), parser).skipped());
+    }
+
+    @Test
+    void testUnplannedRastersAreDeleted(@TempDir File folder) throws Exception {
+        FakeParser all = createParser(folder, 4, 50);
+        export(folder, all, 50);
+        assertEquals(List.of("sss_1_1000.json", "sss_1_1005.json", "sss_1_1010.json", "sss_1_1015.json"),
+                listRasterFiles(folder, ".json"));
+
+        // the last two files are gone
+        FakeParser parser = new FakeParser(all.files.subList(0, 2), 50);
+        RasterExportPipeline.Metrics metrics = export(folder, parser, 50);
+        assertEquals(2, metrics.skipped());
+        List<String> kept = List.of("sss_1_1000", "sss_1_1005");
+        assertEquals(kept.stream().map(name -> name + ".json").toList(), listRasterFiles(folder, ".json"));
+        assertEquals(kept.stream().map(name -> name + "_i16.png").toList(), listRasterFiles(folder, "_i16.png"));
+        for (int scale : RasterPyramid.SCALES)
+            assertEquals(kept.stream().map(name -> name + "_ov" + scale + ".png").toList(),
+                    listRasterFiles(folder, "_ov" + scale + ".png"));
+        assertEquals(kept.size() * (2 + RasterPyramid.SCALES.length), listRasterFiles(folder, ".png").size());
+        assertEquals(kept.stream().map(name -> name + ".json").collect(Collectors.toSet()),
+                RasterSourceManifest.load(folder).getRasterNames());
+    }
+
+    @Test
+    void testFailedStageAbortsTheExport(@TempDir File folder) throws IOException {
+        FakeParser parser = createParser(folder, 4, 50);
+        RasterExportPipeline pipeline = createPipeline(folder, 10);
+        pipeline.setEncoder(new TileEncoder() {
+            @Override
+            public byte[] encode(BufferedImage image) {
+                throw new OutOfMemoryError("Test");
+            }
+
+            @Override
+            public String getFormatName() {
+                return "png";
+            }
+        });
+        // the reader would wait forever for room in the queues of the stopped stage
+        IllegalStateException e = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> assertThrows(IllegalStateException.class,
+                        () -> pipeline.run(parser, parser.getDefaultParams(), null)));
+        assertInstanceOf(OutOfMemoryError.class, e.getCause());
+    }
+
+    @Test
+    void testOnlyPngEncodersAreAccepted(@TempDir File folder) {
+        RasterExportPipeline pipeline = createPipeline(folder, 10);
+        pipeline.setEncoder(TileEncoder.parse("imageio"));
+        pipeline.setEncoder(TileEncoder.parse("png:1:up"));
+        assertThrows(IllegalArgumentException.class, () -> pipeline.setEncoder(TileEncoder.parse("imageio:jpg")));
+    }
+}
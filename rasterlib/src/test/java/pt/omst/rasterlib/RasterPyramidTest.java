@@ -0,0 +1,116 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the overviews of {@link RasterPyramid}.
+ */
+class RasterPyramidTest {
+
+    private static BufferedImage createImage(int width, int height, int[] rgb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, rgb, 0, width);
+        return image;
+    }
+
+    private static RasterOverview overview(String filename, Integer scale, Integer width) {
+        RasterOverview overview = new RasterOverview();
+        overview.setFilename(filename);
+        overview.setScale(scale);
+        overview.setWidth(width);
+        return overview;
+    }
+
+    @Test
+    void testHalveAveragesBlocks() {
+        BufferedImage image = createImage(4, 2, new int[] {
+                0x000000, 0x040404, 0x102030, 0x102030,
+                0x080808, 0x0C0C0C, 0x102030, 0x102031 });
+        BufferedImage half = RasterPyramid.halve(image);
+        assertEquals(2, half.getWidth());
+        assertEquals(1, half.getHeight());
+        assertEquals(0x060606, half.getRGB(0, 0) & 0xFFFFFF);
+        // rounded to the nearest value
+        assertEquals(0x102030, half.getRGB(1, 0) & 0xFFFFFF);
+    }
+
+    @Test
+    void testHalveOddSizes() {
+        // the last column and row are averaged with themselves
+        BufferedImage image = createImage(3, 3, new int[] {
+                0x000000, 0x000000, 0x100000,
+                0x000000, 0x000000, 0x300000,
+                0x000010, 0x000030, 0x001000 });
+        BufferedImage half = RasterPyramid.halve(image);
+        assertEquals(2, half.getWidth());
+        assertEquals(2, half.getHeight());
+        assertEquals(0x200000, half.getRGB(1, 0) & 0xFFFFFF);
+        assertEquals(0x000020, half.getRGB(0, 1) & 0xFFFFFF);
+        assertEquals(0x001000, half.getRGB(1, 1) & 0xFFFFFF);
+
+        BufferedImage pixel = RasterPyramid.halve(createImage(1, 1, new int[] { 0x123456 }));
+        assertEquals(1, pixel.getWidth());
+        assertEquals(1, pixel.getHeight());
+        assertEquals(0x123456, pixel.getRGB(0, 0) & 0xFFFFFF);
+    }
+
+    @Test
+    void testOverviewSizes() {
+        List<BufferedImage> overviews = RasterPyramid.createOverviews(createImage(101, 37, new int[101 * 37]));
+        assertEquals(RasterPyramid.SCALES.length, overviews.size());
+        int[][] sizes = { { 51, 19 }, { 26, 10 }, { 13, 5 } };
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals(sizes[i][0], overviews.get(i).getWidth());
+            assertEquals(sizes[i][1], overviews.get(i).getHeight());
+        }
+    }
+
+    @Test
+    void testSelectSmallestWideEnoughOverview() {
+        IndexedRaster raster = new IndexedRaster();
+        assertNull(RasterPyramid.select(raster, 100));
+
+        List<RasterOverview> overviews = new ArrayList<>(List.of(overview("a_ov2.png", 2, 500),
+                overview("a_ov8.png", 8, 125), overview("a_ov4.png", 4, 250)));
+        // incomplete entries are ignored
+        overviews.add(overview(null, 16, 63));
+        overviews.add(overview("a_ov16.png", 16, null));
+        raster.setOverviews(overviews);
+
+        assertNull(RasterPyramid.select(raster, 1000));
+        assertNull(RasterPyramid.select(raster, 501));
+        assertEquals("a_ov2.png", RasterPyramid.select(raster, 500).getFilename());
+        assertEquals("a_ov2.png", RasterPyramid.select(raster, 251).getFilename());
+        assertEquals("a_ov4.png", RasterPyramid.select(raster, 250).getFilename());
+        assertEquals("a_ov8.png", RasterPyramid.select(raster, 125).getFilename());
+        assertEquals("a_ov8.png", RasterPyramid.select(raster, 1).getFilename());
+    }
+
+    @Test
+    void testRowOfSample() {
+        // first sample at the bottom
+        BufferedImage full = new BufferedImage(4, 100, BufferedImage.TYPE_INT_RGB);
+        assertEquals(99, RasterPyramid.getRow(full, 100, 0));
+        assertEquals(49, RasterPyramid.getRow(full, 100, 50));
+        assertEquals(0, RasterPyramid.getRow(full, 100, 99));
+
+        // overview with a row for every 8 samples
+        BufferedImage overview = new BufferedImage(4, 13, BufferedImage.TYPE_INT_RGB);
+        assertEquals(12, RasterPyramid.getRow(overview, 100, 0));
+        assertEquals(12, RasterPyramid.getRow(overview, 100, 7));
+        assertEquals(11, RasterPyramid.getRow(overview, 100, 8));
+        assertEquals(0, RasterPyramid.getRow(overview, 100, 99));
+        assertEquals(0, RasterPyramid.getRow(overview, 100, 100));
+    }
+}
@@ -0,0 +1,84 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import pt.omst.rasterlib.RasterSourceManifest.SourceFingerprint;
+import pt.omst.rasterlib.RasterSourceManifest.TileSources;
+import pt.omst.sidescan.SourceSpan;
+
+/**
+ * Unit tests for {@link RasterSourceManifest}.
+ */
+class RasterSourceManifestTest {
+
+    @Test
+    void testOnlyOverlappingFilesAreSources(@TempDir File folder) throws Exception {
+        File a = new File(folder, "a.sdf");
+        File b = new File(folder, "b.sdf");
+        File c = new File(folder, "c.sdf");
+        for (File file : List.of(a, b, c))
+            Files.write(file.toPath(), new byte[8]);
+        List<SourceSpan> spans = List.of(new SourceSpan(a, 0, 99), new SourceSpan(b, 100, 199),
+                new SourceSpan(c, 200, 299));
+
+        assertEquals(List.of("a.sdf"), names(TileSources.of(0, 99, 100, "settings", spans)));
+        // both ends are inclusive
+        assertEquals(List.of("a.sdf", "b.sdf"), names(TileSources.of(99, 100, 2, "settings", spans)));
+        assertEquals(List.of("b.sdf", "c.sdf"), names(TileSources.of(150, 200, 51, "settings", spans)));
+        assertEquals(List.of(), names(TileSources.of(300, 400, 101, "settings", spans)));
+
+        SourceFingerprint fingerprint = SourceFingerprint.of(spans.get(1));
+        assertEquals(new SourceFingerprint("b.sdf", 8, b.lastModified(), 100, 199), fingerprint);
+        Files.write(b.toPath(), new byte[16]);
+        assertNotEquals(fingerprint, SourceFingerprint.of(spans.get(1)));
+    }
+
+    @Test
+    void testSavedManifestIsLoadedBack(@TempDir File folder) throws Exception {
+        File data = new File(folder, "data.sdf");
+        Files.write(data.toPath(), new byte[8]);
+        TileSources sources = TileSources.of(10, 20, 11, "settings", List.of(new SourceSpan(data, 0, 100)));
+
+        RasterSourceManifest manifest = RasterSourceManifest.load(folder);
+        assertTrue(manifest.getRasterNames().isEmpty());
+        manifest.put("sss_1_0.json", sources);
+        manifest.put("sss_1_1.json", sources);
+        manifest.remove("sss_1_1.json");
+        manifest.save();
+
+        RasterSourceManifest loaded = RasterSourceManifest.load(folder);
+        assertEquals(Set.of("sss_1_0.json"), loaded.getRasterNames());
+        assertEquals(sources, loaded.get("sss_1_0.json"));
+        assertNull(loaded.get("sss_1_1.json"));
+    }
+
+    @Test
+    void testOtherVersionsAreIgnored(@TempDir File folder) throws Exception {
+        File file = new File(folder, "mra/raster-sources.json");
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), "{\"version\": " + (RasterSourceManifest.VERSION + 1)
+                + ", \"tiles\": {\"sss_1_0.json\": {\"firstTimestamp\": 0, \"lastTimestamp\": 1, \"lines\": 2, "
+                + "\"sources\": []}}}");
+        assertTrue(RasterSourceManifest.load(folder).getRasterNames().isEmpty());
+
+        Files.writeString(file.toPath(), "not json");
+        assertTrue(RasterSourceManifest.load(folder).getRasterNames().isEmpty());
+    }
+
+    private static List<String> names(TileSources sources) {
+        return sources.sources().stream().map(SourceFingerprint::name).toList();
+    }
+}
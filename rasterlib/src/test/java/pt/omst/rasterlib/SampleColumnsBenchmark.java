@@ -0,0 +1,82 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory used by the samples of a mission (as sample objects and as {@link SampleColumns}) and time taken to go
+ * through their positions, headings and altitudes. The number of rasters can be given as argument.
+ */
+public class SampleColumnsBenchmark {
+
+    private static final int SAMPLES_PER_RASTER = 500;
+    private static final int ITERATIONS = 20;
+
+    private static List<SampleDescription> createSamples(int raster) {
+        OffsetDateTime start = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).plusSeconds(raster * 60L);
+        return TestSamples.addAttitude(TestSamples.createSamples(start, SAMPLES_PER_RASTER, 120_000_000L));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        int rasters = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        long before = usedMemory();
+        List<List<SampleDescription>> objects = new ArrayList<>();
+        for (int r = 0; r < rasters; r++)
+            objects.add(createSamples(r));
+        long objectBytes = usedMemory() - before;
+
+        before = usedMemory();
+        List<SampleColumns> columns = new ArrayList<>();
+        for (List<SampleDescription> samples : objects)
+            columns.add(SampleColumns.of(samples));
+        long columnBytes = usedMemory() - before;
+
+        System.out.printf("%d rasters, %d samples%n", rasters, rasters * SAMPLES_PER_RASTER);
+        System.out.printf("sample objects: %.1f MB (%d bytes per sample)%n", objectBytes / 1e6,
+                objectBytes / ((long) rasters * SAMPLES_PER_RASTER));
+        System.out.printf("sample columns: %.1f MB (%d bytes per sample)%n", columnBytes / 1e6,
+                columnBytes / ((long) rasters * SAMPLES_PER_RASTER));
+
+        double sum = 0;
+        long objectNanos = Long.MAX_VALUE, columnNanos = Long.MAX_VALUE;
+        for (int it = 0; it < ITERATIONS; it++) {
+            long start = System.nanoTime();
+            for (List<SampleDescription> samples : objects) {
+                for (SampleDescription sample : samples) {
+                    Pose pose = sample.getPose();
+                    sum += pose.getLatitude() + pose.getLongitude() + pose.getPsi() + pose.getAltitude()
+                            + sample.getTimestamp().toInstant().toEpochMilli();
+                }
+            }
+            objectNanos = Math.min(objectNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (SampleColumns samples : columns) {
+                for (int i = 0; i < samples.size(); i++) {
+                    sum += samples.getLatitude(i) + samples.getLongitude(i) + samples.getPsi(i)
+                            + samples.getAltitude(i) + samples.getTimestamp(i);
+                }
+            }
+            columnNanos = Math.min(columnNanos, System.nanoTime() - start);
+        }
+        System.out.printf("iteration over sample objects: %.2f ms%n", objectNanos / 1e6);
+        System.out.printf("iteration over sample columns: %.2f ms%n", columnNanos / 1e6);
+        // uses the sums, so that the loops are not optimized away
+        System.out.printf("checksum: %.0f%n", sum);
+    }
+}
@@ -0,0 +1,87 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link SampleColumns} and the columns of {@link IndexedRaster}.
+ */
+class SampleColumnsTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2025, 3, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+
+    private static List<SampleDescription> createSamples(int count) {
+        return TestSamples.createSamples(START, count, 100_000_000L);
+    }
+
+    @Test
+    void testValuesAreKept() {
+        List<SampleDescription> samples = createSamples(10);
+        SampleColumns columns = SampleColumns.of(samples);
+        assertEquals(10, columns.size());
+        for (int i = 0; i < samples.size(); i++) {
+            Pose pose = samples.get(i).getPose();
+            assertEquals(samples.get(i).getTimestamp().toInstant().toEpochMilli(), columns.getTimestamp(i));
+            assertEquals(i, columns.getIndex(i));
+            assertEquals(pose.getLatitude(), columns.getLatitude(i));
+            assertEquals(pose.getLongitude(), columns.getLongitude(i));
+            assertEquals(pose.getAltitude(), columns.getAltitude(i), 1e-5);
+            assertEquals(pose.getPsi(), columns.getPsi(i), 1e-5);
+            // missing values
+            assertTrue(Double.isNaN(columns.getPhi(i)));
+            assertEquals(SampleColumns.NO_VALUE, columns.getOffset(i));
+        }
+        assertEquals(1.5, columns.getMeanSpeed(), 1e-6);
+    }
+
+    @Test
+    void testSamplesAreRecreated() {
+        List<SampleDescription> samples = createSamples(5);
+        List<SampleDescription> recreated = SampleColumns.of(samples).toSamples();
+        assertEquals(samples.size(), recreated.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals(samples.get(i).getTimestamp(), recreated.get(i).getTimestamp());
+            assertEquals(samples.get(i).getIndex(), recreated.get(i).getIndex());
+            assertNull(recreated.get(i).getOffset());
+            Pose pose = recreated.get(i).getPose();
+            assertEquals(samples.get(i).getPose().getLatitude(), pose.getLatitude());
+            assertEquals(samples.get(i).getPose().getDepth(), pose.getDepth(), 1e-5);
+            assertNull(pose.getPhi());
+        }
+    }
+
+    @Test
+    void testCountUntil() {
+        SampleColumns columns = SampleColumns.of(createSamples(10));
+        long start = START.toInstant().toEpochMilli();
+        assertEquals(0, columns.countUntil(start - 1));
+        assertEquals(1, columns.countUntil(start));
+        assertEquals(1, columns.countUntil(start + 99));
+        assertEquals(5, columns.countUntil(start + 400));
+        assertEquals(10, columns.countUntil(start + 10_000));
+    }
+
+    @Test
+    void testCompactedRasterKeepsItsSamples() {
+        IndexedRaster raster = new IndexedRaster();
+        raster.setSamples(createSamples(20));
+        SampleColumns columns = raster.compactSamples();
+        assertSame(columns, raster.getColumns());
+        assertEquals(20, raster.getSamples().size());
+        assertEquals(START, raster.getSamples().getFirst().getTimestamp());
+
+        // new samples replace the columns
+        raster.setSamples(createSamples(3));
+        assertEquals(3, raster.getColumns().size());
+    }
+}
@@ -0,0 +1,79 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic samples and rasters shared by the tests and benchmarks of raster indexes.
+ */
+final class TestSamples {
+
+    private TestSamples() {
+    }
+
+    /**
+     * Creates samples whose index, position, altitude and heading change with each sample. Depth and speed are
+     * constant, offsets and the other attitude values are missing.
+     * @param start         time of the first sample
+     * @param count         number of samples
+     * @param intervalNanos time between samples, in nanoseconds
+     */
+    static List<SampleDescription> createSamples(OffsetDateTime start, int count, long intervalNanos) {
+        List<SampleDescription> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SampleDescription sample = new SampleDescription();
+            sample.setIndex((long) i);
+            sample.setTimestamp(start.plusNanos(i * intervalNanos));
+            Pose pose = new Pose();
+            pose.setLatitude(41.1 + i * 1e-6);
+            pose.setLongitude(-8.7 - i * 1e-6);
+            pose.setAltitude(5.25 + i);
+            pose.setDepth(2.5);
+            pose.setPsi(90.0 + i);
+            pose.setU(1.5);
+            sample.setPose(pose);
+            samples.add(sample);
+        }
+        return samples;
+    }
+
+    /**
+     * Fills the offsets and attitude values left missing by {@link #createSamples(OffsetDateTime, int, long)}, as
+     * in the samples of exported rasters
+     */
+    static List<SampleDescription> addAttitude(List<SampleDescription> samples) {
+        for (int i = 0; i < samples.size(); i++) {
+            SampleDescription sample = samples.get(i);
+            sample.setOffset((long) i * 2000);
+            Pose pose = sample.getPose();
+            pose.setPhi(0.5);
+            pose.setTheta(-1.0);
+            pose.setP(0.1);
+            pose.setQ(0.1);
+            pose.setR(0.2);
+        }
+        return samples;
+    }
+
+    /**
+     * @return a scanline raster of a 900 kHz sensor with 50 m range
+     */
+    static IndexedRaster createRaster(String filename, List<SampleDescription> samples) {
+        IndexedRaster raster = new IndexedRaster();
+        raster.setFilename(filename);
+        raster.setRasterType(RasterType.SCANLINE);
+        SensorInfo sensorInfo = new SensorInfo();
+        sensorInfo.setSensorModel("Test");
+        sensorInfo.setFrequency(900.0);
+        sensorInfo.setMaxRange(50.0);
+        raster.setSensorInfo(sensorInfo);
+        raster.setSamples(samples);
+        return raster;
+    }
+}
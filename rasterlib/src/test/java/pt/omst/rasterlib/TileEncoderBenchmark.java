@@ -0,0 +1,90 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferUShort;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import pt.lsts.neptus.colormap.ColorMapFactory;
+import pt.omst.sidescan.SidescanLineRenderer;
+
+/**
+ * Encoding speed (MB/s of uncompressed pixels) and compressed size of a sidescan raster and its 16 bit intensities for
+ * {@link javax.imageio.ImageIO} and several {@link PngTileEncoder} configurations. Other encoders can be given as
+ * arguments, using the {@link TileEncoder#parse(String)} syntax.
+ */
+public class TileEncoderBenchmark {
+
+    private static final int SAMPLES = 5000;
+    private static final int LINES = 500;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        // speckle correlated over a few samples and lines, attenuated with range, water column in the middle
+        Random random = new Random(0);
+        double[][] speckle = new double[LINES / 2 + 2][SAMPLES / 4 + 2];
+        for (double[] row : speckle)
+            for (int i = 0; i < row.length; i++)
+                row[i] = random.nextDouble();
+        double[][] lines = new double[LINES][SAMPLES];
+        for (int row = 0; row < LINES; row++) {
+            for (int i = 0; i < SAMPLES; i++) {
+                double range = Math.abs(i - SAMPLES / 2) / (double) (SAMPLES / 2);
+                double y = row / 2.0, x = i / 4.0;
+                int y0 = (int) y, x0 = (int) x;
+                double fy = y - y0, fx = x - x0;
+                double value = (speckle[y0][x0] * (1 - fx) + speckle[y0][x0 + 1] * fx) * (1 - fy)
+                        + (speckle[y0 + 1][x0] * (1 - fx) + speckle[y0 + 1][x0 + 1] * fx) * fy;
+                lines[row][i] = range < 0.05 ? 0 : (value * 0.8 + random.nextDouble() * 0.2) * (1.2 - range);
+            }
+        }
+
+        SidescanLineRenderer renderer = new SidescanLineRenderer(ColorMapFactory.createBronzeColormap());
+        BufferedImage image = new BufferedImage(SAMPLES, LINES, BufferedImage.TYPE_INT_RGB);
+        BufferedImage intensities = new BufferedImage(SAMPLES, LINES, BufferedImage.TYPE_USHORT_GRAY);
+        short[] intensityData = ((DataBufferUShort) intensities.getRaster().getDataBuffer()).getData();
+        for (int row = 0; row < LINES; row++) {
+            renderer.render(lines[row], image, row);
+            renderer.renderIntensities(lines[row], intensityData, row * SAMPLES, IntensityRaster.DEFAULT_MAX_VALUE);
+        }
+
+        List<TileEncoder> encoders = new ArrayList<>();
+        if (args.length > 0) {
+            for (String arg : args)
+                encoders.add(TileEncoder.parse(arg));
+        }
+        else {
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (String description : new String[] { "imageio", "png:1:none", "png:1:sub", "png:1:up",
+                    "png:1:adaptive", "png:3:none", "png:3:sub", "png:3:adaptive", "png:6:none", "png:6:adaptive",
+                    "png:9:adaptive", "png:3:none:" + cores, "png:3:sub:" + cores })
+                encoders.add(TileEncoder.parse(description));
+        }
+
+        for (int run = 0; run < 3; run++) {
+            System.out.println("--- run " + (run + 1));
+            encode(encoders, "RGB", image, 3);
+            encode(encoders, "16 bit", intensities, 2);
+        }
+    }
+
+    private static void encode(List<TileEncoder> encoders, String name, BufferedImage image, int bytesPerPixel)
+            throws Exception {
+        double megabytes = image.getWidth() * (double) image.getHeight() * bytesPerPixel / 1e6;
+        for (TileEncoder encoder : encoders) {
+            int size = 0;
+            long start = System.nanoTime();
+            for (int it = 0; it < ITERATIONS; it++)
+                size = encoder.encode(image).length;
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%-8s %-20s %8.1f MB/s %,12d bytes (%5.1f%% of raw)%n", name, encoder,
+                    megabytes * ITERATIONS / (nanos / 1e9), size, 100 * size / (megabytes * 1e6));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+//***************************************************************************
+// Copyright 2025 OceanScan - Marine Systems & Technology, Lda.             *
+//***************************************************************************
+// Author: José Pinto                                                       *
+//***************************************************************************
+package pt.omst.rasterlib.sscache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import pt.omst.rasterlib.sscache.RasterIndexBatch.SourceState;
+import pt.omst.rasterlib.sscache.RasterIndexBatch.Status;
+
+/**
+ * Unit tests for the journal of {@link RasterIndexBatch}.
+ */
+class RasterIndexBatchTest {
+
+    @Test
+    void testJournalKeepsTheSourceState(@TempDir File folder) throws IOException {
+        File journal = new File(folder, "batch.journal");
+        Files.writeString(journal.toPath(), String.join("\n",
+                "DONE\t/a\t100\t1\t2.0\t1000\t42",
+                "EMPTY\t/b\t0\t0\t0.1\t0\t0",
+                "DONE\t/c\t100\t1\t2.0", // written before the source state was recorded
+                "DONE\t/d\t100\t1\t2.0\t1000\t42",
+                "FAILED\t/d\t0\t0\t1.0\t2000\t43",
+                "DONE\t/e"));
+        Map<String, SourceState> done = RasterIndexBatch.readJournal(journal);
+        assertEquals(Map.of("/a", new SourceState(1000, 42), "/b", new SourceState(0, 0)), done);
+    }
+
+    @Test
+    void testChangedFoldersAreExportedAgain(@TempDir File root) throws Exception {
+        File folder = new File(root, "mission");
+        folder.mkdirs();
+        File journal = new File(root, "batch.journal");
+
+        assertEquals(Status.EMPTY, new RasterIndexBatch(List.of(folder), journal).run().getFirst().status());
+        assertEquals(Status.RESUMED, new RasterIndexBatch(List.of(folder), journal).run().getFirst().status());
+
+        // new sonar data
+        File data = new File(folder, "data.sdf");
+        Files.write(data.toPath(), new byte[16]);
+        assertNotEquals(Status.RESUMED, new RasterIndexBatch(List.of(folder), journal).run().getFirst().status());
+    }
+
+    @Test
+    void testIndexedFoldersAreKeptOnTheFirstRun(@TempDir File root) throws Exception {
+        File folder = new File(root, "mission");
+        File rasterIndex = new File(folder, "rasterIndex");
+        rasterIndex.mkdirs();
+        File raster = new File(rasterIndex, "legacy.json");
+        Files.writeString(raster.toPath(), "{}");
+        Files.write(new File(folder, "data.sdf").toPath(), new byte[16]);
+        File journal = new File(root, "batch.journal");
+
+        assertEquals(Status.INDEXED, new RasterIndexBatch(List.of(folder), journal).run().getFirst().status());
+        assertEquals(Status.RESUMED, new RasterIndexBatch(List.of(folder), journal).run().getFirst().status());
+        assertTrue(raster.isFile());
+
+        RasterIndexBatch batch = new RasterIndexBatch(List.of(folder), new File(root, "other.journal"));
+        batch.setExportIndexedFolders(true);
+        assertNotEquals(Status.INDEXED, batch.run().getFirst().status());
+    }
+
+    @Test
+    void testFailedFoldersAreExportedAgain(@TempDir File root) throws Exception {
+        File folder = new File(root, "mission");
+        new File(folder, "rasterIndex").mkdirs();
+        Files.writeString(new File(folder, "rasterIndex/partial.json").toPath(), "{}");
+        File journal = new File(root, "batch.journal");
+        Files.writeString(journal.toPath(), "FAILED\t" + folder.getAbsolutePath() + "\t0\t0\t1.0\t0\t0\n");
+
+        Status status = new RasterIndexBatch(List.of(folder), journal).run().getFirst().status();
+        assertNotEquals(Status.INDEXED, status);
+        assertNotEquals(Status.RESUMED, status);
+    }
+}